@@ -8,12 +8,21 @@ import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
+import com.mrcd.webview.cache.SharedDiskCache;
 import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.memory.MemoryBudgetArbiter;
 import com.mrcd.webview.config.CacheConfig;
 import com.mrcd.webview.config.CacheMode;
 import com.mrcd.webview.cookie.FastCookieManager;
+import com.mrcd.webview.preload.PreloadBatch;
+import com.mrcd.webview.preload.PreloadCallback;
+import com.mrcd.webview.preload.Preloader;
 import com.mrcd.webview.utils.LogUtils;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
 /**
  * 带有三级缓存的 WebView
  */
@@ -41,7 +50,37 @@ public class CacheWebView extends WebView implements CommonApi {
      * @param url 网络地址
      */
     public static void preload(Context context, String url) {
-        new CacheWebView(context.getApplicationContext()).loadUrl(url);
+        Preloader.forConfig(context, null).preload(Collections.singletonList(url));
+    }
+
+    /**
+     * 不创建 WebView，在后台加载一批页面及其引用的脚本、样式、字体和图片，见 {@link Preloader}
+     *
+     * @param cacheConfig 与 {@link #setCacheMode(CacheMode, CacheConfig)} 使用的配置一致，为 null 时使用默认配置
+     * @param callback    加载进度回调，可以为 null
+     */
+    public static PreloadBatch preload(Context context, CacheConfig cacheConfig, List<String> urls,
+                                       PreloadCallback callback) {
+        return Preloader.forConfig(context, cacheConfig).preload(urls, callback);
+    }
+
+    /**
+     * 在后台线程提前加载磁盘缓存索引，建议在 Application 启动时调用。
+     *
+     * @param cacheConfig 与 {@link #setCacheMode(CacheMode, CacheConfig)} 使用的配置一致，为 null 时使用默认配置
+     */
+    public static Future<?> warmUp(Context context, CacheConfig cacheConfig) {
+        if (cacheConfig == null) {
+            cacheConfig = new CacheConfig.Builder(context.getApplicationContext()).build();
+        }
+        return SharedDiskCache.warmUp(cacheConfig);
+    }
+
+    /**
+     * 设置所有缓存目录的内存缓存共用的大小上限，默认为各配置中最大的内存缓存大小
+     */
+    public static void setMemoryCacheBudget(int budget) {
+        MemoryBudgetArbiter.getInstance().setBudget(budget);
     }
 
     public void setCacheMode(CacheMode mode) {
@@ -1,5 +1,6 @@
 package com.mrcd.webview;
 
+import java.io.InputStream;
 import java.util.Map;
 
 import okhttp3.internal.http.StatusLine;
@@ -33,6 +34,19 @@ public class WebResource {
 
     private byte[] originBytes;
 
+    /**
+     * 大资源不再整体读入内存，而是以流的形式交给 WebView，读取完毕后由 WebView 负责关闭。
+     */
+    private InputStream originStream;
+    /**
+     * 合并的请求分到的结果，第一个请求已经写入缓存，其他请求不再写入
+     */
+    private boolean isShared = false;
+    /**
+     * 缓存的过期时间，-1 表示未计算
+     */
+    private long expires = -1;
+
     public void setModified(boolean modified) {
         isModified = modified;
     }
@@ -57,6 +71,14 @@ public class WebResource {
         return isCacheByOurselves;
     }
 
+    public void setShared(boolean isShared) {
+        this.isShared = isShared;
+    }
+
+    public boolean isShared() {
+        return isShared;
+    }
+
     public void setOriginBytes(byte[] bytes) {
         this.originBytes = bytes;
     }
@@ -65,6 +87,22 @@ public class WebResource {
         return originBytes;
     }
 
+    public void setOriginStream(InputStream stream) {
+        this.originStream = stream;
+    }
+
+    public InputStream getOriginStream() {
+        return originStream;
+    }
+
+    public void setExpires(long expires) {
+        this.expires = expires;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
     public void setReasonPhrase(String reasonPhrase) {
         this.reasonPhrase = reasonPhrase;
     }
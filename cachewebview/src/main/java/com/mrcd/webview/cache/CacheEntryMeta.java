@@ -0,0 +1,541 @@
+package com.mrcd.webview.cache;
+
+import android.text.TextUtils;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.utils.HeaderUtils;
+import com.mrcd.webview.utils.HttpDateUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * 磁盘缓存条目的元数据：状态码、响应头以及解析后的 Content-Type。
+ * 命中磁盘缓存时先读取元数据判断能否使用，确认使用后才读取 body。
+ * <p>
+ * 新写入的元数据使用二进制格式，旧版本写入的文本格式仍可读取，条目下次写入时自动转换为二进制格式。
+ * <p>
+ * body 可能以 {@link #CODING_DEFLATE} 压缩保存，由 {@link #getContentCoding()} 标明，与响应头中的 Content-Encoding 无关，
+ * 解压后的长度由 {@link #getDecodedLength()} 给出。
+ * <p>
+ * 响应带有 Vary 时记录对应请求头在写入时的值，见 {@link VaryIndex}。
+ */
+public class CacheEntryMeta {
+
+    /**
+     * 二进制格式的首字节，文本格式以状态码开头，首字节一定是数字
+     */
+    private static final int BINARY_MAGIC = 0xFB;
+    private static final int BINARY_VERSION_1 = 1;
+    /**
+     * 在版本 1 的基础上增加 body 的压缩方式及解压后的长度
+     */
+    private static final int BINARY_VERSION_2 = 2;
+    /**
+     * 在版本 2 的基础上增加 Vary 对应的请求头
+     */
+    private static final int BINARY_VERSION_3 = 3;
+    /**
+     * body 以 {@link com.mrcd.webview.utils.DeflateUtils} 的 raw deflate 格式压缩保存
+     */
+    public static final String CODING_DEFLATE = "deflate";
+    /**
+     * 响应头名称不在 {@link #COMMON_HEADER_NAMES} 中时写入该标记，后面跟完整的名称
+     */
+    private static final int LITERAL_HEADER_NAME = 0xFF;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 没有 max-age 和 Expires 时，以距 Last-Modified 时长的 10% 作为有效期，最长一天
+     */
+    private static final float HEURISTIC_FRESHNESS_FACTOR = 0.1f;
+    private static final long MAX_HEURISTIC_FRESHNESS = 24 * 60 * 60 * 1000L;
+    /**
+     * 304 响应中与 body 相关的响应头，不覆盖缓存中的值
+     */
+    private static final String[] BODY_HEADER_NAMES = {"Content-Length", "Content-Encoding", "Content-Type", "Transfer-Encoding"};
+    /**
+     * 常见响应头名称，二进制格式中只写入下标。只能在末尾追加，不能修改已有顺序
+     */
+    private static final String[] COMMON_HEADER_NAMES = {
+            "Content-Type", "content-type",
+            "Content-Length", "content-length",
+            "Content-Encoding", "content-encoding",
+            "Cache-Control", "cache-control",
+            "ETag", "etag",
+            "Last-Modified", "last-modified",
+            "Expires", "expires",
+            "Date", "date",
+            "Age", "age",
+            "Vary", "vary",
+            "Server", "server",
+            "Accept-Ranges", "accept-ranges",
+            "Access-Control-Allow-Origin", "access-control-allow-origin",
+            "Timing-Allow-Origin", "timing-allow-origin",
+            "Connection", "connection",
+            "Pragma", "pragma",
+            "Via", "via",
+            "X-Cache", "x-cache",
+            "Content-Language", "content-language",
+            "Content-Security-Policy", "content-security-policy",
+            "Strict-Transport-Security", "strict-transport-security",
+            "X-Content-Type-Options", "x-content-type-options",
+    };
+    private static final Map<String, Integer> COMMON_HEADER_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < COMMON_HEADER_NAMES.length; i++) {
+            COMMON_HEADER_INDEX.put(COMMON_HEADER_NAMES[i], i);
+        }
+    }
+
+    private final int mResponseCode;
+    private final String mReasonPhrase;
+    private final Map<String, String> mHeaders;
+    private final String mMimeType;
+    private final String mCharset;
+    private final String mETag;
+    private final long mLastModified;
+    private final long mExpires;
+    private final String mContentCoding;
+    private final long mDecodedLength;
+    private final Map<String, String> mVaryHeaders;
+
+    private CacheEntryMeta(int responseCode, String reasonPhrase, Map<String, String> headers,
+                           String mimeType, String charset, String eTag, long lastModified, long expires,
+                           String contentCoding, long decodedLength, Map<String, String> varyHeaders) {
+        mResponseCode = responseCode;
+        mReasonPhrase = reasonPhrase;
+        mHeaders = Collections.unmodifiableMap(headers);
+        mMimeType = mimeType;
+        mCharset = charset;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mExpires = expires;
+        mContentCoding = contentCoding;
+        mDecodedLength = decodedLength;
+        mVaryHeaders = Collections.unmodifiableMap(varyHeaders);
+    }
+
+    /**
+     * 由响应头解析 Content-Type、ETag、Last-Modified 以及过期时间
+     *
+     * @param now 收到响应的时间
+     */
+    private static CacheEntryMeta fromHeaders(int responseCode, String reasonPhrase, Map<String, String> headers, long now) {
+        final String contentType = getHeader(headers, "Content-Type");
+        final long lastModified = HttpDateUtils.parse(getHeader(headers, "Last-Modified"));
+        return new CacheEntryMeta(responseCode, reasonPhrase, headers,
+                parseMimeType(headers), parseCharset(contentType), getHeader(headers, "ETag"),
+                lastModified, computeExpires(headers, now), null, -1, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @param now 收到响应的时间，用于计算过期时间
+     */
+    public static CacheEntryMeta from(WebResource resource, long now) {
+        Map<String, String> headers = resource.getResponseHeaders();
+        return fromHeaders(resource.getResponseCode(), resource.getReasonPhrase(),
+                headers != null ? new HashMap<>(headers) : new HashMap<String, String>(), now);
+    }
+
+    /**
+     * 服务器返回 304 后更新元数据：合并 304 的响应头并重新计算过期时间，body 及其压缩方式不变
+     *
+     * @param now 收到 304 的时间
+     */
+    public CacheEntryMeta withNotModified(Map<String, String> notModifiedHeaders, long now) {
+        final Map<String, String> headers = new HashMap<>(mHeaders);
+        if (notModifiedHeaders != null) {
+            for (Map.Entry<String, String> entry : notModifiedHeaders.entrySet()) {
+                if (isBodyHeader(entry.getKey())) {
+                    continue;
+                }
+                removeHeader(headers, entry.getKey());
+                headers.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return fromHeaders(mResponseCode, mReasonPhrase, headers, now)
+                .withContentCoding(mContentCoding)
+                .withDecodedLength(mDecodedLength)
+                .withVaryHeaders(mVaryHeaders);
+    }
+
+    private static boolean isBodyHeader(String name) {
+        for (String bodyHeader : BODY_HEADER_NAMES) {
+            if (bodyHeader.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void removeHeader(Map<String, String> headers, String name) {
+        final Iterator<String> iterator = headers.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (name.equalsIgnoreCase(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 复制一份 body 压缩方式不同的元数据
+     *
+     * @param contentCoding body 的压缩方式，null 表示未压缩
+     */
+    public CacheEntryMeta withContentCoding(String contentCoding) {
+        return new CacheEntryMeta(mResponseCode, mReasonPhrase, mHeaders, mMimeType, mCharset, mETag,
+                mLastModified, mExpires, contentCoding, mDecodedLength, mVaryHeaders);
+    }
+
+    /**
+     * 复制一份记录了 body 解压后长度的元数据
+     *
+     * @param decodedLength 未知时为 -1
+     */
+    public CacheEntryMeta withDecodedLength(long decodedLength) {
+        return new CacheEntryMeta(mResponseCode, mReasonPhrase, mHeaders, mMimeType, mCharset, mETag,
+                mLastModified, mExpires, mContentCoding, decodedLength, mVaryHeaders);
+    }
+
+    /**
+     * 复制一份记录了 Vary 请求头的元数据
+     *
+     * @param varyHeaders 小写的请求头名称及写入时请求中的值
+     */
+    public CacheEntryMeta withVaryHeaders(Map<String, String> varyHeaders) {
+        return new CacheEntryMeta(mResponseCode, mReasonPhrase, mHeaders, mMimeType, mCharset, mETag,
+                mLastModified, mExpires, mContentCoding, mDecodedLength, new HashMap<>(varyHeaders));
+    }
+
+    /**
+     * 根据首字节判断是二进制格式还是旧的文本格式
+     */
+    public static CacheEntryMeta read(InputStream inputStream) throws IOException {
+        final BufferedInputStream bufferedInput = new BufferedInputStream(inputStream);
+        bufferedInput.mark(1);
+        final int first = bufferedInput.read();
+        if (first == BINARY_MAGIC) {
+            return readBinary(new DataInputStream(bufferedInput));
+        }
+        bufferedInput.reset();
+        return readText(bufferedInput);
+    }
+
+    private static CacheEntryMeta readBinary(DataInputStream input) throws IOException {
+        final int version = input.readUnsignedByte();
+        if (version < BINARY_VERSION_1 || version > BINARY_VERSION_3) {
+            throw new IOException("unsupported meta version: " + version);
+        }
+        final int responseCode = input.readUnsignedShort();
+        final String reasonPhrase = readString(input);
+        final String mimeType = readString(input);
+        final String charset = readString(input);
+        final String eTag = readString(input);
+        final long lastModified = input.readLong();
+        final long expires = input.readLong();
+        final String contentCoding = version >= BINARY_VERSION_2 ? readString(input) : null;
+        final long decodedLength = version >= BINARY_VERSION_2 ? input.readLong() : -1;
+        final Map<String, String> varyHeaders = new HashMap<>();
+        if (version >= BINARY_VERSION_3) {
+            final int varyCount = input.readUnsignedShort();
+            for (int i = 0; i < varyCount; i++) {
+                varyHeaders.put(readString(input), readString(input));
+            }
+        }
+        final int headerCount = input.readUnsignedShort();
+        final Map<String, String> headers = new HashMap<>(headerCount * 2);
+        for (int i = 0; i < headerCount; i++) {
+            final int nameIndex = input.readUnsignedByte();
+            final String name;
+            if (nameIndex == LITERAL_HEADER_NAME) {
+                name = readString(input);
+            } else if (nameIndex < COMMON_HEADER_NAMES.length) {
+                name = COMMON_HEADER_NAMES[nameIndex];
+            } else {
+                throw new IOException("unknown header name index: " + nameIndex);
+            }
+            headers.put(name, readString(input));
+        }
+        return new CacheEntryMeta(responseCode, reasonPhrase, headers,
+                mimeType, charset, eTag, lastModified, expires, contentCoding, decodedLength, varyHeaders);
+    }
+
+    /**
+     * 读取文本格式的元数据：状态码、原因短语、响应头数量，之后每行一个响应头
+     */
+    private static CacheEntryMeta readText(InputStream inputStream) throws IOException {
+        final BufferedSource entrySource = Okio.buffer(Okio.source(inputStream));
+        // 1. read status
+        final String responseCode = entrySource.readUtf8LineStrict();
+        final String reasonPhrase = entrySource.readUtf8LineStrict();
+        // 2. read headers
+        long headerSize = entrySource.readDecimalLong();
+        final Headers.Builder responseHeadersBuilder = new Headers.Builder();
+        // read first placeholder line
+        final String placeHolder = entrySource.readUtf8LineStrict();
+        if (!TextUtils.isEmpty(placeHolder.trim())) {
+            responseHeadersBuilder.add(placeHolder);
+            headerSize--;
+        }
+        for (int i = 0; i < headerSize; i++) {
+            String line = entrySource.readUtf8LineStrict();
+            if (!TextUtils.isEmpty(line)) {
+                responseHeadersBuilder.add(line);
+            }
+        }
+        Map<String, String> headers = HeaderUtils.generateHeadersMap(responseHeadersBuilder.build());
+        // 文本格式没有记录写入时间，max-age 按很早之前收到计算，即视为已过期
+        return fromHeaders(Integer.parseInt(responseCode), reasonPhrase, headers, 0);
+    }
+
+    /**
+     * 以二进制格式写入：魔数、版本号、状态、解析后的字段、body 的压缩方式及解压后的长度、Vary 请求头，
+     * 最后是响应头，字符串均带长度前缀
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        try {
+            output.writeByte(BINARY_MAGIC);
+            output.writeByte(BINARY_VERSION_3);
+            output.writeShort(mResponseCode);
+            writeString(output, mReasonPhrase);
+            writeString(output, mMimeType);
+            writeString(output, mCharset);
+            writeString(output, mETag);
+            output.writeLong(mLastModified);
+            output.writeLong(mExpires);
+            writeString(output, mContentCoding);
+            output.writeLong(mDecodedLength);
+            output.writeShort(mVaryHeaders.size());
+            for (Map.Entry<String, String> entry : mVaryHeaders.entrySet()) {
+                writeString(output, entry.getKey());
+                writeString(output, entry.getValue());
+            }
+            output.writeShort(mHeaders.size());
+            for (Map.Entry<String, String> entry : mHeaders.entrySet()) {
+                final Integer nameIndex = COMMON_HEADER_INDEX.get(entry.getKey());
+                if (nameIndex != null) {
+                    output.writeByte(nameIndex);
+                } else {
+                    output.writeByte(LITERAL_HEADER_NAME);
+                    writeString(output, entry.getKey());
+                }
+                writeString(output, entry.getValue());
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    public byte[] toByteArray() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(output);
+        return output.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * 生成一个新的 {@link WebResource}，响应头为副本，body 由调用方设置
+     */
+    public WebResource toWebResource() {
+        WebResource webResource = new WebResource();
+        webResource.setReasonPhrase(mReasonPhrase);
+        webResource.setResponseCode(mResponseCode);
+        webResource.setResponseHeaders(new HashMap<>(mHeaders));
+        webResource.setModified(false);
+        webResource.setExpires(mExpires);
+        return webResource;
+    }
+
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    public String getReasonPhrase() {
+        return mReasonPhrase;
+    }
+
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    /**
+     * Content-Type 中去掉参数后的 mime type，没有 Content-Type 时为 null
+     */
+    public String getMimeType() {
+        return mMimeType;
+    }
+
+    /**
+     * Content-Type 中的 charset，没有时为 null
+     */
+    public String getCharset() {
+        return mCharset;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    /**
+     * Last-Modified 的毫秒时间戳，没有时为 -1
+     */
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * 写入缓存时由 {@link #computeExpires(Map, long)} 计算出的过期时间，旧版本写入的元数据可能为 -1
+     */
+    public long getExpires() {
+        return mExpires;
+    }
+
+    /**
+     * body 在缓存中的压缩方式，未压缩时为 null
+     */
+    public String getContentCoding() {
+        return mContentCoding;
+    }
+
+    /**
+     * body 解压后的长度，旧版本写入的元数据为 -1
+     */
+    public long getDecodedLength() {
+        return mDecodedLength;
+    }
+
+    /**
+     * 响应头 Vary 对应的请求头及写入时的值，响应没有 Vary 时为空
+     */
+    public Map<String, String> getVaryHeaders() {
+        return mVaryHeaders;
+    }
+
+    public boolean isDeflated() {
+        return CODING_DEFLATE.equals(mContentCoding);
+    }
+
+    /**
+     * 从响应头中解析 mime type
+     */
+    public static String parseMimeType(Map<String, String> headers) {
+        if (headers == null) {
+            return null;
+        }
+        String contentTypeValue = getHeader(headers, "Content-Type");
+        if (!TextUtils.isEmpty(contentTypeValue)) {
+            String[] contentTypeArray = contentTypeValue.split(";");
+            if (contentTypeArray.length >= 1) {
+                return contentTypeArray[0];
+            }
+        }
+        return null;
+    }
+
+    public static String parseCharset(String contentType) {
+        if (TextUtils.isEmpty(contentType)) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && "charset".equalsIgnoreCase(pair[0].trim())) {
+                return pair[1].trim().replace("\"", "");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 计算响应的过期时间：no-cache 时立即过期，其次是 max-age 减去 Age，再次是 Expires，
+     * 都没有时按 Last-Modified 估算，仍然没有时立即过期
+     *
+     * @param now 收到响应的时间
+     */
+    public static long computeExpires(Map<String, String> headers, long now) {
+        if (headers == null) {
+            return now;
+        }
+        try {
+            final CacheControl cacheControl = CacheControl.parse(Headers.of(headers));
+            if (cacheControl.noCache()) {
+                return now;
+            }
+            if (cacheControl.maxAgeSeconds() >= 0) {
+                return now + Math.max(0, cacheControl.maxAgeSeconds() - parseAgeSeconds(headers)) * 1000L;
+            }
+        } catch (IllegalArgumentException e) {
+            // 响应头中含有 OkHttp 不接受的字符
+        }
+        final String expires = getHeader(headers, "Expires");
+        if (!TextUtils.isEmpty(expires)) {
+            // 无法解析的 Expires（如 0）表示已过期
+            return Math.max(HttpDateUtils.parse(expires), 0);
+        }
+        final long lastModified = HttpDateUtils.parse(getHeader(headers, "Last-Modified"));
+        if (lastModified >= 0 && lastModified < now) {
+            return now + Math.min(MAX_HEURISTIC_FRESHNESS, (long) ((now - lastModified) * HEURISTIC_FRESHNESS_FACTOR));
+        }
+        return now;
+    }
+
+    /**
+     * 已经过期多久，未过期时小于等于 0。没有过期时间的旧元数据视为刚刚过期
+     */
+    public static long getStaleTime(long expires, long now) {
+        return expires < 0 ? 1 : now - expires;
+    }
+
+    private static long parseAgeSeconds(Map<String, String> headers) {
+        final String age = getHeader(headers, "Age");
+        if (TextUtils.isEmpty(age)) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(age.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String getHeader(Map<String, String> headers, String name) {
+        String value = headers.get(name);
+        return value != null ? value : headers.get(name.toLowerCase());
+    }
+}
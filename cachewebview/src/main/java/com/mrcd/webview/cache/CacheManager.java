@@ -16,6 +16,10 @@ import com.mrcd.webview.cache.intercept.ForceRemoteCacheInterceptor;
 import com.mrcd.webview.cache.intercept.MemCacheInterceptor;
 import com.mrcd.webview.config.CacheConfig;
 import com.mrcd.webview.config.CacheMode;
+import com.mrcd.webview.preload.PageLoadRecorder;
+import com.mrcd.webview.preload.PageManifestStore;
+import com.mrcd.webview.preload.PreloadBatch;
+import com.mrcd.webview.preload.Preloader;
 import com.mrcd.webview.utils.MimeTypeMapUtils;
 
 import java.util.ArrayList;
@@ -34,6 +38,8 @@ public class CacheManager implements CommonApi, Destroyable {
     private List<CacheInterceptor> mUserInjectInterceptorList;
     private List<CacheInterceptor> mForceModeChainList;
     private List<CacheInterceptor> mDefaultModeChainList;
+    private PageLoadRecorder mPageLoadRecorder;
+    private volatile PreloadBatch mPrefetchBatch;
 
     public CacheManager(Context context) {
         mContext = context;
@@ -56,15 +62,50 @@ public class CacheManager implements CommonApi, Destroyable {
         final String mimeType = MimeTypeMapUtils.getMimeTypeFromExtension(extension);
         final Map<String, String> headers = request.getRequestHeaders();
         final CacheRequest cacheRequest = new CacheRequest();
-        cacheRequest.setUrl(url);
+        cacheRequest.setUrl(url, mCacheConfig != null ? mCacheConfig.getCacheKeyStrategy() : null);
         cacheRequest.setMime(mimeType);
         cacheRequest.setForceMode(mCacheMode == CacheMode.FORCE);
         cacheRequest.setUserAgent(userAgent);
         cacheRequest.setWebViewCacheMode(cacheMode);
         cacheRequest.setHeaders(headers);
+        if (cacheRequest.isForceMode()) {
+            recordPageLoad(request.isForMainFrame(), cacheRequest, userAgent);
+        }
         return load(cacheRequest);
     }
 
+    /**
+     * 记录页面加载的子资源，页面再次打开时提前加载记录的资源
+     */
+    @WorkerThread
+    private void recordPageLoad(boolean isForMainFrame, CacheRequest request, String userAgent) {
+        final PageLoadRecorder recorder = getPageLoadRecorder();
+        if (recorder == null) {
+            return;
+        }
+        if (!isForMainFrame) {
+            recorder.onSubresourceRequest(request.getUrl());
+            return;
+        }
+        final PreloadBatch previous = mPrefetchBatch;
+        if (previous != null) {
+            previous.cancel();
+        }
+        final List<String> urls = recorder.onDocumentRequest(request.getKey(), request.getUrl());
+        if (!urls.isEmpty()) {
+            mPrefetchBatch = Preloader.forConfig(mContext, getCacheConfig()).prefetch(urls, userAgent);
+        }
+    }
+
+    private synchronized PageLoadRecorder getPageLoadRecorder() {
+        final CacheConfig cacheConfig = getCacheConfig();
+        if (mPageLoadRecorder == null && cacheConfig.getMaxPageManifestResources() > 0) {
+            mPageLoadRecorder = new PageLoadRecorder(PageManifestStore.forCacheDir(cacheConfig.getCacheDir()),
+                    cacheConfig.getMaxPageManifestResources());
+        }
+        return mPageLoadRecorder;
+    }
+
     @WorkerThread
     private WebResourceResponse load(CacheRequest request) {
         final List<CacheInterceptor> interceptors = buildCacheInterceptors(request);
@@ -101,7 +142,7 @@ public class CacheManager implements CommonApi, Destroyable {
             if (mUserInjectInterceptorList != null && !mUserInjectInterceptorList.isEmpty()) {
                 interceptors.addAll(mUserInjectInterceptorList);
             }
-            interceptors.add(MemCacheInterceptor.getInstance(cacheConfig));
+            interceptors.add(new MemCacheInterceptor(cacheConfig));
             interceptors.add(new DiskCacheInterceptor(cacheConfig));
             interceptors.add(new ForceRemoteCacheInterceptor(context, cacheConfig));
             mForceModeChainList = interceptors;
@@ -138,6 +179,23 @@ public class CacheManager implements CommonApi, Destroyable {
 
     @Override
     public void destroy() {
+        final PreloadBatch prefetchBatch = mPrefetchBatch;
+        if (prefetchBatch != null) {
+            prefetchBatch.cancel();
+        }
+        final PageLoadRecorder recorder;
+        synchronized (this) {
+            recorder = mPageLoadRecorder;
+        }
+        if (recorder != null) {
+            // 保存记录需要读写文件，在磁盘缓存的后台线程执行，先于下面释放磁盘缓存时提交的 flush
+            SharedDiskCache.execute(new Runnable() {
+                @Override
+                public void run() {
+                    recorder.finish();
+                }
+            });
+        }
         destroyAll(mDefaultModeChainList);
         destroyAll(mForceModeChainList);
         // help gc
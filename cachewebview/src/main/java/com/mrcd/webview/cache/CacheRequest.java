@@ -1,8 +1,8 @@
 package com.mrcd.webview.cache;
 
-import com.mrcd.webview.utils.MD5Utils;
+import com.mrcd.webview.cache.key.CacheKeyStrategy;
+import com.mrcd.webview.cache.key.Md5CacheKeyStrategy;
 
-import java.net.URLEncoder;
 import java.util.Map;
 
 /**
@@ -11,6 +11,8 @@ import java.util.Map;
  */
 public class CacheRequest {
 
+    private static final CacheKeyStrategy DEFAULT_KEY_STRATEGY = new Md5CacheKeyStrategy();
+
     private String key;
     private String url;
     private String mime;
@@ -18,6 +20,10 @@ public class CacheRequest {
     private Map<String, String> mHeaders;
     private String mUserAgent;
     private int mWebViewCacheMode;
+    private boolean mRevalidation;
+    private boolean mHoldingStaleCopy;
+    private String mETag;
+    private long mLastModified = -1;
 
     public String getKey() {
         return key;
@@ -60,8 +66,15 @@ public class CacheRequest {
     }
 
     public void setUrl(String url) {
+        setUrl(url, null);
+    }
+
+    /**
+     * @param keyStrategy 生成缓存 key 的方式，为 null 时使用 {@link Md5CacheKeyStrategy}
+     */
+    public void setUrl(String url, CacheKeyStrategy keyStrategy) {
         this.url = url;
-        this.key = generateKey(url);
+        this.key = (keyStrategy != null ? keyStrategy : DEFAULT_KEY_STRATEGY).generateKey(url);
     }
 
     public void setWebViewCacheMode(int webViewCacheMode) {
@@ -72,7 +85,52 @@ public class CacheRequest {
         return mWebViewCacheMode;
     }
 
-    private static String generateKey(String url) {
-        return MD5Utils.getMD5(URLEncoder.encode(url), false);
+    /**
+     * 复制一份用于后台校验的请求，各级缓存不读取缓存，直接向下传递
+     */
+    public CacheRequest newRevalidationRequest() {
+        final CacheRequest request = new CacheRequest();
+        request.key = key;
+        request.url = url;
+        request.mime = mime;
+        request.forceMode = forceMode;
+        request.mHeaders = mHeaders;
+        request.mUserAgent = mUserAgent;
+        request.mWebViewCacheMode = mWebViewCacheMode;
+        request.mRevalidation = true;
+        return request;
+    }
+
+    public boolean isRevalidation() {
+        return mRevalidation;
+    }
+
+    /**
+     * 上层缓存已持有过期太久的资源并负责兜底，下层不再限定等待时间
+     */
+    public void setHoldingStaleCopy(boolean holdingStaleCopy) {
+        this.mHoldingStaleCopy = holdingStaleCopy;
+    }
+
+    public boolean isHoldingStaleCopy() {
+        return mHoldingStaleCopy;
+    }
+
+    /**
+     * 校验请求带上的 If-None-Match 和 If-Modified-Since
+     *
+     * @param lastModified 毫秒时间戳，没有时为 -1
+     */
+    public void setValidators(String eTag, long lastModified) {
+        this.mETag = eTag;
+        this.mLastModified = lastModified;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
     }
 }
@@ -0,0 +1,199 @@
+package com.mrcd.webview.cache;
+
+import androidx.annotation.WorkerThread;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持有可以兜底的过期缓存时，限定等待网络的时间。
+ * <p>
+ * 网络请求在后台线程执行，超过期限仍未返回时放弃等待，调用方返回过期缓存，请求在后台继续完成并更新缓存；
+ * 请求失败或服务器返回 5xx 时同样返回过期缓存。
+ * <p>
+ * 超时的请求仍占用线程直到完成，网络很慢时线程可能全部被占用，此时不再等待网络，直接返回过期缓存。
+ */
+public class DeadlineFetcher {
+
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int MAX_THREAD_COUNT = 8;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mTimeoutFallbackCount = new AtomicLong();
+    private final AtomicLong mErrorFallbackCount = new AtomicLong();
+    private final AtomicLong mLateCompletionCount = new AtomicLong();
+    private final AtomicLong mRejectedFallbackCount = new AtomicLong();
+    private final Object mIdleLock = new Object();
+    private int mRunningCount;
+
+    private static class SingletonHolder {
+        private static final DeadlineFetcher INSTANCE = new DeadlineFetcher();
+    }
+
+    public static DeadlineFetcher getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private DeadlineFetcher() {
+        // 不排队，线程用完时直接拒绝，由 fetch 返回过期缓存
+        mExecutor = new ThreadPoolExecutor(0, MAX_THREAD_COUNT, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @param fetcher        执行下层拦截器并写入当前层的缓存
+     * @param deadlineMillis 等待的最长时间，小于等于 0 时不限制，只在失败时兜底
+     * @return null 表示应当返回过期缓存
+     */
+    @WorkerThread
+    public WebResource fetch(RequestCoalescer.Fetcher fetcher, long deadlineMillis) {
+        if (deadlineMillis <= 0) {
+            return checkError(fetcher.fetch());
+        }
+        final Call call = new Call(fetcher);
+        synchronized (mIdleLock) {
+            mRunningCount++;
+        }
+        try {
+            mExecutor.execute(call);
+        } catch (RejectedExecutionException e) {
+            onCallFinished();
+            mRejectedFallbackCount.incrementAndGet();
+            return null;
+        }
+        if (!call.await(deadlineMillis)) {
+            mTimeoutFallbackCount.incrementAndGet();
+            return null;
+        }
+        return checkError(call.mResult);
+    }
+
+    private WebResource checkError(WebResource resource) {
+        if (resource != null && resource.getResponseCode() < HTTP_SERVER_ERROR) {
+            return resource;
+        }
+        mErrorFallbackCount.incrementAndGet();
+        if (resource != null) {
+            StreamUtils.closeQuietly(resource.getOriginStream());
+        }
+        return null;
+    }
+
+    /**
+     * 等待超时后返回过期缓存的次数
+     */
+    public long getTimeoutFallbackCount() {
+        return mTimeoutFallbackCount.get();
+    }
+
+    /**
+     * 请求失败或服务器返回 5xx 后返回过期缓存的次数
+     */
+    public long getErrorFallbackCount() {
+        return mErrorFallbackCount.get();
+    }
+
+    /**
+     * 超时后在后台完成的请求数
+     */
+    public long getLateCompletionCount() {
+        return mLateCompletionCount.get();
+    }
+
+    /**
+     * 线程全部被占用，没有请求网络直接返回过期缓存的次数
+     */
+    public long getRejectedFallbackCount() {
+        return mRejectedFallbackCount.get();
+    }
+
+    /**
+     * 等待后台的请求全部完成，超时后完成的结果已写入缓存
+     *
+     * @return false 表示超时
+     */
+    boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (mIdleLock) {
+            while (mRunningCount > 0) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                mIdleLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private void onCallFinished() {
+        synchronized (mIdleLock) {
+            mRunningCount--;
+            mIdleLock.notifyAll();
+        }
+    }
+
+    private class Call implements Runnable {
+
+        private final RequestCoalescer.Fetcher mFetcher;
+        private WebResource mResult;
+        private boolean mDone;
+        private boolean mAbandoned;
+
+        Call(RequestCoalescer.Fetcher fetcher) {
+            mFetcher = fetcher;
+        }
+
+        @Override
+        public void run() {
+            WebResource resource = null;
+            try {
+                resource = mFetcher.fetch();
+            } finally {
+                final boolean abandoned;
+                synchronized (this) {
+                    mResult = resource;
+                    mDone = true;
+                    abandoned = mAbandoned;
+                    notifyAll();
+                }
+                if (abandoned) {
+                    mLateCompletionCount.incrementAndGet();
+                    // 边下边存的资源读完才会提交到缓存
+                    if (resource != null) {
+                        StreamUtils.drainQuietly(resource.getOriginStream());
+                    }
+                }
+                onCallFinished();
+            }
+        }
+
+        /**
+         * @return false 表示超时，之后完成的结果由后台线程处理
+         */
+        synchronized boolean await(long timeoutMillis) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            try {
+                while (!mDone) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!mDone) {
+                mAbandoned = true;
+            }
+            return mDone;
+        }
+    }
+}
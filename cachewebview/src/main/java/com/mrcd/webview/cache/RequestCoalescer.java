@@ -0,0 +1,209 @@
+package com.mrcd.webview.cache;
+
+import androidx.annotation.WorkerThread;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.utils.HeaderUtils;
+import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并同一时刻对同一资源的重复请求：第一个请求负责加载，其余请求等待其结果，
+ * 每个请求拿到的都是基于同一份数据的独立 {@link WebResource}。
+ * <p>
+ * 分到的结果标记为 {@link WebResource#isShared()}，只由第一个请求写入缓存。
+ * 有请求等待时 body 需要读入内存才能分享，超过 {@link #MAX_SHARED_BODY_SIZE} 的不读入，第一个请求仍以流的形式返回，
+ * 等待的请求各自加载。
+ */
+public class RequestCoalescer {
+
+    private static final int MAX_SHARED_BODY_SIZE = 512 * 1024;
+
+    private final Map<String, InFlightCall> mInFlightCalls = new HashMap<>();
+    private final AtomicLong mFetchCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+
+    public interface Fetcher {
+
+        WebResource fetch();
+    }
+
+    private static class SingletonHolder {
+        private static final RequestCoalescer INSTANCE = new RequestCoalescer();
+    }
+
+    public static RequestCoalescer getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private RequestCoalescer() {
+    }
+
+    @WorkerThread
+    public WebResource execute(String key, Fetcher fetcher) {
+        final InFlightCall call;
+        final boolean isLeader;
+        synchronized (mInFlightCalls) {
+            InFlightCall existing = mInFlightCalls.get(key);
+            isLeader = existing == null;
+            if (isLeader) {
+                call = new InFlightCall();
+                mInFlightCalls.put(key, call);
+            } else {
+                call = existing;
+                call.waiters++;
+            }
+        }
+        if (!isLeader) {
+            if (!call.await()) {
+                return null;
+            }
+            if (call.mShareable) {
+                mCoalescedCount.incrementAndGet();
+                LogUtils.d(String.format("coalesced request: %s", key));
+                return share(call.mResult);
+            }
+            // body 太大没有读入内存，各自加载
+            mFetchCount.incrementAndGet();
+            return fetcher.fetch();
+        }
+
+        mFetchCount.incrementAndGet();
+        WebResource resource = null;
+        try {
+            resource = fetcher.fetch();
+        } finally {
+            final boolean isShared;
+            synchronized (mInFlightCalls) {
+                mInFlightCalls.remove(key);
+                isShared = call.waiters > 0;
+            }
+            boolean shareable = true;
+            if (isShared && resource != null) {
+                try {
+                    shareable = bufferBody(resource);
+                } catch (IOException e) {
+                    StreamUtils.closeQuietly(resource.getOriginStream());
+                    LogUtils.e("buffer coalesced response failed. cause by: " + e.getMessage());
+                    resource = null;
+                }
+            }
+            call.complete(resource, shareable);
+        }
+        return resource;
+    }
+
+    /**
+     * 实际发出的请求数
+     */
+    public long getFetchCount() {
+        return mFetchCount.get();
+    }
+
+    /**
+     * 被合并、没有发出的请求数
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * 有其他请求在等待时需要把流读成字节，才能分给每个请求各自读取
+     *
+     * @return false 表示 body 太大，没有读入内存，已读取的部分仍由流返回
+     */
+    private boolean bufferBody(WebResource resource) throws IOException {
+        final InputStream stream = resource.getOriginStream();
+        if (resource.getOriginBytes() != null || stream == null) {
+            return true;
+        }
+        if (getContentLength(resource) > MAX_SHARED_BODY_SIZE) {
+            return false;
+        }
+        // 没有 Content-Length 时最多读取上限加一个字节，据此判断是否超出
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8 * 1024];
+        int count;
+        while (buffer.size() <= MAX_SHARED_BODY_SIZE
+                && (count = stream.read(chunk, 0, Math.min(chunk.length, MAX_SHARED_BODY_SIZE + 1 - buffer.size()))) != -1) {
+            buffer.write(chunk, 0, count);
+        }
+        if (buffer.size() > MAX_SHARED_BODY_SIZE) {
+            resource.setOriginStream(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), stream));
+            return false;
+        }
+        StreamUtils.closeQuietly(stream);
+        resource.setOriginBytes(buffer.toByteArray());
+        resource.setOriginStream(null);
+        return true;
+    }
+
+    private static long getContentLength(WebResource resource) {
+        final String contentLength = HeaderUtils.getHeader(resource.getResponseHeaders(), "Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static WebResource share(WebResource origin) {
+        if (origin == null) {
+            return null;
+        }
+        WebResource resource = new WebResource();
+        resource.setResponseCode(origin.getResponseCode());
+        resource.setReasonPhrase(origin.getReasonPhrase());
+        Map<String, String> headers = origin.getResponseHeaders();
+        resource.setResponseHeaders(headers != null ? new HashMap<>(headers) : null);
+        resource.setModified(origin.isModified());
+        resource.setCacheByOurselves(origin.isCacheByOurselves());
+        resource.setOriginBytes(origin.getOriginBytes());
+        resource.setShared(true);
+        resource.setExpires(origin.getExpires());
+        return resource;
+    }
+
+    private static class InFlightCall {
+
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private int waiters;
+        private volatile WebResource mResult;
+        /**
+         * 为 false 时 body 太大，结果不能分享
+         */
+        private volatile boolean mShareable;
+
+        void complete(WebResource resource, boolean shareable) {
+            mResult = resource;
+            mShareable = shareable;
+            mLatch.countDown();
+        }
+
+        /**
+         * @return 等待被中断时返回 false
+         */
+        boolean await() {
+            try {
+                mLatch.await();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
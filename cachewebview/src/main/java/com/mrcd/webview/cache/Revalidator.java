@@ -0,0 +1,123 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.intercept.Chain;
+import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在后台校验过期的缓存，同一资源同时只有一个校验任务。
+ * <p>
+ * 校验请求沿拦截器链继续执行，由各级缓存按 {@link CacheRequest#isRevalidation()} 跳过读取并更新自己的缓存。
+ */
+public class Revalidator {
+
+    private static final int THREAD_COUNT = 2;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Set<String> mInFlightKeys = new HashSet<>();
+    private final AtomicLong mRevalidationCount = new AtomicLong();
+    private final AtomicLong mNotModifiedCount = new AtomicLong();
+    private final AtomicLong mFailedCount = new AtomicLong();
+
+    private static class SingletonHolder {
+        private static final Revalidator INSTANCE = new Revalidator();
+    }
+
+    public static Revalidator getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private Revalidator() {
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 在后台执行校验，同一 key 已有校验任务时忽略
+     *
+     * @param chain   从发起校验的拦截器开始执行的 {@link Chain}
+     * @param request {@link CacheRequest#newRevalidationRequest()} 生成的请求
+     */
+    public void revalidate(final String key, final Chain chain, final CacheRequest request) {
+        synchronized (mInFlightKeys) {
+            if (!mInFlightKeys.add(key)) {
+                return;
+            }
+        }
+        mRevalidationCount.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final WebResource resource = chain.process(request);
+                    if (resource == null) {
+                        mFailedCount.incrementAndGet();
+                        return;
+                    }
+                    if (!resource.isModified()) {
+                        mNotModifiedCount.incrementAndGet();
+                    }
+                    // 边下边存的资源读取完毕才会提交到磁盘缓存
+                    StreamUtils.drainQuietly(resource.getOriginStream());
+                } catch (Exception e) {
+                    mFailedCount.incrementAndGet();
+                    LogUtils.e("revalidate failed. cause by: " + e.getMessage());
+                } finally {
+                    synchronized (mInFlightKeys) {
+                        mInFlightKeys.remove(key);
+                        mInFlightKeys.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 等待进行中的校验全部完成，校验结果已写入各级缓存
+     *
+     * @return false 表示超时
+     */
+    boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (mInFlightKeys) {
+            while (!mInFlightKeys.isEmpty()) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                mInFlightKeys.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 发起的校验次数
+     */
+    public long getRevalidationCount() {
+        return mRevalidationCount.get();
+    }
+
+    /**
+     * 服务器返回 304、只更新了元数据的次数
+     */
+    public long getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * 网络失败等原因没有完成校验的次数，缓存保持不变
+     */
+    public long getFailedCount() {
+        return mFailedCount.get();
+    }
+}
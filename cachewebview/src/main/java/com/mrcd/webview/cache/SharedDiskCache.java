@@ -0,0 +1,344 @@
+package com.mrcd.webview.cache;
+
+import android.util.LruCache;
+
+import androidx.annotation.WorkerThread;
+
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.JournalDurability;
+import com.mrcd.webview.preload.PageManifestStore;
+import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.lru.PackFileStore;
+import com.mrcd.webview.utils.lru.ShardedDiskLruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内按缓存目录共享的磁盘缓存。
+ * <p>
+ * 同一个目录只能有一个 {@link ShardedDiskLruCache} 写 journal，所有 {@link CacheManager} 通过引用计数共享同一实例。
+ * 引用归零后不会立即关闭，WebView 复用池回收再创建时可以直接复用已加载的索引。
+ */
+public class SharedDiskCache {
+
+    private static final int ENTRY_COUNT = 2;
+    private static final long IDLE_CLOSE_DELAY_SECONDS = 30;
+    private static final int META_CACHE_SIZE = 256;
+    private static final String PACK_DIR_SUFFIX = "-pack";
+    private static final Map<String, SharedDiskCache> sCaches = new HashMap<>();
+    private static final ScheduledThreadPoolExecutor sExecutor = new ScheduledThreadPoolExecutor(1);
+
+    static {
+        sExecutor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final String mCacheDir;
+    private final int mVersion;
+    private final long mCacheSize;
+    private final int mShardCount;
+    private final int mPackFileThreshold;
+    private final JournalDurability mJournalDurability;
+    private ShardedDiskLruCache mDiskLruCache;
+    private PackFileStore mPackFileStore;
+    private int mRefCount;
+    private ScheduledFuture<?> mPendingClose;
+    /**
+     * 已解析的元数据，重复探测同一资源时不再读取元数据文件
+     */
+    private final LruCache<String, MetaEntry> mMetaCache = new LruCache<>(META_CACHE_SIZE);
+    private final AtomicLong mMetaCacheHitCount = new AtomicLong();
+    private final AtomicLong mSkippedBodyBytes = new AtomicLong();
+    private final AtomicLong mUnservedBodyBytes = new AtomicLong();
+
+    private SharedDiskCache(String cacheDir, CacheConfig cacheConfig) {
+        mCacheDir = cacheDir;
+        mVersion = cacheConfig.getVersion();
+        mCacheSize = cacheConfig.getDiskCacheSize();
+        mShardCount = cacheConfig.getDiskCacheShardCount();
+        mPackFileThreshold = cacheConfig.getPackFileThreshold();
+        mJournalDurability = cacheConfig.getJournalDurability();
+    }
+
+    public static SharedDiskCache acquire(CacheConfig cacheConfig) {
+        final String cacheDir = new File(cacheConfig.getCacheDir()).getAbsolutePath();
+        synchronized (sCaches) {
+            SharedDiskCache cache = sCaches.get(cacheDir);
+            if (cache == null) {
+                cache = new SharedDiskCache(cacheDir, cacheConfig);
+                sCaches.put(cacheDir, cache);
+            } else if (cache.mVersion != cacheConfig.getVersion()) {
+                LogUtils.e(String.format("disk cache %s is already opened with version %d, ignore version %d.",
+                        cacheDir, cache.mVersion, cacheConfig.getVersion()));
+            } else if (cache.mShardCount != cacheConfig.getDiskCacheShardCount()) {
+                LogUtils.e(String.format("disk cache %s is already opened with %d shards, ignore %d shards.",
+                        cacheDir, cache.mShardCount, cacheConfig.getDiskCacheShardCount()));
+            }
+            if (cache.mPackFileThreshold != cacheConfig.getPackFileThreshold()) {
+                LogUtils.e(String.format("disk cache %s is already opened with pack threshold %d, ignore threshold %d.",
+                        cacheDir, cache.mPackFileThreshold, cacheConfig.getPackFileThreshold()));
+            }
+            if (cache.mJournalDurability != cacheConfig.getJournalDurability()) {
+                LogUtils.e(String.format("disk cache %s is already opened with journal durability %s, ignore %s.",
+                        cacheDir, cache.mJournalDurability, cacheConfig.getJournalDurability()));
+            }
+            cache.mRefCount++;
+            cache.cancelPendingClose();
+            return cache;
+        }
+    }
+
+    /**
+     * 在后台线程提前加载磁盘缓存索引，避免首个资源请求在 WebView 的 IO 线程上读取 journal。
+     * 预热未完成时到达的请求会等待预热结果，而不是重复加载。
+     */
+    public static Future<?> warmUp(final CacheConfig cacheConfig) {
+        final String cacheDir = new File(cacheConfig.getCacheDir()).getAbsolutePath();
+        final SharedDiskCache cache;
+        synchronized (sCaches) {
+            SharedDiskCache existing = sCaches.get(cacheDir);
+            if (existing == null) {
+                existing = new SharedDiskCache(cacheDir, cacheConfig);
+                sCaches.put(cacheDir, existing);
+            }
+            cache = existing;
+        }
+        return sExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                cache.getDiskLruCache();
+                VaryIndex.forCacheDir(cache.mCacheDir).load();
+                if (cacheConfig.getMaxPageManifestResources() > 0) {
+                    PageManifestStore.forCacheDir(cache.mCacheDir).load();
+                }
+                // 预热后没有 WebView 使用时，与释放时一样延迟关闭，避免索引一直占用内存
+                cache.scheduleCloseIfIdle();
+            }
+        });
+    }
+
+    /**
+     * 在磁盘缓存的后台线程执行，与释放时的 flush 按提交顺序执行
+     */
+    static void execute(Runnable task) {
+        sExecutor.execute(task);
+    }
+
+    /**
+     * 获取已打开的磁盘缓存，首次调用时加载索引。打开失败时返回 null。
+     */
+    @WorkerThread
+    public synchronized ShardedDiskLruCache getDiskLruCache() {
+        if (mDiskLruCache != null && !mDiskLruCache.isClosed()) {
+            return mDiskLruCache;
+        }
+        try {
+            // 重新打开后条目的序号不再可靠
+            mMetaCache.evictAll();
+            long diskLruCacheSize = mCacheSize;
+            final File packDir = new File(mCacheDir + PACK_DIR_SUFFIX);
+            if (mPackFileThreshold > 0) {
+                // 小资源与大资源各占一半空间
+                final long packSize = mCacheSize / 2;
+                diskLruCacheSize = mCacheSize - packSize;
+                mPackFileStore = PackFileStore.open(packDir, packSize);
+            } else {
+                PackFileStore.delete(packDir);
+            }
+            mDiskLruCache = ShardedDiskLruCache.open(new File(mCacheDir), mVersion, ENTRY_COUNT, diskLruCacheSize,
+                    mShardCount, mJournalDurability);
+            LogUtils.d(String.format("open disk cache %s with %d shards: journal read %d ms, process %d ms, rebuild %d ms.",
+                    mCacheDir, mShardCount,
+                    TimeUnit.NANOSECONDS.toMillis(mDiskLruCache.getJournalReadNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(mDiskLruCache.getProcessNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(mDiskLruCache.getRebuildNanos())));
+        } catch (Throwable e) {
+            e.printStackTrace();
+            closePackFileStore();
+        }
+        return mDiskLruCache;
+    }
+
+    /**
+     * 存放小资源的 pack 文件，未开启或磁盘缓存未打开时返回 null
+     */
+    public synchronized PackFileStore getPackFileStore() {
+        return mPackFileStore;
+    }
+
+    private void closePackFileStore() {
+        if (mPackFileStore != null) {
+            mPackFileStore.close();
+            mPackFileStore = null;
+        }
+    }
+
+    /**
+     * 获取缓存的元数据，不校验是否与磁盘上的条目一致，只能用于提前判断是否需要打开缓存文件
+     */
+    public CacheEntryMeta peekMeta(String key) {
+        MetaEntry entry = mMetaCache.get(key);
+        return entry != null ? entry.mMeta : null;
+    }
+
+    /**
+     * 获取与磁盘条目 {@code sequenceNumber} 对应的元数据，条目已被重新写入时返回 null
+     */
+    public CacheEntryMeta getMeta(String key, long sequenceNumber) {
+        MetaEntry entry = mMetaCache.get(key);
+        if (entry == null || entry.mSequenceNumber != sequenceNumber) {
+            return null;
+        }
+        mMetaCacheHitCount.incrementAndGet();
+        return entry.mMeta;
+    }
+
+    public void putMeta(String key, long sequenceNumber, CacheEntryMeta meta) {
+        mMetaCache.put(key, new MetaEntry(meta, sequenceNumber));
+    }
+
+    public void removeMeta(String key) {
+        mMetaCache.remove(key);
+    }
+
+    /**
+     * 记录一次元数据缓存命中。{@link #peekMeta} 不计数，由调用方在凭缓存的元数据拒绝条目时记录
+     */
+    public void recordMetaCacheHit() {
+        mMetaCacheHitCount.incrementAndGet();
+    }
+
+    /**
+     * 记录因元数据校验不通过而没有读取的 body 字节数，即两阶段读取之前会白白读取的数据量
+     */
+    public void recordSkippedBody(long bytes) {
+        mSkippedBodyBytes.addAndGet(bytes);
+    }
+
+    /**
+     * 记录已从磁盘读取但没有交给 WebView 的 body 字节数
+     */
+    public void recordUnservedBody(long bytes) {
+        mUnservedBodyBytes.addAndGet(bytes);
+    }
+
+    public long getMetaCacheHitCount() {
+        return mMetaCacheHitCount.get();
+    }
+
+    public long getSkippedBodyBytes() {
+        return mSkippedBodyBytes.get();
+    }
+
+    public long getUnservedBodyBytes() {
+        return mUnservedBodyBytes.get();
+    }
+
+    public void release() {
+        synchronized (sCaches) {
+            if (mRefCount <= 0 || --mRefCount > 0) {
+                return;
+            }
+            // 写回会 fsync，不能在调用方（通常是主线程）和 sCaches 锁内执行
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+            scheduleCloseIfIdle();
+        }
+    }
+
+    private void scheduleCloseIfIdle() {
+        synchronized (sCaches) {
+            if (mRefCount > 0 || mPendingClose != null) {
+                return;
+            }
+            mPendingClose = sExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    closeIfIdle();
+                }
+            }, IDLE_CLOSE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 目录对应的磁盘缓存是否已安排空闲关闭
+     */
+    static boolean isCloseScheduled(CacheConfig cacheConfig) {
+        final String cacheDir = new File(cacheConfig.getCacheDir()).getAbsolutePath();
+        synchronized (sCaches) {
+            final SharedDiskCache cache = sCaches.get(cacheDir);
+            return cache != null && cache.mPendingClose != null;
+        }
+    }
+
+    private void cancelPendingClose() {
+        if (mPendingClose != null) {
+            mPendingClose.cancel(false);
+            mPendingClose = null;
+        }
+    }
+
+    private synchronized void flush() {
+        if (mDiskLruCache == null || mDiskLruCache.isClosed()) {
+            return;
+        }
+        try {
+            mDiskLruCache.flush();
+            if (mPackFileStore != null) {
+                mPackFileStore.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        VaryIndex.forCacheDir(mCacheDir).save();
+        PageManifestStore.forCacheDir(mCacheDir).save();
+    }
+
+    private void closeIfIdle() {
+        synchronized (sCaches) {
+            if (mRefCount > 0) {
+                return;
+            }
+            mPendingClose = null;
+            if (sCaches.get(mCacheDir) == this) {
+                sCaches.remove(mCacheDir);
+            }
+            // 在 sCaches 锁内关闭，保证同一目录不会同时存在两个打开的实例
+            synchronized (this) {
+                if (mDiskLruCache != null && !mDiskLruCache.isClosed()) {
+                    try {
+                        mDiskLruCache.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                mDiskLruCache = null;
+                closePackFileStore();
+            }
+            LogUtils.d(String.format("close idle disk cache: %s", mCacheDir));
+        }
+    }
+
+    private static class MetaEntry {
+
+        private final CacheEntryMeta mMeta;
+        private final long mSequenceNumber;
+
+        MetaEntry(CacheEntryMeta meta, long sequenceNumber) {
+            mMeta = meta;
+            mSequenceNumber = sequenceNumber;
+        }
+    }
+}
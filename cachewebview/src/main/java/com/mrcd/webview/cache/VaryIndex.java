@@ -0,0 +1,256 @@
+package com.mrcd.webview.cache;
+
+import android.text.TextUtils;
+
+import androidx.annotation.WorkerThread;
+
+import com.mrcd.webview.utils.HeaderUtils;
+import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.MurmurHash3;
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 记录响应头 Vary 的二级索引：url 生成的 key 对应哪些请求头。
+ * <p>
+ * 响应带有 Vary 时，资源保存在由 key 和这些请求头的值生成的变体 key 下，内存缓存、磁盘缓存以及合并请求都使用变体 key，
+ * 不同语言、不同 User-Agent 的响应不会互相覆盖。查找时只查询内存中的索引，不需要额外读取磁盘。
+ * 索引按缓存目录保存在 {@code <缓存目录>-vary} 文件中，首次使用时读取，磁盘缓存 flush 时写回。
+ * <p>
+ * Accept-Encoding 由 OkHttp 处理，缓存中保存的是解压后的 body，不参与生成变体 key。
+ */
+public class VaryIndex {
+
+    private static final int MAX_ENTRIES = 1024;
+    private static final String INDEX_FILE_SUFFIX = "-vary";
+    private static final String VARY_ANY = "*";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Map<String, VaryIndex> sIndexes = new HashMap<>();
+
+    private final File mFile;
+    /**
+     * key 对应的请求头名称，小写且已排序
+     */
+    private final LinkedHashMap<String, String[]> mVaryNames = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            // 超出上限的 key 回退为不区分变体，对应的变体条目由 LRU 逐渐淘汰
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private boolean mLoaded;
+    private boolean mDirty;
+
+    private VaryIndex(File file) {
+        mFile = file;
+    }
+
+    public static VaryIndex forCacheDir(String cacheDir) {
+        final String path = new File(cacheDir).getAbsolutePath();
+        synchronized (sIndexes) {
+            VaryIndex index = sIndexes.get(path);
+            if (index == null) {
+                index = new VaryIndex(new File(path + INDEX_FILE_SUFFIX));
+                sIndexes.put(path, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 提前读取索引文件，避免首个请求在 WebView 的 IO 线程上读取
+     */
+    @WorkerThread
+    public synchronized void load() {
+        ensureLoaded();
+    }
+
+    /**
+     * 查找请求对应的缓存 key，url 没有记录过 Vary 时返回 {@link CacheRequest#getKey()}
+     */
+    @WorkerThread
+    public String lookupKey(CacheRequest request) {
+        final String[] names;
+        synchronized (this) {
+            ensureLoaded();
+            names = mVaryNames.get(request.getKey());
+        }
+        return names != null ? variantKey(request, names) : request.getKey();
+    }
+
+    /**
+     * 根据响应头记录 Vary 并返回资源应该保存的 key
+     *
+     * @return Vary 为 * 时返回 null，资源不能缓存
+     */
+    @WorkerThread
+    public String storeKey(CacheRequest request, Map<String, String> responseHeaders) {
+        final String[] names = parseVary(responseHeaders);
+        if (names == null) {
+            return null;
+        }
+        synchronized (this) {
+            ensureLoaded();
+            final String[] previous = names.length > 0
+                    ? mVaryNames.put(request.getKey(), names) : mVaryNames.remove(request.getKey());
+            if (!Arrays.equals(previous, names.length > 0 ? names : null)) {
+                mDirty = true;
+            }
+        }
+        return names.length > 0 ? variantKey(request, names) : request.getKey();
+    }
+
+    /**
+     * 响应头 Vary 中的请求头及其在本次请求中的值，用于写入 {@link CacheEntryMeta}
+     */
+    public static Map<String, String> varyValues(CacheRequest request, Map<String, String> responseHeaders) {
+        final String[] names = parseVary(responseHeaders);
+        if (names == null || names.length == 0) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> values = new TreeMap<>();
+        for (String name : names) {
+            values.put(name, requestValue(request, name));
+        }
+        return values;
+    }
+
+    /**
+     * 缓存条目记录的请求头的值是否都与本次请求一致
+     */
+    public static boolean matches(CacheRequest request, Map<String, String> varyValues) {
+        for (Map.Entry<String, String> entry : varyValues.entrySet()) {
+            if (!entry.getValue().equals(requestValue(request, entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String variantKey(CacheRequest request, String[] names) {
+        final StringBuilder builder = new StringBuilder();
+        for (String name : names) {
+            builder.append(name).append(':').append(requestValue(request, name)).append('\n');
+        }
+        final String hash = MurmurHash3.hash128Hex(builder.toString().getBytes(UTF_8));
+        return request.getKey() + "-" + hash.substring(0, 16);
+    }
+
+    /**
+     * 请求实际发出时的请求头，WebView 没有指定时使用 {@link com.mrcd.webview.loader.OkHttpResourceLoader} 的默认值
+     */
+    private static String requestValue(CacheRequest request, String name) {
+        String value = HeaderUtils.getHeader(request.getHeaders(), name);
+        if (value == null && "user-agent".equals(name)) {
+            value = request.getUserAgent();
+        } else if (value == null && "accept-language".equals(name)) {
+            value = HeaderUtils.getDefaultAcceptLanguage();
+        }
+        return value != null ? value.trim() : "";
+    }
+
+    /**
+     * @return 小写且已排序的请求头名称，没有 Vary 时为空数组，Vary 为 * 时为 null
+     */
+    private static String[] parseVary(Map<String, String> responseHeaders) {
+        final String vary = HeaderUtils.getHeader(responseHeaders, "Vary");
+        if (TextUtils.isEmpty(vary)) {
+            return new String[0];
+        }
+        final List<String> names = new ArrayList<>();
+        // 多个 Vary 响应头合并时以空格或逗号分隔
+        for (String name : vary.split("[,\\s]+")) {
+            name = name.trim().toLowerCase(Locale.US);
+            if (VARY_ANY.equals(name)) {
+                return null;
+            }
+            if (!name.isEmpty() && !"accept-encoding".equals(name) && !names.contains(name)) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names.toArray(new String[0]);
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int space = line.indexOf(' ');
+                if (space > 0 && space < line.length() - 1) {
+                    mVaryNames.put(line.substring(0, space), line.substring(space + 1).split(","));
+                }
+            }
+        } catch (IOException e) {
+            LogUtils.e("read vary index failed. cause by: " + e.getMessage());
+        } finally {
+            StreamUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * 有改动时写回索引文件，先写临时文件再替换，写入中断不会破坏已有的索引
+     */
+    @WorkerThread
+    public void save() {
+        final List<String> lines;
+        synchronized (this) {
+            if (!mDirty) {
+                return;
+            }
+            mDirty = false;
+            lines = new ArrayList<>(mVaryNames.size());
+            for (Map.Entry<String, String[]> entry : mVaryNames.entrySet()) {
+                lines.add(entry.getKey() + " " + TextUtils.join(",", entry.getValue()));
+            }
+        }
+        final File tmpFile = new File(mFile.getPath() + ".tmp");
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), UTF_8));
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (!tmpFile.renameTo(mFile)) {
+                throw new IOException("rename " + tmpFile + " failed");
+            }
+        } catch (IOException e) {
+            LogUtils.e("write vary index failed. cause by: " + e.getMessage());
+            synchronized (this) {
+                mDirty = true;
+            }
+        } finally {
+            StreamUtils.closeQuietly(writer);
+        }
+    }
+}
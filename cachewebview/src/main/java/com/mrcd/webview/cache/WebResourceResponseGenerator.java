@@ -7,6 +7,7 @@ import androidx.annotation.WorkerThread;
 
 import com.mrcd.webview.WebResource;
 import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.StreamUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
@@ -48,17 +49,13 @@ public class WebResourceResponseGenerator {
             urlMime = contentType;
         }
         if (TextUtils.isEmpty(urlMime)) {
+            StreamUtils.closeQuietly(resource.getOriginStream());
             return null;
         }
-        final byte[] resourceBytes = resource.getOriginBytes();
-        if (resourceBytes == null) {
-            return null;
-        }
-        if (resourceBytes.length == 0 && resource.getResponseCode() == 304) {
-            LogUtils.d("the response bytes can not be empty if we get 304.");
+        final InputStream bis = openBody(resource);
+        if (bis == null) {
             return null;
         }
-        final InputStream bis = new ByteArrayInputStream(resourceBytes);
         final int status = resource.getResponseCode();
         String reasonPhrase = resource.getReasonPhrase();
         if (TextUtils.isEmpty(reasonPhrase)) {
@@ -67,6 +64,19 @@ public class WebResourceResponseGenerator {
         return new WebResourceResponse(urlMime, charset, status, reasonPhrase, resource.getResponseHeaders(), bis);
     }
 
+    private InputStream openBody(WebResource resource) {
+        final byte[] resourceBytes = resource.getOriginBytes();
+        if (resourceBytes == null) {
+            // 流式资源由 WebView 读取完毕后关闭
+            return resource.getOriginStream();
+        }
+        if (resourceBytes.length == 0 && resource.getResponseCode() == 304) {
+            LogUtils.d("the response bytes can not be empty if we get 304.");
+            return null;
+        }
+        return new ByteArrayInputStream(resourceBytes);
+    }
+
     private String getContentType(Map<String, String> headers, String key) {
         if (headers != null) {
             String value = headers.get(key);
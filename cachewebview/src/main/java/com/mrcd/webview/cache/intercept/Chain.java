@@ -31,6 +31,15 @@ public class Chain {
         return interceptor.load(this);
     }
 
+    /**
+     * 生成一个从当前拦截器重新开始执行的 {@link Chain}，用于在其他线程重新执行当前拦截器及之后的拦截器
+     */
+    public Chain fork() {
+        final Chain chain = new Chain(mInterceptors);
+        chain.mIndex = mIndex - 1;
+        return chain;
+    }
+
     public CacheRequest getRequest() {
         return mRequest;
     }
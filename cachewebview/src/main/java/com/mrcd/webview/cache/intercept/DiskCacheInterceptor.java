@@ -1,29 +1,42 @@
 package com.mrcd.webview.cache.intercept;
 
-import android.text.TextUtils;
-
 import androidx.annotation.WorkerThread;
 
 import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.CacheEntryMeta;
 import com.mrcd.webview.cache.CacheRequest;
+import com.mrcd.webview.cache.DeadlineFetcher;
 import com.mrcd.webview.cache.Destroyable;
+import com.mrcd.webview.cache.RequestCoalescer;
+import com.mrcd.webview.cache.SharedDiskCache;
+import com.mrcd.webview.cache.VaryIndex;
 import com.mrcd.webview.config.CacheConfig;
-import com.mrcd.webview.utils.HeaderUtils;
+import com.mrcd.webview.config.FreshnessPolicy;
+import com.mrcd.webview.utils.ByteBufferInputStream;
+import com.mrcd.webview.utils.Clock;
+import com.mrcd.webview.utils.DeflateUtils;
 import com.mrcd.webview.utils.LogUtils;
 import com.mrcd.webview.utils.StreamUtils;
 import com.mrcd.webview.utils.lru.DiskLruCache;
+import com.mrcd.webview.utils.lru.PackFileStore;
+import com.mrcd.webview.utils.lru.ShardedDiskLruCache;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 
-import okhttp3.Headers;
 import okio.BufferedSink;
-import okio.BufferedSource;
 import okio.Okio;
 
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+
 /**
  * Created by Ryan
  * at 2019/9/27
@@ -32,136 +45,403 @@ public class DiskCacheInterceptor implements Destroyable, CacheInterceptor {
 
     private static final int ENTRY_META = 0;
     private static final int ENTRY_BODY = 1;
-    private static final int ENTRY_COUNT = 2;
-    private DiskLruCache mDiskLruCache;
+    /**
+     * 超过该大小的资源以流的形式返回，不再进入内存缓存
+     */
+    private static final long MAX_BUFFERED_BODY_SIZE = 512 * 1024;
+    /**
+     * 小于该大小的资源压缩收益很小，不压缩
+     */
+    private static final int MIN_COMPRESS_SIZE = 1024;
+    /**
+     * 压缩后至少要节省的比例，否则保存原始数据
+     */
+    private static final float MIN_COMPRESSION_SAVING = 0.1f;
+    private ShardedDiskLruCache mDiskLruCache;
+    private PackFileStore mPackFileStore;
     private final CacheConfig mCacheConfig;
+    private final SharedDiskCache mSharedDiskCache;
+    private final VaryIndex mVaryIndex;
+    private final boolean mRevalidateStale;
+    private final Clock mClock;
+    private boolean mReleased;
 
     public DiskCacheInterceptor(CacheConfig cacheConfig) {
         mCacheConfig = cacheConfig;
+        // 同一缓存目录的所有 WebView 共享同一个 DiskLruCache
+        mSharedDiskCache = SharedDiskCache.acquire(cacheConfig);
+        mVaryIndex = VaryIndex.forCacheDir(cacheConfig.getCacheDir());
+        mRevalidateStale = cacheConfig.getFreshnessPolicy() == FreshnessPolicy.STALE_WHILE_REVALIDATE;
+        mClock = cacheConfig.getClock();
     }
 
     @Override
     @WorkerThread
-    public WebResource load(Chain chain) {
+    public WebResource load(final Chain chain) {
         final CacheRequest request = chain.getRequest();
         ensureDiskLruCacheCreate();
-        // DiskLruCache 内部使用唯一线程驱动，所以线程安全
-        WebResource webResource = getFromDiskCache(request.getKey());
-        if (isRealMimeTypeCacheable(webResource)) {
+        if (request.isRevalidation()) {
+            return revalidate(chain, request);
+        }
+        // 每个分片各自加锁，不同资源的读写可以并行
+        final String key = mVaryIndex.lookupKey(request);
+        WebResource webResource = getFromDiskCache(request, key, false);
+        if (webResource != null) {
             LogUtils.d(String.format("disk cache hit: %s", request.getUrl()));
             return webResource;
         }
+        if (!request.isHoldingStaleCopy() && hasTooStaleCopy(request, key)) {
+            return loadWithStaleFallback(chain, request, key);
+        }
 
         webResource = chain.process(request);
         if (webResource != null && (webResource.isCacheByOurselves() || isRealMimeTypeCacheable(webResource))) {
-            cacheToDisk(request.getKey(), webResource);
+            cacheToDisk(request, webResource);
         }
         return webResource;
     }
 
     private synchronized void ensureDiskLruCacheCreate() {
-        if (mDiskLruCache != null && !mDiskLruCache.isClosed()) {
+        if (mReleased || (mDiskLruCache != null && !mDiskLruCache.isClosed())) {
             return;
         }
-        final String dir = mCacheConfig.getCacheDir();
-        final int version = mCacheConfig.getVersion();
-        final long cacheSize = mCacheConfig.getDiskCacheSize();
-        try {
-            mDiskLruCache = DiskLruCache.open(new File(dir), version, ENTRY_COUNT, cacheSize);
-        } catch (Throwable e) {
-            e.printStackTrace();
+        mDiskLruCache = mSharedDiskCache.getDiskLruCache();
+        mPackFileStore = mSharedDiskCache.getPackFileStore();
+    }
+
+    /**
+     * 磁盘中只有过期太久的缓存：先请求网络，超时或失败时返回过期的缓存
+     */
+    private WebResource loadWithStaleFallback(final Chain chain, final CacheRequest request, String key) {
+        final WebResource webResource = DeadlineFetcher.getInstance().fetch(new RequestCoalescer.Fetcher() {
+            @Override
+            public WebResource fetch() {
+                final WebResource webResource = chain.process(request);
+                if (webResource != null && (webResource.isCacheByOurselves() || isRealMimeTypeCacheable(webResource))) {
+                    cacheToDisk(request, webResource);
+                }
+                return webResource;
+            }
+        }, mCacheConfig.getNetworkDeadline());
+        if (webResource != null) {
+            return webResource;
         }
+        LogUtils.d(String.format("serve stale disk cache: %s", request.getUrl()));
+        return getFromDiskCache(request, key, true);
     }
 
-    private WebResource getFromDiskCache(String key) {
+    private boolean hasTooStaleCopy(CacheRequest request, String key) {
+        if (!mRevalidateStale) {
+            return false;
+        }
+        final CacheEntryMeta meta = readMeta(key);
+        return meta != null && isMetaUsable(request, meta, true) && isTooStale(meta);
+    }
+
+    /**
+     * 先读取并校验元数据，确认可以使用后才读取 body
+     *
+     * @param key        由 {@link VaryIndex} 确定的 key，响应带有 Vary 时为变体 key
+     * @param allowStale 是否返回过期太久的缓存
+     */
+    private WebResource getFromDiskCache(CacheRequest request, String key, boolean allowStale) {
+        if (mDiskLruCache == null || mDiskLruCache.isClosed()) {
+            return null;
+        }
+        CacheEntryMeta meta = mSharedDiskCache.peekMeta(key);
+        if (meta != null && !isMetaUsable(request, meta, allowStale)) {
+            // 元数据已在内存中，无需打开缓存文件
+            mSharedDiskCache.recordMetaCacheHit();
+            return null;
+        }
+        if (mPackFileStore != null) {
+            // 读取时所在分段可能正好被压缩删除，重新查找一次
+            for (int attempt = 0; attempt < 2; attempt++) {
+                PackFileStore.Entry entry = mPackFileStore.get(key);
+                if (entry == null) {
+                    break;
+                }
+                try {
+                    return getFromPackFile(request, key, entry, allowStale);
+                } catch (IOException e) {
+                    mSharedDiskCache.removeMeta(key);
+                }
+            }
+        }
+        DiskLruCache.Snapshot snapshot = null;
+        boolean bodyOpened = false;
         try {
-            if (mDiskLruCache == null || mDiskLruCache.isClosed()) {
+            snapshot = mDiskLruCache.get(key);
+            if (snapshot == null) {
+                mSharedDiskCache.removeMeta(key);
                 return null;
             }
-            final DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key);
-            if (snapshot != null) {
-                final BufferedSource entrySource = Okio.buffer(Okio.source(snapshot.getInputStream(ENTRY_META)));
-                // 1. read status
-                final String responseCode = entrySource.readUtf8LineStrict();
-                final String reasonPhrase = entrySource.readUtf8LineStrict();
-                // 2. read headers
-                long headerSize = entrySource.readDecimalLong();
-                final Headers.Builder responseHeadersBuilder = new Headers.Builder();
-                // read first placeholder line
-                final String placeHolder = entrySource.readUtf8LineStrict();
-                if (!TextUtils.isEmpty(placeHolder.trim())) {
-                    responseHeadersBuilder.add(placeHolder);
-                    headerSize--;
-                }
-                for (int i = 0; i < headerSize; i++) {
-                    String line = entrySource.readUtf8LineStrict();
-                    if (!TextUtils.isEmpty(line)) {
-                        responseHeadersBuilder.add(line);
-                    }
-                }
-                Map<String, String> headers = HeaderUtils.generateHeadersMap(responseHeadersBuilder.build());
-                // 3. read body
-                InputStream inputStream = snapshot.getInputStream(ENTRY_BODY);
-                if (inputStream != null) {
-                    WebResource webResource = new WebResource();
-                    webResource.setReasonPhrase(reasonPhrase);
-                    webResource.setResponseCode(Integer.parseInt(responseCode));
-                    webResource.setOriginBytes(StreamUtils.streamToBytes(inputStream));
-                    webResource.setResponseHeaders(headers);
-                    webResource.setModified(false);
-                    return webResource;
+            // 1. read and validate meta
+            meta = mSharedDiskCache.getMeta(key, snapshot.getSequenceNumber());
+            if (meta == null) {
+                meta = CacheEntryMeta.read(snapshot.getInputStream(ENTRY_META));
+                mSharedDiskCache.putMeta(key, snapshot.getSequenceNumber(), meta);
+            }
+            if (!isMetaUsable(request, meta, allowStale)) {
+                mSharedDiskCache.recordSkippedBody(snapshot.getLength(ENTRY_BODY));
+                return null;
+            }
+            // 2. read body
+            InputStream inputStream = snapshot.getInputStream(ENTRY_BODY);
+            if (inputStream != null) {
+                bodyOpened = true;
+                WebResource webResource = meta.toWebResource();
+                final boolean deflated = meta.isDeflated();
+                final long bodyLength = snapshot.getLength(ENTRY_BODY);
+                // 压缩保存的 body 按解压后的长度判断，旧版本写入的元数据没有记录该长度，以流的形式返回
+                final long decodedLength = deflated
+                        ? (meta.getDecodedLength() >= 0 ? meta.getDecodedLength() : Long.MAX_VALUE) : bodyLength;
+                final long mappedThreshold = mCacheConfig.getMappedBodyThreshold();
+                if (mappedThreshold > 0 && bodyLength > mappedThreshold && bodyLength <= Integer.MAX_VALUE) {
+                    // 映射建立后与文件描述符无关，snapshot 可以立即释放。缓存条目在读取期间被淘汰或覆盖时，
+                    // DiskLruCache 只会删除或替换文件而不会截断，已映射的数据不受影响
+                    MappedByteBuffer buffer = snapshot.getChannel(ENTRY_BODY).map(FileChannel.MapMode.READ_ONLY, 0, bodyLength);
+                    webResource.setOriginStream(decode(new ByteBufferInputStream(buffer), deflated));
+                } else if (decodedLength > MAX_BUFFERED_BODY_SIZE) {
+                    // 大资源不整体读入内存，由 WebView 边读边渲染，读取完毕后释放 snapshot
+                    webResource.setOriginStream(decode(new SnapshotInputStream(snapshot, inputStream), deflated));
+                    snapshot = null;
+                } else {
+                    webResource.setOriginBytes(StreamUtils.streamToBytes(decode(inputStream, deflated)));
                 }
-                snapshot.close();
+                return webResource;
             }
         } catch (Exception e) {
             e.printStackTrace();
+            mSharedDiskCache.removeMeta(key);
+            if (bodyOpened && snapshot != null) {
+                mSharedDiskCache.recordUnservedBody(snapshot.getLength(ENTRY_BODY));
+            }
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
         }
         return null;
     }
 
-    private void cacheToDisk(String key, WebResource webResource) {
-        if (webResource == null || !webResource.isCacheable()) {
+    private WebResource getFromPackFile(CacheRequest request, String key, PackFileStore.Entry entry,
+                                        boolean allowStale) throws IOException {
+        CacheEntryMeta meta = mSharedDiskCache.getMeta(key, entry.getSequenceNumber());
+        if (meta == null) {
+            meta = CacheEntryMeta.read(new ByteArrayInputStream(entry.readMeta()));
+            mSharedDiskCache.putMeta(key, entry.getSequenceNumber(), meta);
+        }
+        if (!isMetaUsable(request, meta, allowStale)) {
+            mSharedDiskCache.recordSkippedBody(entry.getBodyLength());
+            return null;
+        }
+        WebResource webResource = meta.toWebResource();
+        final byte[] body = entry.readBody();
+        webResource.setOriginBytes(meta.isDeflated()
+                ? StreamUtils.streamToBytes(decode(new ByteArrayInputStream(body), true)) : body);
+        return webResource;
+    }
+
+    /**
+     * mime type 可以缓存，Vary 对应的请求头与写入时一致，且没有过期太久
+     *
+     * @param allowStale 为 true 时不检查是否过期太久
+     */
+    private boolean isMetaUsable(CacheRequest request, CacheEntryMeta meta, boolean allowStale) {
+        return isMimeTypeCacheable(meta.getMimeType()) && VaryIndex.matches(request, meta.getVaryHeaders())
+                && (allowStale || !isTooStale(meta));
+    }
+
+    private boolean isTooStale(CacheEntryMeta meta) {
+        return mRevalidateStale && CacheEntryMeta.getStaleTime(meta.getExpires(), mClock.currentTimeMillis())
+                > mCacheConfig.getMaxStaleTime();
+    }
+
+    /**
+     * 后台校验：带上缓存中的 ETag、Last-Modified 请求，304 时只更新元数据并返回缓存的资源，资源有变化时重新缓存
+     */
+    private WebResource revalidate(Chain chain, CacheRequest request) {
+        final String key = mVaryIndex.lookupKey(request);
+        final CacheEntryMeta meta = readMeta(key);
+        if (meta != null) {
+            request.setValidators(meta.getETag(), meta.getLastModified());
+        }
+        final WebResource webResource = chain.process(request);
+        if (webResource == null) {
+            return null;
+        }
+        if (webResource.getResponseCode() != HTTP_NOT_MODIFIED) {
+            if (webResource.isCacheByOurselves() || isRealMimeTypeCacheable(webResource)) {
+                cacheToDisk(request, webResource);
+            }
+            return webResource;
+        }
+        StreamUtils.closeQuietly(webResource.getOriginStream());
+        if (meta == null || !updateMeta(key, meta.withNotModified(webResource.getResponseHeaders(), mClock.currentTimeMillis()))) {
+            return null;
+        }
+        LogUtils.d(String.format("disk cache revalidated: %s", request.getUrl()));
+        return getFromDiskCache(request, key, false);
+    }
+
+    /**
+     * 读取元数据，不读取 body
+     */
+    private CacheEntryMeta readMeta(String key) {
+        if (mDiskLruCache == null || mDiskLruCache.isClosed()) {
+            return null;
+        }
+        final CacheEntryMeta cachedMeta = mSharedDiskCache.peekMeta(key);
+        if (cachedMeta != null) {
+            return cachedMeta;
+        }
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            if (mPackFileStore != null) {
+                final PackFileStore.Entry entry = mPackFileStore.get(key);
+                if (entry != null) {
+                    return CacheEntryMeta.read(new ByteArrayInputStream(entry.readMeta()));
+                }
+            }
+            snapshot = mDiskLruCache.get(key);
+            return snapshot != null ? CacheEntryMeta.read(snapshot.getInputStream(ENTRY_META)) : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    /**
+     * 只替换元数据，body 保持不变
+     *
+     * @return false 表示条目已被淘汰或正在被写入
+     */
+    private boolean updateMeta(String key, CacheEntryMeta meta) {
+        mSharedDiskCache.removeMeta(key);
+        DiskLruCache.Editor editor = null;
+        try {
+            if (mPackFileStore != null) {
+                final PackFileStore.Entry entry = mPackFileStore.get(key);
+                if (entry != null) {
+                    mPackFileStore.put(key, meta.toByteArray(), entry.readBody());
+                    return true;
+                }
+            }
+            editor = mDiskLruCache.edit(key);
+            if (editor == null) {
+                return false;
+            }
+            // 已有条目只写入元数据时，提交后 body 文件保持不变
+            meta.write(editor.newOutputStream(ENTRY_META));
+            editor.commit();
+            return true;
+        } catch (Exception e) {
+            // 条目已被淘汰时提交会失败
+            LogUtils.e("update disk cache meta failed. cause by: " + e.getMessage());
+            return false;
+        } finally {
+            if (editor != null) {
+                editor.abortUnlessCommitted();
+            }
+        }
+    }
+
+    private static InputStream decode(InputStream body, boolean deflated) {
+        return deflated ? DeflateUtils.inflate(body) : body;
+    }
+
+    /**
+     * 开启磁盘压缩且 mime type 可压缩时返回 true
+     */
+    private boolean isCompressible(WebResource webResource) {
+        return mCacheConfig.isDiskCacheCompression()
+                && mCacheConfig.getCompressibleMimeTypes().contains(CacheEntryMeta.parseMimeType(webResource.getResponseHeaders()));
+    }
+
+    /**
+     * @return 压缩后节省足够空间时返回压缩数据，否则返回 null
+     */
+    private byte[] compressBody(WebResource webResource) {
+        final byte[] originBytes = webResource.getOriginBytes();
+        if (originBytes == null || originBytes.length < MIN_COMPRESS_SIZE || !isCompressible(webResource)) {
+            return null;
+        }
+        final byte[] deflated = DeflateUtils.deflate(originBytes);
+        return deflated.length <= originBytes.length * (1 - MIN_COMPRESSION_SAVING) ? deflated : null;
+    }
+
+    private void cacheToDisk(CacheRequest request, WebResource webResource) {
+        // 合并请求分到的结果已由第一个请求写入
+        if (webResource == null || !webResource.isCacheable() || webResource.isShared()) {
             return;
         }
-        if (mDiskLruCache.isClosed()) {
+        if (mDiskLruCache == null || mDiskLruCache.isClosed()) {
             return;
         }
+        final Map<String, String> responseHeaders = webResource.getResponseHeaders();
+        final String key = mVaryIndex.storeKey(request, responseHeaders);
+        if (key == null) {
+            // Vary: * 的响应不能复用
+            return;
+        }
+        final CacheEntryMeta baseMeta = CacheEntryMeta.from(webResource, mClock.currentTimeMillis())
+                .withVaryHeaders(VaryIndex.varyValues(request, responseHeaders));
+        webResource.setExpires(baseMeta.getExpires());
+        mSharedDiskCache.removeMeta(key);
+        if (mPackFileStore != null && cacheToPackFile(key, baseMeta, webResource)) {
+            return;
+        }
+        DiskLruCache.Editor editor = null;
         try {
-            DiskLruCache.Editor editor = mDiskLruCache.edit(key);
+            editor = mDiskLruCache.edit(key);
             if (editor == null) {
                 LogUtils.d("Another edit is in progress!");
                 return;
             }
-            OutputStream metaOutput = editor.newOutputStream(ENTRY_META);
-            BufferedSink sink = Okio.buffer(Okio.sink(metaOutput));
-            // 1. write status
-            sink.writeUtf8(String.valueOf(webResource.getResponseCode())).writeByte('\n');
-            sink.writeUtf8(webResource.getReasonPhrase()).writeByte('\n');
-            // 2. write response header
-            Map<String, String> headers = webResource.getResponseHeaders();
-            sink.writeDecimalLong(headers.size()).writeByte('\n');
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                String headerKey = entry.getKey();
-                String headerValue = entry.getValue();
-                sink.writeUtf8(headerKey)
-                        .writeUtf8(": ")
-                        .writeUtf8(headerValue)
-                        .writeByte('\n');
-            }
-            sink.flush();
-            sink.close();
-            // 3. write response body
-            OutputStream bodyOutput = editor.newOutputStream(ENTRY_BODY);
-            sink = Okio.buffer(Okio.sink(bodyOutput));
+            CacheEntryMeta meta = baseMeta;
             byte[] originBytes = webResource.getOriginBytes();
+            InputStream originStream = webResource.getOriginStream();
+            if (originBytes == null && originStream != null) {
+                // 网络流同时写给 WebView 和磁盘，WebView 完整读取后写入元数据并提交，中途取消则丢弃
+                OutputStream bodyOutput = new BufferedOutputStream(editor.newOutputStream(ENTRY_BODY));
+                if (isCompressible(webResource)) {
+                    meta = meta.withContentCoding(CacheEntryMeta.CODING_DEFLATE);
+                    bodyOutput = DeflateUtils.deflate(bodyOutput);
+                }
+                webResource.setOriginStream(new TeeInputStream(originStream, bodyOutput, new EditorCommitter(key, editor, meta)));
+                return;
+            }
+            final byte[] deflated = compressBody(webResource);
+            if (originBytes != null) {
+                meta = meta.withDecodedLength(originBytes.length);
+            }
+            if (deflated != null) {
+                meta = meta.withContentCoding(CacheEntryMeta.CODING_DEFLATE);
+                originBytes = deflated;
+            }
+            // 1. write meta
+            meta.write(editor.newOutputStream(ENTRY_META));
+            // 2. write response body
+            OutputStream bodyOutput = editor.newOutputStream(ENTRY_BODY);
+            BufferedSink sink = Okio.buffer(Okio.sink(bodyOutput));
             if (originBytes != null && originBytes.length > 0) {
                 sink.write(originBytes);
                 sink.flush();
                 editor.commit();
+                removeFromPackFile(key);
+            } else {
+                editor.abort();
             }
             sink.close();
         } catch (IOException e) {
             LogUtils.e("cache to disk failed. cause by: " + e.getMessage());
+            if (editor != null) {
+                editor.abortUnlessCommitted();
+            }
             try {
                 // clean the redundant data
                 mDiskLruCache.remove(key);
@@ -172,35 +452,238 @@ public class DiskCacheInterceptor implements Destroyable, CacheInterceptor {
         }
     }
 
-    private boolean isRealMimeTypeCacheable(WebResource resource) {
-        if (resource == null) {
+    /**
+     * 小资源写入 pack 文件。边下边存的资源先缓冲在内存，超过阈值后转为写入 DiskLruCache
+     *
+     * @return false 表示资源需要写入 DiskLruCache
+     */
+    private boolean cacheToPackFile(String key, CacheEntryMeta meta, WebResource webResource) {
+        final byte[] originBytes = webResource.getOriginBytes();
+        final InputStream originStream = webResource.getOriginStream();
+        if (originBytes != null && (originBytes.length == 0 || originBytes.length > mCacheConfig.getPackFileThreshold())) {
+            return false;
+        }
+        if (originBytes == null && originStream == null) {
             return false;
         }
-        Map<String, String> headers = resource.getResponseHeaders();
-        String contentType = null;
-        if (headers != null) {
-            String uppercaseKey = "Content-Type";
-            String lowercaseKey = uppercaseKey.toLowerCase();
-            String contentTypeValue = headers.containsKey(uppercaseKey) ? headers.get(uppercaseKey) : headers.get(lowercaseKey);
-            if (!TextUtils.isEmpty(contentTypeValue)) {
-                String[] contentTypeArray = contentTypeValue.split(";");
-                if (contentTypeArray.length >= 1) {
-                    contentType = contentTypeArray[0];
+        try {
+            if (originBytes != null) {
+                final byte[] deflated = compressBody(webResource);
+                meta = meta.withDecodedLength(originBytes.length);
+                if (deflated != null) {
+                    mPackFileStore.put(key, meta.withContentCoding(CacheEntryMeta.CODING_DEFLATE).toByteArray(), deflated);
+                } else {
+                    mPackFileStore.put(key, meta.toByteArray(), originBytes);
                 }
+                removeFromDiskLruCache(key);
+            } else {
+                final boolean compress = isCompressible(webResource);
+                PackFileSink sink = new PackFileSink(key,
+                        compress ? meta.withContentCoding(CacheEntryMeta.CODING_DEFLATE) : meta, compress);
+                webResource.setOriginStream(new TeeInputStream(originStream, sink, sink));
             }
+        } catch (Exception e) {
+            LogUtils.e("cache to pack file failed. cause by: " + e.getMessage());
+            removeFromPackFile(key);
         }
-        return contentType != null && !mCacheConfig.getFilter().shouldRetain(contentType);
+        return true;
     }
 
-    @Override
-    public void destroy() {
-        if (mDiskLruCache != null && !mDiskLruCache.isClosed()) {
+    private void removeFromPackFile(String key) {
+        if (mPackFileStore == null) {
+            return;
+        }
+        try {
+            mPackFileStore.remove(key);
+        } catch (Exception ignore) {
+            // 缓存可能已被关闭
+        }
+    }
+
+    private void removeFromDiskLruCache(String key) {
+        try {
+            mDiskLruCache.remove(key);
+        } catch (Exception ignore) {
+            // 缓存可能已被关闭
+        }
+    }
+
+    private boolean isRealMimeTypeCacheable(WebResource resource) {
+        return resource != null && isMimeTypeCacheable(CacheEntryMeta.parseMimeType(resource.getResponseHeaders()));
+    }
+
+    private boolean isMimeTypeCacheable(String mimeType) {
+        return mimeType != null && !mCacheConfig.getFilter().shouldRetain(mimeType);
+    }
+
+    /**
+     * 持有 snapshot 的 body 流，WebView 读取完毕关闭流时一并释放 snapshot
+     */
+    private static class SnapshotInputStream extends FilterInputStream {
+
+        private final DiskLruCache.Snapshot mSnapshot;
+
+        SnapshotInputStream(DiskLruCache.Snapshot snapshot, InputStream in) {
+            super(in);
+            mSnapshot = snapshot;
+        }
+
+        @Override
+        public void close() {
+            mSnapshot.close();
+        }
+    }
+
+    /**
+     * 边下边存的资源在流读取结束后再提交或丢弃
+     */
+    private class EditorCommitter implements TeeInputStream.Listener {
+
+        private final String mKey;
+        private final DiskLruCache.Editor mEditor;
+        /**
+         * 读取完毕才知道 body 解压后的长度，提交前再写入
+         */
+        private final CacheEntryMeta mMeta;
+
+        EditorCommitter(String key, DiskLruCache.Editor editor, CacheEntryMeta meta) {
+            mKey = key;
+            mEditor = editor;
+            mMeta = meta;
+        }
+
+        @Override
+        public void onComplete(long length) {
+            if (length <= 0) {
+                onAbort();
+                return;
+            }
             try {
-                mDiskLruCache.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                mMeta.withDecodedLength(length).write(mEditor.newOutputStream(ENTRY_META));
+                mEditor.commit();
+                removeFromPackFile(mKey);
+            } catch (Exception e) {
+                LogUtils.e("cache to disk failed. cause by: " + e.getMessage());
+                onAbort();
+                try {
+                    mDiskLruCache.remove(mKey);
+                } catch (Exception ignore) {
+                }
+            }
+        }
+
+        @Override
+        public void onAbort() {
+            try {
+                mEditor.abortUnlessCommitted();
+            } catch (Exception ignore) {
+                // 缓存可能已被关闭
             }
         }
     }
+
+    /**
+     * 边下边存的小资源先缓冲在内存，读取完毕后写入 pack 文件；超过阈值时改为写入 DiskLruCache。
+     * 需要压缩时缓冲的是原始数据，写入 pack 文件或 DiskLruCache 时再压缩
+     */
+    private class PackFileSink extends OutputStream implements TeeInputStream.Listener {
+
+        private final String mKey;
+        private final CacheEntryMeta mMeta;
+        private final boolean mCompress;
+        private ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+        private DiskLruCache.Editor mEditor;
+        private OutputStream mEditorOutput;
+
+        PackFileSink(String key, CacheEntryMeta meta, boolean compress) {
+            mKey = key;
+            mMeta = meta;
+            mCompress = compress;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (mEditorOutput == null && mBuffer.size() + len > mCacheConfig.getPackFileThreshold()) {
+                spill();
+            }
+            if (mEditorOutput != null) {
+                mEditorOutput.write(b, off, len);
+            } else {
+                mBuffer.write(b, off, len);
+            }
+        }
+
+        private void spill() throws IOException {
+            mEditor = mDiskLruCache.edit(mKey);
+            if (mEditor == null) {
+                throw new IOException("Another edit is in progress!");
+            }
+            mEditorOutput = new BufferedOutputStream(mEditor.newOutputStream(ENTRY_BODY));
+            if (mCompress) {
+                mEditorOutput = DeflateUtils.deflate(mEditorOutput);
+            }
+            mBuffer.writeTo(mEditorOutput);
+            mBuffer = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mEditorOutput != null) {
+                mEditorOutput.close();
+            }
+        }
+
+        @Override
+        public void onComplete(long length) {
+            if (length <= 0) {
+                onAbort();
+                return;
+            }
+            try {
+                // 读取完毕才知道 body 解压后的长度，最后写入元数据
+                final CacheEntryMeta meta = mMeta.withDecodedLength(length);
+                if (mEditor != null) {
+                    meta.write(mEditor.newOutputStream(ENTRY_META));
+                    mEditor.commit();
+                    removeFromPackFile(mKey);
+                } else {
+                    final byte[] body = mBuffer.toByteArray();
+                    mPackFileStore.put(mKey, meta.toByteArray(), mCompress ? DeflateUtils.deflate(body) : body);
+                    removeFromDiskLruCache(mKey);
+                }
+            } catch (Exception e) {
+                LogUtils.e("cache to disk failed. cause by: " + e.getMessage());
+                onAbort();
+                removeFromDiskLruCache(mKey);
+                removeFromPackFile(mKey);
+            }
+        }
+
+        @Override
+        public void onAbort() {
+            if (mEditor == null) {
+                return;
+            }
+            try {
+                mEditor.abortUnlessCommitted();
+            } catch (Exception ignore) {
+                // 缓存可能已被关闭
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        mSharedDiskCache.release();
+    }
 }
 
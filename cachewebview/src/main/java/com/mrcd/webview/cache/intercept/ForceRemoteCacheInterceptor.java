@@ -8,11 +8,14 @@ import androidx.annotation.WorkerThread;
 import com.mrcd.webview.WebResource;
 import com.mrcd.webview.cache.CacheRequest;
 import com.mrcd.webview.cache.Destroyable;
+import com.mrcd.webview.cache.RequestCoalescer;
+import com.mrcd.webview.cache.VaryIndex;
 import com.mrcd.webview.config.CacheConfig;
 import com.mrcd.webview.config.MimeTypeFilter;
 import com.mrcd.webview.loader.OkHttpResourceLoader;
 import com.mrcd.webview.loader.ResourceLoader;
 import com.mrcd.webview.loader.SourceRequest;
+import com.mrcd.webview.utils.HeaderUtils;
 
 /**
  * Created by Ryan
@@ -22,10 +25,14 @@ public class ForceRemoteCacheInterceptor implements Destroyable, CacheIntercepto
 
     private final ResourceLoader mResourceLoader;
     private final MimeTypeFilter mMimeTypeFilter;
+    private final String mCacheDir;
+    private final VaryIndex mVaryIndex;
 
     public ForceRemoteCacheInterceptor(Context context, CacheConfig cacheConfig) {
         mResourceLoader = new OkHttpResourceLoader(context);
         mMimeTypeFilter = cacheConfig != null ? cacheConfig.getFilter() : null;
+        mCacheDir = cacheConfig != null ? cacheConfig.getCacheDir() : null;
+        mVaryIndex = cacheConfig != null ? VaryIndex.forCacheDir(cacheConfig.getCacheDir()) : null;
     }
 
     @Override
@@ -35,13 +42,52 @@ public class ForceRemoteCacheInterceptor implements Destroyable, CacheIntercepto
         final String mime = request.getMime();
         final boolean isCacheable = TextUtils.isEmpty(mime) ? shouldCacheHtml() : mMimeTypeFilter.shouldRetain(mime);
         final SourceRequest sourceRequest = new SourceRequest(request, isCacheable);
-        final WebResource resource = mResourceLoader.loadResource(sourceRequest);
+        final WebResource resource;
+        if (hasCredentials(request)) {
+            // 带有身份信息的响应可能因人而异，不能分给其他请求
+            resource = mResourceLoader.loadResource(sourceRequest);
+        } else {
+            // 多个 WebView 同时请求同一资源时只发出一次网络请求。结果只由第一个请求写入缓存，不同缓存目录的请求不合并
+            resource = RequestCoalescer.getInstance().execute(getCoalescingKey(request), new RequestCoalescer.Fetcher() {
+                @Override
+                public WebResource fetch() {
+                    return mResourceLoader.loadResource(sourceRequest);
+                }
+            });
+        }
         if (resource != null) {
             return resource;
         }
         return chain.process(request);
     }
 
+    private static boolean hasCredentials(CacheRequest request) {
+        return HeaderUtils.getHeader(request.getHeaders(), "Cookie") != null
+                || HeaderUtils.getHeader(request.getHeaders(), "Authorization") != null;
+    }
+
+    /**
+     * 已知响应带有 Vary 时只合并同一变体的请求。还不知道时响应可能按 User-Agent、Accept-Language 返回不同的内容，
+     * 这两个请求头不同的请求不合并
+     */
+    private String getCoalescingKey(CacheRequest request) {
+        // 校验请求可能得到 304，不能与普通请求合并
+        final String suffix = request.isRevalidation() ? "-revalidate" : "";
+        if (mVaryIndex != null) {
+            final String variantKey = mVaryIndex.lookupKey(request);
+            if (!variantKey.equals(request.getKey())) {
+                return mCacheDir + "/" + variantKey + suffix;
+            }
+        }
+        String userAgent = HeaderUtils.getHeader(request.getHeaders(), "User-Agent");
+        if (userAgent == null) {
+            userAgent = request.getUserAgent();
+        }
+        return mCacheDir + "/" + request.getKey() + suffix
+                + "\n" + userAgent
+                + "\n" + HeaderUtils.getHeader(request.getHeaders(), "Accept-Language");
+    }
+
     @Override
     public void destroy() {
         if (mMimeTypeFilter != null) {
@@ -1,95 +1,262 @@
 package com.mrcd.webview.cache.intercept;
 
-import android.util.LruCache;
-
 import androidx.annotation.WorkerThread;
 
 import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.CacheEntryMeta;
 import com.mrcd.webview.cache.CacheRequest;
+import com.mrcd.webview.cache.DeadlineFetcher;
 import com.mrcd.webview.cache.Destroyable;
+import com.mrcd.webview.cache.RequestCoalescer;
+import com.mrcd.webview.cache.Revalidator;
+import com.mrcd.webview.cache.VaryIndex;
+import com.mrcd.webview.cache.memory.MemoryCacheStats;
+import com.mrcd.webview.cache.memory.MemoryTrimStats;
+import com.mrcd.webview.cache.memory.MissRatioCurve;
+import com.mrcd.webview.cache.memory.SharedMemoryCache;
 import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.FreshnessPolicy;
+import com.mrcd.webview.utils.Clock;
+import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
 
 /**
- * 内存缓存
+ * 内存缓存，同一缓存目录的 {@link com.mrcd.webview.cache.CacheManager} 共享同一个 {@link SharedMemoryCache}。
+ * <p>
+ * {@link FreshnessPolicy#STALE_WHILE_REVALIDATE} 时，内存或磁盘中过期的缓存先返回，再从这里开始在后台校验，
+ * 校验结果依次更新磁盘缓存和内存缓存。
  */
 public class MemCacheInterceptor implements CacheInterceptor, Destroyable {
 
-    private LruCache<String, WebResource> mLruCache;
-    private static volatile MemCacheInterceptor sInstance;
+    /**
+     * 以流的形式返回的资源读取完毕后放入内存缓存，超过该大小的不放入，与磁盘缓存以流的形式返回的大小一致
+     */
+    private static final int MAX_STREAM_BUFFER_SIZE = 512 * 1024;
+    private volatile SharedMemoryCache mMemoryCache;
+    private final VaryIndex mVaryIndex;
+    private final boolean mRevalidateStale;
+    private final long mMaxStaleTime;
+    private final long mNetworkDeadline;
+    private final Clock mClock;
+
+    public MemCacheInterceptor(CacheConfig cacheConfig) {
+        mMemoryCache = SharedMemoryCache.acquire(cacheConfig);
+        mVaryIndex = VaryIndex.forCacheDir(cacheConfig.getCacheDir());
+        mRevalidateStale = cacheConfig.getFreshnessPolicy() == FreshnessPolicy.STALE_WHILE_REVALIDATE;
+        mMaxStaleTime = cacheConfig.getMaxStaleTime();
+        mNetworkDeadline = cacheConfig.getNetworkDeadline();
+        mClock = cacheConfig.getClock();
+    }
 
-    public static MemCacheInterceptor getInstance(CacheConfig cacheConfig) {
-        if (sInstance == null) {
-            synchronized (MemCacheInterceptor.class) {
-                if (sInstance == null) {
-                    sInstance = new MemCacheInterceptor(cacheConfig);
+    @Override
+    @WorkerThread
+    public WebResource load(final Chain chain) {
+        final CacheRequest request = chain.getRequest();
+        final SharedMemoryCache memoryCache = mMemoryCache;
+        // 执行下层拦截器后 chain 的位置会改变，先保留从这里开始校验的 Chain
+        final Chain revalidationChain = mRevalidateStale && !request.isRevalidation() ? chain.fork() : null;
+        WebResource staleCopy = null;
+        // 校验请求不读取缓存
+        if (memoryCache != null && !request.isRevalidation()) {
+            // SharedMemoryCache 是线程安全的
+            WebResource resource = memoryCache.get(mVaryIndex.lookupKey(request));
+            if (resource != null) {
+                final long staleTime = getStaleTime(resource);
+                if (staleTime <= mMaxStaleTime) {
+                    // 命中缓存，直接返回，过期时在后台校验
+                    revalidateIfStale(revalidationChain, request, staleTime);
+                    return resource;
                 }
+                // 过期太久，先请求网络，超时或失败时再返回
+                staleCopy = resource;
+                request.setHoldingStaleCopy(true);
             }
         }
-        return sInstance;
-    }
 
-    private MemCacheInterceptor(CacheConfig cacheConfig) {
-        int memorySize = cacheConfig.getMemCacheSize();
-        if (memorySize > 0) {
-            mLruCache = new ResourceMemCache(memorySize);
+        if (staleCopy != null) {
+            final WebResource resource = DeadlineFetcher.getInstance().fetch(new RequestCoalescer.Fetcher() {
+                @Override
+                public WebResource fetch() {
+                    final WebResource resource = chain.process(request);
+                    store(memoryCache, request, resource);
+                    return resource;
+                }
+            }, mNetworkDeadline);
+            if (resource == null) {
+                LogUtils.d(String.format("serve stale memory cache: %s", request.getUrl()));
+                return staleCopy;
+            }
+            StreamUtils.closeQuietly(staleCopy.getOriginStream());
+            return resource;
+        }
+
+        final WebResource resource = chain.process(request);
+        if (resource != null && !resource.isModified() && !request.isRevalidation()) {
+            // 下层返回的是磁盘缓存，过期时在后台校验
+            revalidateIfStale(revalidationChain, request, getStaleTime(resource));
         }
+        store(memoryCache, request, resource);
+        return resource;
     }
 
-    @Override
-    @WorkerThread
-    public WebResource load(Chain chain) {
-        final CacheRequest request = chain.getRequest();
-        if (mLruCache != null) {
-            // LruCache 是线程安全的
-            WebResource resource = mLruCache.get(request.getKey());
-            if (checkResourceValid(resource)) {
-                // 命中缓存，直接返回
-                return resource;
+    private void store(SharedMemoryCache memoryCache, CacheRequest request, WebResource resource) {
+        if (resource != null && resource.isShared()) {
+            // 合并请求分到的结果已由第一个请求放入内存缓存
+            return;
+        }
+        if (memoryCache != null && checkResourceValid(resource) && resource.isCacheable()) {
+            // 添加到内存缓存，响应带有 Vary 时保存在变体 key 下
+            final String key = mVaryIndex.storeKey(request, resource.getResponseHeaders());
+            if (key != null) {
+                if (mRevalidateStale && resource.getExpires() < 0) {
+                    resource.setExpires(CacheEntryMeta.computeExpires(resource.getResponseHeaders(), mClock.currentTimeMillis()));
+                }
+                if (resource.getOriginBytes() != null) {
+                    memoryCache.put(key, resource);
+                } else if (resource.isModified()) {
+                    // 网络流边读边写入磁盘，WebView 读取完毕后再放入内存缓存。磁盘缓存以流的形式返回的是大资源，不放入
+                    final MemorySink sink = new MemorySink(key, resource,
+                            request.isRevalidation() ? mVaryIndex.lookupKey(request) : null);
+                    resource.setOriginStream(new TeeInputStream(resource.getOriginStream(), sink, sink));
+                }
             }
+        } else if (memoryCache != null && resource != null && request.isRevalidation()) {
+            // 校验得到的新资源无法放入内存缓存，去掉过期的旧资源
+            memoryCache.remove(mVaryIndex.lookupKey(request));
         }
+    }
 
-        WebResource resource = chain.process(request);
-        if (mLruCache != null && checkResourceValid(resource) && resource.isCacheable()) {
-            // 添加到内存缓存
-            mLruCache.put(request.getKey(), resource);
+    /**
+     * 已经过期多久，未开启校验或未过期时小于等于 0
+     */
+    private long getStaleTime(WebResource resource) {
+        if (!mRevalidateStale) {
+            return 0;
+        }
+        return CacheEntryMeta.getStaleTime(resource.getExpires(), mClock.currentTimeMillis());
+    }
+
+    /**
+     * 过期太久的缓存是网络超时或失败后的兜底，请求仍在进行，不需要校验
+     */
+    private void revalidateIfStale(Chain chain, CacheRequest request, long staleTime) {
+        if (chain != null && staleTime > 0 && staleTime <= mMaxStaleTime) {
+            Revalidator.getInstance().revalidate(mVaryIndex.lookupKey(request), chain, request.newRevalidationRequest());
         }
-        return resource;
     }
 
     private boolean checkResourceValid(WebResource resource) {
         return resource != null
-                && resource.getOriginBytes() != null
-                && resource.getOriginBytes().length >= 0
+                && (resource.getOriginBytes() != null || resource.getOriginStream() != null)
                 && resource.getResponseHeaders() != null
                 && !resource.getResponseHeaders().isEmpty();
     }
 
-    @Override
-    public void destroy() {
-        if (mLruCache != null) {
-            mLruCache.evictAll();
-            mLruCache = null;
-        }
-    }
-
-    private static class ResourceMemCache extends LruCache<String, WebResource> {
+    /**
+     * 缓冲读取的数据，读取完毕后放入内存缓存。资源过大、读取出错或中途取消时丢弃
+     */
+    private class MemorySink extends OutputStream implements TeeInputStream.Listener {
 
+        private final String mKey;
+        private final WebResource mResource;
         /**
-         * @param maxSize for caches that do not override {@link #sizeOf}, this is
-         *                the maximum number of entries in the cache. For all other caches,
-         *                this is the maximum sum of the sizes of the entries in this cache.
+         * 校验请求对应的过期资源，不是校验请求时为 null
          */
-        ResourceMemCache(int maxSize) {
-            super(maxSize);
+        private final String mStaleKey;
+        private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+
+        MemorySink(String key, WebResource resource, String staleKey) {
+            mKey = key;
+            mResource = resource;
+            mStaleKey = staleKey;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (mBuffer.size() + len > MAX_STREAM_BUFFER_SIZE) {
+                throw new IOException("body is too large for memory cache");
+            }
+            mBuffer.write(b, off, len);
+        }
+
+        @Override
+        public void onComplete(long length) {
+            // WebView 可能已经销毁，不再写入已释放的内存缓存
+            final SharedMemoryCache memoryCache = mMemoryCache;
+            if (memoryCache == null) {
+                return;
+            }
+            final WebResource resource = new WebResource();
+            resource.setResponseCode(mResource.getResponseCode());
+            resource.setReasonPhrase(mResource.getReasonPhrase());
+            resource.setResponseHeaders(new HashMap<>(mResource.getResponseHeaders()));
+            resource.setModified(mResource.isModified());
+            resource.setCacheByOurselves(mResource.isCacheByOurselves());
+            resource.setExpires(mResource.getExpires());
+            resource.setOriginBytes(mBuffer.toByteArray());
+            memoryCache.put(mKey, resource);
         }
 
         @Override
-        protected int sizeOf(String key, WebResource value) {
-            int size = 0;
-            if (value != null && value.getOriginBytes() != null) {
-                size = value.getOriginBytes().length;
+        public void onAbort() {
+            final SharedMemoryCache memoryCache = mMemoryCache;
+            if (mStaleKey != null && memoryCache != null) {
+                // 校验得到的新资源无法放入内存缓存，去掉过期的旧资源
+                memoryCache.remove(mStaleKey);
             }
-            return size;
         }
     }
+
+    /**
+     * 只释放当前 CacheManager 的引用，其他 WebView 仍可使用共享的内存缓存
+     */
+    @Override
+    public synchronized void destroy() {
+        if (mMemoryCache != null) {
+            mMemoryCache.release();
+            mMemoryCache = null;
+        }
+    }
+
+    /**
+     * 内存缓存命中、未命中以及被准入策略拒绝的次数，未开启内存缓存时返回 null
+     */
+    public MemoryCacheStats getStats() {
+        final SharedMemoryCache cache = mMemoryCache;
+        return cache != null ? cache.getStats() : null;
+    }
+
+    /**
+     * 因内存压力缩小缓存的次数以及回收的大小，未开启内存缓存或没有内存压力信号来源时返回 null
+     */
+    public MemoryTrimStats getTrimStats() {
+        final SharedMemoryCache cache = mMemoryCache;
+        return cache != null ? cache.getTrimStats() : null;
+    }
+
+    /**
+     * 估算的内存缓存缺失率曲线，可用于调整内存缓存大小的配置，未设置内存缓存大小范围时返回 null
+     */
+    public MissRatioCurve getMissRatioCurve() {
+        final SharedMemoryCache cache = mMemoryCache;
+        return cache != null ? cache.getMissRatioCurve() : null;
+    }
+
+    /**
+     * 已申请的堆外内存，未开启堆外存储时返回 0
+     */
+    public long getOffHeapAllocatedBytes() {
+        final SharedMemoryCache cache = mMemoryCache;
+        return cache != null ? cache.getOffHeapAllocatedBytes() : 0;
+    }
 }
@@ -0,0 +1,150 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 读取网络流的同时把读到的数据写入磁盘缓存。
+ * 只有完整读到流末尾才会通知提交，WebView 中途取消或读取出错时通知丢弃。
+ */
+class TeeInputStream extends FilterInputStream {
+
+    interface Listener {
+
+        void onComplete(long length);
+
+        void onAbort();
+    }
+
+    private final OutputStream mSink;
+    private final Listener mListener;
+    private long mLength;
+    private boolean mSinkFailed;
+    private boolean mFinished;
+
+    TeeInputStream(InputStream in, OutputStream sink, Listener listener) {
+        super(in);
+        mSink = sink;
+        mListener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b;
+        try {
+            b = in.read();
+        } catch (IOException e) {
+            finish(false);
+            throw e;
+        }
+        if (b == -1) {
+            finish(true);
+        } else {
+            tee(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int count;
+        try {
+            count = in.read(b, off, len);
+        } catch (IOException e) {
+            finish(false);
+            throw e;
+        }
+        if (count == -1) {
+            finish(true);
+        } else {
+            tee(b, off, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // 跳过的数据同样需要写入缓存
+        final byte[] buffer = new byte[(int) Math.min(n, 8 * 1024)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish(false);
+        super.close();
+    }
+
+    private void tee(int b) {
+        if (mSinkFailed || mFinished) {
+            return;
+        }
+        try {
+            mSink.write(b);
+            mLength++;
+        } catch (IOException e) {
+            mSinkFailed = true;
+        }
+    }
+
+    private void tee(byte[] b, int off, int len) {
+        if (mSinkFailed || mFinished) {
+            return;
+        }
+        try {
+            mSink.write(b, off, len);
+            mLength += len;
+        } catch (IOException e) {
+            // 写缓存失败不影响 WebView 继续读取
+            mSinkFailed = true;
+        }
+    }
+
+    private void finish(boolean reachEnd) {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        boolean success = reachEnd && !mSinkFailed;
+        if (success) {
+            try {
+                mSink.close();
+            } catch (IOException e) {
+                success = false;
+            }
+        } else {
+            StreamUtils.closeQuietly(mSink);
+        }
+        if (success) {
+            mListener.onComplete(mLength);
+        } else {
+            mListener.onAbort();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.mrcd.webview.cache.key;
+
+/**
+ * 由资源 url 生成缓存 key，内存缓存、磁盘缓存以及合并请求都使用该 key。
+ * 生成的 key 只能包含小写字母、数字、'_' 和 '-'，长度不超过 100，响应带有 Vary 时还要在末尾追加变体后缀
+ */
+public interface CacheKeyStrategy {
+
+    String generateKey(String url);
+}
@@ -0,0 +1,16 @@
+package com.mrcd.webview.cache.key;
+
+import com.mrcd.webview.utils.MD5Utils;
+
+import java.net.URLEncoder;
+
+/**
+ * 默认的 key 生成方式：编码后的完整 url 的 MD5，与旧版本生成的 key 一致，已有的缓存可以继续使用
+ */
+public class Md5CacheKeyStrategy implements CacheKeyStrategy {
+
+    @Override
+    public String generateKey(String url) {
+        return MD5Utils.getMD5(URLEncoder.encode(url), false);
+    }
+}
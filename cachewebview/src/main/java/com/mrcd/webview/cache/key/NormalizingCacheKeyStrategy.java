@@ -0,0 +1,133 @@
+package com.mrcd.webview.cache.key;
+
+import com.mrcd.webview.utils.MurmurHash3;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 先规范化 url 再用 {@link MurmurHash3} 生成 key，同一资源的不同写法得到相同的 key。
+ * <p>
+ * 规范化包括：scheme 和 host 转为小写，去掉 fragment，去掉需要忽略的查询参数，其余参数按名称排序。
+ * 默认只忽略 utm_* 统计参数和 jQuery 等使用的 _ 参数。t、ts 等参数也常被用作正常的内容参数，
+ * 确认页面只用它们避免缓存时，可以加上 {@link #getTimestampParams()} 一起忽略：
+ * <pre>
+ * Set&lt;String&gt; params = new HashSet&lt;&gt;(NormalizingCacheKeyStrategy.getDefaultIgnoredParams());
+ * params.addAll(NormalizingCacheKeyStrategy.getTimestampParams());
+ * new NormalizingCacheKeyStrategy(params);
+ * </pre>
+ */
+public class NormalizingCacheKeyStrategy implements CacheKeyStrategy {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Set<String> DEFAULT_IGNORED_PARAMS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "utm_source", "utm_medium", "utm_campaign", "utm_term", "utm_content", "_")));
+    private static final Set<String> TIMESTAMP_PARAMS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "t", "_t", "ts", "timestamp")));
+
+    private final Set<String> mIgnoredParams;
+
+    public NormalizingCacheKeyStrategy() {
+        this(DEFAULT_IGNORED_PARAMS);
+    }
+
+    /**
+     * @param ignoredParams 生成 key 时忽略的查询参数名称，区分大小写
+     */
+    public NormalizingCacheKeyStrategy(Set<String> ignoredParams) {
+        mIgnoredParams = ignoredParams != null ? new HashSet<>(ignoredParams) : Collections.<String>emptySet();
+    }
+
+    public static Set<String> getDefaultIgnoredParams() {
+        return DEFAULT_IGNORED_PARAMS;
+    }
+
+    /**
+     * 常用作时间戳的参数名称，默认不忽略
+     */
+    public static Set<String> getTimestampParams() {
+        return TIMESTAMP_PARAMS;
+    }
+
+    @Override
+    public String generateKey(String url) {
+        return MurmurHash3.hash128Hex(normalize(url).getBytes(UTF_8));
+    }
+
+    String normalize(String url) {
+        int end = url.indexOf('#');
+        if (end < 0) {
+            end = url.length();
+        }
+        final int queryStart = url.indexOf('?');
+        final int pathEnd = queryStart >= 0 && queryStart < end ? queryStart : end;
+        final StringBuilder builder = new StringBuilder(end);
+        appendSchemeAndAuthority(builder, url, pathEnd);
+        if (pathEnd == end) {
+            return builder.toString();
+        }
+        final List<String> params = new ArrayList<>();
+        int start = pathEnd + 1;
+        while (start < end) {
+            int paramEnd = url.indexOf('&', start);
+            if (paramEnd < 0 || paramEnd > end) {
+                paramEnd = end;
+            }
+            if (paramEnd > start) {
+                final String param = url.substring(start, paramEnd);
+                final int equals = param.indexOf('=');
+                if (!mIgnoredParams.contains(equals >= 0 ? param.substring(0, equals) : param)) {
+                    params.add(param);
+                }
+            }
+            start = paramEnd + 1;
+        }
+        // 稳定排序，同名参数保持原有顺序
+        Collections.sort(params, new Comparator<String>() {
+            @Override
+            public int compare(String left, String right) {
+                return nameOf(left).compareTo(nameOf(right));
+            }
+        });
+        for (int i = 0; i < params.size(); i++) {
+            builder.append(i == 0 ? '?' : '&').append(params.get(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 写入 scheme、authority 和 path，scheme 和 host 转为小写
+     */
+    private static void appendSchemeAndAuthority(StringBuilder builder, String url, int pathEnd) {
+        final int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0 || schemeEnd > pathEnd) {
+            builder.append(url, 0, pathEnd);
+            return;
+        }
+        final int authorityStart = schemeEnd + 3;
+        int authorityEnd = url.indexOf('/', authorityStart);
+        if (authorityEnd < 0 || authorityEnd > pathEnd) {
+            authorityEnd = pathEnd;
+        }
+        // 用户信息区分大小写，只转换 host 部分
+        final int userInfoEnd = url.lastIndexOf('@', authorityEnd - 1);
+        final int hostStart = userInfoEnd >= authorityStart ? userInfoEnd + 1 : authorityStart;
+        // 使用固定的 Locale，土耳其语等环境下 I 不会转为无点的 ı
+        builder.append(url.substring(0, authorityStart).toLowerCase(Locale.US))
+                .append(url, authorityStart, hostStart)
+                .append(url.substring(hostStart, authorityEnd).toLowerCase(Locale.US))
+                .append(url, authorityEnd, pathEnd);
+    }
+
+    private static String nameOf(String param) {
+        final int equals = param.indexOf('=');
+        return equals >= 0 ? param.substring(0, equals) : param;
+    }
+}
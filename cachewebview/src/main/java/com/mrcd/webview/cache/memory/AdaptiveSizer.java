@@ -0,0 +1,189 @@
+package com.mrcd.webview.cache.memory;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 根据访问记录估算缺失率曲线，在上下限之间选择内存缓存的大小。
+ * <p>
+ * 按访问顺序记录最近访问的 key，再次访问时比它更近访问过的 key 的大小之和加上自身大小即栈距离，
+ * 也就是 LRU 缓存至少要多大才能命中这次访问。栈距离超出当前缓存大小的 key 已经被淘汰，相当于一个幽灵列表，
+ * 用来估算扩容能带来多少命中。访问记录只保留栈距离不超过上限的部分，栈距离用树状数组计算。
+ * <p>
+ * 每 {@link #DECISION_INTERVAL} 次访问选择一次大小：取命中率与上限大小相差不超过 {@link #HIT_RATIO_TOLERANCE}
+ * 的最小大小，之后历史数据减半以跟随流量变化。
+ */
+public class AdaptiveSizer {
+
+    private static final int BUCKET_COUNT = 32;
+    private static final int DECISION_INTERVAL = 1024;
+    private static final double HIT_RATIO_TOLERANCE = 0.01;
+    private static final int MAX_TRACKED_KEYS = 8192;
+
+    private final int mMinSize;
+    private final int mMaxSize;
+    private final int mBucketSize;
+    /**
+     * 栈距离的直方图，下标 i 对应 (i, i + 1] * mBucketSize
+     */
+    private final long[] mHistogram = new long[BUCKET_COUNT];
+    /**
+     * 按访问顺序排列，最久未访问的在最前
+     */
+    private final LinkedHashMap<String, Access> mAccesses = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 树状数组，下标为访问序号，值为该次访问的 key 的大小，key 再次访问后原序号的值清零
+     */
+    private final long[] mTree = new long[MAX_TRACKED_KEYS * 2 + 1];
+    private int mNextSlot = 1;
+    private long mTrackedBytes;
+    private long mRequestCount;
+    private int mSinceDecision;
+    private int mTargetSize;
+
+    public AdaptiveSizer(int minSize, int maxSize, int initialSize) {
+        mMinSize = minSize;
+        mMaxSize = maxSize;
+        mBucketSize = Math.max(1, maxSize / BUCKET_COUNT);
+        mTargetSize = Math.min(maxSize, Math.max(minSize, initialSize));
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param weight 资源大小
+     * @return true 表示目标大小发生了变化
+     */
+    public synchronized boolean record(String key, int weight) {
+        if (mNextSlot == mTree.length) {
+            compact();
+        }
+        Access access = mAccesses.get(key);
+        if (access != null) {
+            final long distance = mTrackedBytes - prefixSum(access.slot) + weight;
+            if (distance <= mMaxSize) {
+                mHistogram[(int) Math.min(BUCKET_COUNT - 1, Math.max(0, (distance - 1) / mBucketSize))]++;
+            }
+            untrack(access);
+        } else {
+            access = new Access();
+            mAccesses.put(key, access);
+        }
+        mRequestCount++;
+        access.slot = mNextSlot++;
+        access.weight = weight;
+        add(access.slot, weight);
+        mTrackedBytes += weight;
+        prune();
+        if (++mSinceDecision < DECISION_INTERVAL) {
+            return false;
+        }
+        mSinceDecision = 0;
+        final int targetSize = chooseSize();
+        decay();
+        if (targetSize == mTargetSize) {
+            return false;
+        }
+        mTargetSize = targetSize;
+        return true;
+    }
+
+    /**
+     * 丢弃栈距离已经超过上限的访问记录，它们再次访问时无论多大的缓存都不会命中
+     */
+    private void prune() {
+        final Iterator<Access> iterator = mAccesses.values().iterator();
+        while (iterator.hasNext()) {
+            final Access eldest = iterator.next();
+            if (mTrackedBytes - eldest.weight <= mMaxSize && mAccesses.size() <= MAX_TRACKED_KEYS) {
+                break;
+            }
+            untrack(eldest);
+            iterator.remove();
+        }
+    }
+
+    private void untrack(Access access) {
+        add(access.slot, -access.weight);
+        mTrackedBytes -= access.weight;
+    }
+
+    /**
+     * 访问序号用完时按访问顺序重新编号
+     */
+    private void compact() {
+        Arrays.fill(mTree, 0);
+        mNextSlot = 1;
+        for (Access access : mAccesses.values()) {
+            access.slot = mNextSlot++;
+            add(access.slot, access.weight);
+        }
+    }
+
+    private void add(int slot, long delta) {
+        for (int i = slot; i < mTree.length; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    /**
+     * 序号不超过 slot 的访问的大小之和
+     */
+    private long prefixSum(int slot) {
+        long sum = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            sum += mTree[i];
+        }
+        return sum;
+    }
+
+    private int chooseSize() {
+        final long hitsAtMax = hitsAt(BUCKET_COUNT);
+        for (int buckets = 1; buckets <= BUCKET_COUNT; buckets++) {
+            final int size = buckets * mBucketSize;
+            if (size < mMinSize) {
+                continue;
+            }
+            if (hitsAtMax - hitsAt(buckets) <= HIT_RATIO_TOLERANCE * mRequestCount) {
+                return Math.min(mMaxSize, size);
+            }
+        }
+        return mMaxSize;
+    }
+
+    private long hitsAt(int buckets) {
+        long hits = 0;
+        for (int i = 0; i < buckets; i++) {
+            hits += mHistogram[i];
+        }
+        return hits;
+    }
+
+    private void decay() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mHistogram[i] >>= 1;
+        }
+        mRequestCount >>= 1;
+    }
+
+    public synchronized int getTargetSize() {
+        return mTargetSize;
+    }
+
+    public synchronized MissRatioCurve getMissRatioCurve() {
+        final int[] sizes = new int[BUCKET_COUNT];
+        final double[] missRatios = new double[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            sizes[i] = i == BUCKET_COUNT - 1 ? mMaxSize : (i + 1) * mBucketSize;
+            missRatios[i] = mRequestCount == 0 ? 1 : 1 - (double) hitsAt(i + 1) / mRequestCount;
+        }
+        return new MissRatioCurve(sizes, missRatios, mRequestCount);
+    }
+
+    private static class Access {
+
+        int slot;
+        int weight;
+    }
+}
@@ -0,0 +1,58 @@
+package com.mrcd.webview.cache.memory;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 通过 {@link ComponentCallbacks2} 接收系统的内存压力信号，onLowMemory 视为 {@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE}。
+ * 有监听者时才向系统注册回调
+ */
+public class ComponentCallbacksSignalSource implements MemorySignalSource {
+
+    private final Context mContext;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final ComponentCallbacks2 mCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            dispatch(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            dispatch(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+    };
+
+    public ComponentCallbacksSignalSource(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    private void dispatch(int level) {
+        for (Listener listener : mListeners) {
+            listener.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public synchronized void register(Listener listener) {
+        if (mListeners.isEmpty()) {
+            mContext.registerComponentCallbacks(mCallbacks);
+        }
+        mListeners.add(listener);
+    }
+
+    @Override
+    public synchronized void unregister(Listener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty()) {
+            mContext.unregisterComponentCallbacks(mCallbacks);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.mrcd.webview.cache.memory;
+
+import android.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 {@link LruCache} 的内存缓存
+ */
+public class LruMemoryCache<V> implements MemoryCache<V> {
+
+    private final LruCache<String, V> mLruCache;
+    private final Weigher<V> mWeigher;
+    private final RemovalListener<V> mRemovalListener;
+    private final AtomicLong mRejectionCount = new AtomicLong();
+
+    public LruMemoryCache(int maxSize, Weigher<V> weigher) {
+        this(maxSize, weigher, null);
+    }
+
+    public LruMemoryCache(int maxSize, Weigher<V> weigher, RemovalListener<V> removalListener) {
+        mWeigher = weigher;
+        mRemovalListener = removalListener;
+        mLruCache = new LruCache<String, V>(maxSize) {
+            @Override
+            protected int sizeOf(String key, V value) {
+                return mWeigher.weigh(key, value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, V oldValue, V newValue) {
+                if (mRemovalListener != null && oldValue != newValue) {
+                    mRemovalListener.onRemoved(key, oldValue);
+                }
+            }
+        };
+    }
+
+    @Override
+    public V get(String key) {
+        return mLruCache.get(key);
+    }
+
+    @Override
+    public boolean put(String key, V value) {
+        // LruCache 会立即淘汰超过上限的值，直接拒绝
+        if (mWeigher.weigh(key, value) > mLruCache.maxSize()) {
+            mRejectionCount.incrementAndGet();
+            remove(key);
+            if (mRemovalListener != null) {
+                mRemovalListener.onRemoved(key, value);
+            }
+            return false;
+        }
+        mLruCache.put(key, value);
+        return true;
+    }
+
+    @Override
+    public V remove(String key) {
+        return mLruCache.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        mLruCache.evictAll();
+    }
+
+    @Override
+    public int size() {
+        return mLruCache.size();
+    }
+
+    @Override
+    public int maxSize() {
+        return mLruCache.maxSize();
+    }
+
+    @Override
+    public void resize(int maxSize) {
+        mLruCache.resize(maxSize);
+    }
+
+    @Override
+    public MemoryCacheStats getStats() {
+        return new MemoryCacheStats(mLruCache.hitCount(), mLruCache.missCount(), mLruCache.putCount(),
+                mLruCache.evictionCount(), mRejectionCount.get());
+    }
+}
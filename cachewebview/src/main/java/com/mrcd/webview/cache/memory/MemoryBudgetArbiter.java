@@ -0,0 +1,75 @@
+package com.mrcd.webview.cache.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在所有 {@link SharedMemoryCache} 之间分配全局的内存预算。
+ * <p>
+ * 各缓存期望的大小之和不超过预算时按期望大小分配，否则按期望大小等比例缩小。
+ * 未设置预算时以最大的期望大小为预算，即多份配置共用的内存不超过只有一份配置时的大小。
+ */
+public class MemoryBudgetArbiter {
+
+    private final List<SharedMemoryCache> mCaches = new ArrayList<>();
+    private int mBudget;
+
+    private MemoryBudgetArbiter() {
+    }
+
+    private static class SingletonHolder {
+        private static final MemoryBudgetArbiter INSTANCE = new MemoryBudgetArbiter();
+    }
+
+    public static MemoryBudgetArbiter getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * 设置所有内存缓存共用的预算，小于等于 0 时以最大的期望大小为预算
+     */
+    public void setBudget(int budget) {
+        synchronized (this) {
+            mBudget = budget;
+        }
+        rebalance();
+    }
+
+    public synchronized int getBudget() {
+        return mBudget > 0 ? mBudget : maxDesiredSize();
+    }
+
+    void register(SharedMemoryCache cache) {
+        synchronized (this) {
+            mCaches.add(cache);
+        }
+        rebalance();
+    }
+
+    void unregister(SharedMemoryCache cache) {
+        synchronized (this) {
+            mCaches.remove(cache);
+        }
+        rebalance();
+    }
+
+    synchronized void rebalance() {
+        final long budget = getBudget();
+        long totalDesired = 0;
+        for (SharedMemoryCache cache : mCaches) {
+            totalDesired += cache.getDesiredSize();
+        }
+        for (SharedMemoryCache cache : mCaches) {
+            final int desired = cache.getDesiredSize();
+            cache.setGrantedSize(totalDesired <= budget ? desired : (int) (desired * budget / totalDesired));
+        }
+    }
+
+    private int maxDesiredSize() {
+        int max = 0;
+        for (SharedMemoryCache cache : mCaches) {
+            max = Math.max(max, cache.getDesiredSize());
+        }
+        return max;
+    }
+}
@@ -0,0 +1,53 @@
+package com.mrcd.webview.cache.memory;
+
+/**
+ * 内存缓存，实现需要保证线程安全
+ */
+public interface MemoryCache<V> {
+
+    /**
+     * 计算缓存值占用的大小
+     */
+    interface Weigher<V> {
+
+        int weigh(String key, V value);
+    }
+
+    /**
+     * 缓存不再持有某个值时回调，包括被淘汰、被移除、被同一 key 的新值替换以及未通过准入策略。
+     * 回调可能在持有缓存锁时发生，不能再访问缓存
+     */
+    interface RemovalListener<V> {
+
+        void onRemoved(String key, V value);
+    }
+
+    V get(String key);
+
+    /**
+     * 写入后值由缓存持有，即使没有被缓存也会通过 {@link RemovalListener} 通知
+     *
+     * @return false 表示资源没有被缓存，例如未通过准入策略
+     */
+    boolean put(String key, V value);
+
+    V remove(String key);
+
+    void clear();
+
+    /**
+     * 当前缓存值的大小之和
+     */
+    int size();
+
+    int maxSize();
+
+    /**
+     * 修改大小上限，缩小时立即淘汰超出的资源
+     *
+     * @param maxSize 必须大于 0
+     */
+    void resize(int maxSize);
+
+    MemoryCacheStats getStats();
+}
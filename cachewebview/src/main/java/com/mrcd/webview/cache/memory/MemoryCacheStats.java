@@ -0,0 +1,57 @@
+package com.mrcd.webview.cache.memory;
+
+import java.util.Locale;
+
+/**
+ * 内存缓存的统计数据快照
+ */
+public class MemoryCacheStats {
+
+    private final long mHitCount;
+    private final long mMissCount;
+    private final long mPutCount;
+    private final long mEvictionCount;
+    private final long mRejectionCount;
+
+    public MemoryCacheStats(long hitCount, long missCount, long putCount, long evictionCount, long rejectionCount) {
+        mHitCount = hitCount;
+        mMissCount = missCount;
+        mPutCount = putCount;
+        mEvictionCount = evictionCount;
+        mRejectionCount = rejectionCount;
+    }
+
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    public long getPutCount() {
+        return mPutCount;
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * 未通过准入策略而没有被缓存的次数
+     */
+    public long getRejectionCount() {
+        return mRejectionCount;
+    }
+
+    public double getHitRate() {
+        long requestCount = mHitCount + mMissCount;
+        return requestCount == 0 ? 1.0 : (double) mHitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "MemoryCacheStats[hits=%d, misses=%d, hitRate=%.2f, puts=%d, evictions=%d, rejections=%d]",
+                mHitCount, mMissCount, getHitRate(), mPutCount, mEvictionCount, mRejectionCount);
+    }
+}
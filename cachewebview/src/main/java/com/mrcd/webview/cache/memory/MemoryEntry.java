@@ -0,0 +1,113 @@
+package com.mrcd.webview.cache.memory;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.utils.ByteBufferInputStream;
+import com.mrcd.webview.utils.DeflateUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 内存缓存中的资源：响应状态、响应头以及 body，body 保存在堆内数组或 {@link SlabAllocator} 分配的堆外内存中，
+ * 可以是压缩后的数据。每次命中都生成新的 {@link WebResource}，多个请求不会共享同一个对象。
+ */
+public class MemoryEntry {
+
+    /**
+     * 压缩后至少要节省的比例，否则保存原始数据
+     */
+    private static final float MIN_COMPRESSION_SAVING = 0.1f;
+
+    private final int mResponseCode;
+    private final String mReasonPhrase;
+    private final Map<String, String> mHeaders;
+    private final boolean mModified;
+    private final boolean mCacheByOurselves;
+    private final byte[] mBytes;
+    private final SlabAllocator.Block mBlock;
+    /**
+     * body 是否为 {@link DeflateUtils#deflate(byte[])} 压缩后的数据
+     */
+    private final boolean mCompressed;
+    private final long mExpires;
+
+    private MemoryEntry(WebResource resource, byte[] bytes, SlabAllocator.Block block, boolean compressed) {
+        mResponseCode = resource.getResponseCode();
+        mReasonPhrase = resource.getReasonPhrase();
+        mHeaders = Collections.unmodifiableMap(new HashMap<>(resource.getResponseHeaders()));
+        mModified = resource.isModified();
+        mCacheByOurselves = resource.isCacheByOurselves();
+        mBytes = bytes;
+        mBlock = block;
+        mCompressed = compressed;
+        mExpires = resource.getExpires();
+    }
+
+    /**
+     * @param allocator 不为 null 时 body 复制到堆外内存，entry 不再被缓存持有时需要调用 {@link #release()}；
+     *                  为 null 时 body 保存在 Java 堆中，未压缩时与 resource 共用同一个数组
+     * @param compress  是否压缩 body，压缩效果不明显时仍保存原始数据
+     */
+    public static MemoryEntry create(WebResource resource, SlabAllocator allocator, boolean compress) {
+        byte[] body = resource.getOriginBytes();
+        boolean compressed = false;
+        if (compress) {
+            final byte[] deflated = DeflateUtils.deflate(body);
+            if (deflated.length <= body.length * (1 - MIN_COMPRESSION_SAVING)) {
+                body = deflated;
+                compressed = true;
+            }
+        }
+        if (allocator != null) {
+            return new MemoryEntry(resource, null, allocator.allocate(body), compressed);
+        }
+        return new MemoryEntry(resource, body, null, compressed);
+    }
+
+    /**
+     * 生成新的 {@link WebResource}。堆外的 body 以只读流的形式返回，流关闭前对应的内存不会被复用；
+     * 压缩的 body 以边读边解压的流返回
+     *
+     * @return null 表示堆外内存已经释放，按未命中处理
+     */
+    public WebResource toWebResource() {
+        final WebResource resource = new WebResource();
+        if (mBlock != null) {
+            if (!mBlock.retain()) {
+                return null;
+            }
+            final InputStream body = new ByteBufferInputStream(mBlock.asReadOnlyBuffer(), mBlock);
+            resource.setOriginStream(mCompressed ? DeflateUtils.inflate(body) : body);
+        } else if (mCompressed) {
+            resource.setOriginStream(DeflateUtils.inflate(new ByteArrayInputStream(mBytes)));
+        } else {
+            resource.setOriginBytes(mBytes);
+        }
+        resource.setResponseCode(mResponseCode);
+        resource.setReasonPhrase(mReasonPhrase);
+        resource.setResponseHeaders(new HashMap<>(mHeaders));
+        resource.setModified(mModified);
+        resource.setCacheByOurselves(mCacheByOurselves);
+        resource.setExpires(mExpires);
+        return resource;
+    }
+
+    /**
+     * body 实际占用的内存，压缩时为压缩后的大小，堆外存储时为块大小
+     */
+    public int getSize() {
+        return mBlock != null ? mBlock.getCapacity() : mBytes.length;
+    }
+
+    /**
+     * 缓存不再持有该资源，释放堆外内存
+     */
+    public void release() {
+        if (mBlock != null) {
+            mBlock.release();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.mrcd.webview.cache.memory;
+
+/**
+ * 系统内存压力信号的来源，默认由 {@link ComponentCallbacksSignalSource} 转发系统回调，
+ * 也可以替换为其他实现来模拟内存压力
+ */
+public interface MemorySignalSource {
+
+    interface Listener {
+
+        /**
+         * @param level {@link android.content.ComponentCallbacks2} 中的 TRIM_MEMORY_* 常量
+         */
+        void onTrimMemory(int level);
+    }
+
+    void register(Listener listener);
+
+    void unregister(Listener listener);
+}
@@ -0,0 +1,55 @@
+package com.mrcd.webview.cache.memory;
+
+import java.util.Locale;
+
+/**
+ * 内存缓存因内存压力缩小的统计数据快照
+ */
+public class MemoryTrimStats {
+
+    private final int mTrimCount;
+    private final long mReclaimedBytes;
+    private final int mLastTrimLevel;
+    private final int mCurrentMaxSize;
+    private final int mBaseMaxSize;
+
+    public MemoryTrimStats(int trimCount, long reclaimedBytes, int lastTrimLevel, int currentMaxSize, int baseMaxSize) {
+        mTrimCount = trimCount;
+        mReclaimedBytes = reclaimedBytes;
+        mLastTrimLevel = lastTrimLevel;
+        mCurrentMaxSize = currentMaxSize;
+        mBaseMaxSize = baseMaxSize;
+    }
+
+    public int getTrimCount() {
+        return mTrimCount;
+    }
+
+    /**
+     * 缩小缓存时淘汰的资源大小之和
+     */
+    public long getReclaimedBytes() {
+        return mReclaimedBytes;
+    }
+
+    /**
+     * 最近一次缩小缓存时的压力等级，没有缩小过时为 -1
+     */
+    public int getLastTrimLevel() {
+        return mLastTrimLevel;
+    }
+
+    public int getCurrentMaxSize() {
+        return mCurrentMaxSize;
+    }
+
+    public int getBaseMaxSize() {
+        return mBaseMaxSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "MemoryTrimStats[trims=%d, reclaimed=%d, lastLevel=%d, maxSize=%d/%d]",
+                mTrimCount, mReclaimedBytes, mLastTrimLevel, mCurrentMaxSize, mBaseMaxSize);
+    }
+}
@@ -0,0 +1,104 @@
+package com.mrcd.webview.cache.memory;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+
+/**
+ * 根据内存压力缩小内存缓存，压力缓解后逐步恢复。
+ * <p>
+ * 缓存上限按压力等级缩小到原始大小的一定比例，例如 {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} 时缩小到 50%，
+ * {@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE} 时清空。系统没有压力缓解的回调，
+ * 因此连续 {@link #RESTORE_INTERVAL_MS} 没有收到信号即认为压力缓解，每次恢复原始大小的 25%。
+ */
+public class MemoryTrimmer implements MemorySignalSource.Listener {
+
+    private static final long RESTORE_INTERVAL_MS = 30 * 1000;
+    private static final float RESTORE_STEP = 0.25f;
+
+    private final MemoryCache<?> mCache;
+    private int mBaseMaxSize;
+    private long mLastSignalTime;
+    private int mTrimCount;
+    private long mReclaimedBytes;
+    private int mLastTrimLevel = -1;
+
+    public MemoryTrimmer(MemoryCache<?> cache) {
+        mCache = cache;
+        mBaseMaxSize = cache.maxSize();
+    }
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        mLastSignalTime = SystemClock.elapsedRealtime();
+        final float fraction = retainedFraction(level);
+        final int targetSize = (int) (mBaseMaxSize * fraction);
+        if (targetSize >= mCache.maxSize() && fraction > 0) {
+            return;
+        }
+        final int sizeBefore = mCache.size();
+        if (fraction == 0) {
+            mCache.clear();
+        }
+        // 缓存上限必须大于 0
+        mCache.resize(Math.max(1, targetSize));
+        mTrimCount++;
+        mReclaimedBytes += Math.max(0, sizeBefore - mCache.size());
+        mLastTrimLevel = level;
+    }
+
+    /**
+     * 各压力等级下保留原始大小的比例
+     */
+    static float retainedFraction(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            return 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // 界面不可见，缓存暂时用不到
+            return 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1;
+    }
+
+    /**
+     * 距离上次信号足够久时恢复一部分大小，在访问缓存时调用，开销很小
+     */
+    public void restoreIfIdle() {
+        if (mCache.maxSize() >= mBaseMaxSize) {
+            return;
+        }
+        synchronized (this) {
+            final long now = SystemClock.elapsedRealtime();
+            if (now - mLastSignalTime < RESTORE_INTERVAL_MS) {
+                return;
+            }
+            mLastSignalTime = now;
+            final int step = Math.max(1, (int) (mBaseMaxSize * RESTORE_STEP));
+            mCache.resize(Math.min(mBaseMaxSize, mCache.maxSize() + step));
+        }
+    }
+
+    /**
+     * 修改未受内存压力时的大小，缓存已被缩小时只会进一步缩小，压力缓解后恢复到新的大小
+     */
+    public synchronized void setBaseMaxSize(int baseMaxSize) {
+        final int maxSize = mCache.maxSize();
+        if (maxSize >= mBaseMaxSize || baseMaxSize < maxSize) {
+            mCache.resize(baseMaxSize);
+        }
+        mBaseMaxSize = baseMaxSize;
+    }
+
+    public synchronized MemoryTrimStats getStats() {
+        return new MemoryTrimStats(mTrimCount, mReclaimedBytes, mLastTrimLevel, mCache.maxSize(), mBaseMaxSize);
+    }
+}
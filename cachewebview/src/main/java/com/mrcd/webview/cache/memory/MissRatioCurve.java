@@ -0,0 +1,63 @@
+package com.mrcd.webview.cache.memory;
+
+import java.util.Locale;
+
+/**
+ * 估算的缺失率曲线：内存缓存取不同大小时的缺失率
+ */
+public class MissRatioCurve {
+
+    private final int[] mSizes;
+    private final double[] mMissRatios;
+    private final long mRequestCount;
+
+    MissRatioCurve(int[] sizes, double[] missRatios, long requestCount) {
+        mSizes = sizes;
+        mMissRatios = missRatios;
+        mRequestCount = requestCount;
+    }
+
+    /**
+     * 采样的缓存大小，从小到大排列
+     */
+    public int[] getSizes() {
+        return mSizes.clone();
+    }
+
+    /**
+     * 与 {@link #getSizes()} 一一对应的缺失率
+     */
+    public double[] getMissRatios() {
+        return mMissRatios.clone();
+    }
+
+    /**
+     * 估算所依据的请求数，已按时间衰减
+     */
+    public long getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * 不超过 size 的最大采样点的缺失率，size 小于所有采样点时为 1
+     */
+    public double getMissRatio(int size) {
+        double missRatio = 1;
+        for (int i = 0; i < mSizes.length && mSizes[i] <= size; i++) {
+            missRatio = mMissRatios[i];
+        }
+        return missRatio;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("MissRatioCurve[");
+        for (int i = 0; i < mSizes.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(String.format(Locale.US, "%dKB=%.3f", mSizes[i] / 1024, mMissRatios[i]));
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,252 @@
+package com.mrcd.webview.cache.memory;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.CacheEntryMeta;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.MemoryCachePolicy;
+import com.mrcd.webview.utils.LogUtils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内按缓存目录共享的内存缓存。
+ * <p>
+ * 使用同一缓存目录的 {@link com.mrcd.webview.cache.CacheManager} 通过引用计数共享同一实例，不同目录的配置互不影响。
+ * 引用归零后延迟释放，WebView 复用池回收再创建时热点数据仍然可用。所有实例的大小之和由 {@link MemoryBudgetArbiter} 限制。
+ */
+public class SharedMemoryCache {
+
+    private static final long IDLE_RELEASE_DELAY_SECONDS = 30;
+    private static final Map<String, SharedMemoryCache> sCaches = new HashMap<>();
+    private static final ScheduledThreadPoolExecutor sExecutor = new ScheduledThreadPoolExecutor(1);
+
+    static {
+        sExecutor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final String mCacheDir;
+    private final MemoryCache<MemoryEntry> mMemoryCache;
+    /**
+     * 开启堆外存储时用于分配 body 的内存，否则为 null
+     */
+    private final SlabAllocator mSlabAllocator;
+    /**
+     * 不小于该大小的文本资源压缩后保存，为 0 时不压缩
+     */
+    private final int mCompressionThreshold;
+    private final Set<String> mCompressibleMimeTypes;
+    private final MemorySignalSource mMemorySignalSource;
+    private final MemoryTrimmer mMemoryTrimmer;
+    /**
+     * 设置了内存缓存大小范围时根据访问记录调整大小，否则为 null
+     */
+    private final AdaptiveSizer mAdaptiveSizer;
+    /**
+     * 不受全局预算限制时期望的大小
+     */
+    private volatile int mDesiredSize;
+    private int mRefCount;
+    private ScheduledFuture<?> mPendingRelease;
+
+    private SharedMemoryCache(String cacheDir, CacheConfig cacheConfig, int memorySize) {
+        mCacheDir = cacheDir;
+        final int maxMemorySize = cacheConfig.getMaxMemCacheSize();
+        if (maxMemorySize > 0) {
+            final int minMemorySize = Math.max(1, cacheConfig.getMinMemCacheSize());
+            mAdaptiveSizer = new AdaptiveSizer(minMemorySize, maxMemorySize, memorySize);
+            memorySize = mAdaptiveSizer.getTargetSize();
+        } else {
+            mAdaptiveSizer = null;
+        }
+        mDesiredSize = memorySize;
+        mMemoryCache = createMemoryCache(cacheConfig.getMemoryCachePolicy(), memorySize);
+        mSlabAllocator = cacheConfig.isMemoryCacheOffHeap() ? new SlabAllocator() : null;
+        mCompressionThreshold = cacheConfig.getMemoryCompressionThreshold();
+        mCompressibleMimeTypes = cacheConfig.getCompressibleMimeTypes();
+        mMemorySignalSource = cacheConfig.getMemorySignalSource();
+        if (mMemorySignalSource != null) {
+            mMemoryTrimmer = new MemoryTrimmer(mMemoryCache);
+            mMemorySignalSource.register(mMemoryTrimmer);
+        } else {
+            mMemoryTrimmer = null;
+        }
+    }
+
+    /**
+     * 获取缓存目录对应的内存缓存，未开启内存缓存时返回 null
+     */
+    public static SharedMemoryCache acquire(CacheConfig cacheConfig) {
+        final int memorySize = cacheConfig.getMemCacheSize();
+        if (memorySize <= 0 && cacheConfig.getMaxMemCacheSize() <= 0) {
+            return null;
+        }
+        final String cacheDir = new File(cacheConfig.getCacheDir()).getAbsolutePath();
+        final SharedMemoryCache cache;
+        synchronized (sCaches) {
+            SharedMemoryCache existing = sCaches.get(cacheDir);
+            if (existing == null) {
+                existing = new SharedMemoryCache(cacheDir, cacheConfig, memorySize);
+                sCaches.put(cacheDir, existing);
+                MemoryBudgetArbiter.getInstance().register(existing);
+            } else if (existing.mAdaptiveSizer == null && existing.mDesiredSize != memorySize) {
+                LogUtils.e(String.format("memory cache %s is already created with size %d, ignore size %d.",
+                        cacheDir, existing.mDesiredSize, memorySize));
+            }
+            existing.mRefCount++;
+            existing.cancelPendingRelease();
+            cache = existing;
+        }
+        return cache;
+    }
+
+    private static MemoryCache<MemoryEntry> createMemoryCache(MemoryCachePolicy policy, int memorySize) {
+        final MemoryCache.Weigher<MemoryEntry> weigher = new MemoryCache.Weigher<MemoryEntry>() {
+            @Override
+            public int weigh(String key, MemoryEntry value) {
+                return value != null ? value.getSize() : 0;
+            }
+        };
+        final MemoryCache.RemovalListener<MemoryEntry> removalListener = new MemoryCache.RemovalListener<MemoryEntry>() {
+            @Override
+            public void onRemoved(String key, MemoryEntry value) {
+                // 正在读取的流各自持有引用，这里只释放缓存持有的引用
+                value.release();
+            }
+        };
+        if (policy == MemoryCachePolicy.TINY_LFU) {
+            return new TinyLfuMemoryCache<>(memorySize, weigher, removalListener);
+        }
+        return new LruMemoryCache<>(memorySize, weigher, removalListener);
+    }
+
+    /**
+     * @return 命中时返回新的 {@link WebResource}，否则返回 null
+     */
+    public WebResource get(String key) {
+        if (mMemoryTrimmer != null) {
+            mMemoryTrimmer.restoreIfIdle();
+        }
+        final MemoryEntry entry = mMemoryCache.get(key);
+        final WebResource resource = entry != null ? entry.toWebResource() : null;
+        if (resource != null) {
+            recordAccess(key, entry.getSize());
+        }
+        return resource;
+    }
+
+    public void put(String key, WebResource resource) {
+        final MemoryEntry entry = MemoryEntry.create(resource, mSlabAllocator, shouldCompress(resource));
+        final int size = entry.getSize();
+        mMemoryCache.put(key, entry);
+        recordAccess(key, size);
+    }
+
+    public void remove(String key) {
+        mMemoryCache.remove(key);
+    }
+
+    private boolean shouldCompress(WebResource resource) {
+        return mCompressionThreshold > 0
+                && resource.getOriginBytes().length >= mCompressionThreshold
+                && mCompressibleMimeTypes.contains(CacheEntryMeta.parseMimeType(resource.getResponseHeaders()));
+    }
+
+    private void recordAccess(String key, int size) {
+        if (mAdaptiveSizer != null && mAdaptiveSizer.record(key, size)) {
+            mDesiredSize = mAdaptiveSizer.getTargetSize();
+            MemoryBudgetArbiter.getInstance().rebalance();
+        }
+    }
+
+    int getDesiredSize() {
+        return mDesiredSize;
+    }
+
+    /**
+     * 由 {@link MemoryBudgetArbiter} 分配的大小
+     */
+    void setGrantedSize(int size) {
+        final int maxSize = Math.max(1, size);
+        if (mMemoryTrimmer != null) {
+            // 受内存压力缩小时保持缩小后的大小
+            mMemoryTrimmer.setBaseMaxSize(maxSize);
+        } else {
+            mMemoryCache.resize(maxSize);
+        }
+    }
+
+    public void release() {
+        synchronized (sCaches) {
+            if (mRefCount <= 0 || --mRefCount > 0) {
+                return;
+            }
+            mPendingRelease = sExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    releaseIfIdle();
+                }
+            }, IDLE_RELEASE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void cancelPendingRelease() {
+        if (mPendingRelease != null) {
+            mPendingRelease.cancel(false);
+            mPendingRelease = null;
+        }
+    }
+
+    private void releaseIfIdle() {
+        synchronized (sCaches) {
+            if (mRefCount > 0) {
+                return;
+            }
+            sCaches.remove(mCacheDir);
+            mPendingRelease = null;
+        }
+        MemoryBudgetArbiter.getInstance().unregister(this);
+        if (mMemorySignalSource != null) {
+            mMemorySignalSource.unregister(mMemoryTrimmer);
+        }
+        mMemoryCache.clear();
+    }
+
+    /**
+     * 内存缓存命中、未命中以及被准入策略拒绝的次数
+     */
+    public MemoryCacheStats getStats() {
+        return mMemoryCache.getStats();
+    }
+
+    /**
+     * 因内存压力缩小缓存的次数以及回收的大小，没有内存压力信号来源时返回 null
+     */
+    public MemoryTrimStats getTrimStats() {
+        return mMemoryTrimmer != null ? mMemoryTrimmer.getStats() : null;
+    }
+
+    /**
+     * 估算的内存缓存缺失率曲线，未设置内存缓存大小范围时返回 null
+     */
+    public MissRatioCurve getMissRatioCurve() {
+        return mAdaptiveSizer != null ? mAdaptiveSizer.getMissRatioCurve() : null;
+    }
+
+    /**
+     * 已申请的堆外内存，未开启堆外存储时返回 0
+     */
+    public long getOffHeapAllocatedBytes() {
+        return mSlabAllocator != null ? mSlabAllocator.getAllocatedBytes() : 0;
+    }
+
+    public int maxSize() {
+        return mMemoryCache.maxSize();
+    }
+}
@@ -0,0 +1,240 @@
+package com.mrcd.webview.cache.memory;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在堆外内存中分配资源 body 的 slab 分配器，避免长期存活又频繁替换的大数组增加 GC 压力。
+ * <p>
+ * 堆外内存按 slab 申请，每个 slab 只切分成同一种大小的块。块大小从 512 字节开始按 1.25 倍递增，
+ * 数据放入能容纳它的最小块中。超过最大块的数据单独申请一块刚好大小的堆外内存。
+ * slab 至少 64KB 且至少包含 8 个块。块释放的顺序由缓存淘汰决定，同一种块大小可能同时有多个 slab 未用满，
+ * 分配时优先使用空闲块最少的 slab，让较空的 slab 尽快全部释放。
+ * slab 中的块全部释放后整个 slab 归还，由 GC 回收对应的堆外内存。
+ */
+public class SlabAllocator {
+
+    private static final int MIN_SLAB_SIZE = 64 * 1024;
+    private static final int MIN_BLOCKS_PER_SLAB = 8;
+    private static final int MIN_BLOCK_SIZE = 512;
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+    private static final float GROWTH_FACTOR = 1.25f;
+    private static final int ALIGNMENT = 64;
+
+    private final SizeClass[] mSizeClasses;
+    private long mAllocatedBytes;
+    private long mUsedBytes;
+
+    public SlabAllocator() {
+        final List<SizeClass> sizeClasses = new ArrayList<>();
+        int blockSize = MIN_BLOCK_SIZE;
+        while (blockSize < MAX_BLOCK_SIZE) {
+            sizeClasses.add(new SizeClass(blockSize));
+            blockSize = align((int) (blockSize * GROWTH_FACTOR));
+        }
+        sizeClasses.add(new SizeClass(MAX_BLOCK_SIZE));
+        mSizeClasses = sizeClasses.toArray(new SizeClass[0]);
+    }
+
+    /**
+     * 复制 data 到堆外内存
+     *
+     * @return 引用计数为 1 的块，调用方负责 {@link Block#release()}
+     */
+    public Block allocate(byte[] data) {
+        final Block block = allocate(data.length);
+        final ByteBuffer buffer = block.mBuffer.duplicate();
+        buffer.position(block.mOffset);
+        buffer.put(data);
+        return block;
+    }
+
+    private synchronized Block allocate(int length) {
+        final SizeClass sizeClass = sizeClassFor(length);
+        if (sizeClass == null) {
+            final Block block = new Block(this, null, ByteBuffer.allocateDirect(length), 0, length, length);
+            mAllocatedBytes += length;
+            mUsedBytes += length;
+            return block;
+        }
+        // 优先用满空闲块最少的 slab，较空的 slab 不再分配新块，其中的块被淘汰后整个归还
+        Slab slab = null;
+        for (Slab candidate : sizeClass.slabs) {
+            if (candidate.freeCount > 0 && (slab == null || candidate.freeCount < slab.freeCount)) {
+                slab = candidate;
+            }
+        }
+        if (slab == null) {
+            slab = new Slab(sizeClass, ByteBuffer.allocateDirect(sizeClass.slabSize));
+            sizeClass.slabs.add(slab);
+            mAllocatedBytes += sizeClass.slabSize;
+        }
+        final int offset = slab.freeOffsets[--slab.freeCount];
+        mUsedBytes += sizeClass.blockSize;
+        return new Block(this, slab, slab.buffer, offset, length, sizeClass.blockSize);
+    }
+
+    private synchronized void free(Block block) {
+        mUsedBytes -= block.mCapacity;
+        final Slab slab = block.mSlab;
+        if (slab == null) {
+            mAllocatedBytes -= block.mCapacity;
+            return;
+        }
+        slab.freeOffsets[slab.freeCount++] = block.mOffset;
+        if (slab.freeCount == slab.freeOffsets.length) {
+            slab.sizeClass.slabs.remove(slab);
+            mAllocatedBytes -= slab.sizeClass.slabSize;
+        }
+    }
+
+    /**
+     * 能容纳 length 字节的最小块大小，超过最大块时为 length 本身
+     */
+    public int blockSizeFor(int length) {
+        final SizeClass sizeClass = sizeClassFor(length);
+        return sizeClass != null ? sizeClass.blockSize : length;
+    }
+
+    private SizeClass sizeClassFor(int length) {
+        int low = 0;
+        int high = mSizeClasses.length - 1;
+        if (length > mSizeClasses[high].blockSize) {
+            return null;
+        }
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mSizeClasses[mid].blockSize < length) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return mSizeClasses[low];
+    }
+
+    /**
+     * 已申请的堆外内存，包括 slab 中尚未分配的块
+     */
+    public synchronized long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * 已分配出去的块大小之和
+     */
+    public synchronized long getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    private static class SizeClass {
+
+        final int blockSize;
+        final int slabSize;
+        final List<Slab> slabs = new ArrayList<>();
+
+        SizeClass(int blockSize) {
+            this.blockSize = blockSize;
+            slabSize = blockSize * Math.max(MIN_BLOCKS_PER_SLAB, MIN_SLAB_SIZE / blockSize);
+        }
+    }
+
+    private static class Slab {
+
+        final SizeClass sizeClass;
+        final ByteBuffer buffer;
+        final int[] freeOffsets;
+        int freeCount;
+
+        Slab(SizeClass sizeClass, ByteBuffer buffer) {
+            this.sizeClass = sizeClass;
+            this.buffer = buffer;
+            freeCount = sizeClass.slabSize / sizeClass.blockSize;
+            freeOffsets = new int[freeCount];
+            for (int i = 0; i < freeCount; i++) {
+                // 倒序放入，优先分配 slab 开头的块
+                freeOffsets[i] = (freeCount - 1 - i) * sizeClass.blockSize;
+            }
+        }
+    }
+
+    /**
+     * 分配出的一块堆外内存，引用计数归零后归还给分配器。
+     * 缓存持有一个引用，每个正在读取的流各持有一个引用，缓存淘汰后正在读取的数据不会被覆盖。
+     */
+    public static class Block implements Closeable {
+
+        private final SlabAllocator mAllocator;
+        private final Slab mSlab;
+        private final ByteBuffer mBuffer;
+        private final int mOffset;
+        private final int mLength;
+        private final int mCapacity;
+        private final AtomicInteger mRefCount = new AtomicInteger(1);
+
+        private Block(SlabAllocator allocator, Slab slab, ByteBuffer buffer, int offset, int length, int capacity) {
+            mAllocator = allocator;
+            mSlab = slab;
+            mBuffer = buffer;
+            mOffset = offset;
+            mLength = length;
+            mCapacity = capacity;
+        }
+
+        /**
+         * 增加一个引用
+         *
+         * @return false 表示块已经归还，不能再读取
+         */
+        public boolean retain() {
+            while (true) {
+                final int count = mRefCount.get();
+                if (count <= 0) {
+                    return false;
+                }
+                if (mRefCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void release() {
+            if (mRefCount.decrementAndGet() == 0) {
+                mAllocator.free(this);
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+
+        /**
+         * 只读的数据视图，position 为 0，limit 为数据长度
+         */
+        public ByteBuffer asReadOnlyBuffer() {
+            final ByteBuffer buffer = mBuffer.asReadOnlyBuffer();
+            buffer.limit(mOffset + mLength);
+            buffer.position(mOffset);
+            return buffer.slice();
+        }
+
+        public int getLength() {
+            return mLength;
+        }
+
+        /**
+         * 实际占用的堆外内存
+         */
+        public int getCapacity() {
+            return mCapacity;
+        }
+    }
+}
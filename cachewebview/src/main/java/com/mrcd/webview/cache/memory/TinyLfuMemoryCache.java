@@ -0,0 +1,305 @@
+package com.mrcd.webview.cache.memory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * W-TinyLFU 内存缓存。
+ * <p>
+ * 新写入的资源先进入占总大小 1% 的 LRU 窗口；被挤出窗口的资源作为候选者，与主缓存试用区中最久未使用的资源比较
+ * {@link FrequencySketch} 估算的访问频率，频率更高才能进入主缓存，否则直接丢弃。主缓存是分段 LRU：
+ * 新进入的资源在试用区，再次命中后晋升到占主缓存 80% 的保护区，保护区溢出时降级回试用区。
+ */
+public class TinyLfuMemoryCache<V> implements MemoryCache<V> {
+
+    private static final float WINDOW_PERCENT = 0.01f;
+    private static final float PROTECTED_PERCENT = 0.8f;
+    /**
+     * 用于估算条目数的平均资源大小
+     */
+    private static final int AVERAGE_ENTRY_SIZE = 8 * 1024;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Weigher<V> mWeigher;
+    private final RemovalListener<V> mRemovalListener;
+    private final Map<String, Node<V>> mNodes = new HashMap<>();
+    private final FrequencySketch mSketch;
+    private final NodeList<V> mWindow = new NodeList<>();
+    private final NodeList<V> mProbation = new NodeList<>();
+    private final NodeList<V> mProtected = new NodeList<>();
+    private int mMaxSize;
+    private int mWindowMaxSize;
+    private int mProtectedMaxSize;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mPutCount;
+    private long mEvictionCount;
+    private long mRejectionCount;
+
+    public TinyLfuMemoryCache(int maxSize, Weigher<V> weigher) {
+        this(maxSize, weigher, null);
+    }
+
+    public TinyLfuMemoryCache(int maxSize, Weigher<V> weigher, RemovalListener<V> removalListener) {
+        mWeigher = weigher;
+        mRemovalListener = removalListener;
+        mSketch = new FrequencySketch(maxSize / AVERAGE_ENTRY_SIZE);
+        setMaxSize(maxSize);
+    }
+
+    private void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        mWindowMaxSize = Math.max(1, (int) (maxSize * WINDOW_PERCENT));
+        mProtectedMaxSize = (int) ((maxSize - mWindowMaxSize) * PROTECTED_PERCENT);
+    }
+
+    @Override
+    public synchronized V get(String key) {
+        mSketch.increment(key);
+        final Node<V> node = mNodes.get(key);
+        if (node == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        onAccess(node);
+        return node.value;
+    }
+
+    @Override
+    public synchronized boolean put(String key, V value) {
+        final int weight = mWeigher.weigh(key, value);
+        if (weight > mMaxSize) {
+            mRejectionCount++;
+            remove(key);
+            notifyRemoved(key, value);
+            return false;
+        }
+        mPutCount++;
+        Node<V> node = mNodes.get(key);
+        if (node != null) {
+            final V oldValue = node.value;
+            listOf(node).setWeight(node, weight);
+            node.value = value;
+            if (oldValue != value) {
+                notifyRemoved(key, oldValue);
+            }
+            onAccess(node);
+        } else {
+            node = new Node<>(key, value, weight);
+            mNodes.put(key, node);
+            mWindow.addLast(node, WINDOW);
+        }
+        evict();
+        return mNodes.containsKey(key);
+    }
+
+    @Override
+    public synchronized V remove(String key) {
+        final Node<V> node = mNodes.remove(key);
+        if (node == null) {
+            return null;
+        }
+        listOf(node).remove(node);
+        notifyRemoved(key, node.value);
+        return node.value;
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (mRemovalListener != null) {
+            for (Node<V> node : mNodes.values()) {
+                mRemovalListener.onRemoved(node.key, node.value);
+            }
+        }
+        mNodes.clear();
+        mWindow.clear();
+        mProbation.clear();
+        mProtected.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return mWindow.weight + mProbation.weight + mProtected.weight;
+    }
+
+    @Override
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public synchronized void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        setMaxSize(maxSize);
+        evict();
+    }
+
+    @Override
+    public synchronized MemoryCacheStats getStats() {
+        return new MemoryCacheStats(mHitCount, mMissCount, mPutCount, mEvictionCount, mRejectionCount);
+    }
+
+    private void onAccess(Node<V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                mWindow.moveToLast(node);
+                break;
+            case PROBATION:
+                // 试用区的资源再次命中，晋升到保护区
+                mProbation.remove(node);
+                mProtected.addLast(node, PROTECTED);
+                while (mProtected.weight > mProtectedMaxSize && mProtected.head != node) {
+                    final Node<V> demoted = mProtected.head;
+                    mProtected.remove(demoted);
+                    mProbation.addLast(demoted, PROBATION);
+                }
+                break;
+            default:
+                mProtected.moveToLast(node);
+                break;
+        }
+    }
+
+    /**
+     * 把溢出窗口的资源逐个交给准入策略，直到总大小不超过上限
+     */
+    private void evict() {
+        while (mWindow.weight > mWindowMaxSize && mWindow.head != null) {
+            final Node<V> candidate = mWindow.head;
+            mWindow.remove(candidate);
+            admit(candidate);
+        }
+        // 窗口未溢出但总大小超限，例如更新了已有资源的大小
+        while (size() > mMaxSize) {
+            final Node<V> victim = mProbation.head != null ? mProbation.head
+                    : mProtected.head != null ? mProtected.head : mWindow.head;
+            evictNode(victim);
+        }
+    }
+
+    private void admit(Node<V> candidate) {
+        final int mainMaxSize = mMaxSize - mWindowMaxSize;
+        final int candidateFrequency = mSketch.frequency(candidate.key);
+        while (mProbation.weight + mProtected.weight + candidate.weight > mainMaxSize) {
+            final Node<V> victim = mProbation.head != null ? mProbation.head : mProtected.head;
+            if (victim == null) {
+                break;
+            }
+            if (candidateFrequency > mSketch.frequency(victim.key)) {
+                evictNode(victim);
+            } else {
+                // 候选者不如主缓存中的资源热门，不予缓存
+                mNodes.remove(candidate.key);
+                mRejectionCount++;
+                notifyRemoved(candidate.key, candidate.value);
+                return;
+            }
+        }
+        mProbation.addLast(candidate, PROBATION);
+    }
+
+    private void evictNode(Node<V> node) {
+        mNodes.remove(node.key);
+        listOf(node).remove(node);
+        mEvictionCount++;
+        notifyRemoved(node.key, node.value);
+    }
+
+    private void notifyRemoved(String key, V value) {
+        if (mRemovalListener != null) {
+            mRemovalListener.onRemoved(key, value);
+        }
+    }
+
+    private NodeList<V> listOf(Node<V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                return mWindow;
+            case PROBATION:
+                return mProbation;
+            default:
+                return mProtected;
+        }
+    }
+
+    private static class Node<V> {
+
+        final String key;
+        V value;
+        int weight;
+        int queue;
+        Node<V> prev;
+        Node<V> next;
+
+        Node(String key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，头部最久未使用
+     */
+    private static class NodeList<V> {
+
+        Node<V> head;
+        Node<V> tail;
+        int weight;
+
+        void addLast(Node<V> node, int queue) {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node<V> node) {
+            if (tail == node) {
+                return;
+            }
+            remove(node);
+            addLast(node, node.queue);
+        }
+
+        void setWeight(Node<V> node, int weight) {
+            this.weight += weight - node.weight;
+            node.weight = weight;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+}
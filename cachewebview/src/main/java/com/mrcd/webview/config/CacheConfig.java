@@ -2,10 +2,18 @@ package com.mrcd.webview.config;
 
 import android.content.Context;
 
+import com.mrcd.webview.cache.key.CacheKeyStrategy;
+import com.mrcd.webview.cache.key.Md5CacheKeyStrategy;
+import com.mrcd.webview.cache.memory.ComponentCallbacksSignalSource;
+import com.mrcd.webview.cache.memory.MemorySignalSource;
 import com.mrcd.webview.utils.AppVersionUtil;
+import com.mrcd.webview.utils.Clock;
 import com.mrcd.webview.utils.MemorySizeCalculator;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Created by Ryan
@@ -18,6 +26,24 @@ public class CacheConfig {
     private long mDiskCacheSize;
     private int mMemCacheSize;
     private MimeTypeFilter mFilter;
+    private JournalDurability mJournalDurability;
+    private int mDiskCacheShardCount;
+    private int mPackFileThreshold;
+    private long mMappedBodyThreshold;
+    private MemoryCachePolicy mMemoryCachePolicy;
+    private boolean mMemoryCacheOffHeap;
+    private MemorySignalSource mMemorySignalSource;
+    private int mMinMemCacheSize;
+    private int mMaxMemCacheSize;
+    private int mMemoryCompressionThreshold;
+    private Set<String> mCompressibleMimeTypes;
+    private boolean mDiskCacheCompression;
+    private CacheKeyStrategy mCacheKeyStrategy;
+    private FreshnessPolicy mFreshnessPolicy;
+    private long mMaxStaleTime;
+    private Clock mClock;
+    private long mNetworkDeadline;
+    private int mMaxPageManifestResources;
 
     private CacheConfig() {
 
@@ -47,20 +73,127 @@ public class CacheConfig {
         return mMemCacheSize;
     }
 
+    public JournalDurability getJournalDurability() {
+        return mJournalDurability;
+    }
+
+    public int getDiskCacheShardCount() {
+        return mDiskCacheShardCount;
+    }
+
+    public int getPackFileThreshold() {
+        return mPackFileThreshold;
+    }
+
+    public long getMappedBodyThreshold() {
+        return mMappedBodyThreshold;
+    }
+
+    public MemoryCachePolicy getMemoryCachePolicy() {
+        return mMemoryCachePolicy;
+    }
+
+    public boolean isMemoryCacheOffHeap() {
+        return mMemoryCacheOffHeap;
+    }
+
+    public MemorySignalSource getMemorySignalSource() {
+        return mMemorySignalSource;
+    }
+
+    public int getMinMemCacheSize() {
+        return mMinMemCacheSize;
+    }
+
+    /**
+     * 为 0 时不自动调整内存缓存大小
+     */
+    public int getMaxMemCacheSize() {
+        return mMaxMemCacheSize;
+    }
+
+    /**
+     * 为 0 时内存缓存不压缩
+     */
+    public int getMemoryCompressionThreshold() {
+        return mMemoryCompressionThreshold;
+    }
+
+    public Set<String> getCompressibleMimeTypes() {
+        return mCompressibleMimeTypes;
+    }
+
+    public boolean isDiskCacheCompression() {
+        return mDiskCacheCompression;
+    }
+
+    public CacheKeyStrategy getCacheKeyStrategy() {
+        return mCacheKeyStrategy;
+    }
+
+    public FreshnessPolicy getFreshnessPolicy() {
+        return mFreshnessPolicy;
+    }
+
+    /**
+     * {@link FreshnessPolicy#STALE_WHILE_REVALIDATE} 时过期多久以内的缓存仍然可以先返回，单位毫秒
+     */
+    public long getMaxStaleTime() {
+        return mMaxStaleTime;
+    }
+
+    public Clock getClock() {
+        return mClock;
+    }
+
+    /**
+     * 持有过期太久的缓存时等待网络的最长时间，单位毫秒，为 0 时不限制
+     */
+    public long getNetworkDeadline() {
+        return mNetworkDeadline;
+    }
+
+    /**
+     * 每个页面最多记录的子资源数，为 0 时不记录
+     */
+    public int getMaxPageManifestResources() {
+        return mMaxPageManifestResources;
+    }
+
     public static class Builder {
 
         private static final String CACHE_DIR_NAME = "cached_webview_force";
         private static final int DEFAULT_DISK_CACHE_SIZE = 100 * 1024 * 1024;
+        public static final int MAX_PAGE_MANIFEST_RESOURCES = 500;
         private String cacheDir;
         private int version;
         private long diskCacheSize = DEFAULT_DISK_CACHE_SIZE;
         private int memoryCacheSize = MemorySizeCalculator.getSize();
         private MimeTypeFilter filter = new DefaultMimeTypeFilter();
+        private JournalDurability journalDurability = JournalDurability.PER_OP;
+        private int diskCacheShardCount = 1;
+        private int packFileThreshold;
+        private long mappedBodyThreshold;
+        private MemoryCachePolicy memoryCachePolicy = MemoryCachePolicy.LRU;
+        private boolean memoryCacheOffHeap;
+        private MemorySignalSource memorySignalSource;
+        private int minMemoryCacheSize;
+        private int maxMemoryCacheSize;
+        private int memoryCompressionThreshold;
+        private Set<String> compressibleMimeTypes = defaultCompressibleMimeTypes();
+        private boolean diskCacheCompression;
+        private CacheKeyStrategy cacheKeyStrategy;
+        private FreshnessPolicy freshnessPolicy = FreshnessPolicy.IGNORE;
+        private long maxStaleTime = Long.MAX_VALUE;
+        private Clock clock = Clock.SYSTEM;
+        private long networkDeadline;
+        private int maxPageManifestResources;
 
         public Builder(Context context) {
             // TODO: 2023/1/9 需要查看 Android 10 的存储沙盒
             cacheDir = context.getCacheDir() + File.separator + CACHE_DIR_NAME;
             version = AppVersionUtil.getVersionCode(context);
+            memorySignalSource = new ComponentCallbacksSignalSource(context);
         }
 
         public Builder setCacheDir(String cacheDir) {
@@ -88,6 +221,169 @@ public class CacheConfig {
             return this;
         }
 
+        /**
+         * 磁盘缓存 journal 的写入策略，默认 {@link JournalDurability#PER_OP}
+         */
+        public Builder setJournalDurability(JournalDurability journalDurability) {
+            this.journalDurability = journalDurability;
+            return this;
+        }
+
+        /**
+         * 磁盘缓存分片数，每个分片独立加锁、平分缓存大小，默认 1 即不分片。
+         * 修改分片数后原有的磁盘缓存会被清空
+         */
+        public Builder setDiskCacheShardCount(int diskCacheShardCount) {
+            this.diskCacheShardCount = diskCacheShardCount;
+            return this;
+        }
+
+        /**
+         * 不超过该大小的资源合并写入 pack 文件，减少小文件数量，默认 0 即不开启。
+         * 开启后 pack 文件与普通磁盘缓存各占一半磁盘缓存大小
+         */
+        public Builder setPackFileThreshold(int packFileThreshold) {
+            this.packFileThreshold = packFileThreshold;
+            return this;
+        }
+
+        /**
+         * 超过该大小的磁盘缓存通过内存映射读取，body 不进入 Java 堆，默认 0 即不开启
+         */
+        public Builder setMappedBodyThreshold(long mappedBodyThreshold) {
+            this.mappedBodyThreshold = mappedBodyThreshold;
+            return this;
+        }
+
+        /**
+         * 内存缓存的淘汰策略，默认 {@link MemoryCachePolicy#LRU}
+         */
+        public Builder setMemoryCachePolicy(MemoryCachePolicy memoryCachePolicy) {
+            this.memoryCachePolicy = memoryCachePolicy;
+            return this;
+        }
+
+        /**
+         * 内存缓存的 body 是否保存在堆外内存中，减少大数组带来的 GC 压力，默认 false。
+         * 开启后命中内存缓存返回的是只读流，内存占用按实际分配的块大小计算
+         */
+        public Builder setMemoryCacheOffHeap(boolean memoryCacheOffHeap) {
+            this.memoryCacheOffHeap = memoryCacheOffHeap;
+            return this;
+        }
+
+        /**
+         * 内存压力信号的来源，收到信号时按压力等级缩小内存缓存，默认监听系统的 onTrimMemory 和 onLowMemory。
+         * 设置为 null 时内存缓存大小不受内存压力影响
+         */
+        public Builder setMemorySignalSource(MemorySignalSource memorySignalSource) {
+            this.memorySignalSource = memorySignalSource;
+            return this;
+        }
+
+        /**
+         * 设置后内存缓存大小根据实际访问记录在 [minSize, maxSize] 范围内自动调整，
+         * 初始大小为 {@link #setMemoryCacheSize(int)} 限制在该范围内的值。默认不自动调整
+         */
+        public Builder setMemoryCacheSizeRange(int minSize, int maxSize) {
+            this.minMemoryCacheSize = minSize;
+            this.maxMemoryCacheSize = maxSize;
+            return this;
+        }
+
+        /**
+         * 不小于该大小的文本资源在内存缓存中压缩保存，占用按压缩后的大小计算，命中时边读边解压。默认为 0，即不压缩
+         */
+        public Builder setMemoryCompressionThreshold(int memoryCompressionThreshold) {
+            this.memoryCompressionThreshold = memoryCompressionThreshold;
+            return this;
+        }
+
+        /**
+         * 文本资源在磁盘缓存中是否压缩保存，读取时边读边解压，默认 false。已缓存的资源不受影响
+         */
+        public Builder setDiskCacheCompression(boolean diskCacheCompression) {
+            this.diskCacheCompression = diskCacheCompression;
+            return this;
+        }
+
+        /**
+         * 由资源 url 生成缓存 key 的方式，默认为 {@link Md5CacheKeyStrategy}。
+         * 使用 {@link com.mrcd.webview.cache.key.NormalizingCacheKeyStrategy} 时 url 写法不同但指向同一资源的请求共用缓存，
+         * 切换方式后已有的缓存不再命中，由 LRU 逐渐淘汰
+         */
+        public Builder setCacheKeyStrategy(CacheKeyStrategy cacheKeyStrategy) {
+            this.cacheKeyStrategy = cacheKeyStrategy;
+            return this;
+        }
+
+        /**
+         * 过期缓存的处理方式，默认 {@link FreshnessPolicy#IGNORE}，即缓存一直使用到被淘汰
+         */
+        public Builder setFreshnessPolicy(FreshnessPolicy freshnessPolicy) {
+            this.freshnessPolicy = freshnessPolicy;
+            return this;
+        }
+
+        /**
+         * 过期超过该时长的缓存不再先返回，而是等待网络请求，单位毫秒，默认不限制
+         */
+        public Builder setMaxStaleTime(long maxStaleTime) {
+            this.maxStaleTime = maxStaleTime;
+            return this;
+        }
+
+        /**
+         * 缓存过期超过 {@link #setMaxStaleTime(long)} 时需要等待网络，超过该时间仍未返回或请求失败时返回过期的缓存，
+         * 请求在后台继续完成并更新缓存。单位毫秒，默认为 0，即一直等待，只在请求失败时返回过期的缓存
+         */
+        public Builder setNetworkDeadline(long networkDeadline) {
+            this.networkDeadline = networkDeadline;
+            return this;
+        }
+
+        /**
+         * 记录每个页面加载的子资源，页面再次打开时在 WebView 请求之前并行加载到缓存中。
+         * 参数为每个页面最多记录的资源数，最大为 {@link #MAX_PAGE_MANIFEST_RESOURCES}，默认为 0，即不记录
+         */
+        public Builder setMaxPageManifestResources(int maxPageManifestResources) {
+            this.maxPageManifestResources = maxPageManifestResources;
+            return this;
+        }
+
+        /**
+         * 判断缓存是否过期时使用的时间，默认为系统时间
+         */
+        public Builder setClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * 内存缓存和磁盘缓存中可以压缩的 mime type，默认为 html、css、JavaScript、json、xml 和 svg
+         */
+        public Builder setCompressibleMimeTypes(Set<String> compressibleMimeTypes) {
+            this.compressibleMimeTypes = compressibleMimeTypes;
+            return this;
+        }
+
+        private static Set<String> defaultCompressibleMimeTypes() {
+            final Set<String> mimeTypes = new HashSet<>();
+            mimeTypes.add("text/html");
+            mimeTypes.add("text/css");
+            mimeTypes.add("text/plain");
+            mimeTypes.add("text/xml");
+            mimeTypes.add("text/javascript");
+            mimeTypes.add("text/x-javascript");
+            mimeTypes.add("application/javascript");
+            mimeTypes.add("application/x-javascript");
+            mimeTypes.add("application/ecmascript");
+            mimeTypes.add("application/json");
+            mimeTypes.add("application/xml");
+            mimeTypes.add("image/svg+xml");
+            return mimeTypes;
+        }
+
         public CacheConfig build() {
             CacheConfig config = new CacheConfig();
             config.mCacheDir = cacheDir;
@@ -95,6 +391,25 @@ public class CacheConfig {
             config.mDiskCacheSize = diskCacheSize;
             config.mFilter = filter;
             config.mMemCacheSize = memoryCacheSize;
+            config.mJournalDurability = journalDurability != null ? journalDurability : JournalDurability.PER_OP;
+            config.mDiskCacheShardCount = Math.max(1, diskCacheShardCount);
+            config.mPackFileThreshold = Math.max(0, packFileThreshold);
+            config.mMappedBodyThreshold = Math.max(0, mappedBodyThreshold);
+            config.mMemoryCachePolicy = memoryCachePolicy != null ? memoryCachePolicy : MemoryCachePolicy.LRU;
+            config.mMemoryCacheOffHeap = memoryCacheOffHeap;
+            config.mMemorySignalSource = memorySignalSource;
+            config.mMaxMemCacheSize = Math.max(0, maxMemoryCacheSize);
+            config.mMinMemCacheSize = Math.min(config.mMaxMemCacheSize, Math.max(0, minMemoryCacheSize));
+            config.mMemoryCompressionThreshold = Math.max(0, memoryCompressionThreshold);
+            config.mDiskCacheCompression = diskCacheCompression;
+            config.mCacheKeyStrategy = cacheKeyStrategy != null ? cacheKeyStrategy : new Md5CacheKeyStrategy();
+            config.mFreshnessPolicy = freshnessPolicy != null ? freshnessPolicy : FreshnessPolicy.IGNORE;
+            config.mMaxStaleTime = Math.max(0, maxStaleTime);
+            config.mClock = clock != null ? clock : Clock.SYSTEM;
+            config.mNetworkDeadline = Math.max(0, networkDeadline);
+            config.mMaxPageManifestResources = Math.min(MAX_PAGE_MANIFEST_RESOURCES, Math.max(0, maxPageManifestResources));
+            config.mCompressibleMimeTypes = compressibleMimeTypes != null
+                    ? new HashSet<>(compressibleMimeTypes) : Collections.<String>emptySet();
             return config;
         }
     }
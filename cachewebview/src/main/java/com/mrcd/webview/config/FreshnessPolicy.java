@@ -0,0 +1,16 @@
+package com.mrcd.webview.config;
+
+/**
+ * 强制缓存模式下如何处理过期的缓存
+ */
+public enum FreshnessPolicy {
+    /**
+     * 忽略过期时间，缓存一直使用到被淘汰
+     */
+    IGNORE,
+    /**
+     * 根据 Cache-Control、Expires 判断是否过期。过期的缓存立即返回，同时在后台带上 ETag、Last-Modified 向服务器校验，
+     * 304 时只更新元数据，资源有变化时更新缓存。过期超过 {@link CacheConfig#getMaxStaleTime()} 的缓存不再使用
+     */
+    STALE_WHILE_REVALIDATE
+}
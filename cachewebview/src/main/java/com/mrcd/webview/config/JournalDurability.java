@@ -0,0 +1,19 @@
+package com.mrcd.webview.config;
+
+/**
+ * 磁盘缓存 journal 的写入策略
+ */
+public enum JournalDurability {
+    /**
+     * 每次新增、删除缓存都立即写入 journal，进程被杀时不丢失记录
+     */
+    PER_OP,
+    /**
+     * 记录先进入队列，由后台线程按数量或时间批量写入，进程被杀时可能丢失最近一批记录（对应的缓存失效）
+     */
+    BATCHED,
+    /**
+     * 与 BATCHED 相同，且不再为每次读取写 READ 记录，访问顺序只随索引快照保存
+     */
+    LAZY
+}
@@ -0,0 +1,16 @@
+package com.mrcd.webview.config;
+
+/**
+ * 内存缓存的淘汰策略
+ */
+public enum MemoryCachePolicy {
+    /**
+     * 最近最少使用，与 {@link android.util.LruCache} 一致
+     */
+    LRU,
+    /**
+     * W-TinyLFU：新资源先进入小的 LRU 窗口，离开窗口时与主缓存中最久未使用的资源比较访问频率，
+     * 频率更高才能进入主缓存。偶尔访问的大图片不会挤掉每个页面都需要的 JS、CSS
+     */
+    TINY_LFU
+}
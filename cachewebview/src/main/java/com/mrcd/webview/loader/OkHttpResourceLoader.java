@@ -6,23 +6,24 @@ import android.text.TextUtils;
 import com.mrcd.webview.WebResource;
 import com.mrcd.webview.okhttp.OkHttpClientProvider;
 import com.mrcd.webview.utils.HeaderUtils;
+import com.mrcd.webview.utils.HttpDateUtils;
 import com.mrcd.webview.utils.LogUtils;
 
 import java.io.IOException;
-import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import static android.webkit.WebSettings.LOAD_CACHE_ELSE_NETWORK;
-import static android.webkit.WebSettings.LOAD_CACHE_ONLY;
-import static android.webkit.WebSettings.LOAD_NO_CACHE;
-import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import okhttp3.CacheControl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
+import static android.webkit.WebSettings.LOAD_CACHE_ELSE_NETWORK;
+import static android.webkit.WebSettings.LOAD_CACHE_ONLY;
+import static android.webkit.WebSettings.LOAD_NO_CACHE;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+
 /**
  * load remote resources using okhttp.
  * <p>
@@ -51,12 +52,7 @@ public class OkHttpResourceLoader implements ResourceLoader {
         if (TextUtils.isEmpty(userAgent)) {
             userAgent = DEFAULT_USER_AGENT;
         }
-        Locale locale = Locale.getDefault();
-        String acceptLanguage;
-        acceptLanguage = locale.toLanguageTag();
-        if (!acceptLanguage.equalsIgnoreCase("en-US")) {
-            acceptLanguage += ",en-US;q=0.9";
-        }
+        String acceptLanguage = HeaderUtils.getDefaultAcceptLanguage();
         Request.Builder requestBuilder = new Request.Builder()
                 .removeHeader(HEADER_USER_AGENT)
                 .addHeader(HEADER_USER_AGENT, userAgent)
@@ -74,6 +70,13 @@ public class OkHttpResourceLoader implements ResourceLoader {
                 }
             }
         }
+        // WebView 的校验头已去掉，这里只带上缓存中记录的 ETag、Last-Modified
+        if (sourceRequest.getETag() != null) {
+            requestBuilder.header("If-None-Match", sourceRequest.getETag());
+        }
+        if (sourceRequest.getLastModified() >= 0) {
+            requestBuilder.header("If-Modified-Since", HttpDateUtils.format(sourceRequest.getLastModified()));
+        }
         Request request = requestBuilder
                 .url(url)
                 .cacheControl(cacheControl)
@@ -83,16 +86,19 @@ public class OkHttpResourceLoader implements ResourceLoader {
         try {
             WebResource remoteResource = new WebResource();
             response = client.newCall(request).execute();
-            if (isInterceptorThisRequest(response)) {
+            if (isInterceptorThisRequest(response)
+                    || (sourceRequest.isConditional() && response.code() == HTTP_NOT_MODIFIED)) {
                 remoteResource.setResponseCode(response.code());
                 remoteResource.setReasonPhrase(response.message());
                 remoteResource.setModified(response.code() != HTTP_NOT_MODIFIED);
+                remoteResource.setResponseHeaders(HeaderUtils.generateHeadersMap(response.headers()));
+                remoteResource.setCacheByOurselves(!isCacheByOkHttp);
                 ResponseBody responseBody = response.body();
                 if (responseBody != null) {
-                    remoteResource.setOriginBytes(responseBody.bytes());
+                    // 不等待下载完成，WebView 边下载边读取，读取完毕关闭流时释放 response
+                    remoteResource.setOriginStream(responseBody.byteStream());
+                    response = null;
                 }
-                remoteResource.setResponseHeaders(HeaderUtils.generateHeadersMap(response.headers()));
-                remoteResource.setCacheByOurselves(!isCacheByOkHttp);
                 return remoteResource;
             }
         } catch (IOException e) {
@@ -15,6 +15,8 @@ public class SourceRequest {
     private Map<String, String> headers;
     private String userAgent;
     private int webViewCache;
+    private String eTag;
+    private long lastModified;
 
     public SourceRequest(CacheRequest request, boolean cacheable){
         this.cacheable = cacheable;
@@ -22,6 +24,8 @@ public class SourceRequest {
         this.headers = request.getHeaders();
         this.userAgent = request.getUserAgent();
         this.webViewCache = request.getWebViewCacheMode();
+        this.eTag = request.getETag();
+        this.lastModified = request.getLastModified();
     }
 
     public String getUrl() {
@@ -63,4 +67,22 @@ public class SourceRequest {
     public void setWebViewCache(int webViewCache) {
         this.webViewCache = webViewCache;
     }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * 毫秒时间戳，没有时为 -1
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * 是否为带有 If-None-Match 或 If-Modified-Since 的校验请求
+     */
+    public boolean isConditional() {
+        return eTag != null || lastModified >= 0;
+    }
 }
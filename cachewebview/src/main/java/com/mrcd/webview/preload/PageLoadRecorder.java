@@ -0,0 +1,99 @@
+package com.mrcd.webview.preload;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 记录一个 WebView 中页面加载的子资源。
+ * <p>
+ * 主框架的请求开始一次记录，之后的请求都算作该页面的子资源，直到下一个主框架请求或超过 {@link #RECORD_WINDOW_MILLIS}，
+ * 之后加载的多是懒加载或轮询的资源，不再记录。每个页面只记录最先加载的若干资源。
+ */
+public class PageLoadRecorder {
+
+    private static final long RECORD_WINDOW_MILLIS = 10 * 1000;
+    /**
+     * 过长的 url 多带有一次性的参数，不记录
+     */
+    private static final int MAX_URL_LENGTH = 2048;
+
+    private final PageManifestStore mStore;
+    private final int mMaxResources;
+    private String mDocumentKey;
+    private String mDocumentUrl;
+    private long mStartTime;
+    private final Set<String> mUrls = new LinkedHashSet<>();
+
+    public PageLoadRecorder(PageManifestStore store, int maxResources) {
+        mStore = store;
+        mMaxResources = maxResources;
+    }
+
+    /**
+     * 主框架开始加载页面，保存上一个页面的记录
+     *
+     * @param documentKey 页面的缓存 key
+     * @return 预计页面会加载的子资源
+     */
+    public List<String> onDocumentRequest(String documentKey, String url) {
+        final List<String> previousUrls;
+        final String previousKey;
+        synchronized (this) {
+            previousKey = mDocumentKey;
+            previousUrls = new ArrayList<>(mUrls);
+            mDocumentKey = documentKey;
+            mDocumentUrl = url;
+            mStartTime = System.currentTimeMillis();
+            mUrls.clear();
+        }
+        if (previousKey != null) {
+            mStore.recordVisit(previousKey, previousUrls, mMaxResources);
+        }
+        return mStore.getPredictedUrls(documentKey);
+    }
+
+    public void onSubresourceRequest(String url) {
+        final List<String> urls;
+        final String documentKey;
+        synchronized (this) {
+            if (mDocumentKey == null || url.length() > MAX_URL_LENGTH || url.equals(mDocumentUrl)) {
+                return;
+            }
+            if (System.currentTimeMillis() - mStartTime <= RECORD_WINDOW_MILLIS) {
+                if (mUrls.size() < mMaxResources) {
+                    mUrls.add(url);
+                }
+                return;
+            }
+            // 超出记录时间，保存后停止记录
+            documentKey = mDocumentKey;
+            urls = new ArrayList<>(mUrls);
+            mDocumentKey = null;
+            mUrls.clear();
+        }
+        mStore.recordVisit(documentKey, urls, mMaxResources);
+    }
+
+    /**
+     * WebView 销毁时保存当前页面的记录
+     */
+    @WorkerThread
+    public void finish() {
+        final List<String> urls;
+        final String documentKey;
+        synchronized (this) {
+            if (mDocumentKey == null) {
+                return;
+            }
+            documentKey = mDocumentKey;
+            urls = new ArrayList<>(mUrls);
+            mDocumentKey = null;
+            mUrls.clear();
+        }
+        mStore.recordVisit(documentKey, urls, mMaxResources);
+    }
+}
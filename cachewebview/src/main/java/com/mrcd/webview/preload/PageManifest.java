@@ -0,0 +1,137 @@
+package com.mrcd.webview.preload;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一个页面加载过的子资源。
+ * <p>
+ * 每次访问页面后，所有资源的分数先减半，本次加载过的资源再加 1。分数不低于 1 说明上次访问时加载过，
+ * 下次打开页面时会被预加载；连续几次没有加载的资源分数降到 {@link #MIN_SCORE} 以下后被移除。
+ */
+class PageManifest {
+
+    /**
+     * 每次访问后原有分数保留的比例
+     */
+    private static final float DECAY = 0.5f;
+    private static final float MIN_SCORE = 0.1f;
+    private static final float PREDICT_SCORE = 1f;
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    private static class Entry {
+
+        final String url;
+        float score;
+        /**
+         * 最近一次访问时的加载顺序
+         */
+        int position;
+
+        Entry(String url, float score, int position) {
+            this.url = url;
+            this.score = score;
+            this.position = position;
+        }
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param urls         本次按加载顺序记录的资源
+     * @param maxResources 最多保留的资源数，超出时移除分数最低的
+     */
+    void recordVisit(List<String> urls, int maxResources) {
+        final Set<String> seen = new HashSet<>(urls.size());
+        for (Entry entry : mEntries.values()) {
+            entry.score *= DECAY;
+        }
+        for (int i = 0; i < urls.size(); i++) {
+            final String url = urls.get(i);
+            if (!seen.add(url)) {
+                continue;
+            }
+            final Entry entry = mEntries.get(url);
+            if (entry != null) {
+                entry.score += 1;
+                entry.position = i;
+            } else {
+                mEntries.put(url, new Entry(url, 1, i));
+            }
+        }
+        final List<Entry> entries = new ArrayList<>(mEntries.values());
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.score != b.score) {
+                    return a.score > b.score ? -1 : 1;
+                }
+                return a.position < b.position ? -1 : (a.position == b.position ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            if (i >= maxResources || entry.score < MIN_SCORE) {
+                mEntries.remove(entry.url);
+            }
+        }
+    }
+
+    /**
+     * 预计下次访问会加载的资源，按上次的加载顺序排列
+     */
+    List<String> getPredictedUrls() {
+        final List<Entry> entries = new ArrayList<>();
+        for (Entry entry : mEntries.values()) {
+            if (entry.score >= PREDICT_SCORE) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.position < b.position ? -1 : (a.position == b.position ? 0 : 1);
+            }
+        });
+        final List<String> urls = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            urls.add(entry.url);
+        }
+        return urls;
+    }
+
+    boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    void writeTo(DataOutputStream output) throws IOException {
+        output.writeShort(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            output.writeUTF(entry.url);
+            output.writeFloat(entry.score);
+            output.writeShort(entry.position);
+        }
+    }
+
+    static PageManifest readFrom(DataInputStream input) throws IOException {
+        final PageManifest manifest = new PageManifest();
+        final int count = input.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            final String url = input.readUTF();
+            final float score = input.readFloat();
+            final int position = input.readUnsignedShort();
+            manifest.mEntries.put(url, new Entry(url, score, position));
+        }
+        return manifest;
+    }
+}
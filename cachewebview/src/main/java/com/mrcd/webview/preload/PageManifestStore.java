@@ -0,0 +1,190 @@
+package com.mrcd.webview.preload;
+
+import androidx.annotation.WorkerThread;
+
+import com.mrcd.webview.utils.DeflateUtils;
+import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按页面记录加载过的子资源，页面再次打开时提前加载，见 {@link PageManifest}。
+ * <p>
+ * 以页面的缓存 key 区分页面，最近访问的 {@link #MAX_PAGES} 个页面的记录压缩保存在 {@code <缓存目录>-manifest} 文件中，
+ * 首次使用时读取，磁盘缓存 flush 时写回。
+ */
+public class PageManifestStore {
+
+    private static final int MAX_PAGES = 256;
+    private static final String FILE_SUFFIX = "-manifest";
+    private static final int MAGIC = 0x464d4601;
+    private static final Map<String, PageManifestStore> sStores = new HashMap<>();
+
+    private final File mFile;
+    private final LinkedHashMap<String, PageManifest> mManifests = new LinkedHashMap<String, PageManifest>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PageManifest> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private boolean mLoaded;
+    private boolean mDirty;
+
+    private PageManifestStore(File file) {
+        mFile = file;
+    }
+
+    public static PageManifestStore forCacheDir(String cacheDir) {
+        final String path = new File(cacheDir).getAbsolutePath();
+        synchronized (sStores) {
+            PageManifestStore store = sStores.get(path);
+            if (store == null) {
+                store = new PageManifestStore(new File(path + FILE_SUFFIX));
+                sStores.put(path, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * 提前读取记录文件，避免页面请求在 WebView 的 IO 线程上读取
+     */
+    @WorkerThread
+    public synchronized void load() {
+        ensureLoaded();
+    }
+
+    /**
+     * @param documentKey 页面的缓存 key
+     * @return 预计页面会加载的子资源，按上次的加载顺序排列，没有记录时为空
+     */
+    @WorkerThread
+    public synchronized List<String> getPredictedUrls(String documentKey) {
+        ensureLoaded();
+        final PageManifest manifest = mManifests.get(documentKey);
+        return manifest != null ? manifest.getPredictedUrls() : Collections.<String>emptyList();
+    }
+
+    /**
+     * 记录页面一次访问加载的子资源
+     *
+     * @param maxResources 页面最多保留的资源数
+     */
+    @WorkerThread
+    public synchronized void recordVisit(String documentKey, List<String> urls, int maxResources) {
+        if (urls.isEmpty()) {
+            // 页面还没有加载子资源就离开了，不算一次访问
+            return;
+        }
+        ensureLoaded();
+        PageManifest manifest = mManifests.get(documentKey);
+        if (manifest == null) {
+            manifest = new PageManifest();
+            mManifests.put(documentKey, manifest);
+        }
+        manifest.recordVisit(urls, maxResources);
+        if (manifest.isEmpty()) {
+            mManifests.remove(documentKey);
+        }
+        mDirty = true;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(DeflateUtils.inflate(new FileInputStream(mFile))));
+            if (input.readInt() != MAGIC) {
+                throw new IOException("unexpected magic");
+            }
+            final int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                final String key = input.readUTF();
+                mManifests.put(key, PageManifest.readFrom(input));
+            }
+        } catch (IOException e) {
+            // 记录只用于预加载，读取失败时重新记录
+            mManifests.clear();
+            LogUtils.e("read page manifest failed. cause by: " + e.getMessage());
+        } finally {
+            StreamUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * 有改动时写回记录文件，先写临时文件再替换，写入中断不会破坏已有的记录
+     */
+    @WorkerThread
+    public void save() {
+        final byte[] data;
+        synchronized (this) {
+            if (!mDirty) {
+                return;
+            }
+            mDirty = false;
+            data = serialize();
+        }
+        if (data == null) {
+            return;
+        }
+        final File tmpFile = new File(mFile.getPath() + ".tmp");
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(tmpFile);
+            output.write(DeflateUtils.deflate(data));
+            output.close();
+            output = null;
+            if (!tmpFile.renameTo(mFile)) {
+                throw new IOException("rename " + tmpFile + " failed");
+            }
+        } catch (IOException e) {
+            LogUtils.e("write page manifest failed. cause by: " + e.getMessage());
+            synchronized (this) {
+                mDirty = true;
+            }
+        } finally {
+            StreamUtils.closeQuietly(output);
+        }
+    }
+
+    private byte[] serialize() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(bytes));
+        try {
+            final List<Map.Entry<String, PageManifest>> entries = new ArrayList<>(mManifests.entrySet());
+            output.writeInt(MAGIC);
+            output.writeInt(entries.size());
+            // 按访问顺序写入，读取后仍保持最近访问的顺序
+            for (Map.Entry<String, PageManifest> entry : entries) {
+                output.writeUTF(entry.getKey());
+                entry.getValue().writeTo(output);
+            }
+            output.flush();
+        } catch (IOException e) {
+            LogUtils.e("serialize page manifest failed. cause by: " + e.getMessage());
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+}
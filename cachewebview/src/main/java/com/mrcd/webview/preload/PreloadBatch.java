@@ -0,0 +1,153 @@
+package com.mrcd.webview.preload;
+
+import com.mrcd.webview.cache.Destroyable;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.ForceRemoteCacheInterceptor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一次 {@link Preloader#preload} 提交的一批页面。
+ * <p>
+ * 页面解析后才知道有哪些子资源，{@link #getTotalCount()} 会随加载进度增加。
+ */
+public class PreloadBatch {
+
+    private final Preloader mPreloader;
+    /**
+     * 由 {@link Preloader} 创建，批次结束后释放
+     */
+    private final List<CacheInterceptor> mInterceptors;
+    /**
+     * 为 null 时使用 {@link Preloader#setUserAgent(String)} 设置的值
+     */
+    private final String mUserAgent;
+    private final PreloadCallback mCallback;
+    /**
+     * 已提交的 url，同一批中重复的资源只加载一次
+     */
+    private final Set<String> mScheduledUrls = new HashSet<>();
+    private int mTotalCount;
+    private int mFinishedCount;
+    private int mFailedCount;
+    /**
+     * 尚未结束的任务数，提交完所有页面前多计一个，避免提交过程中提前完成
+     */
+    private int mPendingCount = 1;
+    private boolean mCancelled;
+    private boolean mDone;
+
+    PreloadBatch(Preloader preloader, List<CacheInterceptor> interceptors, String userAgent, PreloadCallback callback) {
+        mPreloader = preloader;
+        mInterceptors = interceptors;
+        mUserAgent = userAgent;
+        mCallback = callback;
+    }
+
+    /**
+     * 取消尚未开始的加载，已经开始的请求会继续完成并写入缓存
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (mCancelled || mDone) {
+                return;
+            }
+            mCancelled = true;
+        }
+        mPreloader.removeQueuedTasks(this);
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * 目前已知的页面和子资源数
+     */
+    public synchronized int getTotalCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * 已加载完成的数量，包括失败的
+     */
+    public synchronized int getFinishedCount() {
+        return mFinishedCount;
+    }
+
+    public synchronized int getFailedCount() {
+        return mFailedCount;
+    }
+
+    List<CacheInterceptor> getInterceptors() {
+        return mInterceptors;
+    }
+
+    String getUserAgent() {
+        return mUserAgent;
+    }
+
+    /**
+     * @return url 已经提交过或已取消时返回 false
+     */
+    synchronized boolean schedule(String url) {
+        if (mCancelled || !mScheduledUrls.add(url)) {
+            return false;
+        }
+        mTotalCount++;
+        mPendingCount++;
+        return true;
+    }
+
+    void onFinished(String url, boolean success) {
+        synchronized (this) {
+            mFinishedCount++;
+            if (!success) {
+                mFailedCount++;
+            }
+        }
+        if (mCallback != null) {
+            mCallback.onProgress(this, url, success);
+        }
+        onTaskEnd();
+    }
+
+    /**
+     * 任务被取消，没有加载
+     */
+    void onSkipped() {
+        onTaskEnd();
+    }
+
+    /**
+     * 所有页面都已提交
+     */
+    void onSubmitted() {
+        onTaskEnd();
+    }
+
+    private void onTaskEnd() {
+        synchronized (this) {
+            if (--mPendingCount > 0 || mDone) {
+                return;
+            }
+            mDone = true;
+        }
+        // 所有任务都已结束，释放内存缓存和磁盘缓存。ForceRemoteCacheInterceptor 销毁时会清空配置中仍被 WebView 使用的
+        // MimeTypeFilter，因此不销毁
+        for (CacheInterceptor interceptor : mInterceptors) {
+            if (interceptor instanceof Destroyable && !(interceptor instanceof ForceRemoteCacheInterceptor)) {
+                ((Destroyable) interceptor).destroy();
+            }
+        }
+        if (mCallback != null) {
+            mCallback.onComplete(this);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.mrcd.webview.preload;
+
+/**
+ * 预加载进度回调，在预加载线程中执行
+ */
+public interface PreloadCallback {
+
+    /**
+     * 一个页面或子资源加载完成
+     *
+     * @param success 是否成功获取到 2xx 的响应
+     */
+    void onProgress(PreloadBatch batch, String url, boolean success);
+
+    /**
+     * 全部资源加载完成或已取消
+     */
+    void onComplete(PreloadBatch batch);
+}
@@ -0,0 +1,290 @@
+package com.mrcd.webview.preload;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.webkit.WebSettings;
+
+import androidx.annotation.WorkerThread;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.CacheEntryMeta;
+import com.mrcd.webview.cache.CacheRequest;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.Chain;
+import com.mrcd.webview.cache.intercept.DiskCacheInterceptor;
+import com.mrcd.webview.cache.intercept.ForceRemoteCacheInterceptor;
+import com.mrcd.webview.cache.intercept.MemCacheInterceptor;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.utils.HeaderUtils;
+import com.mrcd.webview.utils.LogUtils;
+import com.mrcd.webview.utils.MimeTypeMapUtils;
+import com.mrcd.webview.utils.StreamUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 不创建 WebView 的预加载：沿强制缓存模式的磁盘缓存和网络请求加载页面，解析出 script、link、img、srcset
+ * 以及 CSS 中引用的资源并一起加载，加载完成后写入磁盘缓存或 OkHttp 的缓存。
+ * <p>
+ * 同一缓存目录的预加载共用有限的线程，按页面、样式、脚本、字体、图片的顺序加载。
+ * 每一批使用创建预加载器时传入的配置，加载完成后释放磁盘缓存。
+ * 预加载不写入内存缓存，大量页面不会挤掉正在使用的资源。
+ */
+public class Preloader {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Map<String, ThreadPoolExecutor> sExecutors = new HashMap<>();
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    private final Context mContext;
+    private final CacheConfig mCacheConfig;
+    private final ThreadPoolExecutor mExecutor;
+    private volatile String mUserAgent;
+
+    private Preloader(Context context, CacheConfig cacheConfig, ThreadPoolExecutor executor) {
+        mContext = context;
+        mCacheConfig = cacheConfig;
+        mExecutor = executor;
+    }
+
+    /**
+     * 获取使用该配置的预加载器，同一缓存目录的预加载器共用线程
+     *
+     * @param cacheConfig 与 {@link com.mrcd.webview.CacheWebView#setCacheMode} 使用的配置一致，为 null 时使用默认配置
+     */
+    public static Preloader forConfig(Context context, CacheConfig cacheConfig) {
+        context = context.getApplicationContext();
+        if (cacheConfig == null) {
+            cacheConfig = new CacheConfig.Builder(context).build();
+        }
+        final String cacheDir = new File(cacheConfig.getCacheDir()).getAbsolutePath();
+        synchronized (sExecutors) {
+            ThreadPoolExecutor executor = sExecutors.get(cacheDir);
+            if (executor == null) {
+                executor = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_CONCURRENCY, 60, TimeUnit.SECONDS,
+                        new PriorityBlockingQueue<Runnable>());
+                executor.allowCoreThreadTimeOut(true);
+                sExecutors.put(cacheDir, executor);
+            }
+            return new Preloader(context, cacheConfig, executor);
+        }
+    }
+
+    /**
+     * 同一缓存目录同时加载的资源数，默认为 4
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        maxConcurrency = Math.max(1, maxConcurrency);
+        synchronized (mExecutor) {
+            // 核心线程数不能大于最大线程数
+            if (maxConcurrency > mExecutor.getMaximumPoolSize()) {
+                mExecutor.setMaximumPoolSize(maxConcurrency);
+                mExecutor.setCorePoolSize(maxConcurrency);
+            } else {
+                mExecutor.setCorePoolSize(maxConcurrency);
+                mExecutor.setMaximumPoolSize(maxConcurrency);
+            }
+        }
+    }
+
+    /**
+     * 请求使用的 User-Agent，默认为 WebView 的默认值。WebView 修改过 User-Agent 时需设置为相同的值，
+     * 否则响应带有 Vary: User-Agent 时预加载的缓存无法命中
+     */
+    public void setUserAgent(String userAgent) {
+        mUserAgent = userAgent;
+    }
+
+    public PreloadBatch preload(List<String> urls) {
+        return preload(urls, null);
+    }
+
+    /**
+     * 预加载一批页面及其子资源
+     *
+     * @param callback 可以为 null
+     */
+    public PreloadBatch preload(List<String> urls, PreloadCallback callback) {
+        final List<CacheInterceptor> interceptors = new ArrayList<>(2);
+        interceptors.add(new DiskCacheInterceptor(mCacheConfig));
+        interceptors.add(new ForceRemoteCacheInterceptor(mContext, mCacheConfig));
+        final PreloadBatch batch = new PreloadBatch(this, interceptors, null, callback);
+        for (String url : urls) {
+            final String resolved = SubresourceExtractor.resolve(url, url);
+            if (resolved != null) {
+                schedule(batch, resolved, SubresourceExtractor.PRIORITY_DOCUMENT);
+            } else {
+                LogUtils.e(String.format("ignore invalid preload url: %s", url));
+            }
+        }
+        batch.onSubmitted();
+        return batch;
+    }
+
+    /**
+     * 按顺序加载一组已知的资源，不解析内容，优先于 {@link #preload} 提交的任务。
+     * 用于页面打开时提前加载 {@link PageManifestStore} 记录的子资源，磁盘缓存中的资源会同时放入内存缓存。
+     * 批次持有自己的内存缓存和磁盘缓存拦截器，WebView 销毁后仍在执行的请求不受影响
+     *
+     * @param userAgent WebView 的 User-Agent，为 null 时使用 {@link #setUserAgent(String)} 设置的值
+     */
+    public PreloadBatch prefetch(List<String> urls, String userAgent) {
+        final List<CacheInterceptor> interceptors = new ArrayList<>(3);
+        interceptors.add(new MemCacheInterceptor(mCacheConfig));
+        interceptors.add(new DiskCacheInterceptor(mCacheConfig));
+        interceptors.add(new ForceRemoteCacheInterceptor(mContext, mCacheConfig));
+        final PreloadBatch batch = new PreloadBatch(this, interceptors, userAgent, null);
+        for (String url : urls) {
+            schedule(batch, url, SubresourceExtractor.PRIORITY_PREDICTED);
+        }
+        batch.onSubmitted();
+        return batch;
+    }
+
+    private void schedule(PreloadBatch batch, String url, int priority) {
+        if (batch.schedule(url)) {
+            mExecutor.execute(new PreloadTask(batch, url, priority, sSequence.getAndIncrement()));
+        }
+    }
+
+    void removeQueuedTasks(PreloadBatch batch) {
+        for (Runnable runnable : mExecutor.getQueue().toArray(new Runnable[0])) {
+            if (((PreloadTask) runnable).mBatch == batch && mExecutor.remove(runnable)) {
+                batch.onSkipped();
+            }
+        }
+    }
+
+    @WorkerThread
+    private boolean load(PreloadBatch batch, String url, int priority) {
+        final String userAgent = batch.getUserAgent() != null ? batch.getUserAgent() : getUserAgent();
+        final WebResource resource = new Chain(batch.getInterceptors()).process(createRequest(url, priority, userAgent));
+        if (resource == null) {
+            return false;
+        }
+        final boolean success = resource.getResponseCode() >= 200 && resource.getResponseCode() < 300;
+        final boolean shouldParse = success && (priority == SubresourceExtractor.PRIORITY_DOCUMENT
+                || priority == SubresourceExtractor.PRIORITY_STYLESHEET);
+        if (!shouldParse) {
+            // 读完才会写入缓存
+            if (resource.getOriginStream() != null) {
+                StreamUtils.drainQuietly(resource.getOriginStream());
+            }
+            return success;
+        }
+        final String text;
+        try {
+            text = new String(readBody(resource), getCharset(resource));
+        } catch (IOException e) {
+            LogUtils.e(String.format("preload %s failed. cause by: %s", url, e.getMessage()));
+            return false;
+        }
+        final List<SubresourceExtractor.Subresource> subresources = priority == SubresourceExtractor.PRIORITY_DOCUMENT
+                ? SubresourceExtractor.extractFromHtml(text, url) : SubresourceExtractor.extractFromCss(text, url);
+        for (SubresourceExtractor.Subresource subresource : subresources) {
+            schedule(batch, subresource.url, subresource.priority);
+        }
+        return true;
+    }
+
+    private CacheRequest createRequest(String url, int priority, String userAgent) {
+        final CacheRequest request = new CacheRequest();
+        request.setUrl(url, mCacheConfig.getCacheKeyStrategy());
+        String mimeType = MimeTypeMapUtils.getMimeTypeFromExtension(MimeTypeMapUtils.getFileExtensionFromUrl(url));
+        if (TextUtils.isEmpty(mimeType) && priority == SubresourceExtractor.PRIORITY_STYLESHEET) {
+            // 没有扩展名的样式表，WebView 加载时同样按 text/css 处理
+            mimeType = "text/css";
+        }
+        request.setMime(mimeType);
+        request.setForceMode(true);
+        request.setUserAgent(userAgent);
+        request.setWebViewCacheMode(WebSettings.LOAD_DEFAULT);
+        request.setHeaders(new HashMap<String, String>());
+        return request;
+    }
+
+    private String getUserAgent() {
+        if (mUserAgent == null) {
+            try {
+                mUserAgent = WebSettings.getDefaultUserAgent(mContext);
+            } catch (RuntimeException e) {
+                // WebView 未安装或正在更新
+                LogUtils.e("get default user agent failed. cause by: " + e.getMessage());
+                mUserAgent = "";
+            }
+        }
+        return mUserAgent;
+    }
+
+    private static byte[] readBody(WebResource resource) throws IOException {
+        final InputStream stream = resource.getOriginStream();
+        if (stream != null) {
+            return StreamUtils.streamToBytes(stream);
+        }
+        return resource.getOriginBytes() != null ? resource.getOriginBytes() : new byte[0];
+    }
+
+    private static Charset getCharset(WebResource resource) {
+        final String charset = CacheEntryMeta.parseCharset(
+                HeaderUtils.getHeader(resource.getResponseHeaders(), "Content-Type"));
+        try {
+            return charset != null ? Charset.forName(charset) : UTF_8;
+        } catch (RuntimeException e) {
+            return UTF_8;
+        }
+    }
+
+    /**
+     * 优先级高的先执行，同一优先级按提交顺序执行
+     */
+    private class PreloadTask implements Runnable, Comparable<PreloadTask> {
+
+        private final PreloadBatch mBatch;
+        private final String mUrl;
+        private final int mPriority;
+        private final long mSequence;
+
+        PreloadTask(PreloadBatch batch, String url, int priority, long sequence) {
+            mBatch = batch;
+            mUrl = url;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            if (mBatch.isCancelled()) {
+                mBatch.onSkipped();
+                return;
+            }
+            boolean success = false;
+            try {
+                success = load(mBatch, mUrl, mPriority);
+            } catch (RuntimeException e) {
+                LogUtils.e(String.format("preload %s failed. cause by: %s", mUrl, e.getMessage()));
+            }
+            // 子资源提交后再结束当前任务，批次不会提前完成
+            mBatch.onFinished(mUrl, success);
+        }
+
+        @Override
+        public int compareTo(PreloadTask other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
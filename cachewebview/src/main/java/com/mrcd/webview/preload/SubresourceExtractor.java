@@ -0,0 +1,242 @@
+package com.mrcd.webview.preload;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 从 HTML 和 CSS 中提取需要预加载的子资源：script、link、img、srcset 以及 CSS 中的 url() 和 @import。
+ * <p>
+ * 只做简单的文本匹配，不执行脚本，脚本动态加载的资源不会被提取。音视频体积较大，不预加载。
+ */
+class SubresourceExtractor {
+
+    /**
+     * 页面记录中预计马上会被 WebView 请求的资源
+     */
+    static final int PRIORITY_PREDICTED = -1;
+    static final int PRIORITY_DOCUMENT = 0;
+    static final int PRIORITY_STYLESHEET = 1;
+    static final int PRIORITY_SCRIPT = 2;
+    static final int PRIORITY_FONT = 3;
+    static final int PRIORITY_IMAGE = 4;
+
+    private static final Pattern COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    private static final Pattern SCRIPT_BLOCK = Pattern.compile(
+            "(<script\\b[^>]*>).*?</script\\s*>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern STYLE_BLOCK = Pattern.compile(
+            "<style\\b[^>]*>(.*?)</style\\s*>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern TAG = Pattern.compile(
+            "<(base|script|link|img|source|video)\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern STYLE_ATTRIBUTE = Pattern.compile(
+            "\\sstyle\\s*=\\s*(\"([^\"]*)\"|'([^']*)')", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "([\\w:-]+)\\s*=\\s*(\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))");
+    private static final Pattern CSS_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern CSS_IMPORT = Pattern.compile(
+            "@import\\s+(?:url\\(\\s*)?([\"']?)([^\"')\\s;]+)\\1", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CSS_URL = Pattern.compile(
+            "url\\(\\s*([\"']?)([^\"')]+)\\1\\s*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FONT_EXTENSION = Pattern.compile(
+            "\\.(woff2?|ttf|otf|eot)$", Pattern.CASE_INSENSITIVE);
+
+    private SubresourceExtractor() {
+    }
+
+    /**
+     * 提取的子资源，url 已转换为绝对地址并去掉 fragment
+     */
+    static class Subresource {
+
+        final String url;
+        final int priority;
+
+        Subresource(String url, int priority) {
+            this.url = url;
+            this.priority = priority;
+        }
+    }
+
+    static List<Subresource> extractFromHtml(String html, String documentUrl) {
+        final Map<String, Integer> found = new LinkedHashMap<>();
+        html = COMMENT.matcher(html).replaceAll("");
+        // 内联脚本中的字符串可能看起来像标签，只保留开始标签
+        html = SCRIPT_BLOCK.matcher(html).replaceAll("$1");
+        String baseUrl = documentUrl;
+
+        final Matcher tag = TAG.matcher(html);
+        while (tag.find()) {
+            final String name = tag.group(1).toLowerCase(Locale.US);
+            final Map<String, String> attributes = parseAttributes(tag.group(2));
+            if ("base".equals(name)) {
+                final String href = resolve(baseUrl, attributes.get("href"));
+                if (href != null) {
+                    baseUrl = href;
+                }
+            } else if ("script".equals(name)) {
+                add(found, resolve(baseUrl, attributes.get("src")), PRIORITY_SCRIPT);
+            } else if ("link".equals(name)) {
+                final int priority = getLinkPriority(attributes);
+                if (priority >= 0) {
+                    add(found, resolve(baseUrl, attributes.get("href")), priority);
+                }
+            } else if ("img".equals(name)) {
+                add(found, resolve(baseUrl, attributes.get("src")), PRIORITY_IMAGE);
+                addSrcset(found, baseUrl, attributes.get("srcset"));
+            } else if ("source".equals(name)) {
+                // picture 中的 source 使用 srcset，音视频的 source 使用 src
+                addSrcset(found, baseUrl, attributes.get("srcset"));
+            } else {
+                add(found, resolve(baseUrl, attributes.get("poster")), PRIORITY_IMAGE);
+            }
+        }
+
+        final Matcher style = STYLE_BLOCK.matcher(html);
+        while (style.find()) {
+            extractFromCss(found, style.group(1), baseUrl);
+        }
+        final Matcher styleAttribute = STYLE_ATTRIBUTE.matcher(html);
+        while (styleAttribute.find()) {
+            final String css = styleAttribute.group(2) != null ? styleAttribute.group(2) : styleAttribute.group(3);
+            extractFromCss(found, unescape(css), baseUrl);
+        }
+        return toList(found);
+    }
+
+    static List<Subresource> extractFromCss(String css, String stylesheetUrl) {
+        final Map<String, Integer> found = new LinkedHashMap<>();
+        extractFromCss(found, css, stylesheetUrl);
+        return toList(found);
+    }
+
+    private static void extractFromCss(Map<String, Integer> found, String css, String baseUrl) {
+        css = CSS_COMMENT.matcher(css).replaceAll("");
+        final Matcher imports = CSS_IMPORT.matcher(css);
+        while (imports.find()) {
+            add(found, resolve(baseUrl, imports.group(2)), PRIORITY_STYLESHEET);
+        }
+        final Matcher url = CSS_URL.matcher(css);
+        while (url.find()) {
+            final String resolved = resolve(baseUrl, url.group(2).trim());
+            if (resolved != null) {
+                final String path = resolved.contains("?") ? resolved.substring(0, resolved.indexOf('?')) : resolved;
+                add(found, resolved, FONT_EXTENSION.matcher(path).find() ? PRIORITY_FONT : PRIORITY_IMAGE);
+            }
+        }
+    }
+
+    /**
+     * @return 不需要预加载时返回 -1
+     */
+    private static int getLinkPriority(Map<String, String> attributes) {
+        final String rel = lowerCase(attributes.get("rel"));
+        if (rel == null) {
+            return -1;
+        }
+        if (rel.contains("stylesheet")) {
+            return PRIORITY_STYLESHEET;
+        }
+        if (rel.contains("modulepreload")) {
+            return PRIORITY_SCRIPT;
+        }
+        if (rel.contains("preload")) {
+            final String as = lowerCase(attributes.get("as"));
+            if ("style".equals(as)) {
+                return PRIORITY_STYLESHEET;
+            } else if ("script".equals(as)) {
+                return PRIORITY_SCRIPT;
+            } else if ("font".equals(as)) {
+                return PRIORITY_FONT;
+            } else if ("image".equals(as)) {
+                return PRIORITY_IMAGE;
+            }
+            return -1;
+        }
+        if (rel.contains("icon")) {
+            return PRIORITY_IMAGE;
+        }
+        return -1;
+    }
+
+    private static void addSrcset(Map<String, Integer> found, String baseUrl, String srcset) {
+        if (srcset == null) {
+            return;
+        }
+        // 每一项为 url 加可选的宽度或像素密度描述
+        for (String candidate : srcset.split(",\\s*")) {
+            final String[] parts = candidate.trim().split("\\s+");
+            if (parts.length > 0) {
+                add(found, resolve(baseUrl, parts[0]), PRIORITY_IMAGE);
+            }
+        }
+    }
+
+    private static void add(Map<String, Integer> found, String url, int priority) {
+        if (url == null) {
+            return;
+        }
+        final Integer existing = found.get(url);
+        if (existing == null || priority < existing) {
+            found.put(url, priority);
+        }
+    }
+
+    private static Map<String, String> parseAttributes(String text) {
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        final Matcher matcher = ATTRIBUTE.matcher(text);
+        while (matcher.find()) {
+            final String name = matcher.group(1).toLowerCase(Locale.US);
+            String value = matcher.group(3);
+            if (value == null) {
+                value = matcher.group(4) != null ? matcher.group(4) : matcher.group(5);
+            }
+            if (!attributes.containsKey(name)) {
+                attributes.put(name, unescape(value));
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * 转换为绝对地址，只保留 http 和 https
+     */
+    static String resolve(String baseUrl, String reference) {
+        if (reference == null || reference.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            final URL url = new URL(new URL(baseUrl), reference.trim());
+            final String protocol = url.getProtocol();
+            if (!"http".equals(protocol) && !"https".equals(protocol)) {
+                return null;
+            }
+            final String spec = url.toString();
+            final int fragment = spec.indexOf('#');
+            return fragment >= 0 ? spec.substring(0, fragment) : spec;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&");
+    }
+
+    private static String lowerCase(String value) {
+        return value != null ? value.toLowerCase(Locale.US) : null;
+    }
+
+    private static List<Subresource> toList(Map<String, Integer> found) {
+        final List<Subresource> list = new ArrayList<>(found.size());
+        for (Map.Entry<String, Integer> entry : found.entrySet()) {
+            list.add(new Subresource(entry.getKey(), entry.getValue()));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,101 @@
+package com.mrcd.webview.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 直接从 {@link ByteBuffer} 读取数据，例如文件的内存映射或堆外内存，数据不经过 Java 堆。
+ * 关闭后不再持有 buffer，并通知 buffer 的持有者释放。
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private ByteBuffer mBuffer;
+    private Closeable mOwner;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this(buffer, null);
+    }
+
+    /**
+     * @param owner 流关闭时一并关闭，用于释放 buffer
+     */
+    public ByteBufferInputStream(ByteBuffer buffer, Closeable owner) {
+        mBuffer = buffer;
+        mOwner = owner;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final ByteBuffer buffer = ensureOpen();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final ByteBuffer buffer = ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        final int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final ByteBuffer buffer = ensureOpen();
+        if (n <= 0) {
+            return 0;
+        }
+        final int count = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return ensureOpen().remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        if (mBuffer != null) {
+            mBuffer.mark();
+        }
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        ensureOpen().reset();
+    }
+
+    @Override
+    public synchronized void close() {
+        mBuffer = null;
+        if (mOwner != null) {
+            StreamUtils.closeQuietly(mOwner);
+            mOwner = null;
+        }
+    }
+
+    private ByteBuffer ensureOpen() throws IOException {
+        final ByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            throw new IOException("stream closed");
+        }
+        return buffer;
+    }
+}
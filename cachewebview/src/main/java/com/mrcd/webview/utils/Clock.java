@@ -0,0 +1,16 @@
+package com.mrcd.webview.utils;
+
+/**
+ * 当前时间的来源，判断缓存是否过期时使用，可以替换为可控的时间以便复现过期、校验等场景
+ */
+public interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    long currentTimeMillis();
+}
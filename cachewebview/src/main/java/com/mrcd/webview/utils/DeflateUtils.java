@@ -0,0 +1,84 @@
+package com.mrcd.webview.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 使用 raw deflate 格式压缩资源，不带 zlib 头和校验和
+ */
+public class DeflateUtils {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 以最快的压缩级别压缩
+     */
+    public static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 3));
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                final int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 边写边压缩，关闭时释放 {@link Deflater} 占用的 native 内存
+     */
+    public static OutputStream deflate(OutputStream output) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        return new DeflaterOutputStream(output, deflater, BUFFER_SIZE) {
+            private boolean mClosed;
+
+            @Override
+            public void close() throws IOException {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * 边读边解压，关闭时释放 {@link Inflater} 占用的 native 内存
+     */
+    public static InputStream inflate(InputStream compressed) {
+        final Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(compressed, inflater, BUFFER_SIZE) {
+            private boolean mClosed;
+
+            @Override
+            public void close() throws IOException {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
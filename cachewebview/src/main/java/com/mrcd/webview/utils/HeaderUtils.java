@@ -6,6 +6,7 @@ import androidx.collection.ArraySet;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -38,6 +39,36 @@ public class HeaderUtils {
         return target;
     }
 
+    /**
+     * 不区分大小写获取请求头或响应头，没有时返回 null
+     */
+    public static String getHeader(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        String value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * WebView 没有指定 Accept-Language 时请求使用的默认值
+     */
+    public static String getDefaultAcceptLanguage() {
+        String acceptLanguage = Locale.getDefault().toLanguageTag();
+        if (!acceptLanguage.equalsIgnoreCase("en-US")) {
+            acceptLanguage += ",en-US;q=0.9";
+        }
+        return acceptLanguage;
+    }
+
     public static Map<String, String> generateHeadersMap(Map<String, List<String>> headers) {
         Map<String, String> headersMap = new HashMap<>();
         int index = 0;
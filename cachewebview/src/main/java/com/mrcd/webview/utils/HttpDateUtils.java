@@ -0,0 +1,44 @@
+package com.mrcd.webview.utils;
+
+import android.text.TextUtils;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * 解析响应头中 RFC 1123 格式的时间，例如 Last-Modified、Expires、Date
+ */
+public class HttpDateUtils {
+
+    private static final ThreadLocal<DateFormat> sDateFormat = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setLenient(false);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+    };
+
+    /**
+     * @return 毫秒时间戳，无法解析时返回 -1
+     */
+    public static long parse(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return -1;
+        }
+        try {
+            return sDateFormat.get().parse(value).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    public static String format(long millis) {
+        return sDateFormat.get().format(new Date(millis));
+    }
+}
@@ -1,6 +1,7 @@
 package com.mrcd.webview.utils;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -21,4 +22,32 @@ public class StreamUtils {
         in.close();
         return out.toByteArray();
     }
+
+    /**
+     * 读完并关闭流，用于没有人读取但需要读完才会提交到缓存的资源
+     */
+    public static void drainQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            final byte[] buffer = new byte[8 * 1024];
+            while (in.read(buffer) != -1) {
+                // 只需要读完
+            }
+        } catch (IOException ignore) {
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+        }
+    }
 }
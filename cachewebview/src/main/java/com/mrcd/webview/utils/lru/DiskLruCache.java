@@ -16,7 +16,13 @@
 
 package com.mrcd.webview.utils.lru;
 
+import com.mrcd.webview.config.JournalDurability;
+
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.File;
@@ -29,17 +35,26 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /**
  * A cache that uses a bounded amount of space on a filesystem. Each cache
@@ -89,6 +104,10 @@ public final class DiskLruCache implements Closeable {
   static final String JOURNAL_FILE = "journal";
   static final String JOURNAL_FILE_TEMP = "journal.tmp";
   static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+  static final String INDEX_FILE = "journal.idx";
+  static final String INDEX_FILE_TEMP = "journal.idx.tmp";
+  static final int INDEX_MAGIC = 0x444c4349;
+  static final int INDEX_VERSION_1 = 1;
   static final String MAGIC = "libcore.io.DiskLruCache";
   static final String VERSION_1 = "1";
   static final long ANY_SEQUENCE_NUMBER = -1;
@@ -98,6 +117,16 @@ public final class DiskLruCache implements Closeable {
   private static final String DIRTY = "DIRTY";
   private static final String REMOVE = "REMOVE";
   private static final String READ = "READ";
+  private static final int INDEX_FLAG_READABLE = 1;
+  private static final int INDEX_FLAG_DIRTY = 1 << 1;
+  /** Number of journal bytes before the checkpoint offset that identify the journal. */
+  private static final int INDEX_FINGERPRINT_LENGTH = 64;
+  /** Journal operations after which a new index checkpoint is written. */
+  private static final int INDEX_CHECKPOINT_INTERVAL = 1000;
+  /** Pending journal records that trigger an immediate batched write. */
+  private static final int JOURNAL_BATCH_SIZE = 128;
+  /** Maximum time a record waits in the queue before a batched write. */
+  private static final long JOURNAL_BATCH_INTERVAL_MILLIS = 1000;
 
     /*
      * This cache uses a journal file named "journal". A typical journal file
@@ -137,21 +166,43 @@ public final class DiskLruCache implements Closeable {
      * occasionally be compacted by dropping redundant lines. A temporary file named
      * "journal.tmp" will be used during compaction; that file should be deleted if
      * it exists when the cache is opened.
+     *
+     * Replaying a long journal line by line is slow, so the cache also keeps a
+     * binary checkpoint of its index in "journal.idx". The checkpoint holds every
+     * entry in access order together with the journal offset it covers and a
+     * fingerprint of the journal bytes just before that offset. On open the
+     * checkpoint is loaded with a single read and only the journal lines written
+     * after it are replayed. A checkpoint that doesn't match the journal is ignored.
      */
 
   private final File directory;
   private final File journalFile;
   private final File journalFileTmp;
   private final File journalFileBackup;
+  private final File indexFile;
+  private final File indexFileTmp;
   private final int appVersion;
   private long maxSize;
   private final int valueCount;
+  private final JournalDurability durability;
   private long size = 0;
+  /**
+   * Bytes used by all shards of a {@link ShardedDiskLruCache}, or null if this
+   * cache has a budget of its own. Shards share {@code maxSize} and are trimmed
+   * together by {@link #sharedTrim}.
+   */
+  private AtomicLong sharedSize;
+  private Runnable sharedTrim;
   private Writer journalWriter;
   private final LinkedHashMap<String, Entry> lruEntries =
       new LinkedHashMap<String, Entry>(0, 0.75f, true);
   private int redundantOpCount;
 
+  /** Time spent in each phase of {@link #open}, in nanoseconds. */
+  private long journalReadNanos;
+  private long processNanos;
+  private long rebuildNanos;
+
   /**
    * To differentiate between old and current snapshots, each entry is given
    * a sequence number each time an edit is committed. A snapshot is stale if
@@ -159,11 +210,37 @@ public final class DiskLruCache implements Closeable {
    */
   private long nextSequenceNumber = 0;
 
-  /** This cache uses a single background thread to evict entries. */
-  final ThreadPoolExecutor executorService =
-      new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+  /** Journal operations since the last index checkpoint. */
+  private int opsSinceCheckpoint;
+
+  /** Incremented whenever the journal is rewritten, invalidating pending checkpoints. */
+  private int journalGeneration;
+
+  /**
+   * Journal records waiting for a batched write when durability isn't
+   * {@link JournalDurability#PER_OP}. Records are enqueued while holding the
+   * cache lock, so their order matches the order of the operations.
+   */
+  private final Queue<String> pendingRecords = new ConcurrentLinkedQueue<String>();
+  private final AtomicInteger pendingRecordCount = new AtomicInteger();
+  private final AtomicBoolean journalFlushScheduled = new AtomicBoolean();
+
+  /**
+   * Guards {@link #journalWriter}. It may be taken while holding the cache lock
+   * but never the other way round, so the background journal write doesn't
+   * block get() and completeEdit() on the cache lock.
+   */
+  private final Object journalLock = new Object();
+
+  /** This cache uses a single background thread to evict entries and write the journal. */
+  final ScheduledThreadPoolExecutor executorService = new ScheduledThreadPoolExecutor(1);
   private final Callable<Void> cleanupCallable = new Callable<Void>() {
     public Void call() throws Exception {
+      // Trimming shared shards takes the other shards' locks, so it runs without ours.
+      Runnable trim = sharedTrim;
+      if (trim != null) {
+        trim.run();
+      }
       synchronized (DiskLruCache.this) {
         if (journalWriter == null) {
           return null; // Closed.
@@ -174,18 +251,41 @@ public final class DiskLruCache implements Closeable {
           redundantOpCount = 0;
         }
       }
+      if (opsSinceCheckpoint >= INDEX_CHECKPOINT_INTERVAL) {
+        writeCheckpoint();
+      }
+      return null;
+    }
+  };
+  private final Callable<Void> journalFlushCallable = new Callable<Void>() {
+    public Void call() throws Exception {
+      journalFlushScheduled.set(false);
+      // Records are queued in operation order, so draining them needs only the journal lock.
+      synchronized (journalLock) {
+        if (journalWriter == null) {
+          return null; // Closed.
+        }
+        drainPendingRecords();
+        journalWriter.flush();
+      }
       return null;
     }
   };
 
-  private DiskLruCache(File directory, int appVersion, int valueCount, long maxSize) {
+  private DiskLruCache(File directory, int appVersion, int valueCount, long maxSize,
+      JournalDurability durability) {
     this.directory = directory;
     this.appVersion = appVersion;
     this.journalFile = new File(directory, JOURNAL_FILE);
     this.journalFileTmp = new File(directory, JOURNAL_FILE_TEMP);
     this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+    this.indexFile = new File(directory, INDEX_FILE);
+    this.indexFileTmp = new File(directory, INDEX_FILE_TEMP);
     this.valueCount = valueCount;
     this.maxSize = maxSize;
+    this.durability = durability;
+    executorService.setKeepAliveTime(60L, TimeUnit.SECONDS);
+    executorService.allowCoreThreadTimeOut(true);
   }
 
   /**
@@ -199,6 +299,15 @@ public final class DiskLruCache implements Closeable {
    */
   public static DiskLruCache open(File directory, int appVersion, int valueCount, long maxSize)
       throws IOException {
+    return open(directory, appVersion, valueCount, maxSize, JournalDurability.PER_OP);
+  }
+
+  /**
+   * Opens the cache in {@code directory} like {@link #open(File, int, int, long)},
+   * writing the journal according to {@code durability}.
+   */
+  public static DiskLruCache open(File directory, int appVersion, int valueCount, long maxSize,
+      JournalDurability durability) throws IOException {
     if (maxSize <= 0) {
       throw new IllegalArgumentException("maxSize <= 0");
     }
@@ -219,11 +328,15 @@ public final class DiskLruCache implements Closeable {
     }
 
     // Prefer to pick up where we left off.
-    DiskLruCache cache = new DiskLruCache(directory, appVersion, valueCount, maxSize);
+    DiskLruCache cache = new DiskLruCache(directory, appVersion, valueCount, maxSize, durability);
     if (cache.journalFile.exists()) {
       try {
+        long start = System.nanoTime();
         cache.readJournal();
+        long journalRead = System.nanoTime();
         cache.processJournal();
+        cache.journalReadNanos = journalRead - start;
+        cache.processNanos = System.nanoTime() - journalRead;
         return cache;
       } catch (IOException journalIsCorrupt) {
         System.out
@@ -238,12 +351,19 @@ public final class DiskLruCache implements Closeable {
 
     // Create a new empty cache.
     directory.mkdirs();
-    cache = new DiskLruCache(directory, appVersion, valueCount, maxSize);
+    cache = new DiskLruCache(directory, appVersion, valueCount, maxSize, durability);
+    long start = System.nanoTime();
     cache.rebuildJournal();
+    cache.rebuildNanos = System.nanoTime() - start;
     return cache;
   }
 
   private void readJournal() throws IOException {
+    long checkpointOffset = readCheckpoint();
+    if (checkpointOffset > 0) {
+      readJournalTail(checkpointOffset);
+      return;
+    }
     StrictLineReader reader = new StrictLineReader(new FileInputStream(journalFile), Util.US_ASCII);
     try {
       String magic = reader.readLine();
@@ -283,6 +403,211 @@ public final class DiskLruCache implements Closeable {
     }
   }
 
+  /**
+   * Replays the journal lines written after the index checkpoint at {@code offset}.
+   */
+  private void readJournalTail(long offset) throws IOException {
+    FileInputStream in = new FileInputStream(journalFile);
+    try {
+      in.getChannel().position(offset);
+      StrictLineReader reader = new StrictLineReader(in, Util.US_ASCII);
+      int lineCount = 0;
+      while (true) {
+        try {
+          readJournalLine(reader.readLine());
+          lineCount++;
+        } catch (EOFException endOfJournal) {
+          break;
+        }
+      }
+      redundantOpCount += lineCount;
+      opsSinceCheckpoint = lineCount;
+
+      // If we ended on a truncated line, rebuild the journal before appending to it.
+      if (reader.hasUnterminatedLine()) {
+        rebuildJournal();
+      } else {
+        journalWriter = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(journalFile, true), Util.US_ASCII));
+      }
+    } finally {
+      Util.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Loads the index checkpoint into {@code lruEntries}.
+   *
+   * @return the journal offset covered by the checkpoint, or -1 if there is no
+   *     usable checkpoint and the whole journal must be replayed.
+   */
+  private long readCheckpoint() {
+    deleteQuietly(indexFileTmp);
+    if (!indexFile.exists()) {
+      return -1;
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(readFully(indexFile));
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), 0, buffer.limit() - 8);
+      if (buffer.getLong(buffer.limit() - 8) != crc.getValue()
+          || buffer.getInt() != INDEX_MAGIC
+          || buffer.getInt() != INDEX_VERSION_1
+          || buffer.getInt() != appVersion
+          || buffer.getInt() != valueCount) {
+        return -1;
+      }
+      long journalOffset = buffer.getLong();
+      long fingerprint = buffer.getLong();
+      if (journalOffset <= 0
+          || journalOffset > journalFile.length()
+          || fingerprint != journalFingerprint(journalOffset)) {
+        return -1;
+      }
+      int redundantOps = buffer.getInt();
+      long sequenceNumber = buffer.getLong();
+      int entryCount = buffer.getInt();
+      byte[] keyBytes = new byte[120];
+      for (int i = 0; i < entryCount; i++) {
+        int flags = buffer.get();
+        int keyLength = buffer.get();
+        buffer.get(keyBytes, 0, keyLength);
+        Entry entry = new Entry(new String(keyBytes, 0, keyLength, Util.US_ASCII));
+        entry.readable = (flags & INDEX_FLAG_READABLE) != 0;
+        entry.sequenceNumber = buffer.getLong();
+        for (int t = 0; t < valueCount; t++) {
+          entry.lengths[t] = buffer.getLong();
+        }
+        if ((flags & INDEX_FLAG_DIRTY) != 0) {
+          entry.currentEditor = new Editor(entry);
+        }
+        lruEntries.put(entry.key, entry);
+      }
+      redundantOpCount = redundantOps;
+      nextSequenceNumber = sequenceNumber;
+      return journalOffset;
+    } catch (Exception e) {
+      // Damaged or truncated checkpoint; fall back to replaying the whole journal.
+      lruEntries.clear();
+      return -1;
+    }
+  }
+
+  /**
+   * Writes a checkpoint of the index covering everything in the journal so far.
+   * Entries are copied while holding the lock; the file is written without it.
+   */
+  private void writeCheckpoint() {
+    final int generation;
+    final long journalOffset;
+    final long fingerprint;
+    final int redundantOps;
+    final long sequenceNumber;
+    final ByteArrayOutputStream records;
+    synchronized (this) {
+      if (journalWriter == null) {
+        return; // Closed.
+      }
+      try {
+        synchronized (journalLock) {
+          drainPendingRecords();
+          journalWriter.flush();
+          journalOffset = journalFile.length();
+        }
+        fingerprint = journalFingerprint(journalOffset);
+      } catch (IOException e) {
+        return;
+      }
+      generation = journalGeneration;
+      redundantOps = redundantOpCount;
+      sequenceNumber = nextSequenceNumber;
+      opsSinceCheckpoint = 0;
+      records = new ByteArrayOutputStream(lruEntries.size() * (18 + 8 * valueCount + 32));
+      DataOutputStream out = new DataOutputStream(records);
+      try {
+        out.writeInt(lruEntries.size());
+        for (Entry entry : lruEntries.values()) {
+          int flags = (entry.readable ? INDEX_FLAG_READABLE : 0)
+              | (entry.currentEditor != null ? INDEX_FLAG_DIRTY : 0);
+          out.writeByte(flags);
+          out.writeByte(entry.key.length());
+          out.writeBytes(entry.key);
+          out.writeLong(entry.sequenceNumber);
+          for (long length : entry.lengths) {
+            out.writeLong(length);
+          }
+        }
+      } catch (IOException e) {
+        return;
+      }
+    }
+
+    try {
+      CRC32 crc = new CRC32();
+      BufferedOutputStream file = new BufferedOutputStream(new FileOutputStream(indexFileTmp));
+      DataOutputStream out = new DataOutputStream(new CheckedOutputStream(file, crc));
+      try {
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(INDEX_VERSION_1);
+        out.writeInt(appVersion);
+        out.writeInt(valueCount);
+        out.writeLong(journalOffset);
+        out.writeLong(fingerprint);
+        out.writeInt(redundantOps);
+        out.writeLong(sequenceNumber);
+        records.writeTo(out);
+        out.flush();
+        // The trailing checksum covers everything before it.
+        new DataOutputStream(file).writeLong(crc.getValue());
+      } finally {
+        out.close();
+      }
+      synchronized (this) {
+        // The journal was rewritten meanwhile; this checkpoint no longer matches it.
+        if (generation != journalGeneration) {
+          deleteQuietly(indexFileTmp);
+          return;
+        }
+        renameTo(indexFileTmp, indexFile, true);
+      }
+    } catch (IOException e) {
+      deleteQuietly(indexFileTmp);
+    }
+  }
+
+  /** Returns a checksum of the journal bytes just before {@code offset}. */
+  private long journalFingerprint(long offset) throws IOException {
+    int length = (int) Math.min(offset, INDEX_FINGERPRINT_LENGTH);
+    byte[] bytes = new byte[length];
+    RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+    try {
+      file.seek(offset - length);
+      file.readFully(bytes);
+    } finally {
+      file.close();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, length);
+    return crc.getValue();
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      byte[] bytes = new byte[(int) file.length()];
+      in.readFully(bytes);
+      return bytes;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void deleteQuietly(File file) {
+    if (file.exists()) {
+      file.delete();
+    }
+  }
+
   private void readJournalLine(String line) throws IOException {
     int firstSpace = line.indexOf(' ');
     if (firstSpace == -1) {
@@ -350,9 +675,22 @@ public final class DiskLruCache implements Closeable {
    * current journal if it exists.
    */
   private synchronized void rebuildJournal() throws IOException {
+    synchronized (journalLock) {
+      rebuildJournalLocked();
+    }
+    writeCheckpoint();
+  }
+
+  private void rebuildJournalLocked() throws IOException {
     if (journalWriter != null) {
       journalWriter.close();
     }
+    // The old checkpoint describes the old journal; drop it before replacing the journal.
+    journalGeneration++;
+    deleteIfExists(indexFile);
+    // The rebuilt journal is written from lruEntries, which already reflects pending records.
+    pendingRecords.clear();
+    pendingRecordCount.set(0);
 
     Writer writer = new BufferedWriter(
         new OutputStreamWriter(new FileOutputStream(journalFileTmp), Util.US_ASCII));
@@ -440,9 +778,12 @@ public final class DiskLruCache implements Closeable {
       return null;
     }
 
-    redundantOpCount++;
-    journalWriter.append(READ + ' ' + key + '\n');
-    if (journalRebuildRequired()) {
+    opsSinceCheckpoint++;
+    if (durability != JournalDurability.LAZY) {
+      redundantOpCount++;
+      appendJournal(READ + ' ' + key + '\n');
+    }
+    if (journalRebuildRequired() || opsSinceCheckpoint >= INDEX_CHECKPOINT_INTERVAL) {
       executorService.submit(cleanupCallable);
     }
 
@@ -476,11 +817,30 @@ public final class DiskLruCache implements Closeable {
     entry.currentEditor = editor;
 
     // Flush the journal before creating files to prevent file leaks.
-    journalWriter.write(DIRTY + ' ' + key + '\n');
-    journalWriter.flush();
+    opsSinceCheckpoint++;
+    synchronized (journalLock) {
+      drainPendingRecords();
+      journalWriter.write(DIRTY + ' ' + key + '\n');
+      journalWriter.flush();
+    }
     return editor;
   }
 
+  /** Returns the time {@link #open} spent reading the journal, in nanoseconds. */
+  public long getJournalReadNanos() {
+    return journalReadNanos;
+  }
+
+  /** Returns the time {@link #open} spent processing the journal, in nanoseconds. */
+  public long getProcessNanos() {
+    return processNanos;
+  }
+
+  /** Returns the time {@link #open} spent rebuilding the journal, in nanoseconds. */
+  public long getRebuildNanos() {
+    return rebuildNanos;
+  }
+
   /** Returns the directory where this cache stores its data. */
   public File getDirectory() {
     return directory;
@@ -512,6 +872,41 @@ public final class DiskLruCache implements Closeable {
     return size;
   }
 
+  private void addSize(long delta) {
+    size += delta;
+    if (sharedSize != null) {
+      sharedSize.addAndGet(delta);
+    }
+  }
+
+  /**
+   * Makes this cache one shard of a shared budget: its size is added to
+   * {@code sharedSize} and {@code sharedTrim} runs on the cleanup thread
+   * whenever the shared size exceeds {@code maxSize}.
+   */
+  synchronized void shareBudget(AtomicLong sharedSize, Runnable sharedTrim) {
+    this.sharedSize = sharedSize;
+    this.sharedTrim = sharedTrim;
+    sharedSize.addAndGet(size);
+  }
+
+  /**
+   * Removes the least recently used entry that isn't being edited.
+   *
+   * @return false if there is no such entry or this cache is closed.
+   */
+  synchronized boolean removeEldest() throws IOException {
+    if (journalWriter == null) {
+      return false;
+    }
+    for (Entry entry : lruEntries.values()) {
+      if (entry.currentEditor == null) {
+        return remove(entry.key);
+      }
+    }
+    return false;
+  }
+
   private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
     Entry entry = editor.entry;
     if (entry.currentEditor != editor) {
@@ -541,7 +936,7 @@ public final class DiskLruCache implements Closeable {
           long oldLength = entry.lengths[i];
           long newLength = clean.length();
           entry.lengths[i] = newLength;
-          size = size - oldLength + newLength;
+          addSize(newLength - oldLength);
         }
       } else {
         deleteIfExists(dirty);
@@ -549,24 +944,59 @@ public final class DiskLruCache implements Closeable {
     }
 
     redundantOpCount++;
+    opsSinceCheckpoint++;
     entry.currentEditor = null;
     if (entry.readable | success) {
       entry.readable = true;
-      journalWriter.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
+      appendJournal(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
       if (success) {
         entry.sequenceNumber = nextSequenceNumber++;
       }
     } else {
       lruEntries.remove(entry.key);
-      journalWriter.write(REMOVE + ' ' + entry.key + '\n');
+      appendJournal(REMOVE + ' ' + entry.key + '\n');
+    }
+    if (durability == JournalDurability.PER_OP) {
+      synchronized (journalLock) {
+        journalWriter.flush();
+      }
     }
-    journalWriter.flush();
 
-    if (size > maxSize || journalRebuildRequired()) {
+    if (size > maxSize || (sharedSize != null && sharedSize.get() > maxSize)
+        || journalRebuildRequired() || opsSinceCheckpoint >= INDEX_CHECKPOINT_INTERVAL) {
       executorService.submit(cleanupCallable);
     }
   }
 
+  /**
+   * Writes a journal record. Unless durability is {@link JournalDurability#PER_OP}
+   * the record is queued and written by the background thread in batches.
+   */
+  private void appendJournal(String record) throws IOException {
+    if (durability == JournalDurability.PER_OP) {
+      synchronized (journalLock) {
+        journalWriter.append(record);
+      }
+      return;
+    }
+    pendingRecords.offer(record);
+    if (pendingRecordCount.incrementAndGet() >= JOURNAL_BATCH_SIZE) {
+      executorService.submit(journalFlushCallable);
+    } else if (journalFlushScheduled.compareAndSet(false, true)) {
+      executorService.schedule(journalFlushCallable, JOURNAL_BATCH_INTERVAL_MILLIS,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Moves queued records into the journal writer. Must hold the journal lock. */
+  private void drainPendingRecords() throws IOException {
+    String record;
+    while ((record = pendingRecords.poll()) != null) {
+      pendingRecordCount.decrementAndGet();
+      journalWriter.append(record);
+    }
+  }
+
   /**
    * We only rebuild the journal when it will halve the size of the journal
    * and eliminate at least 2000 ops.
@@ -596,15 +1026,16 @@ public final class DiskLruCache implements Closeable {
       if (file.exists() && !file.delete()) {
         throw new IOException("failed to delete " + file);
       }
-      size -= entry.lengths[i];
+      addSize(-entry.lengths[i]);
       entry.lengths[i] = 0;
     }
 
     redundantOpCount++;
-    journalWriter.append(REMOVE + ' ' + key + '\n');
+    opsSinceCheckpoint++;
+    appendJournal(REMOVE + ' ' + key + '\n');
     lruEntries.remove(key);
 
-    if (journalRebuildRequired()) {
+    if (journalRebuildRequired() || opsSinceCheckpoint >= INDEX_CHECKPOINT_INTERVAL) {
       executorService.submit(cleanupCallable);
     }
 
@@ -626,7 +1057,10 @@ public final class DiskLruCache implements Closeable {
   public synchronized void flush() throws IOException {
     checkNotClosed();
     trimToSize();
-    journalWriter.flush();
+    synchronized (journalLock) {
+      drainPendingRecords();
+      journalWriter.flush();
+    }
   }
 
   /** Closes this cache. Stored values will remain on the filesystem. */
@@ -640,8 +1074,11 @@ public final class DiskLruCache implements Closeable {
       }
     }
     trimToSize();
-    journalWriter.close();
-    journalWriter = null;
+    writeCheckpoint();
+    synchronized (journalLock) {
+      journalWriter.close();
+      journalWriter = null;
+    }
   }
 
   private void trimToSize() throws IOException {
@@ -696,6 +1133,19 @@ public final class DiskLruCache implements Closeable {
       return DiskLruCache.this.edit(key, sequenceNumber);
     }
 
+    /** Returns the sequence number of the edit this snapshot was created from. */
+    public long getSequenceNumber() {
+      return sequenceNumber;
+    }
+
+    /**
+     * Returns the channel of the file with the value for {@code index}. It is
+     * closed together with the snapshot.
+     */
+    public FileChannel getChannel(int index) {
+      return ((FileInputStream) ins[index]).getChannel();
+    }
+
     /** Returns the unbuffered stream with the value for {@code index}. */
     public InputStream getInputStream(int index) {
       return ins[index];
@@ -0,0 +1,645 @@
+package com.mrcd.webview.utils.lru;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A cache that appends small entries to a few large segment files instead of
+ * creating files per entry. Each entry holds a metadata blob and a body blob.
+ *
+ * <p>Segments are append-only. Writing a key appends a PUT record; removing or
+ * evicting it appends a TOMBSTONE record. An in-memory index maps each key to
+ * its latest PUT record and is rebuilt on open by scanning record headers in
+ * segment order. Entries are evicted in LRU order once the live records exceed
+ * the maximum size.
+ *
+ * <p>Replaced and removed records leave garbage behind. When garbage makes up
+ * half of the segment bytes, a background thread compacts the oldest segment:
+ * its live records are copied to the active segment and the file is deleted.
+ * Because the oldest segment has nothing older to shadow, its tombstones can be
+ * dropped.
+ *
+ * <p>Record layout:
+ * <pre>
+ *   int magic, byte type, short keyLength, int metaLength, int bodyLength,
+ *   key, meta, int crc(key + meta), body, int crc(body)
+ * </pre>
+ * Checksums are verified when an entry is read rather than while scanning.
+ */
+public final class PackFileStore implements Closeable {
+  static final String SEGMENT_PREFIX = "segment-";
+  static final String SEGMENT_SUFFIX = ".pack";
+
+  private static final int SEGMENT_MAGIC = 0x50434b53;
+  private static final int SEGMENT_VERSION_1 = 1;
+  private static final int SEGMENT_HEADER_SIZE = 8;
+  private static final int RECORD_MAGIC = 0x50434b52;
+  private static final int RECORD_HEADER_SIZE = 15;
+  private static final byte TYPE_PUT = 1;
+  private static final byte TYPE_TOMBSTONE = 2;
+  /** A segment stops accepting records once it reaches this size. */
+  private static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+
+  private final File directory;
+  private final long maxSize;
+  private final LinkedHashMap<String, Location> index =
+      new LinkedHashMap<String, Location>(0, 0.75f, true);
+  /** Segments in write order; the last one is the active segment. */
+  private final List<Segment> segments = new ArrayList<Segment>();
+  private long size;
+  private long fileBytes;
+  private int nextSegmentId;
+  /**
+   * Sequence numbers are negative so that they never collide with the ones of
+   * {@link DiskLruCache}, which keeps large entries of the same cache.
+   */
+  private long nextSequenceNumber = -1;
+  private boolean closed;
+
+  final ThreadPoolExecutor executorService =
+      new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+  private final Callable<Void> compactCallable = new Callable<Void>() {
+    public Void call() throws Exception {
+      while (compactOldestSegment()) {
+        // Keep going until garbage is back under the threshold.
+      }
+      return null;
+    }
+  };
+
+  private PackFileStore(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Opens the store in {@code directory}, creating it if necessary.
+   *
+   * @param maxSize the maximum number of bytes of live records
+   */
+  public static PackFileStore open(File directory, long maxSize) throws IOException {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize <= 0");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("failed to create directory: " + directory);
+    }
+    PackFileStore store = new PackFileStore(directory, maxSize);
+    try {
+      synchronized (store) {
+        store.readSegments();
+        store.trimToSize();
+      }
+    } catch (IOException e) {
+      store.close();
+      throw e;
+    }
+    return store;
+  }
+
+  private void readSegments() throws IOException {
+    File[] files = directory.listFiles(new FilenameFilter() {
+      @Override public boolean accept(File dir, String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    int[] ids = new int[files != null ? files.length : 0];
+    int count = 0;
+    for (int i = 0; i < ids.length; i++) {
+      int id = segmentId(files[i].getName());
+      if (id >= 0) {
+        ids[count++] = id;
+      } else {
+        files[i].delete();
+      }
+    }
+    ids = Arrays.copyOf(ids, count);
+    Arrays.sort(ids);
+    for (int id : ids) {
+      Segment segment = new Segment(segmentFile(id));
+      if (!segment.open(false)) {
+        segment.delete();
+        continue;
+      }
+      segments.add(segment);
+      fileBytes += segment.length;
+      scanSegment(segment);
+      nextSegmentId = id + 1;
+    }
+  }
+
+  /** Deletes a closed store in {@code directory}. */
+  public static void delete(File directory) throws IOException {
+    if (directory.exists()) {
+      Util.deleteContents(directory);
+      if (!directory.delete()) {
+        throw new IOException("failed to delete directory: " + directory);
+      }
+    }
+  }
+
+  private static int segmentId(String name) {
+    try {
+      return Integer.parseInt(
+          name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private File segmentFile(int id) {
+    return new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+  }
+
+  /** Replays the record headers of {@code segment}, dropping a truncated tail. */
+  private void scanSegment(Segment segment) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    long position = SEGMENT_HEADER_SIZE;
+    while (position + RECORD_HEADER_SIZE <= segment.length) {
+      header.clear();
+      readFully(segment.channel(), header, position);
+      header.flip();
+      if (header.getInt() != RECORD_MAGIC) {
+        break;
+      }
+      byte type = header.get();
+      int keyLength = header.getShort() & 0xffff;
+      int metaLength = header.getInt();
+      int bodyLength = header.getInt();
+      if (metaLength < 0 || bodyLength < 0) {
+        break;
+      }
+      long recordLength = recordLength(keyLength, metaLength, bodyLength);
+      if (position + recordLength > segment.length) {
+        break;
+      }
+      ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+      readFully(segment.channel(), keyBuffer, position + RECORD_HEADER_SIZE);
+      String key = new String(keyBuffer.array(), Util.US_ASCII);
+      if (type == TYPE_PUT) {
+        putLocation(key, new Location(segment, position, keyLength, metaLength, bodyLength,
+            nextSequenceNumber--));
+      } else if (type == TYPE_TOMBSTONE) {
+        removeLocation(key);
+      } else {
+        break;
+      }
+      position += recordLength;
+    }
+    if (position < segment.length) {
+      // A crash interrupted the last write; drop the partial record.
+      fileBytes -= segment.length - position;
+      segment.truncate(position);
+    }
+  }
+
+  private static long recordLength(int keyLength, int metaLength, int bodyLength) {
+    return RECORD_HEADER_SIZE + keyLength + metaLength + 4 + bodyLength + 4L;
+  }
+
+  private void putLocation(String key, Location location) {
+    removeLocation(key);
+    index.put(key, location);
+    location.segment.liveBytes += location.recordLength();
+    size += location.recordLength();
+  }
+
+  private Location removeLocation(String key) {
+    Location previous = index.remove(key);
+    if (previous != null) {
+      previous.segment.liveBytes -= previous.recordLength();
+      size -= previous.recordLength();
+    }
+    return previous;
+  }
+
+  /**
+   * Returns the entry named {@code key}, or null if it doesn't exist. The
+   * entry reads from the segment lazily; if the segment is compacted away in
+   * the meantime, reading it fails with an {@link IOException}.
+   */
+  public synchronized Entry get(String key) {
+    if (closed) {
+      return null;
+    }
+    Location location = index.get(key);
+    return location != null ? new Entry(key, location) : null;
+  }
+
+  /** Stores {@code meta} and {@code body} as the entry named {@code key}. */
+  public synchronized void put(String key, byte[] meta, byte[] body) throws IOException {
+    checkNotClosed();
+    byte[] keyBytes = key.getBytes(Util.US_ASCII);
+    if (keyBytes.length > 0xffff) {
+      throw new IllegalArgumentException("key is too long: " + key);
+    }
+    long recordLength = recordLength(keyBytes.length, meta.length, body.length);
+    ByteBuffer record = ByteBuffer.allocate((int) recordLength);
+    record.putInt(RECORD_MAGIC);
+    record.put(TYPE_PUT);
+    record.putShort((short) keyBytes.length);
+    record.putInt(meta.length);
+    record.putInt(body.length);
+    record.put(keyBytes);
+    record.put(meta);
+    record.putInt(crc(keyBytes, meta));
+    record.put(body);
+    record.putInt(crc(body));
+    record.flip();
+    long position = append(record);
+    putLocation(key, new Location(activeSegment(), position, keyBytes.length, meta.length,
+        body.length, nextSequenceNumber--));
+    trimToSize();
+    scheduleCompactionIfNeeded();
+  }
+
+  /** Drops the entry for {@code key} if it exists. */
+  public synchronized boolean remove(String key) throws IOException {
+    checkNotClosed();
+    if (removeLocation(key) == null) {
+      return false;
+    }
+    appendTombstone(key);
+    scheduleCompactionIfNeeded();
+    return true;
+  }
+
+  private void appendTombstone(String key) throws IOException {
+    byte[] keyBytes = key.getBytes(Util.US_ASCII);
+    ByteBuffer record = ByteBuffer.allocate((int) recordLength(keyBytes.length, 0, 0));
+    record.putInt(RECORD_MAGIC);
+    record.put(TYPE_TOMBSTONE);
+    record.putShort((short) keyBytes.length);
+    record.putInt(0);
+    record.putInt(0);
+    record.put(keyBytes);
+    record.putInt(crc(keyBytes, new byte[0]));
+    record.putInt(crc(new byte[0]));
+    record.flip();
+    append(record);
+  }
+
+  /** Appends {@code record} to the active segment and returns its position. */
+  private long append(ByteBuffer record) throws IOException {
+    Segment segment = segments.isEmpty() ? null : activeSegment();
+    if (segment == null || (segment.length > SEGMENT_HEADER_SIZE
+        && segment.length + record.remaining() > SEGMENT_SIZE)) {
+      segment = new Segment(segmentFile(nextSegmentId++));
+      segment.open(true);
+      segments.add(segment);
+      fileBytes += segment.length;
+    }
+    long position = segment.length;
+    int length = record.remaining();
+    FileChannel channel = segment.channel();
+    long offset = position;
+    while (record.hasRemaining()) {
+      offset += channel.write(record, offset);
+    }
+    segment.length += length;
+    fileBytes += length;
+    return position;
+  }
+
+  private Segment activeSegment() {
+    return segments.get(segments.size() - 1);
+  }
+
+  private void trimToSize() throws IOException {
+    Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      Map.Entry<String, Location> eldest = iterator.next();
+      iterator.remove();
+      Location location = eldest.getValue();
+      location.segment.liveBytes -= location.recordLength();
+      size -= location.recordLength();
+      appendTombstone(eldest.getKey());
+    }
+  }
+
+  private boolean compactionRequired() {
+    return segments.size() > 1 && fileBytes - size >= size;
+  }
+
+  private void scheduleCompactionIfNeeded() {
+    if (compactionRequired()) {
+      executorService.submit(compactCallable);
+    }
+  }
+
+  /**
+   * Moves the live records of the oldest segment to the active segment and
+   * deletes it. Returns true if another round of compaction is required.
+   */
+  private boolean compactOldestSegment() throws IOException {
+    Segment oldest;
+    synchronized (this) {
+      if (closed || !compactionRequired()) {
+        return false;
+      }
+      oldest = segments.get(0);
+    }
+    long position = SEGMENT_HEADER_SIZE;
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    Set<Segment> copiedTo = new LinkedHashSet<Segment>();
+    while (true) {
+      synchronized (this) {
+        if (closed) {
+          return false;
+        }
+        if (position + RECORD_HEADER_SIZE > oldest.length) {
+          break;
+        }
+        header.clear();
+        readFully(oldest.channel(), header, position);
+        header.flip();
+        if (header.getInt() != RECORD_MAGIC) {
+          break;
+        }
+        byte type = header.get();
+        int keyLength = header.getShort() & 0xffff;
+        int metaLength = header.getInt();
+        int bodyLength = header.getInt();
+        long recordLength = recordLength(keyLength, metaLength, bodyLength);
+        if (type == TYPE_PUT) {
+          Segment target = copyIfLive(oldest, position, keyLength, (int) recordLength);
+          if (target != null) {
+            copiedTo.add(target);
+          }
+        }
+        position += recordLength;
+      }
+    }
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      // The copies must be durable before the only other copy of those records is deleted.
+      for (Segment segment : copiedTo) {
+        segment.channel().force(false);
+      }
+      segments.remove(oldest);
+      fileBytes -= oldest.length;
+      oldest.delete();
+      return compactionRequired();
+    }
+  }
+
+  /** Copies a live record to the active segment and returns that segment, or null if garbage. */
+  private Segment copyIfLive(Segment segment, long position, int keyLength, int recordLength)
+      throws IOException {
+    ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+    readFully(segment.channel(), keyBuffer, position + RECORD_HEADER_SIZE);
+    String key = new String(keyBuffer.array(), Util.US_ASCII);
+    Location location = index.get(key);
+    if (location == null || location.segment != segment || location.position != position) {
+      return null; // Replaced or removed; the record is garbage.
+    }
+    ByteBuffer record = ByteBuffer.allocate(recordLength);
+    readFully(segment.channel(), record, position);
+    record.flip();
+    long newPosition = append(record);
+    // Replace the location in place so the entry keeps its place in the LRU order.
+    segment.liveBytes -= location.recordLength();
+    location.segment = activeSegment();
+    location.position = newPosition;
+    location.segment.liveBytes += location.recordLength();
+    return location.segment;
+  }
+
+  /** Returns the number of bytes of live records. */
+  public synchronized long size() {
+    return size;
+  }
+
+  /** Returns the number of bytes of all segment files, garbage included. */
+  public synchronized long getFileBytes() {
+    return fileBytes;
+  }
+
+  public synchronized int getEntryCount() {
+    return index.size();
+  }
+
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  private void checkNotClosed() {
+    if (closed) {
+      throw new IllegalStateException("store is closed");
+    }
+  }
+
+  /** Force written records to the filesystem. */
+  public synchronized void flush() throws IOException {
+    checkNotClosed();
+    if (!segments.isEmpty()) {
+      activeSegment().channel().force(false);
+    }
+  }
+
+  /** Closes the store. Stored values will remain on the filesystem. */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Segment segment : segments) {
+      segment.close();
+    }
+    segments.clear();
+    index.clear();
+    executorService.shutdown();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int count = channel.read(buffer, position);
+      if (count == -1) {
+        throw new EOFException();
+      }
+      position += count;
+    }
+  }
+
+  private static int crc(byte[]... parts) {
+    CRC32 crc = new CRC32();
+    for (byte[] part : parts) {
+      crc.update(part, 0, part.length);
+    }
+    return (int) crc.getValue();
+  }
+
+  /** A read-only view of a stored entry. */
+  public final class Entry {
+    private final String key;
+    private final Segment segment;
+    private final long position;
+    private final int keyLength;
+    private final int metaLength;
+    private final int bodyLength;
+    private final long sequenceNumber;
+
+    private Entry(String key, Location location) {
+      this.key = key;
+      this.segment = location.segment;
+      this.position = location.position;
+      this.keyLength = location.keyLength;
+      this.metaLength = location.metaLength;
+      this.bodyLength = location.bodyLength;
+      this.sequenceNumber = location.sequenceNumber;
+    }
+
+    /** Returns a number that changes whenever the entry is written again. */
+    public long getSequenceNumber() {
+      return sequenceNumber;
+    }
+
+    public int getMetaLength() {
+      return metaLength;
+    }
+
+    public int getBodyLength() {
+      return bodyLength;
+    }
+
+    public byte[] readMeta() throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(keyLength + metaLength + 4);
+      readFully(segment.channel(), buffer, position + RECORD_HEADER_SIZE);
+      buffer.flip();
+      byte[] keyBytes = new byte[keyLength];
+      byte[] meta = new byte[metaLength];
+      buffer.get(keyBytes);
+      buffer.get(meta);
+      if (buffer.getInt() != crc(keyBytes, meta)
+          || !key.equals(new String(keyBytes, Util.US_ASCII))) {
+        throw new IOException("corrupt meta of " + key);
+      }
+      return meta;
+    }
+
+    public byte[] readBody() throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(bodyLength + 4);
+      readFully(segment.channel(), buffer,
+          position + RECORD_HEADER_SIZE + keyLength + metaLength + 4);
+      buffer.flip();
+      byte[] body = new byte[bodyLength];
+      buffer.get(body);
+      if (buffer.getInt() != crc(body)) {
+        throw new IOException("corrupt body of " + key);
+      }
+      return body;
+    }
+  }
+
+  private static final class Location {
+    Segment segment;
+    long position;
+    final int keyLength;
+    final int metaLength;
+    final int bodyLength;
+    final long sequenceNumber;
+
+    Location(Segment segment, long position, int keyLength, int metaLength, int bodyLength,
+        long sequenceNumber) {
+      this.segment = segment;
+      this.position = position;
+      this.keyLength = keyLength;
+      this.metaLength = metaLength;
+      this.bodyLength = bodyLength;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    long recordLength() {
+      return PackFileStore.recordLength(keyLength, metaLength, bodyLength);
+    }
+  }
+
+  private static final class Segment {
+    final File file;
+    long length;
+    long liveBytes;
+    private RandomAccessFile randomAccessFile;
+    private boolean deleted;
+
+    Segment(File file) {
+      this.file = file;
+    }
+
+    /**
+     * Opens the segment file, writing the header if {@code create} is true.
+     * Returns false if an existing file doesn't have a valid header.
+     */
+    boolean open(boolean create) throws IOException {
+      randomAccessFile = new RandomAccessFile(file, "rw");
+      if (create) {
+        randomAccessFile.setLength(0);
+        randomAccessFile.writeInt(SEGMENT_MAGIC);
+        randomAccessFile.writeInt(SEGMENT_VERSION_1);
+        length = SEGMENT_HEADER_SIZE;
+        return true;
+      }
+      length = randomAccessFile.length();
+      return length >= SEGMENT_HEADER_SIZE
+          && randomAccessFile.readInt() == SEGMENT_MAGIC
+          && randomAccessFile.readInt() == SEGMENT_VERSION_1;
+    }
+
+    /**
+     * Returns the channel of this segment. A channel closed by an interrupted
+     * reader is reopened unless the segment has been deleted.
+     */
+    synchronized FileChannel channel() throws IOException {
+      FileChannel channel = randomAccessFile.getChannel();
+      if (!channel.isOpen() && !deleted) {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+      }
+      return channel;
+    }
+
+    void truncate(long length) throws IOException {
+      channel().truncate(length);
+      this.length = length;
+    }
+
+    synchronized void close() {
+      Util.closeQuietly(randomAccessFile);
+    }
+
+    synchronized void delete() {
+      deleted = true;
+      close();
+      file.delete();
+    }
+  }
+}
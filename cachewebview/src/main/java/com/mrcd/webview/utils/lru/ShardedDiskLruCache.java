@@ -0,0 +1,246 @@
+package com.mrcd.webview.utils.lru;
+
+import com.mrcd.webview.config.JournalDurability;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A disk cache split into independent {@link DiskLruCache} shards selected by
+ * key hash. Each shard has its own journal and lock, so requests for different
+ * keys don't contend on one monitor. The size budget is shared: when all shards
+ * together exceed it, the largest shard evicts its least recently used entries
+ * first, so a shard that hashing favours isn't trimmed while others sit empty.
+ *
+ * <p>With a single shard the cache lives directly in {@code directory}, which
+ * keeps the layout of caches created before sharding. Files left by a different
+ * shard count are deleted on open.
+ */
+public final class ShardedDiskLruCache implements Closeable {
+  static final String SHARD_PREFIX = "shard-";
+
+  private final File directory;
+  private final DiskLruCache[] shards;
+  private final AtomicLong size = new AtomicLong();
+  private volatile long maxSize;
+  private final Runnable trimCallback = new Runnable() {
+    public void run() {
+      try {
+        trimToSize();
+      } catch (IOException ignored) {
+      }
+    }
+  };
+
+  private ShardedDiskLruCache(File directory, DiskLruCache[] shards, long maxSize) {
+    this.directory = directory;
+    this.shards = shards;
+    this.maxSize = maxSize;
+    if (shards.length > 1) {
+      for (DiskLruCache shard : shards) {
+        shard.shareBudget(size, trimCallback);
+      }
+    }
+  }
+
+  /**
+   * Opens {@code shardCount} caches under {@code directory} that together
+   * store at most {@code maxSize} bytes.
+   */
+  public static ShardedDiskLruCache open(File directory, int appVersion, int valueCount,
+      long maxSize, int shardCount, JournalDurability durability) throws IOException {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("shardCount <= 0");
+    }
+    deleteOtherLayouts(directory, shardCount);
+
+    DiskLruCache[] shards = new DiskLruCache[shardCount];
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        File shardDirectory = shardCount == 1 ? directory : new File(directory, SHARD_PREFIX + i);
+        shards[i] = DiskLruCache.open(shardDirectory, appVersion, valueCount, maxSize, durability);
+      }
+    } catch (IOException e) {
+      for (DiskLruCache shard : shards) {
+        Util.closeQuietly(shard);
+      }
+      throw e;
+    }
+    return new ShardedDiskLruCache(directory, shards, maxSize);
+  }
+
+  private static void deleteOtherLayouts(File directory, int shardCount) throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      boolean keep;
+      if (shardCount == 1) {
+        keep = !isShardDirectory(file);
+      } else {
+        keep = isShardDirectory(file) && shardIndex(file) < shardCount;
+      }
+      if (keep) {
+        continue;
+      }
+      if (file.isDirectory()) {
+        Util.deleteContents(file);
+      }
+      if (!file.delete()) {
+        throw new IOException("failed to delete file: " + file);
+      }
+    }
+  }
+
+  private static boolean isShardDirectory(File file) {
+    return file.isDirectory() && file.getName().startsWith(SHARD_PREFIX) && shardIndex(file) >= 0;
+  }
+
+  private static int shardIndex(File file) {
+    try {
+      return Integer.parseInt(file.getName().substring(SHARD_PREFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private DiskLruCache shardFor(String key) {
+    return shards[(key.hashCode() & Integer.MAX_VALUE) % shards.length];
+  }
+
+  /** Returns a snapshot of the entry named {@code key}, or null if it doesn't exist. */
+  public DiskLruCache.Snapshot get(String key) throws IOException {
+    return shardFor(key).get(key);
+  }
+
+  /** Returns an editor for the entry named {@code key}, or null if another edit is in progress. */
+  public DiskLruCache.Editor edit(String key) throws IOException {
+    return shardFor(key).edit(key);
+  }
+
+  /** Drops the entry for {@code key} if it exists and can be removed. */
+  public boolean remove(String key) throws IOException {
+    return shardFor(key).remove(key);
+  }
+
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /** Returns the size budget of all shards together. */
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /** Changes the size budget shared by the shards and queues a job to trim them. */
+  public void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+    for (DiskLruCache shard : shards) {
+      shard.setMaxSize(maxSize);
+    }
+  }
+
+  /** Returns the number of bytes used by all shards together. */
+  public long size() {
+    if (shards.length == 1) {
+      return shards[0].size();
+    }
+    return size.get();
+  }
+
+  /**
+   * Evicts entries until all shards together fit the budget, always from the
+   * currently largest shard. Only one shard lock is held at a time.
+   */
+  private synchronized void trimToSize() throws IOException {
+    while (size.get() > maxSize) {
+      DiskLruCache largest = null;
+      long largestSize = 0;
+      for (DiskLruCache shard : shards) {
+        long shardSize = shard.size();
+        if (largest == null || shardSize > largestSize) {
+          largest = shard;
+          largestSize = shardSize;
+        }
+      }
+      if (!largest.removeEldest()) {
+        return;
+      }
+    }
+  }
+
+  /** Returns the time {@link #open} spent reading journals, in nanoseconds. */
+  public long getJournalReadNanos() {
+    long nanos = 0;
+    for (DiskLruCache shard : shards) {
+      nanos += shard.getJournalReadNanos();
+    }
+    return nanos;
+  }
+
+  /** Returns the time {@link #open} spent processing journals, in nanoseconds. */
+  public long getProcessNanos() {
+    long nanos = 0;
+    for (DiskLruCache shard : shards) {
+      nanos += shard.getProcessNanos();
+    }
+    return nanos;
+  }
+
+  /** Returns the time {@link #open} spent rebuilding journals, in nanoseconds. */
+  public long getRebuildNanos() {
+    long nanos = 0;
+    for (DiskLruCache shard : shards) {
+      nanos += shard.getRebuildNanos();
+    }
+    return nanos;
+  }
+
+  /** Returns true if any shard has been closed. */
+  public boolean isClosed() {
+    for (DiskLruCache shard : shards) {
+      if (shard.isClosed()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Force buffered operations of every shard to the filesystem. */
+  public void flush() throws IOException {
+    if (shards.length > 1) {
+      trimToSize();
+    }
+    for (DiskLruCache shard : shards) {
+      shard.flush();
+    }
+  }
+
+  /** Closes every shard. Stored values will remain on the filesystem. */
+  public void close() throws IOException {
+    IOException failure = null;
+    for (DiskLruCache shard : shards) {
+      try {
+        shard.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** Closes every shard and deletes all of the stored values. */
+  public void delete() throws IOException {
+    close();
+    Util.deleteContents(directory);
+  }
+}
@@ -0,0 +1,157 @@
+package com.mrcd.webview;
+
+import com.mrcd.webview.cache.CacheRequest;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.Chain;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.DefaultMimeTypeFilter;
+import com.mrcd.webview.config.MimeTypeFilter;
+import com.mrcd.webview.utils.Clock;
+import com.mrcd.webview.utils.StreamUtils;
+
+import org.junit.Assume;
+import org.junit.rules.TemporaryFolder;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试共用的请求和响应
+ */
+public final class TestResources {
+
+    private TestResources() {
+    }
+
+    /**
+     * 基准测试默认跳过，使用 -Dbenchmark=true 运行
+     */
+    public static void assumeBenchmark() {
+        Assume.assumeTrue("benchmark disabled, run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+    }
+
+    /**
+     * 缓存目录建在临时目录中，不监听系统内存压力，其余配置由测试在返回的 Builder 上设置
+     */
+    public static CacheConfig.Builder newConfig(TemporaryFolder folder) throws IOException {
+        return new CacheConfig.Builder(RuntimeEnvironment.getApplication())
+                .setCacheDir(folder.newFolder().getPath())
+                .setMemorySignalSource(null);
+    }
+
+    /**
+     * 默认的过滤器把脚本和样式交给 OkHttp 缓存，使用这个过滤器后所有类型都由磁盘缓存保存
+     */
+    public static MimeTypeFilter cacheAllTypes() {
+        return new DefaultMimeTypeFilter(new HashSet<String>());
+    }
+
+    public static CacheRequest newRequest(String url, String mime) {
+        final CacheRequest request = new CacheRequest();
+        request.setUrl(url);
+        request.setMime(mime);
+        request.setForceMode(true);
+        request.setHeaders(new HashMap<String, String>());
+        return request;
+    }
+
+    public static WebResource load(List<CacheInterceptor> interceptors, String url, String mime) {
+        return new Chain(interceptors).process(newRequest(url, mime));
+    }
+
+    /**
+     * 读取完整的 body，流的形式会读完并关闭，与 WebView 的读取方式一致
+     */
+    public static byte[] readBody(WebResource resource) throws IOException {
+        if (resource.getOriginBytes() != null) {
+            return resource.getOriginBytes();
+        }
+        return StreamUtils.streamToBytes(resource.getOriginStream());
+    }
+
+    public static byte[] randomBytes(int size, long seed) {
+        final byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * 可以手动拨动的时钟
+     */
+    public static class ManualClock implements Clock {
+
+        private volatile long mNow;
+
+        public ManualClock(long now) {
+            mNow = now;
+        }
+
+        public void advance(long millis) {
+            mNow += millis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    /**
+     * 代替网络的最后一个拦截器，按 url 返回固定的内容并统计请求次数
+     */
+    public static class FakeOrigin implements CacheInterceptor {
+
+        private final Map<String, byte[]> mBodies = new ConcurrentHashMap<>();
+        private final AtomicInteger mLoadCount = new AtomicInteger();
+        private final String mContentType;
+        private final boolean mStream;
+
+        /**
+         * @param contentType 响应的 Content-Type，需是 {@link com.mrcd.webview.config.MimeTypeFilter} 之外的类型才会写入磁盘缓存
+         * @param stream      是否以流的形式返回 body，与网络响应一致
+         */
+        public FakeOrigin(String contentType, boolean stream) {
+            mContentType = contentType;
+            mStream = stream;
+        }
+
+        public FakeOrigin put(String url, byte[] body) {
+            mBodies.put(url, body);
+            return this;
+        }
+
+        public int getLoadCount() {
+            return mLoadCount.get();
+        }
+
+        @Override
+        public WebResource load(Chain chain) {
+            final byte[] body = mBodies.get(chain.getRequest().getUrl());
+            if (body == null) {
+                return null;
+            }
+            mLoadCount.incrementAndGet();
+            final Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", mContentType);
+            final WebResource resource = new WebResource();
+            resource.setResponseCode(200);
+            resource.setReasonPhrase("OK");
+            resource.setResponseHeaders(headers);
+            resource.setCacheByOurselves(true);
+            if (mStream) {
+                resource.setOriginStream(new ByteArrayInputStream(body));
+            } else {
+                resource.setOriginBytes(body);
+            }
+            return resource;
+        }
+    }
+}
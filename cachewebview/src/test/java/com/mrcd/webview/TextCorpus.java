@@ -0,0 +1,73 @@
+package com.mrcd.webview;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * 生成类似压缩前的网页脚本和样式的文本，用于压缩相关的测试。
+ * 由常见关键字、有限的标识符和随机数字组成，压缩率与真实的 JS、CSS 相近
+ */
+public final class TextCorpus {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] KEYWORDS = {"function", "return", "var", "const", "let", "if", "else", "for",
+            "while", "new", "this", "typeof", "null", "undefined", "true", "false", "document", "window", "prototype"};
+    private static final String[] WORDS = {"user", "list", "item", "view", "render", "update", "state", "props",
+            "event", "handler", "click", "index", "value", "data", "config", "options", "callback", "request",
+            "response", "error", "result", "element", "node", "child", "parent", "style", "width", "height", "offset",
+            "scroll", "timer", "cache", "module", "export", "default", "component", "container", "button", "title"};
+    private static final String[] CSS_PROPERTIES = {"margin", "padding", "color", "background-color", "font-size",
+            "line-height", "display", "position", "border", "border-radius", "width", "height", "top", "left",
+            "transform", "transition", "opacity", "z-index", "overflow", "text-align"};
+    private static final String[] CSS_VALUES = {"0", "auto", "none", "block", "flex", "absolute", "relative",
+            "hidden", "center", "inherit", "1px solid #e5e5e5", "all .3s ease", "translate3d(0,0,0)"};
+
+    private TextCorpus() {
+    }
+
+    public static byte[] javaScript(int size, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder builder = new StringBuilder(size + 256);
+        while (builder.length() < size) {
+            builder.append(KEYWORDS[0]).append(' ').append(identifier(random)).append('(')
+                    .append(identifier(random)).append(", ").append(identifier(random)).append(") {\n");
+            final int statements = 2 + random.nextInt(6);
+            for (int i = 0; i < statements; i++) {
+                builder.append("  ").append(KEYWORDS[random.nextInt(KEYWORDS.length)]).append(' ')
+                        .append(identifier(random)).append(" = ").append(identifier(random)).append('.')
+                        .append(WORDS[random.nextInt(WORDS.length)]).append('(').append(random.nextInt(1000))
+                        .append(", \"").append(WORDS[random.nextInt(WORDS.length)]).append("\");\n");
+            }
+            builder.append("  return ").append(identifier(random)).append(";\n}\n");
+        }
+        builder.setLength(size);
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    public static byte[] css(int size, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder builder = new StringBuilder(size + 256);
+        while (builder.length() < size) {
+            builder.append('.').append(WORDS[random.nextInt(WORDS.length)]).append('-')
+                    .append(WORDS[random.nextInt(WORDS.length)]).append(" {\n");
+            final int declarations = 2 + random.nextInt(6);
+            for (int i = 0; i < declarations; i++) {
+                builder.append("  ").append(CSS_PROPERTIES[random.nextInt(CSS_PROPERTIES.length)]).append(": ");
+                if (random.nextBoolean()) {
+                    builder.append(CSS_VALUES[random.nextInt(CSS_VALUES.length)]);
+                } else {
+                    builder.append(random.nextInt(100)).append("px");
+                }
+                builder.append(";\n");
+            }
+            builder.append("}\n");
+        }
+        builder.setLength(size);
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    private static String identifier(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + Character.toUpperCase(WORDS[random.nextInt(WORDS.length)].charAt(0))
+                + WORDS[random.nextInt(WORDS.length)].substring(1);
+    }
+}
@@ -0,0 +1,210 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.utils.HttpDateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class CacheEntryMetaTest {
+
+    private static final long NOW = 1600000000000L;
+
+    private static Map<String, String> newHeaders() {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "text/css; charset=utf-8");
+        headers.put("Cache-Control", "max-age=600");
+        headers.put("ETag", "\"v1\"");
+        headers.put("Last-Modified", HttpDateUtils.format(NOW - 3600 * 1000L));
+        headers.put("X-Custom-Header", "custom");
+        return headers;
+    }
+
+    private static WebResource newResource(Map<String, String> headers) {
+        final WebResource resource = new WebResource();
+        resource.setResponseCode(200);
+        resource.setReasonPhrase("OK");
+        resource.setResponseHeaders(headers);
+        return resource;
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        final Map<String, String> vary = Collections.singletonMap("accept-language", "fr");
+        final CacheEntryMeta meta = CacheEntryMeta.from(newResource(newHeaders()), NOW)
+                .withContentCoding(CacheEntryMeta.CODING_DEFLATE)
+                .withDecodedLength(12345)
+                .withVaryHeaders(vary);
+
+        final CacheEntryMeta read = CacheEntryMeta.read(new ByteArrayInputStream(meta.toByteArray()));
+        assertEquals(200, read.getResponseCode());
+        assertEquals("OK", read.getReasonPhrase());
+        assertEquals(newHeaders(), read.getHeaders());
+        assertEquals("text/css", read.getMimeType());
+        assertEquals("utf-8", read.getCharset());
+        assertEquals("\"v1\"", read.getETag());
+        assertEquals(NOW - 3600 * 1000L, read.getLastModified());
+        assertEquals(NOW + 600 * 1000L, read.getExpires());
+        assertTrue(read.isDeflated());
+        assertEquals(12345, read.getDecodedLength());
+        assertEquals(vary, read.getVaryHeaders());
+    }
+
+    @Test
+    public void readsTextFormat() throws IOException {
+        final String text = "200\nOK\n2\nContent-Type: application/json\nETag: abc\n";
+        final CacheEntryMeta meta = CacheEntryMeta.read(new ByteArrayInputStream(text.getBytes("UTF-8")));
+        assertEquals(200, meta.getResponseCode());
+        assertEquals("application/json", meta.getMimeType());
+        assertEquals("abc", meta.getETag());
+        assertEquals(-1, meta.getLastModified());
+        assertFalse(meta.isDeflated());
+        assertEquals(-1, meta.getDecodedLength());
+        // 文本格式没有写入时间，视为已过期
+        assertTrue(CacheEntryMeta.getStaleTime(meta.getExpires(), NOW) > 0);
+    }
+
+    @Test
+    public void readsFirstBinaryVersion() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(0xFB);
+        output.writeByte(1);
+        output.writeShort(404);
+        writeString(output, "Not Found");
+        writeString(output, "text/html");
+        writeString(output, null);
+        writeString(output, null);
+        output.writeLong(-1);
+        output.writeLong(NOW);
+        output.writeShort(1);
+        output.writeByte(0xFF);
+        writeString(output, "Content-Type");
+        writeString(output, "text/html");
+        output.close();
+
+        final CacheEntryMeta meta = CacheEntryMeta.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(404, meta.getResponseCode());
+        assertEquals("text/html", meta.getMimeType());
+        assertNull(meta.getCharset());
+        assertEquals(-1, meta.getLastModified());
+        assertEquals(NOW, meta.getExpires());
+        assertNull(meta.getContentCoding());
+        assertTrue(meta.getVaryHeaders().isEmpty());
+        assertEquals(-1, meta.getDecodedLength());
+        assertEquals("text/html", meta.getHeaders().get("Content-Type"));
+    }
+
+    @Test
+    public void readsSecondBinaryVersion() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(0xFB);
+        output.writeByte(2);
+        output.writeShort(200);
+        writeString(output, "OK");
+        writeString(output, "text/css");
+        writeString(output, null);
+        writeString(output, null);
+        output.writeLong(-1);
+        output.writeLong(NOW);
+        writeString(output, CacheEntryMeta.CODING_DEFLATE);
+        output.writeLong(100);
+        output.writeShort(0);
+        output.close();
+
+        // 版本 2 没有 Vary 请求头，压缩方式和解压后的长度照常读取
+        final CacheEntryMeta meta = CacheEntryMeta.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("text/css", meta.getMimeType());
+        assertTrue(meta.isDeflated());
+        assertEquals(100, meta.getDecodedLength());
+        assertTrue(meta.getVaryHeaders().isEmpty());
+        assertTrue(meta.getHeaders().isEmpty());
+    }
+
+    @Test
+    public void rejectsUnknownVersion() {
+        try {
+            CacheEntryMeta.read(new ByteArrayInputStream(new byte[]{(byte) 0xFB, 99, 0, 0}));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void notModifiedKeepsBodyHeaders() {
+        final CacheEntryMeta meta = CacheEntryMeta.from(newResource(newHeaders()), NOW)
+                .withContentCoding(CacheEntryMeta.CODING_DEFLATE)
+                .withDecodedLength(100);
+        final Map<String, String> notModified = new HashMap<>();
+        notModified.put("cache-control", "max-age=60");
+        notModified.put("Content-Type", "text/plain");
+        notModified.put("ETag", "\"v2\"");
+
+        final CacheEntryMeta updated = meta.withNotModified(notModified, NOW + 1000);
+        assertEquals("text/css", updated.getMimeType());
+        assertEquals("\"v2\"", updated.getETag());
+        assertEquals(NOW + 1000 + 60 * 1000L, updated.getExpires());
+        assertTrue(updated.isDeflated());
+        assertEquals(100, updated.getDecodedLength());
+        assertFalse(updated.getHeaders().containsKey("Cache-Control"));
+    }
+
+    @Test
+    public void computeExpires() {
+        final Map<String, String> headers = new HashMap<>();
+        assertEquals(NOW, CacheEntryMeta.computeExpires(headers, NOW));
+
+        headers.put("Cache-Control", "max-age=100");
+        headers.put("Age", "40");
+        assertEquals(NOW + 60 * 1000L, CacheEntryMeta.computeExpires(headers, NOW));
+
+        headers.put("Cache-Control", "no-cache, max-age=100");
+        assertEquals(NOW, CacheEntryMeta.computeExpires(headers, NOW));
+
+        headers.clear();
+        headers.put("Expires", HttpDateUtils.format(NOW + 5000));
+        assertEquals(NOW + 5000, CacheEntryMeta.computeExpires(headers, NOW));
+        headers.put("Expires", "0");
+        assertEquals(0, CacheEntryMeta.computeExpires(headers, NOW));
+
+        // 只有 Last-Modified 时按距今时间的 10% 估算
+        headers.clear();
+        headers.put("Last-Modified", HttpDateUtils.format(NOW - 10000 * 1000L));
+        assertEquals(NOW + 1000 * 1000L, CacheEntryMeta.computeExpires(headers, NOW));
+    }
+
+    @Test
+    public void parseContentType() {
+        assertEquals("text/html", CacheEntryMeta.parseMimeType(Collections.singletonMap("Content-Type", "text/html; charset=gbk")));
+        assertEquals("gbk", CacheEntryMeta.parseCharset("text/html; charset=\"gbk\""));
+        assertNull(CacheEntryMeta.parseCharset("text/html"));
+        assertNull(CacheEntryMeta.parseMimeType(Collections.<String, String>emptyMap()));
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes("UTF-8");
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
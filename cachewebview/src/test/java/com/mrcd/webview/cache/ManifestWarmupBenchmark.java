@@ -0,0 +1,295 @@
+package com.mrcd.webview.cache;
+
+import android.net.Uri;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebSettings;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.ManualClock;
+import com.mrcd.webview.cache.memory.MemoryBudgetArbiter;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.CacheMode;
+import com.mrcd.webview.config.FreshnessPolicy;
+import com.mrcd.webview.cookie.FastCookieManager;
+import com.mrcd.webview.preload.Preloader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.CookieJar;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 页面关键路径：从主框架请求到最后一个子资源读取完毕的时间，对比有无页面记录的提前加载。
+ * <p>
+ * 站点按真实页面录制的结构生成：页面解析后请求样式和脚本，样式和脚本执行后才请求字体和图片。
+ * 每次访问间隔一小时，缓存都已过期太久需要等待网络，源站每个响应延迟 {@link #ORIGIN_LATENCY_MS}。
+ * WebView 对同一 host 最多 6 个并发请求，提前加载使用 {@link Preloader} 默认的 4 个线程
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ManifestWarmupBenchmark {
+
+    private static final long ORIGIN_LATENCY_MS = 25;
+    private static final long PARSE_MS = 20;
+    private static final int WEBVIEW_CONNECTIONS = 6;
+    private static final int VISITS = 5;
+    private static final String USER_AGENT = "benchmark";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final ManualClock mClock = new ManualClock(1000000000L);
+    private final ExecutorService mConnections = Executors.newFixedThreadPool(WEBVIEW_CONNECTIONS);
+    private final List<String> mStylesAndScripts = new ArrayList<>();
+    private final List<String> mFontsAndImages = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        TestResources.assumeBenchmark();
+        MemoryBudgetArbiter.getInstance().setBudget(Integer.MAX_VALUE);
+        FastCookieManager.getInstance().setCookieJar(CookieJar.NO_COOKIES);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                final String path = request.getPath();
+                return new MockResponse()
+                        .setHeadersDelay(ORIGIN_LATENCY_MS, TimeUnit.MILLISECONDS)
+                        .setHeader("Content-Type", contentType(path))
+                        .setHeader("Cache-Control", "max-age=600")
+                        .setBody(path + "\n" + new String(new char[2048]).replace('\0', 'x'));
+            }
+        });
+        // 响应头和 body 分两次写入，Nagle 算法会使 body 等待客户端的延迟确认，每个请求多出约 40ms
+        mServer.setServerSocketFactory(new NoDelayServerSocketFactory());
+        mServer.start();
+        for (int i = 0; i < 4; i++) {
+            mStylesAndScripts.add(mServer.url("/css/" + i + ".css").toString());
+        }
+        for (int i = 0; i < 12; i++) {
+            mStylesAndScripts.add(mServer.url("/js/" + i + ".js").toString());
+        }
+        for (int i = 0; i < 4; i++) {
+            mFontsAndImages.add(mServer.url("/fonts/" + i + ".woff2").toString());
+        }
+        for (int i = 0; i < 60; i++) {
+            mFontsAndImages.add(mServer.url("/img/" + i + ".png").toString());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mConnections.shutdownNow();
+        MemoryBudgetArbiter.getInstance().setBudget(0);
+        mServer.shutdown();
+    }
+
+    @Test
+    public void criticalPath() throws Exception {
+        System.out.println("mode\tvisit\tcritical path(ms)\torigin requests");
+        final long without = run("cold", newConfig(0));
+        final long with = run("manifest", newConfig(CacheConfig.Builder.MAX_PAGE_MANIFEST_RESOURCES));
+        System.out.println("mean\tcold " + without + "ms\tmanifest " + with + "ms");
+    }
+
+    /**
+     * @return 第一次之后各次访问的平均关键路径
+     */
+    private long run(String mode, CacheConfig config) throws Exception {
+        long total = 0;
+        for (int visit = 0; visit <= VISITS; visit++) {
+            mClock.advance(TimeUnit.HOURS.toMillis(1));
+            final int requests = mServer.getRequestCount();
+            final long elapsed = visit(config);
+            System.out.println(mode + "\t" + visit + "\t" + elapsed + "\t" + (mServer.getRequestCount() - requests));
+            // 第一次访问只用于记录
+            if (visit > 0) {
+                total += elapsed;
+            }
+        }
+        return total / VISITS;
+    }
+
+    /**
+     * 一个新的 WebView 打开页面
+     */
+    private long visit(CacheConfig config) throws Exception {
+        final CacheManager manager = new CacheManager(RuntimeEnvironment.getApplication());
+        manager.setCacheMode(CacheMode.FORCE, config);
+        final long start = System.nanoTime();
+        load(manager, mServer.url("/page.html").toString(), true);
+        Thread.sleep(PARSE_MS);
+        loadAll(manager, mStylesAndScripts);
+        Thread.sleep(PARSE_MS);
+        loadAll(manager, mFontsAndImages);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        manager.destroy();
+        // 等待记录保存后再开始下一次访问
+        final CountDownLatch saved = new CountDownLatch(1);
+        SharedDiskCache.execute(new Runnable() {
+            @Override
+            public void run() {
+                saved.countDown();
+            }
+        });
+        assertTrue(saved.await(10, TimeUnit.SECONDS));
+        return elapsed;
+    }
+
+    private void loadAll(final CacheManager manager, List<String> urls) throws Exception {
+        final List<Future<?>> futures = new ArrayList<>(urls.size());
+        for (final String url : urls) {
+            futures.add(mConnections.submit(new Runnable() {
+                @Override
+                public void run() {
+                    load(manager, url, false);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void load(CacheManager manager, String url, boolean isForMainFrame) {
+        final WebResourceResponse response = manager.load(new Request(url, isForMainFrame), WebSettings.LOAD_DEFAULT, USER_AGENT);
+        assertNotNull(url, response);
+        assertEquals(200, response.getStatusCode());
+        try {
+            final InputStream data = response.getData();
+            final byte[] buffer = new byte[8 * 1024];
+            while (data.read(buffer) != -1) {
+                // 读完才会写入缓存
+            }
+            data.close();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private CacheConfig newConfig(int maxPageManifestResources) throws Exception {
+        return TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(16 * 1024 * 1024)
+                .setExtensionFilter(TestResources.cacheAllTypes())
+                .setFreshnessPolicy(FreshnessPolicy.STALE_WHILE_REVALIDATE)
+                .setMaxStaleTime(0)
+                .setClock(mClock)
+                .setMaxPageManifestResources(maxPageManifestResources)
+                .build();
+    }
+
+    private static String contentType(String path) {
+        if (path.endsWith(".css")) {
+            return "text/css";
+        } else if (path.endsWith(".js")) {
+            return "application/javascript";
+        } else if (path.endsWith(".woff2")) {
+            return "font/woff2";
+        } else if (path.endsWith(".png")) {
+            return "image/png";
+        }
+        return "text/html; charset=utf-8";
+    }
+
+    private static class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    final Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Request implements WebResourceRequest {
+
+        private final Uri mUrl;
+        private final boolean mForMainFrame;
+
+        Request(String url, boolean forMainFrame) {
+            mUrl = Uri.parse(url);
+            mForMainFrame = forMainFrame;
+        }
+
+        @Override
+        public Uri getUrl() {
+            return mUrl;
+        }
+
+        @Override
+        public boolean isForMainFrame() {
+            return mForMainFrame;
+        }
+
+        @Override
+        public boolean isRedirect() {
+            return false;
+        }
+
+        @Override
+        public boolean hasGesture() {
+            return false;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public Map<String, String> getRequestHeaders() {
+            return new HashMap<>();
+        }
+    }
+}
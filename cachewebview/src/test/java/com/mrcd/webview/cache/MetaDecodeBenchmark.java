@@ -0,0 +1,75 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.WebResource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 每次命中解析元数据的耗时，旧的文本格式与二进制格式对比
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MetaDecodeBenchmark {
+
+    private static final int WARM_UP = 20000;
+    private static final int ITERATIONS = 200000;
+
+    @Before
+    public void setUp() {
+        TestResources.assumeBenchmark();
+    }
+
+    @Test
+    public void decode() throws Exception {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", "application/javascript; charset=utf-8");
+        headers.put("Content-Length", "48213");
+        headers.put("Cache-Control", "public, max-age=31536000");
+        headers.put("ETag", "\"5f3c1a2b-bc55\"");
+        headers.put("Last-Modified", "Tue, 18 Aug 2020 12:00:00 GMT");
+        headers.put("Date", "Sat, 17 Oct 2020 08:00:00 GMT");
+        headers.put("Server", "nginx");
+        headers.put("Access-Control-Allow-Origin", "*");
+        headers.put("Vary", "Accept-Encoding");
+        headers.put("X-Cache", "HIT from edge");
+
+        final StringBuilder text = new StringBuilder("200\nOK\n").append(headers.size()).append('\n');
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            text.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        final byte[] textBytes = text.toString().getBytes("UTF-8");
+        final WebResource resource = new WebResource();
+        resource.setResponseCode(200);
+        resource.setReasonPhrase("OK");
+        resource.setResponseHeaders(headers);
+        final byte[] binaryBytes = CacheEntryMeta.from(resource, System.currentTimeMillis()).toByteArray();
+
+        decode(textBytes, WARM_UP);
+        decode(binaryBytes, WARM_UP);
+        final long textNanos = decode(textBytes, ITERATIONS);
+        final long binaryNanos = decode(binaryBytes, ITERATIONS);
+        System.out.println("format\tbytes\tns/decode");
+        System.out.println("text\t" + textBytes.length + "\t" + textNanos / ITERATIONS);
+        System.out.println("binary\t" + binaryBytes.length + "\t" + binaryNanos / ITERATIONS);
+    }
+
+    private static long decode(byte[] bytes, int iterations) throws Exception {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            final CacheEntryMeta meta = CacheEntryMeta.read(new ByteArrayInputStream(bytes));
+            // 文本格式需要解析响应头才能得到 mime type 和过期时间，与命中时的使用方式一致
+            assertEquals("application/javascript", meta.getMimeType());
+            meta.getExpires();
+        }
+        return System.nanoTime() - start;
+    }
+}
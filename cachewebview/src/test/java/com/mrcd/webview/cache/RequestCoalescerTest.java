@@ -0,0 +1,208 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.Chain;
+import com.mrcd.webview.cache.intercept.DiskCacheInterceptor;
+import com.mrcd.webview.cache.intercept.ForceRemoteCacheInterceptor;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.cookie.FastCookieManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CookieJar;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多个 WebView 同时请求同一资源时只请求一次网络
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RequestCoalescerTest {
+
+    private static final int CALLERS = 50;
+    private static final String MIME = "application/json";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final List<Destroyable> mInterceptors = new ArrayList<>();
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        FastCookieManager.getInstance().setCookieJar(CookieJar.NO_COOKIES);
+        mServer.start();
+        mExecutor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        for (Destroyable interceptor : mInterceptors) {
+            interceptor.destroy();
+        }
+        mServer.shutdown();
+    }
+
+    @Test
+    public void concurrentCallersShareOneOriginHit() throws Exception {
+        final byte[] body = TestResources.randomBytes(64 * 1024, 1);
+        // 响应足够慢，所有请求都在第一个请求完成前发出
+        mServer.enqueue(new MockResponse()
+                .setHeader("Content-Type", MIME)
+                .setHeadersDelay(500, TimeUnit.MILLISECONDS)
+                .setBody(new Buffer().write(body)));
+
+        final long coalesced = RequestCoalescer.getInstance().getCoalescedCount();
+        final List<byte[]> bodies = loadConcurrently(newConfig(), mServer.url("/data.json").toString());
+
+        assertEquals(1, mServer.getRequestCount());
+        for (byte[] result : bodies) {
+            assertArrayEquals(body, result);
+        }
+        // 第一个请求完成后才开始的请求命中磁盘缓存，不计入合并次数
+        assertTrue(RequestCoalescer.getInstance().getCoalescedCount() - coalesced > 0);
+    }
+
+    @Test
+    public void oversizedBodyIsFetchedByEachWaiter() throws Exception {
+        final byte[] body = TestResources.randomBytes(1024 * 1024, 2);
+        for (int i = 0; i < CALLERS; i++) {
+            mServer.enqueue(new MockResponse()
+                    .setHeader("Content-Type", MIME)
+                    .setHeadersDelay(200, TimeUnit.MILLISECONDS)
+                    .setBody(new Buffer().write(body)));
+        }
+
+        final long coalesced = RequestCoalescer.getInstance().getCoalescedCount();
+        final List<byte[]> bodies = loadConcurrently(newConfig(), mServer.url("/large.json").toString());
+
+        // body 超过共享上限，等待的请求各自请求网络，结果仍然完整
+        for (byte[] result : bodies) {
+            assertArrayEquals(body, result);
+        }
+        assertEquals(coalesced, RequestCoalescer.getInstance().getCoalescedCount());
+    }
+
+    @Test
+    public void requestsWithDifferentCookiesAreNotShared() throws Exception {
+        echoRequestHeader("Cookie");
+        final List<String> bodies = loadConcurrently(newConfig(), mServer.url("/profile.json").toString(),
+                "Cookie", "user=a", "user=b");
+        assertEquals(Arrays.asList("user=a", "user=b"), bodies);
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void requestsWithDifferentLanguagesAreNotShared() throws Exception {
+        echoRequestHeader("Accept-Language");
+        final List<String> bodies = loadConcurrently(newConfig(), mServer.url("/messages.json").toString(),
+                "Accept-Language", "fr", "de", "fr");
+        assertEquals(Arrays.asList("fr", "de", "fr"), bodies);
+        // 语言相同的两个请求仍然合并
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    /**
+     * 响应足够慢，所有请求都在第一个请求完成前发出
+     */
+    private void echoRequestHeader(final String name) {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", MIME)
+                        .setHeadersDelay(500, TimeUnit.MILLISECONDS)
+                        .setBody(request.getHeader(name));
+            }
+        });
+    }
+
+    private CacheConfig newConfig() throws Exception {
+        return TestResources.newConfig(mFolder).build();
+    }
+
+    /**
+     * 每个调用方模拟一个 WebView，使用各自的拦截器
+     */
+    private List<byte[]> loadConcurrently(CacheConfig config, final String url) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(CALLERS);
+        final List<Future<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+            final ForceRemoteCacheInterceptor remote = new ForceRemoteCacheInterceptor(RuntimeEnvironment.getApplication(), config);
+            mInterceptors.add(disk);
+            mInterceptors.add(remote);
+            final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(disk, remote);
+            futures.add(mExecutor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    barrier.await();
+                    final WebResource resource = TestResources.load(interceptors, url, MIME);
+                    return TestResources.readBody(resource);
+                }
+            }));
+        }
+        final List<byte[]> bodies = new ArrayList<>();
+        for (Future<byte[]> future : futures) {
+            bodies.add(future.get(30, TimeUnit.SECONDS));
+        }
+        return bodies;
+    }
+
+    /**
+     * 每个调用方只经过网络拦截器，同时请求同一 url，请求头 name 分别为 values 中的值
+     */
+    private List<String> loadConcurrently(CacheConfig config, final String url, final String name, String... values)
+            throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(values.length);
+        final List<Future<byte[]>> futures = new ArrayList<>();
+        for (final String value : values) {
+            final ForceRemoteCacheInterceptor remote = new ForceRemoteCacheInterceptor(RuntimeEnvironment.getApplication(), config);
+            mInterceptors.add(remote);
+            futures.add(mExecutor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    final CacheRequest request = TestResources.newRequest(url, MIME);
+                    request.getHeaders().put(name, value);
+                    barrier.await();
+                    final WebResource resource = new Chain(Arrays.<CacheInterceptor>asList(remote)).process(request);
+                    return TestResources.readBody(resource);
+                }
+            }));
+        }
+        final List<String> bodies = new ArrayList<>();
+        for (Future<byte[]> future : futures) {
+            bodies.add(new String(future.get(30, TimeUnit.SECONDS), Charset.forName("UTF-8")));
+        }
+        return bodies;
+    }
+}
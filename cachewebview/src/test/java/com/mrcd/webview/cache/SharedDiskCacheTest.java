@@ -0,0 +1,269 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.DiskCacheInterceptor;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.JournalDurability;
+import com.mrcd.webview.utils.StreamUtils;
+import com.mrcd.webview.utils.lru.DiskLruCache;
+import com.mrcd.webview.utils.lru.ShardedDiskLruCache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多个 WebView 共享同一缓存目录：只加载一次索引，并发读写后 journal 仍然完整
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SharedDiskCacheTest {
+
+    private static final int MANAGERS = 20;
+    private static final int URLS = 100;
+    private static final String MIME = "application/x-test";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void managersShareOneIndex() throws Exception {
+        final CacheConfig config = newConfig();
+        final List<SharedDiskCache> caches = new ArrayList<>();
+        for (int i = 0; i < MANAGERS; i++) {
+            caches.add(SharedDiskCache.acquire(config));
+        }
+        for (SharedDiskCache cache : caches) {
+            assertSame(caches.get(0), cache);
+            assertSame(caches.get(0).getDiskLruCache(), cache.getDiskLruCache());
+        }
+        for (SharedDiskCache cache : caches) {
+            cache.release();
+        }
+        // 引用归零后不立即关闭，重新获取时复用已加载的索引
+        final SharedDiskCache reacquired = SharedDiskCache.acquire(config);
+        assertSame(caches.get(0), reacquired);
+        assertTrue(!reacquired.getDiskLruCache().isClosed());
+        reacquired.release();
+    }
+
+    @Test
+    public void warmUpRecordsOpenPhases() throws Exception {
+        final CacheConfig config = newConfig();
+        final ShardedDiskLruCache populated = ShardedDiskLruCache.open(new File(config.getCacheDir()),
+                config.getVersion(), 2, config.getDiskCacheSize(), config.getDiskCacheShardCount(),
+                config.getJournalDurability());
+        for (int i = 0; i < URLS; i++) {
+            final DiskLruCache.Editor editor = populated.edit("key" + i);
+            editor.set(0, "meta");
+            editor.set(1, "body" + i);
+            editor.commit();
+        }
+        populated.close();
+
+        SharedDiskCache.warmUp(config).get(10, TimeUnit.SECONDS);
+        final SharedDiskCache cache = SharedDiskCache.acquire(config);
+        final ShardedDiskLruCache diskLruCache = cache.getDiskLruCache();
+        // 已有 journal 时只读取和处理，不重建
+        assertTrue(diskLruCache.getJournalReadNanos() > 0);
+        assertTrue(diskLruCache.getProcessNanos() > 0);
+        assertEquals(0, diskLruCache.getRebuildNanos());
+        assertNotNull(diskLruCache.get("key" + (URLS - 1)));
+        cache.release();
+
+        final CacheConfig empty = newConfig();
+        SharedDiskCache.warmUp(empty).get(10, TimeUnit.SECONDS);
+        final SharedDiskCache emptyCache = SharedDiskCache.acquire(empty);
+        assertEquals(0, emptyCache.getDiskLruCache().getJournalReadNanos());
+        assertTrue(emptyCache.getDiskLruCache().getRebuildNanos() > 0);
+        emptyCache.release();
+    }
+
+    @Test
+    public void requestDuringWarmUpReusesWarmedIndex() throws Exception {
+        final CacheConfig config = newConfig();
+        final ShardedDiskLruCache populated = ShardedDiskLruCache.open(new File(config.getCacheDir()),
+                config.getVersion(), 2, config.getDiskCacheSize(), config.getDiskCacheShardCount(),
+                config.getJournalDurability());
+        for (int i = 0; i < 20 * URLS; i++) {
+            final DiskLruCache.Editor editor = populated.edit("key" + i);
+            editor.set(0, "meta");
+            editor.set(1, "body" + i);
+            editor.commit();
+        }
+        populated.close();
+
+        final Future<?> warmUp = SharedDiskCache.warmUp(config);
+        // 请求在预热进行中到达：等待预热结果，而不是再加载一次索引
+        final SharedDiskCache cache = SharedDiskCache.acquire(config);
+        final ShardedDiskLruCache duringWarmUp = cache.getDiskLruCache();
+        warmUp.get(10, TimeUnit.SECONDS);
+        assertSame(duringWarmUp, cache.getDiskLruCache());
+        assertNotNull(duringWarmUp.get("key0"));
+        // 有 WebView 使用时预热不会安排关闭
+        assertFalse(SharedDiskCache.isCloseScheduled(config));
+        cache.release();
+    }
+
+    @Test
+    public void unusedWarmUpSchedulesIdleClose() throws Exception {
+        final CacheConfig config = newConfig();
+        SharedDiskCache.warmUp(config).get(10, TimeUnit.SECONDS);
+        // 预热后没有 WebView 使用，和释放后一样等待空闲关闭
+        assertTrue(SharedDiskCache.isCloseScheduled(config));
+        final SharedDiskCache cache = SharedDiskCache.acquire(config);
+        assertFalse(SharedDiskCache.isCloseScheduled(config));
+        cache.release();
+        assertTrue(SharedDiskCache.isCloseScheduled(config));
+    }
+
+    @Test
+    public void concurrentManagersKeepJournalIntact() throws Exception {
+        assertJournalIntact(newConfig());
+    }
+
+    @Test
+    public void concurrentManagersKeepBatchedJournalIntact() throws Exception {
+        assertJournalIntact(newConfig(JournalDurability.BATCHED));
+    }
+
+    private void assertJournalIntact(final CacheConfig config) throws Exception {
+        final FakeOrigin origin = new FakeOrigin(MIME, false);
+        final List<String> urls = new ArrayList<>();
+        final List<byte[]> bodies = new ArrayList<>();
+        for (int i = 0; i < URLS; i++) {
+            final String url = "https://example.com/res/" + i;
+            final byte[] body = TestResources.randomBytes(2 * 1024 + i * 100, i);
+            urls.add(url);
+            bodies.add(body);
+            origin.put(url, body);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(MANAGERS);
+        final CyclicBarrier barrier = new CyclicBarrier(MANAGERS);
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (int m = 0; m < MANAGERS; m++) {
+            final int offset = m * 7;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+                    final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(disk, origin);
+                    barrier.await();
+                    // 每个管理器从不同位置开始，访问的资源相互重叠
+                    for (int i = 0; i < URLS; i++) {
+                        final int index = (offset + i) % URLS;
+                        final byte[] body = TestResources.readBody(TestResources.load(interceptors, urls.get(index), MIME));
+                        assertArrayEquals(bodies.get(index), body);
+                    }
+                    disk.destroy();
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        // 同一资源可能被多个管理器同时写入，但每个资源至少有一次完整写入
+        assertTrue(origin.getLoadCount() >= URLS);
+        awaitReleaseFlush();
+
+        // 用独立的 DiskLruCache 重新读取 journal 的副本
+        final File copy = mFolder.newFolder();
+        for (File file : new File(config.getCacheDir()).listFiles()) {
+            copy(file, new File(copy, file.getName()));
+        }
+        final DiskLruCache reopened = DiskLruCache.open(copy, config.getVersion(), 2, config.getDiskCacheSize());
+        try {
+            for (int i = 0; i < URLS; i++) {
+                final CacheRequest request = TestResources.newRequest(urls.get(i), MIME);
+                final DiskLruCache.Snapshot snapshot = reopened.get(request.getKey());
+                assertNotNull(urls.get(i), snapshot);
+                assertTrue(snapshot.getLength(0) > 0);
+                assertArrayEquals(bodies.get(i), StreamUtils.streamToBytes(snapshot.getInputStream(1)));
+                snapshot.close();
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private CacheConfig newConfig() throws IOException {
+        return TestResources.newConfig(mFolder).build();
+    }
+
+    private CacheConfig newConfig(JournalDurability durability) throws IOException {
+        return TestResources.newConfig(mFolder)
+                .setJournalDurability(durability)
+                .build();
+    }
+
+    /**
+     * 释放时的 flush 在磁盘缓存的后台线程执行，之后提交的任务执行时 flush 已完成
+     */
+    private static void awaitReleaseFlush() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        SharedDiskCache.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        if (from.getName().endsWith(".tmp")) {
+            // 临时文件写完后改名，复制时可能已经不存在
+            return;
+        }
+        if (from.isDirectory()) {
+            assertTrue(to.mkdirs());
+            for (File file : from.listFiles()) {
+                copy(file, new File(to, file.getName()));
+            }
+            return;
+        }
+        final InputStream input = new FileInputStream(from);
+        final OutputStream output = new FileOutputStream(to);
+        try {
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+        } finally {
+            input.close();
+            output.close();
+        }
+        assertEquals(from.length(), to.length());
+    }
+}
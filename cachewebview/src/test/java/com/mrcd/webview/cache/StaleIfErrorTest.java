@@ -0,0 +1,201 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.ManualClock;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.DiskCacheInterceptor;
+import com.mrcd.webview.cache.intercept.ForceRemoteCacheInterceptor;
+import com.mrcd.webview.cache.intercept.MemCacheInterceptor;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.FreshnessPolicy;
+import com.mrcd.webview.cookie.FastCookieManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CookieJar;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 缓存过期超过 maxStaleTime 后等待网络：源站慢于期限或请求失败时返回过期的缓存，
+ * 超时的请求在后台完成并更新缓存。源站由限速的 {@link MockWebServer} 模拟
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StaleIfErrorTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String MIME = "application/json";
+    private static final long MAX_AGE_MS = 60 * 1000;
+    private static final long MAX_STALE_MS = 60 * 1000;
+    private static final long DEADLINE_MS = 300;
+    private static final long SLOW_MS = 3000;
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final List<Destroyable> mInterceptors = new ArrayList<>();
+    private final ManualClock mClock = new ManualClock(1000000000L);
+    private final DeadlineFetcher mFetcher = DeadlineFetcher.getInstance();
+
+    @Before
+    public void setUp() throws Exception {
+        FastCookieManager.getInstance().setCookieJar(CookieJar.NO_COOKIES);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        assertTrue(mFetcher.awaitIdle(TIMEOUT_MS));
+        for (Destroyable interceptor : mInterceptors) {
+            interceptor.destroy();
+        }
+        mServer.shutdown();
+    }
+
+    @Test
+    public void slowOriginServesStaleDiskCopy() throws Exception {
+        // 不开启内存缓存，过期的副本只在磁盘中
+        final CacheConfig config = newConfig(0);
+        final String url = mServer.url("/disk.json").toString();
+        mServer.enqueue(response("v1"));
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+
+        final long timeouts = mFetcher.getTimeoutFallbackCount();
+        final long lateCompletions = mFetcher.getLateCompletionCount();
+        mServer.enqueue(response("v2").setHeadersDelay(SLOW_MS, TimeUnit.MILLISECONDS));
+        mClock.advance(MAX_AGE_MS + MAX_STALE_MS * 2);
+        final long start = System.currentTimeMillis();
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+        // 没有等到源站返回
+        assertTrue(System.currentTimeMillis() - start < SLOW_MS);
+        assertEquals(timeouts + 1, mFetcher.getTimeoutFallbackCount());
+
+        // 请求在后台完成并写入磁盘，之后直接命中新内容
+        assertTrue(mFetcher.awaitIdle(TIMEOUT_MS));
+        assertEquals(lateCompletions + 1, mFetcher.getLateCompletionCount());
+        assertEquals(body("v2"), load(newInterceptors(config), url));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void slowOriginServesStaleMemoryCopy() throws Exception {
+        final List<CacheInterceptor> interceptors = newInterceptors(newConfig(1024 * 1024));
+        final String url = mServer.url("/memory.json").toString();
+        mServer.enqueue(response("v1"));
+        assertEquals(body("v1"), load(interceptors, url));
+
+        final long timeouts = mFetcher.getTimeoutFallbackCount();
+        mServer.enqueue(response("v2").setHeadersDelay(SLOW_MS, TimeUnit.MILLISECONDS));
+        mClock.advance(MAX_AGE_MS + MAX_STALE_MS * 2);
+        assertEquals(body("v1"), load(interceptors, url));
+        assertEquals(timeouts + 1, mFetcher.getTimeoutFallbackCount());
+
+        // 后台完成的请求同时更新了内存缓存
+        assertTrue(mFetcher.awaitIdle(TIMEOUT_MS));
+        assertEquals(body("v2"), load(interceptors, url));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void fastOriginWithinDeadline() throws Exception {
+        final List<CacheInterceptor> interceptors = newInterceptors(newConfig(1024 * 1024));
+        final String url = mServer.url("/fast.json").toString();
+        mServer.enqueue(response("v1"));
+        assertEquals(body("v1"), load(interceptors, url));
+
+        final long timeouts = mFetcher.getTimeoutFallbackCount();
+        final long errors = mFetcher.getErrorFallbackCount();
+        // 限速但仍在期限内
+        mServer.enqueue(response("v2").throttleBody(8, DEADLINE_MS / 30, TimeUnit.MILLISECONDS));
+        mClock.advance(MAX_AGE_MS + MAX_STALE_MS * 2);
+        // 期限内返回时使用新内容
+        assertEquals(body("v2"), load(interceptors, url));
+        assertEquals(timeouts, mFetcher.getTimeoutFallbackCount());
+        assertEquals(errors, mFetcher.getErrorFallbackCount());
+    }
+
+    @Test
+    public void serverErrorServesStaleCopy() throws Exception {
+        final CacheConfig config = newConfig(0);
+        final String url = mServer.url("/error.json").toString();
+        mServer.enqueue(response("v1"));
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+
+        final long errors = mFetcher.getErrorFallbackCount();
+        mServer.enqueue(new MockResponse().setResponseCode(503).setBody("unavailable"));
+        mClock.advance(MAX_AGE_MS + MAX_STALE_MS * 2);
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+        assertEquals(errors + 1, mFetcher.getErrorFallbackCount());
+        // 5xx 不替换磁盘中的缓存
+        mServer.enqueue(response("v2"));
+        assertEquals(body("v2"), load(newInterceptors(config), url));
+    }
+
+    @Test
+    public void connectionFailureServesStaleCopy() throws Exception {
+        final List<CacheInterceptor> interceptors = newInterceptors(newConfig(1024 * 1024));
+        final String url = mServer.url("/disconnect.json").toString();
+        mServer.enqueue(response("v1"));
+        assertEquals(body("v1"), load(interceptors, url));
+
+        final long errors = mFetcher.getErrorFallbackCount();
+        // 源站不可达，连接失败
+        mServer.shutdown();
+        mClock.advance(MAX_AGE_MS + MAX_STALE_MS * 2);
+        assertEquals(body("v1"), load(interceptors, url));
+        assertEquals(errors + 1, mFetcher.getErrorFallbackCount());
+    }
+
+    private CacheConfig newConfig(int memorySize) throws Exception {
+        return TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(memorySize)
+                .setFreshnessPolicy(FreshnessPolicy.STALE_WHILE_REVALIDATE)
+                .setMaxStaleTime(MAX_STALE_MS)
+                .setNetworkDeadline(DEADLINE_MS)
+                .setClock(mClock)
+                .build();
+    }
+
+    private List<CacheInterceptor> newInterceptors(CacheConfig config) {
+        final MemCacheInterceptor mem = new MemCacheInterceptor(config);
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        final ForceRemoteCacheInterceptor remote = new ForceRemoteCacheInterceptor(RuntimeEnvironment.getApplication(), config);
+        mInterceptors.add(mem);
+        mInterceptors.add(disk);
+        mInterceptors.add(remote);
+        return Arrays.<CacheInterceptor>asList(mem, disk, remote);
+    }
+
+    private static MockResponse response(String version) {
+        return new MockResponse()
+                .setHeader("Cache-Control", "max-age=" + MAX_AGE_MS / 1000)
+                .setHeader("Content-Type", MIME)
+                .setBody(body(version));
+    }
+
+    private static String load(List<CacheInterceptor> interceptors, String url) throws Exception {
+        return new String(TestResources.readBody(TestResources.load(interceptors, url, MIME)), UTF_8);
+    }
+
+    private static String body(String version) {
+        return "{\"version\":\"" + version + "\"}";
+    }
+}
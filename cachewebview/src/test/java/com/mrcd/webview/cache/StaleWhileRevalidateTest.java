@@ -0,0 +1,196 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.ManualClock;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.DiskCacheInterceptor;
+import com.mrcd.webview.cache.intercept.ForceRemoteCacheInterceptor;
+import com.mrcd.webview.cache.intercept.MemCacheInterceptor;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.FreshnessPolicy;
+import com.mrcd.webview.cookie.FastCookieManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.CookieJar;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link FreshnessPolicy#STALE_WHILE_REVALIDATE}：未过期直接命中，过期后先返回旧内容再在后台带校验头请求，
+ * 304 只更新元数据，内容变化时替换缓存。时间由 {@link ManualClock} 控制
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StaleWhileRevalidateTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String MIME = "application/json";
+    private static final long MAX_AGE_MS = 60 * 1000;
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final List<Destroyable> mInterceptors = new ArrayList<>();
+    private final ManualClock mClock = new ManualClock(1000000000L);
+    private volatile String mVersion = "v1";
+
+    @Before
+    public void setUp() throws Exception {
+        FastCookieManager.getInstance().setCookieJar(CookieJar.NO_COOKIES);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                final String version = mVersion;
+                final MockResponse response = new MockResponse()
+                        .setHeader("Cache-Control", "max-age=" + MAX_AGE_MS / 1000)
+                        .setHeader("ETag", "\"" + version + "\"");
+                if (("\"" + version + "\"").equals(request.getHeader("If-None-Match"))) {
+                    return response.setResponseCode(304);
+                }
+                return response.setHeader("Content-Type", MIME).setBody(body(version));
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Destroyable interceptor : mInterceptors) {
+            interceptor.destroy();
+        }
+        mServer.shutdown();
+    }
+
+    @Test
+    public void freshStaleRevalidatedChanged() throws Exception {
+        final List<CacheInterceptor> interceptors = newInterceptors(newConfig(1024 * 1024));
+        final String url = mServer.url("/data.json").toString();
+        final long notModified = Revalidator.getInstance().getNotModifiedCount();
+
+        // 首次请求网络
+        assertEquals(body("v1"), load(interceptors, url));
+        assertEquals(1, mServer.getRequestCount());
+        assertNull(mServer.takeRequest().getHeader("If-None-Match"));
+
+        // 未过期，不请求网络
+        mClock.advance(MAX_AGE_MS / 2);
+        assertEquals(body("v1"), load(interceptors, url));
+        assertEquals(1, mServer.getRequestCount());
+
+        // 过期后先返回旧内容，后台带 ETag 校验得到 304
+        mClock.advance(MAX_AGE_MS);
+        assertEquals(body("v1"), load(interceptors, url));
+        awaitRevalidation();
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals("\"v1\"", mServer.takeRequest().getHeader("If-None-Match"));
+        assertEquals(notModified + 1, Revalidator.getInstance().getNotModifiedCount());
+
+        // 304 更新了过期时间，重新计算新鲜期
+        mClock.advance(MAX_AGE_MS / 2);
+        assertEquals(body("v1"), load(interceptors, url));
+        assertEquals(2, mServer.getRequestCount());
+
+        // 内容变化：过期的请求仍返回旧内容，校验拿到新内容后替换缓存
+        mVersion = "v2";
+        mClock.advance(MAX_AGE_MS);
+        assertEquals(body("v1"), load(interceptors, url));
+        awaitRevalidation();
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(body("v2"), load(interceptors, url));
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(notModified + 1, Revalidator.getInstance().getNotModifiedCount());
+    }
+
+    @Test
+    public void revalidationUpdatesDisk() throws Exception {
+        // 不开启内存缓存，每次都由新的 WebView 读取磁盘缓存
+        final CacheConfig config = newConfig(0);
+        final String url = mServer.url("/disk.json").toString();
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+
+        mClock.advance(MAX_AGE_MS * 2);
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+        awaitRevalidation();
+        assertEquals(2, mServer.getRequestCount());
+        // 304 写入磁盘的元数据使缓存重新变为新鲜
+        mClock.advance(MAX_AGE_MS / 2);
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+        assertEquals(2, mServer.getRequestCount());
+
+        mVersion = "v2";
+        mClock.advance(MAX_AGE_MS);
+        assertEquals(body("v1"), load(newInterceptors(config), url));
+        awaitRevalidation();
+        assertEquals(body("v2"), load(newInterceptors(config), url));
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void ignorePolicyServesForever() throws Exception {
+        final CacheConfig config = TestResources.newConfig(mFolder)
+                .setClock(mClock)
+                .build();
+        final List<CacheInterceptor> interceptors = newInterceptors(config);
+        final String url = mServer.url("/ignore.json").toString();
+        assertEquals(body("v1"), load(interceptors, url));
+        mVersion = "v2";
+        mClock.advance(MAX_AGE_MS * 100);
+        // 默认策略与旧版本一致，不检查是否过期
+        assertEquals(body("v1"), load(interceptors, url));
+        assertTrue(Revalidator.getInstance().awaitIdle(TIMEOUT_MS));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    private CacheConfig newConfig(int memorySize) throws Exception {
+        return TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(memorySize)
+                .setFreshnessPolicy(FreshnessPolicy.STALE_WHILE_REVALIDATE)
+                .setClock(mClock)
+                .build();
+    }
+
+    /**
+     * 与 CacheManager 的 FORCE 模式一致，未开启内存缓存时也由 {@link MemCacheInterceptor} 发起校验
+     */
+    private List<CacheInterceptor> newInterceptors(CacheConfig config) {
+        final MemCacheInterceptor mem = new MemCacheInterceptor(config);
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        final ForceRemoteCacheInterceptor remote = new ForceRemoteCacheInterceptor(RuntimeEnvironment.getApplication(), config);
+        mInterceptors.add(mem);
+        mInterceptors.add(disk);
+        mInterceptors.add(remote);
+        return Arrays.<CacheInterceptor>asList(mem, disk, remote);
+    }
+
+    private static void awaitRevalidation() throws InterruptedException {
+        assertTrue("revalidation timed out", Revalidator.getInstance().awaitIdle(TIMEOUT_MS));
+    }
+
+    private static String load(List<CacheInterceptor> interceptors, String url) throws Exception {
+        return new String(TestResources.readBody(TestResources.load(interceptors, url, MIME)), UTF_8);
+    }
+
+    private static String body(String version) {
+        return "{\"version\":\"" + version + "\"}";
+    }
+}
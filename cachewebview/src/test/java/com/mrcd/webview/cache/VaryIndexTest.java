@@ -0,0 +1,161 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.TestResources;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class VaryIndexTest {
+
+    private static final String URL = "https://example.com/greeting.json";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void withoutVaryUsesUrlKey() throws Exception {
+        final VaryIndex index = newIndex();
+        final CacheRequest request = newRequest("en");
+        assertEquals(request.getKey(), index.lookupKey(request));
+        assertEquals(request.getKey(), index.storeKey(request, headers(null)));
+        assertEquals(request.getKey(), index.lookupKey(request));
+        assertTrue(VaryIndex.varyValues(request, headers(null)).isEmpty());
+    }
+
+    @Test
+    public void variantsGetDifferentKeys() throws Exception {
+        final VaryIndex index = newIndex();
+        final CacheRequest english = newRequest("en");
+        final CacheRequest chinese = newRequest("zh-CN");
+        final String englishKey = index.storeKey(english, headers("Accept-Language"));
+        assertNotEquals(english.getKey(), englishKey);
+        assertTrue(englishKey.startsWith(english.getKey() + "-"));
+        // 记录 Vary 之后，其他语言的请求也按变体 key 查找，不会命中英文的资源
+        assertEquals(englishKey, index.lookupKey(newRequest("en")));
+        assertNotEquals(englishKey, index.lookupKey(chinese));
+        assertEquals(index.lookupKey(chinese), index.storeKey(chinese, headers("Accept-Language")));
+        // key 只能包含小写字母、数字和 '-'
+        assertTrue(englishKey, englishKey.matches("[0-9a-z_-]+"));
+    }
+
+    @Test
+    public void varyNamesAreNormalized() throws Exception {
+        final VaryIndex index = newIndex();
+        final CacheRequest request = newRequest("en");
+        request.getHeaders().put("X-Theme", "dark");
+        final String key = index.storeKey(request, headers("Accept-Language, X-Theme"));
+        assertEquals(key, index.storeKey(request, headers("x-theme  accept-language,accept-language")));
+        // Accept-Encoding 由 OkHttp 处理，不参与生成变体 key
+        assertEquals(key, index.storeKey(request, headers("Accept-Encoding, Accept-Language, X-Theme")));
+        assertEquals(request.getKey(), index.storeKey(request, headers("Accept-Encoding")));
+    }
+
+    @Test
+    public void varyAnyIsNotCacheable() throws Exception {
+        final VaryIndex index = newIndex();
+        final CacheRequest request = newRequest("en");
+        assertNull(index.storeKey(request, headers("Accept-Language, *")));
+        assertEquals(request.getKey(), index.lookupKey(request));
+    }
+
+    @Test
+    public void responseWithoutVaryClearsRecord() throws Exception {
+        final VaryIndex index = newIndex();
+        final CacheRequest request = newRequest("en");
+        assertNotEquals(request.getKey(), index.storeKey(request, headers("Accept-Language")));
+        assertEquals(request.getKey(), index.storeKey(request, headers(null)));
+        assertEquals(request.getKey(), index.lookupKey(newRequest("zh")));
+    }
+
+    @Test
+    public void missingHeadersUseDefaults() throws Exception {
+        final VaryIndex index = newIndex();
+        final CacheRequest first = newRequest(null);
+        first.setUserAgent("agent/1");
+        final CacheRequest second = newRequest(null);
+        second.setUserAgent("agent/2");
+        // WebView 没有带 User-Agent 请求头时使用实际发出的 User-Agent
+        assertNotEquals(index.storeKey(first, headers("User-Agent")), index.storeKey(second, headers("User-Agent")));
+        second.getHeaders().put("user-agent", "agent/1");
+        assertEquals(index.lookupKey(first), index.lookupKey(second));
+    }
+
+    @Test
+    public void varyValuesMatchRequest() {
+        final CacheRequest request = newRequest("en");
+        request.getHeaders().put("X-Theme", " dark ");
+        final Map<String, String> values = VaryIndex.varyValues(request, headers("X-Theme, Accept-Language"));
+        assertEquals(2, values.size());
+        assertEquals("en", values.get("accept-language"));
+        assertEquals("dark", values.get("x-theme"));
+        assertTrue(VaryIndex.matches(request, values));
+        assertFalse(VaryIndex.matches(newRequest("zh"), values));
+        assertTrue(VaryIndex.matches(newRequest("zh"), Collections.<String, String>emptyMap()));
+    }
+
+    @Test
+    public void savedIndexIsReloaded() throws Exception {
+        final String cacheDir = mFolder.newFolder().getPath();
+        final VaryIndex index = VaryIndex.forCacheDir(cacheDir);
+        final CacheRequest request = newRequest("en");
+        final String key = index.storeKey(request, headers("Accept-Language"));
+        index.save();
+
+        // 索引按目录共享，复制到另一个目录模拟进程重启后读取
+        final String otherDir = mFolder.newFolder().getPath();
+        copy(new File(cacheDir + "-vary"), new File(otherDir + "-vary"));
+        assertEquals(key, VaryIndex.forCacheDir(otherDir).lookupKey(newRequest("en")));
+    }
+
+    private VaryIndex newIndex() throws Exception {
+        return VaryIndex.forCacheDir(mFolder.newFolder().getPath());
+    }
+
+    private static CacheRequest newRequest(String language) {
+        final CacheRequest request = TestResources.newRequest(URL, "application/json");
+        if (language != null) {
+            request.getHeaders().put("Accept-Language", language);
+        }
+        return request;
+    }
+
+    private static Map<String, String> headers(String vary) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        if (vary != null) {
+            headers.put("Vary", vary);
+        }
+        return headers;
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        final InputStream input = new FileInputStream(from);
+        final OutputStream output = new FileOutputStream(to);
+        final byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+        output.close();
+    }
+}
@@ -0,0 +1,143 @@
+package com.mrcd.webview.cache;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.Chain;
+import com.mrcd.webview.cache.intercept.DiskCacheInterceptor;
+import com.mrcd.webview.cache.intercept.ForceRemoteCacheInterceptor;
+import com.mrcd.webview.cache.intercept.MemCacheInterceptor;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.cookie.FastCookieManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.CookieJar;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 服务端按 Accept-Language 返回不同语言的内容，缓存按语言分别保存，不会返回其他语言的变体
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VaryVariantsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String MIME = "application/json";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final List<Destroyable> mInterceptors = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        FastCookieManager.getInstance().setCookieJar(CookieJar.NO_COOKIES);
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                final String language = request.getHeader("Accept-Language");
+                final String vary = request.getPath().startsWith("/any") ? "*" : "Accept-Language";
+                return new MockResponse()
+                        .setHeader("Content-Type", MIME)
+                        .setHeader("Vary", vary)
+                        .setBody(greeting(language));
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Destroyable interceptor : mInterceptors) {
+            interceptor.destroy();
+        }
+        mServer.shutdown();
+    }
+
+    @Test
+    public void memoryAndDiskServeMatchingVariant() throws Exception {
+        final CacheConfig config = newConfig();
+        final String url = mServer.url("/greeting.json").toString();
+        final List<CacheInterceptor> interceptors = newInterceptors(config, true);
+        for (int round = 0; round < 3; round++) {
+            for (String language : Arrays.asList("en", "zh-CN", "fr")) {
+                assertEquals(greeting(language), load(interceptors, url, language));
+            }
+        }
+        // 每种语言只请求一次网络
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void diskServesMatchingVariant() throws Exception {
+        final CacheConfig config = newConfig();
+        final String url = mServer.url("/greeting.json").toString();
+        assertEquals(greeting("en"), load(newInterceptors(config, false), url, "en"));
+        assertEquals(greeting("zh-CN"), load(newInterceptors(config, false), url, "zh-CN"));
+        // 新的 WebView 只有磁盘缓存可用，仍然按语言命中
+        for (String language : Arrays.asList("zh-CN", "en", "zh-CN")) {
+            assertEquals(greeting(language), load(newInterceptors(config, false), url, language));
+        }
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void varyAnyIsNotCached() throws Exception {
+        final CacheConfig config = newConfig();
+        final String url = mServer.url("/any.json").toString();
+        final List<CacheInterceptor> interceptors = newInterceptors(config, true);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(greeting("en"), load(interceptors, url, "en"));
+        }
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    private CacheConfig newConfig() throws Exception {
+        return TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(1024 * 1024)
+                .build();
+    }
+
+    private List<CacheInterceptor> newInterceptors(CacheConfig config, boolean memory) {
+        final List<CacheInterceptor> interceptors = new ArrayList<>();
+        if (memory) {
+            final MemCacheInterceptor mem = new MemCacheInterceptor(config);
+            mInterceptors.add(mem);
+            interceptors.add(mem);
+        }
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        final ForceRemoteCacheInterceptor remote = new ForceRemoteCacheInterceptor(RuntimeEnvironment.getApplication(), config);
+        mInterceptors.add(disk);
+        mInterceptors.add(remote);
+        interceptors.add(disk);
+        interceptors.add(remote);
+        return interceptors;
+    }
+
+    private static String load(List<CacheInterceptor> interceptors, String url, String language) throws Exception {
+        final CacheRequest request = TestResources.newRequest(url, MIME);
+        request.getHeaders().put("Accept-Language", language);
+        return new String(TestResources.readBody(new Chain(interceptors).process(request)), UTF_8);
+    }
+
+    private static String greeting(String language) {
+        return "{\"language\":\"" + language + "\"}";
+    }
+}
@@ -0,0 +1,100 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.TextCorpus;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 磁盘缓存压缩保存文本资源时的磁盘占用和命中延迟。
+ * 资源集为生成的 200 个 5~300KB 的脚本和样式，压缩率与真实的 JS、CSS 相近
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskCompressionBenchmark {
+
+    private static final int RESOURCES = 200;
+    private static final int ROUNDS = 5;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final FakeOrigin mOrigin = new FakeOrigin("text/css", true);
+    private final String[] mUrls = new String[RESOURCES];
+    private long mCorpusBytes;
+
+    @Before
+    public void setUp() {
+        TestResources.assumeBenchmark();
+        final Random random = new Random(1);
+        for (int i = 0; i < RESOURCES; i++) {
+            final int size = 5 * 1024 + random.nextInt(295 * 1024);
+            final boolean script = random.nextInt(3) > 0;
+            mUrls[i] = "https://example.com/" + i + (script ? ".js" : ".css");
+            final byte[] body = script ? TextCorpus.javaScript(size, i) : TextCorpus.css(size, i);
+            mOrigin.put(mUrls[i], body);
+            mCorpusBytes += body.length;
+        }
+    }
+
+    @Test
+    public void footprintAndHitLatency() throws Exception {
+        System.out.println("mode\tcorpus(KB)\tdisk(KB)\tmiss(ms)\thit p50(us)\thit p99(us)");
+        // 第一轮用于预热
+        run(false, false);
+        run(true, false);
+        final long plain = run(false, true);
+        final long compressed = run(true, true);
+        assertTrue(compressed < plain / 2);
+    }
+
+    private long run(boolean compression, boolean print) throws Exception {
+        final CacheConfig config = TestResources.newConfig(mFolder)
+                .setDiskCacheSize(200L * 1024 * 1024)
+                .setExtensionFilter(TestResources.cacheAllTypes())
+                .setDiskCacheCompression(compression)
+                .build();
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(disk, mOrigin);
+        final int loadsBefore = mOrigin.getLoadCount();
+
+        long start = System.nanoTime();
+        for (String url : mUrls) {
+            TestResources.readBody(TestResources.load(interceptors, url, "text/css"));
+        }
+        final long missTime = System.nanoTime() - start;
+        final long footprint = DiskCompressionTest.directorySize(new File(config.getCacheDir()));
+
+        final long[] hitTimes = new long[RESOURCES * ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < RESOURCES; i++) {
+                start = System.nanoTime();
+                TestResources.readBody(TestResources.load(interceptors, mUrls[i], "text/css"));
+                hitTimes[round * RESOURCES + i] = System.nanoTime() - start;
+            }
+        }
+        assertEquals(RESOURCES, mOrigin.getLoadCount() - loadsBefore);
+        Arrays.sort(hitTimes);
+        if (print) {
+            System.out.println((compression ? "deflate" : "plain") + "\t" + mCorpusBytes / 1024 + "\t" + footprint / 1024
+                    + "\t" + missTime / 1000000 + "\t" + hitTimes[hitTimes.length / 2] / 1000
+                    + "\t" + hitTimes[hitTimes.length * 99 / 100] / 1000);
+        }
+        disk.destroy();
+        return footprint;
+    }
+}
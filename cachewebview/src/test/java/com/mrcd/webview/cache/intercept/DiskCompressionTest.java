@@ -0,0 +1,127 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.TextCorpus;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 文本资源在磁盘上压缩保存，命中时边读边解压
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskCompressionTest {
+
+    private static final String URL = "https://example.com/app.css";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<DiskCacheInterceptor> mInterceptors = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (DiskCacheInterceptor interceptor : mInterceptors) {
+            interceptor.destroy();
+        }
+    }
+
+    @Test
+    public void bytesAreStoredCompressed() throws IOException {
+        assertCompressed(newConfig(true, 0), false, 200 * 1024);
+    }
+
+    @Test
+    public void streamIsStoredCompressed() throws IOException {
+        // 超过整体读入内存的上限，命中时仍以流的形式返回
+        assertCompressed(newConfig(true, 0), true, 1024 * 1024);
+    }
+
+    @Test
+    public void packFileIsStoredCompressed() throws IOException {
+        assertCompressed(newConfig(true, 64 * 1024), false, 32 * 1024);
+        assertCompressed(newConfig(true, 64 * 1024), true, 32 * 1024);
+    }
+
+    @Test
+    public void mappedBodyIsDecoded() throws IOException {
+        assertCompressed(newBuilder(true, 0).setMappedBodyThreshold(1024).build(), false, 200 * 1024);
+    }
+
+    @Test
+    public void disabledByDefault() throws IOException {
+        final CacheConfig config = newConfig(false, 0);
+        final byte[] body = TextCorpus.css(200 * 1024, 1);
+        load(config, new FakeOrigin("text/css", false).put(URL, body), body);
+        assertTrue(directorySize(new File(config.getCacheDir())) >= body.length);
+    }
+
+    @Test
+    public void binaryIsNotCompressed() throws IOException {
+        final CacheConfig config = newConfig(true, 0);
+        final byte[] body = TextCorpus.css(200 * 1024, 2);
+        load(config, new FakeOrigin("image/png", false).put(URL, body), body);
+        assertTrue(directorySize(new File(config.getCacheDir())) >= body.length);
+    }
+
+    private void assertCompressed(CacheConfig config, boolean stream, int size) throws IOException {
+        final byte[] body = TextCorpus.css(size, size);
+        final FakeOrigin origin = new FakeOrigin("text/css", stream).put(URL, body);
+        final DiskCacheInterceptor disk = load(config, origin, body);
+        final long footprint = directorySize(new File(config.getCacheDir()));
+        assertTrue("footprint " + footprint, footprint < body.length / 2);
+        // 第二次从磁盘读取
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(disk, origin);
+        assertArrayEquals(body, TestResources.readBody(TestResources.load(interceptors, URL, "text/css")));
+        assertEquals(1, origin.getLoadCount());
+    }
+
+    private DiskCacheInterceptor load(CacheConfig config, FakeOrigin origin, byte[] body) throws IOException {
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        mInterceptors.add(disk);
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(disk, origin);
+        assertArrayEquals(body, TestResources.readBody(TestResources.load(interceptors, URL, "text/css")));
+        return disk;
+    }
+
+    private CacheConfig newConfig(boolean compression, int packFileThreshold) throws IOException {
+        return newBuilder(compression, packFileThreshold).build();
+    }
+
+    private CacheConfig.Builder newBuilder(boolean compression, int packFileThreshold) throws IOException {
+        return TestResources.newConfig(mFolder)
+                .setExtensionFilter(TestResources.cacheAllTypes())
+                .setPackFileThreshold(packFileThreshold)
+                .setDiskCacheCompression(compression);
+    }
+
+    static long directorySize(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += directorySize(child);
+            }
+        }
+        return size;
+    }
+}
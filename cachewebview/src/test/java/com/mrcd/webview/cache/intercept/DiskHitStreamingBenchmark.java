@@ -0,0 +1,129 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 磁盘缓存命中时的首字节时间和堆内存峰值，对比整体读入内存再返回的方式
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskHitStreamingBenchmark {
+
+    private static final int[] SIZES = {10 * 1024, 100 * 1024, 1024 * 1024, 5 * 1024 * 1024, 20 * 1024 * 1024};
+    private static final int ROUNDS = 5;
+    private static final String MIME = "application/x-test";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        TestResources.assumeBenchmark();
+    }
+
+    @Test
+    public void diskHit() throws Exception {
+        final CacheConfig config = TestResources.newConfig(mFolder)
+                .setDiskCacheSize(200L * 1024 * 1024)
+                .build();
+        final FakeOrigin origin = new FakeOrigin(MIME, true);
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(disk, origin);
+
+        System.out.println("size\tstream ttfb(us)\tstream peak heap(KB)\tbuffered ttfb(us)\tbuffered peak heap(KB)");
+        for (int size : SIZES) {
+            final String url = "https://example.com/" + size + ".bin";
+            origin.put(url, TestResources.randomBytes(size, size));
+            // 第一次请求写入磁盘
+            TestResources.readBody(TestResources.load(interceptors, url, MIME));
+
+            long streamTtfb = 0, streamPeak = 0, bufferedTtfb = 0, bufferedPeak = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                long heap = resetPeakHeap();
+                long start = System.nanoTime();
+                WebResource resource = TestResources.load(interceptors, url, MIME);
+                readFirstByte(resource);
+                streamTtfb += System.nanoTime() - start;
+                streamPeak = Math.max(streamPeak, peakHeap() - heap);
+                assertEquals(size, drain(resource) + 1);
+
+                heap = resetPeakHeap();
+                start = System.nanoTime();
+                resource = TestResources.load(interceptors, url, MIME);
+                // 旧的实现：读完整个 body 才交给 WebView
+                final byte[] body = TestResources.readBody(resource);
+                bufferedTtfb += System.nanoTime() - start;
+                bufferedPeak = Math.max(bufferedPeak, peakHeap() - heap);
+                assertEquals(size, body.length);
+            }
+            System.out.println(size / 1024 + "KB\t" + streamTtfb / ROUNDS / 1000 + "\t" + streamPeak / 1024
+                    + "\t" + bufferedTtfb / ROUNDS / 1000 + "\t" + bufferedPeak / 1024);
+        }
+        assertEquals(SIZES.length, origin.getLoadCount());
+        disk.destroy();
+    }
+
+    private static void readFirstByte(WebResource resource) throws Exception {
+        if (resource.getOriginBytes() == null) {
+            resource.getOriginStream().read();
+        }
+    }
+
+    /**
+     * @return 读取的字节数，不含已读取的首字节
+     */
+    private static long drain(WebResource resource) throws Exception {
+        if (resource.getOriginBytes() != null) {
+            return resource.getOriginBytes().length - 1;
+        }
+        final InputStream stream = resource.getOriginStream();
+        final byte[] buffer = new byte[8 * 1024];
+        long total = 0;
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            total += read;
+        }
+        stream.close();
+        return total;
+    }
+
+    private static long resetPeakHeap() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
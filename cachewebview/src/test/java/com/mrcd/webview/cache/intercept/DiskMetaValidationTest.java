@@ -0,0 +1,118 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.cache.SharedDiskCache;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 先校验元数据再读取 body：被过滤的条目不读取 body，重复访问使用内存中的元数据
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskMetaValidationTest {
+
+    private static final String URL = "https://example.com/res/1";
+    /**
+     * 默认过滤器不缓存图片，磁盘中的图片条目会在元数据阶段被拒绝
+     */
+    private static final String FILTERED_MIME = "image/png";
+    private static final String CACHEABLE_MIME = "application/x-test";
+    private static final int BODY_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private CacheConfig mConfig;
+    private DiskCacheInterceptor mDisk;
+    private SharedDiskCache mSharedDiskCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mConfig = TestResources.newConfig(mFolder).build();
+        mDisk = new DiskCacheInterceptor(mConfig);
+        mSharedDiskCache = SharedDiskCache.acquire(mConfig);
+    }
+
+    @After
+    public void tearDown() {
+        mDisk.destroy();
+        mSharedDiskCache.release();
+    }
+
+    @Test
+    public void filteredEntryIsRejectedWithoutReadingBody() throws Exception {
+        // 源站的资源由我们自己缓存，即使 mime type 被过滤也会写入磁盘
+        final FakeOrigin origin = new FakeOrigin(FILTERED_MIME, false).put(URL, TestResources.randomBytes(BODY_SIZE, 1));
+        TestResources.load(Arrays.<CacheInterceptor>asList(mDisk, origin), URL, FILTERED_MIME);
+        assertEquals(1, origin.getLoadCount());
+        final File body = findBodyFile(TestResources.newRequest(URL, FILTERED_MIME).getKey());
+
+        final List<CacheInterceptor> diskOnly = Collections.<CacheInterceptor>singletonList(mDisk);
+        assertNull(TestResources.load(diskOnly, URL, FILTERED_MIME));
+        assertEquals(BODY_SIZE, mSharedDiskCache.getSkippedBodyBytes());
+        assertEquals(0, mSharedDiskCache.getUnservedBodyBytes());
+        assertEquals(0, mSharedDiskCache.getMetaCacheHitCount());
+
+        // 再次访问直接用内存中的元数据拒绝：删除 body 后若打开了缓存文件，元数据会随失效的条目一起移除
+        assertTrue(body.delete());
+        assertNull(TestResources.load(diskOnly, URL, FILTERED_MIME));
+        assertEquals(1, mSharedDiskCache.getMetaCacheHitCount());
+        assertNotNull(mSharedDiskCache.peekMeta(TestResources.newRequest(URL, FILTERED_MIME).getKey()));
+        assertEquals(0, mSharedDiskCache.getUnservedBodyBytes());
+    }
+
+    @Test
+    public void repeatHitUsesCachedMeta() throws Exception {
+        final byte[] bytes = TestResources.randomBytes(BODY_SIZE, 2);
+        final FakeOrigin origin = new FakeOrigin(CACHEABLE_MIME, false).put(URL, bytes);
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(mDisk, origin);
+        TestResources.load(interceptors, URL, CACHEABLE_MIME);
+
+        assertArrayEquals(bytes, TestResources.readBody(TestResources.load(interceptors, URL, CACHEABLE_MIME)));
+        assertEquals(0, mSharedDiskCache.getMetaCacheHitCount());
+        assertArrayEquals(bytes, TestResources.readBody(TestResources.load(interceptors, URL, CACHEABLE_MIME)));
+        assertEquals(1, mSharedDiskCache.getMetaCacheHitCount());
+        assertEquals(1, origin.getLoadCount());
+        assertEquals(0, mSharedDiskCache.getSkippedBodyBytes());
+        assertEquals(0, mSharedDiskCache.getUnservedBodyBytes());
+    }
+
+    private File findBodyFile(String key) {
+        final File file = findFile(new File(mConfig.getCacheDir()), key + ".1");
+        assertNotNull(file);
+        return file;
+    }
+
+    private static File findFile(File directory, String name) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                final File found = findFile(file, name);
+                if (found != null) {
+                    return found;
+                }
+            } else if (file.getName().equals(name)) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,92 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 1-50 MB 的磁盘缓存命中，内存映射读取与文件流读取的堆内存分配量和吞吐量
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MappedReadBenchmark {
+
+    private static final int[] SIZES = {1024 * 1024, 5 * 1024 * 1024, 20 * 1024 * 1024, 50 * 1024 * 1024};
+    private static final int ROUNDS = 5;
+    /**
+     * WebView 每次读取的大小
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final String MIME = "application/x-test";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        TestResources.assumeBenchmark();
+    }
+
+    @Test
+    public void mappedVsStream() throws Exception {
+        System.out.println("mode\tsize(MB)\tallocated(KB)/hit\tMB/s");
+        for (long mappedThreshold : new long[]{0, 512 * 1024}) {
+            final CacheConfig config = TestResources.newConfig(mFolder)
+                    .setDiskCacheSize(500L * 1024 * 1024)
+                    .setMappedBodyThreshold(mappedThreshold)
+                    .build();
+            final FakeOrigin origin = new FakeOrigin(MIME, true);
+            final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+            final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(disk, origin);
+            for (int size : SIZES) {
+                final String url = "https://example.com/" + size + ".bin";
+                origin.put(url, TestResources.randomBytes(size, size));
+                TestResources.readBody(TestResources.load(interceptors, url, MIME));
+                // 预热
+                read(TestResources.load(interceptors, url, MIME));
+
+                final long allocated = allocatedBytes();
+                final long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    assertEquals(size, read(TestResources.load(interceptors, url, MIME)));
+                }
+                final long nanos = System.nanoTime() - start;
+                System.out.println((mappedThreshold > 0 ? "mapped" : "stream") + "\t" + size / (1024 * 1024)
+                        + "\t" + (allocatedBytes() - allocated) / ROUNDS / 1024
+                        + "\t" + (long) size * ROUNDS * 1000 / nanos);
+            }
+            disk.destroy();
+        }
+    }
+
+    private static long read(WebResource resource) throws Exception {
+        final InputStream stream = resource.getOriginStream();
+        final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        long total = 0;
+        int count;
+        while ((count = stream.read(buffer)) != -1) {
+            total += count;
+        }
+        stream.close();
+        return total;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,149 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.cache.memory.MemoryBudgetArbiter;
+import com.mrcd.webview.cache.memory.SharedMemoryCache;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WebView 复用池不断创建、销毁 CacheManager 时，内存缓存仍然有效。每个 {@link MemCacheInterceptor} 对应一个 CacheManager
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MemCacheChurnTest {
+
+    private static final int URLS = 20;
+    private static final int ROUNDS = 50;
+    private static final String MIME = "application/x-test";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        // 其他测试释放的缓存延迟注销，设置足够大的预算使各缓存按期望大小分配
+        MemoryBudgetArbiter.getInstance().setBudget(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        MemoryBudgetArbiter.getInstance().setBudget(0);
+    }
+
+    @Test
+    public void hitRatioSurvivesManagerChurn() throws Exception {
+        final CacheConfig config = newConfig(1024 * 1024);
+        final FakeOrigin origin = newOrigin();
+        for (int round = 0; round < ROUNDS; round++) {
+            final MemCacheInterceptor manager = new MemCacheInterceptor(config);
+            loadAll(manager, origin);
+            manager.destroy();
+        }
+        // 只有第一轮请求了网络
+        assertEquals(URLS, origin.getLoadCount());
+        final MemCacheInterceptor manager = new MemCacheInterceptor(config);
+        final double hitRate = manager.getStats().getHitRate();
+        assertTrue("hit rate " + hitRate, hitRate >= (ROUNDS - 1) / (double) ROUNDS);
+        manager.destroy();
+    }
+
+    @Test
+    public void destroyingOneManagerKeepsOthersCached() throws Exception {
+        final CacheConfig config = newConfig(1024 * 1024);
+        final FakeOrigin origin = newOrigin();
+        final List<MemCacheInterceptor> pool = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            pool.add(new MemCacheInterceptor(config));
+        }
+        loadAll(pool.get(0), origin);
+        for (int round = 0; round < ROUNDS; round++) {
+            // 轮流销毁最早的 WebView 并补充新的，其余 WebView 仍在使用
+            pool.remove(0).destroy();
+            pool.add(new MemCacheInterceptor(config));
+            for (MemCacheInterceptor manager : pool) {
+                assertNotNull(manager.getStats());
+                loadAll(manager, origin);
+            }
+        }
+        assertEquals(URLS, origin.getLoadCount());
+        for (MemCacheInterceptor manager : pool) {
+            manager.destroy();
+        }
+        // 已销毁的 manager 不再持有缓存
+        assertNull(pool.get(0).getStats());
+    }
+
+    @Test
+    public void configsWithDifferentDirsAreIndependent() throws Exception {
+        final CacheConfig small = newConfig(30 * 1024);
+        final CacheConfig large = newConfig(1024 * 1024);
+        final FakeOrigin origin = newOrigin();
+        final MemCacheInterceptor smallManager = new MemCacheInterceptor(small);
+        final MemCacheInterceptor largeManager = new MemCacheInterceptor(large);
+        // 先创建的配置不会决定后创建的配置的大小
+        for (int round = 0; round < 3; round++) {
+            loadAll(smallManager, origin);
+            loadAll(largeManager, origin);
+        }
+        assertEquals(0, smallManager.getStats().getHitCount());
+        assertEquals(2 * URLS, largeManager.getStats().getHitCount());
+        smallManager.destroy();
+        largeManager.destroy();
+    }
+
+    @Test
+    public void budgetIsSharedBetweenConfigs() throws Exception {
+        final int budget = 1024 * 1024;
+        MemoryBudgetArbiter.getInstance().setBudget(budget);
+        final SharedMemoryCache first = SharedMemoryCache.acquire(newConfig(budget));
+        final SharedMemoryCache second = SharedMemoryCache.acquire(newConfig(budget));
+        // 其他测试延迟释放的缓存也参与分配，这里只检查总和不超过预算
+        assertTrue(first.maxSize() + second.maxSize() <= budget);
+        assertEquals(first.maxSize(), second.maxSize());
+        first.release();
+        second.release();
+    }
+
+    private CacheConfig newConfig(int memorySize) throws IOException {
+        return TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(memorySize)
+                .build();
+    }
+
+    private static FakeOrigin newOrigin() {
+        final FakeOrigin origin = new FakeOrigin(MIME, false);
+        for (int i = 0; i < URLS; i++) {
+            origin.put(url(i), TestResources.randomBytes(10 * 1024, i));
+        }
+        return origin;
+    }
+
+    private static void loadAll(MemCacheInterceptor manager, FakeOrigin origin) throws IOException {
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(manager, origin);
+        for (int i = 0; i < URLS; i++) {
+            assertEquals(10 * 1024, TestResources.readBody(TestResources.load(interceptors, url(i), MIME)).length);
+        }
+    }
+
+    private static String url(int i) {
+        return "https://example.com/" + i + ".js";
+    }
+}
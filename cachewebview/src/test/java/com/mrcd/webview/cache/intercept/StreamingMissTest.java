@@ -0,0 +1,138 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TestResources.FakeOrigin;
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.Destroyable;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * 网络流同时交给 WebView 和缓存，读取完毕才写入，中途取消不写入
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StreamingMissTest {
+
+    private static final String MIME = "application/x-test";
+    private static final String URL = "https://example.com/app.bin";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Destroyable> mInterceptors = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (Destroyable interceptor : mInterceptors) {
+            interceptor.destroy();
+        }
+    }
+
+    private CacheConfig newConfig(int packFileThreshold) throws IOException {
+        return TestResources.newConfig(mFolder)
+                .setPackFileThreshold(packFileThreshold)
+                .build();
+    }
+
+    private DiskCacheInterceptor newDisk(CacheConfig config) {
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        mInterceptors.add(disk);
+        return disk;
+    }
+
+    private MemCacheInterceptor newMemory(CacheConfig config) {
+        final MemCacheInterceptor memory = new MemCacheInterceptor(config);
+        mInterceptors.add(memory);
+        return memory;
+    }
+
+    @Test
+    public void diskLruCacheStoresStreamAfterFullRead() throws IOException {
+        // 大于内存缓冲上限，命中时仍以流的形式返回
+        assertStoredAfterFullRead(newConfig(0), 1024 * 1024);
+    }
+
+    @Test
+    public void packFileStoresStreamAfterFullRead() throws IOException {
+        assertStoredAfterFullRead(newConfig(64 * 1024), 16 * 1024);
+    }
+
+    @Test
+    public void packFileSpillsLargeStreamToDiskLruCache() throws IOException {
+        assertStoredAfterFullRead(newConfig(64 * 1024), 256 * 1024);
+    }
+
+    private void assertStoredAfterFullRead(CacheConfig config, int size) throws IOException {
+        final byte[] body = TestResources.randomBytes(size, size);
+        final FakeOrigin origin = new FakeOrigin(MIME, true).put(URL, body);
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(newDisk(config), origin);
+
+        final WebResource miss = TestResources.load(interceptors, URL, MIME);
+        assertNotNull(miss.getOriginStream());
+        assertArrayEquals(body, TestResources.readBody(miss));
+
+        final WebResource hit = TestResources.load(interceptors, URL, MIME);
+        assertArrayEquals(body, TestResources.readBody(hit));
+        assertEquals(1, origin.getLoadCount());
+    }
+
+    @Test
+    public void mappedHitReturnsWholeBody() throws IOException {
+        final CacheConfig config = TestResources.newConfig(mFolder)
+                .setMappedBodyThreshold(64 * 1024)
+                .build();
+        assertStoredAfterFullRead(config, 2 * 1024 * 1024);
+    }
+
+    @Test
+    public void cancelledStreamIsNotStored() throws IOException {
+        final byte[] body = TestResources.randomBytes(1024 * 1024, 3);
+        final FakeOrigin origin = new FakeOrigin(MIME, true).put(URL, body);
+        final CacheConfig config = newConfig(0);
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(newDisk(config), origin);
+
+        final InputStream partial = TestResources.load(interceptors, URL, MIME).getOriginStream();
+        assertEquals(4096, partial.read(new byte[4096]));
+        partial.close();
+
+        assertArrayEquals(body, TestResources.readBody(TestResources.load(interceptors, URL, MIME)));
+        assertEquals(2, origin.getLoadCount());
+        assertArrayEquals(body, TestResources.readBody(TestResources.load(interceptors, URL, MIME)));
+        assertEquals(2, origin.getLoadCount());
+    }
+
+    @Test
+    public void memoryCacheFillsWhenStreamCompletes() throws IOException {
+        final byte[] body = TestResources.randomBytes(32 * 1024, 4);
+        final FakeOrigin origin = new FakeOrigin(MIME, true).put(URL, body);
+        final CacheConfig config = newConfig(0);
+        // 没有磁盘缓存，第二次只能从内存缓存命中
+        final List<CacheInterceptor> interceptors = Arrays.<CacheInterceptor>asList(newMemory(config), origin);
+
+        final InputStream partial = TestResources.load(interceptors, URL, MIME).getOriginStream();
+        partial.read();
+        partial.close();
+        assertArrayEquals(body, TestResources.readBody(TestResources.load(interceptors, URL, MIME)));
+        assertEquals(2, origin.getLoadCount());
+
+        final WebResource hit = TestResources.load(interceptors, URL, MIME);
+        assertArrayEquals(body, hit.getOriginBytes());
+        assertEquals(2, origin.getLoadCount());
+    }
+}
@@ -0,0 +1,127 @@
+package com.mrcd.webview.cache.intercept;
+
+import com.mrcd.webview.TestResources;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TeeInputStreamTest {
+
+    private static class RecordingListener implements TeeInputStream.Listener {
+
+        long completedLength = -1;
+        int completeCount;
+        int abortCount;
+
+        @Override
+        public void onComplete(long length) {
+            completedLength = length;
+            completeCount++;
+        }
+
+        @Override
+        public void onAbort() {
+            abortCount++;
+        }
+    }
+
+    @Test
+    public void completeReadCopiesEveryByte() throws IOException {
+        final byte[] body = TestResources.randomBytes(100 * 1024, 1);
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final RecordingListener listener = new RecordingListener();
+        final InputStream tee = new TeeInputStream(new ByteArrayInputStream(body), sink, listener);
+
+        // 单字节读取、跳过和批量读取混合使用
+        final ByteArrayOutputStream read = new ByteArrayOutputStream();
+        read.write(tee.read());
+        assertEquals(1024, tee.skip(1024));
+        read.write(body, 1, 1024);
+        final byte[] buffer = new byte[4096];
+        int count;
+        while ((count = tee.read(buffer)) != -1) {
+            read.write(buffer, 0, count);
+        }
+        tee.close();
+
+        assertArrayEquals(body, read.toByteArray());
+        assertArrayEquals(body, sink.toByteArray());
+        assertEquals(1, listener.completeCount);
+        assertEquals(body.length, listener.completedLength);
+        assertEquals(0, listener.abortCount);
+    }
+
+    @Test
+    public void closeBeforeEndAborts() throws IOException {
+        final RecordingListener listener = new RecordingListener();
+        final InputStream tee = new TeeInputStream(new ByteArrayInputStream(new byte[8192]),
+                new ByteArrayOutputStream(), listener);
+        assertEquals(1024, tee.read(new byte[1024]));
+        tee.close();
+        tee.close();
+
+        assertEquals(0, listener.completeCount);
+        assertEquals(1, listener.abortCount);
+    }
+
+    @Test
+    public void sourceErrorAborts() {
+        final RecordingListener listener = new RecordingListener();
+        final InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        final InputStream tee = new TeeInputStream(failing, new ByteArrayOutputStream(), listener);
+        try {
+            tee.read();
+        } catch (IOException expected) {
+            // WebView 收到同样的异常
+        }
+        assertEquals(1, listener.abortCount);
+        assertEquals(0, listener.completeCount);
+    }
+
+    @Test
+    public void sinkErrorDoesNotInterruptReader() throws IOException {
+        final byte[] body = TestResources.randomBytes(10 * 1024, 2);
+        final RecordingListener listener = new RecordingListener();
+        final boolean[] closed = new boolean[1];
+        final OutputStream failingSink = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        final InputStream tee = new TeeInputStream(new ByteArrayInputStream(body), failingSink, listener);
+        final byte[] read = new byte[body.length];
+        int offset = 0;
+        int count;
+        while ((count = tee.read(read, offset, Math.min(1000, read.length - offset))) > 0) {
+            offset += count;
+        }
+        assertEquals(-1, tee.read());
+
+        assertTrue(Arrays.equals(body, read));
+        assertTrue(closed[0]);
+        assertEquals(1, listener.abortCount);
+        assertFalse(listener.completeCount > 0);
+    }
+}
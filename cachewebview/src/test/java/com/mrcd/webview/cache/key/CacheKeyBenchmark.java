@@ -0,0 +1,59 @@
+package com.mrcd.webview.cache.key;
+
+import com.mrcd.webview.TestResources;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 生成 key 的耗时，对比旧的 MD5(URLEncoder.encode(url)) 和规范化后的 MurmurHash3
+ */
+public class CacheKeyBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    private List<String> mUrls;
+
+    @Before
+    public void setUp() {
+        TestResources.assumeBenchmark();
+        mUrls = UrlLog.generate(200, 10000, 2);
+    }
+
+    @Test
+    public void keyGeneration() {
+        final Set<String> params = new HashSet<>(NormalizingCacheKeyStrategy.getDefaultIgnoredParams());
+        params.addAll(NormalizingCacheKeyStrategy.getTimestampParams());
+        final CacheKeyStrategy[] strategies = {new Md5CacheKeyStrategy(), new NormalizingCacheKeyStrategy(params)};
+        for (CacheKeyStrategy strategy : strategies) {
+            run(strategy, WARMUP_ROUNDS);
+        }
+        System.out.println("strategy\tns per key");
+        final long md5 = run(strategies[0], ROUNDS);
+        final long normalizing = run(strategies[1], ROUNDS);
+        System.out.println("md5\t" + md5);
+        System.out.println("normalizing\t" + normalizing);
+        assertTrue(normalizing < md5);
+    }
+
+    private long run(CacheKeyStrategy strategy, int rounds) {
+        int sink = 0;
+        final long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String url : mUrls) {
+                sink += strategy.generateKey(url).charAt(0);
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        // 使用结果，避免被 JIT 优化掉
+        assertTrue(sink > 0);
+        return elapsed / ((long) rounds * mUrls.size());
+    }
+}
@@ -0,0 +1,54 @@
+package com.mrcd.webview.cache.key;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在带有缓存破坏参数的请求记录上，对比不同 key 生成方式的命中率（缓存大小不受限）
+ */
+public class CacheKeyHitRatioTest {
+
+    private static final int RESOURCES = 200;
+    private static final int REQUESTS = 20000;
+
+    @Test
+    public void normalizingKeysRecoverHits() {
+        final List<String> log = UrlLog.generate(RESOURCES, REQUESTS, 1);
+        final Set<String> params = new HashSet<>(NormalizingCacheKeyStrategy.getDefaultIgnoredParams());
+        params.addAll(NormalizingCacheKeyStrategy.getTimestampParams());
+
+        final double md5 = hitRatio(new Md5CacheKeyStrategy(), log);
+        final double normalizing = hitRatio(new NormalizingCacheKeyStrategy(), log);
+        final double timestamps = hitRatio(new NormalizingCacheKeyStrategy(params), log);
+
+        assertTrue("normalizing " + normalizing + " md5 " + md5, normalizing > md5 + 0.3);
+        assertTrue("timestamps " + timestamps + " normalizing " + normalizing, timestamps > normalizing);
+        // 每个资源只在第一次请求时缺失
+        assertEquals(1 - (double) distinctResources(log) / REQUESTS, timestamps, 1e-9);
+    }
+
+    private static double hitRatio(CacheKeyStrategy strategy, List<String> log) {
+        final Set<String> cached = new HashSet<>();
+        int hits = 0;
+        for (String url : log) {
+            if (!cached.add(strategy.generateKey(url))) {
+                hits++;
+            }
+        }
+        return (double) hits / log.size();
+    }
+
+    private static int distinctResources(List<String> log) {
+        final Set<String> paths = new HashSet<>();
+        for (String url : log) {
+            paths.add(url.substring(url.indexOf("/static/"), url.indexOf('?')));
+        }
+        return paths.size();
+    }
+}
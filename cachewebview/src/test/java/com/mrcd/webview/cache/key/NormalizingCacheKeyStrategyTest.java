@@ -0,0 +1,87 @@
+package com.mrcd.webview.cache.key;
+
+import com.mrcd.webview.utils.MD5Utils;
+
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizingCacheKeyStrategyTest {
+
+    private final NormalizingCacheKeyStrategy mStrategy = new NormalizingCacheKeyStrategy();
+
+    @Test
+    public void dropsFragment() {
+        assertEquals("https://example.com/app.js", mStrategy.normalize("https://example.com/app.js#top"));
+        assertEquals("https://example.com/app.js?v=1", mStrategy.normalize("https://example.com/app.js?v=1#top"));
+        // fragment 中的 ? 不是查询参数
+        assertEquals("https://example.com/p", mStrategy.normalize("https://example.com/p#x?y=1"));
+    }
+
+    @Test
+    public void sortsParamsStably() {
+        assertEquals("https://example.com/a?a=2&z=1", mStrategy.normalize("https://example.com/a?z=1&a=2"));
+        // 同名参数保持原有顺序，空参数去掉
+        assertEquals("https://example.com/p?a=1&b=2&b=1", mStrategy.normalize("https://example.com/p?b=2&&a=1&b=1"));
+        assertEquals("https://example.com/", mStrategy.normalize("https://example.com/?"));
+    }
+
+    @Test
+    public void lowerCasesSchemeAndHostOnly() {
+        assertEquals("https://User@www.example.com/A/b.js",
+                mStrategy.normalize("HTTPS://User@WWW.Example.COM/A/b.js"));
+        assertEquals("http://example.com:8080/Path", mStrategy.normalize("HTTP://EXAMPLE.com:8080/Path"));
+    }
+
+    @Test
+    public void stripsDefaultIgnoredParams() {
+        assertEquals("https://example.com/app.js?v=2",
+                mStrategy.normalize("https://example.com/app.js?utm_source=x&v=2&_=1690000000000&utm_campaign=y"));
+        // 时间戳参数默认保留
+        assertEquals("https://example.com/app.js?t=1", mStrategy.normalize("https://example.com/app.js?t=1"));
+    }
+
+    @Test
+    public void stripsConfiguredParams() {
+        final Set<String> params = new HashSet<>(NormalizingCacheKeyStrategy.getDefaultIgnoredParams());
+        params.addAll(NormalizingCacheKeyStrategy.getTimestampParams());
+        final NormalizingCacheKeyStrategy strategy = new NormalizingCacheKeyStrategy(params);
+        assertEquals(strategy.generateKey("https://example.com/app.js?v=2"),
+                strategy.generateKey("https://example.com/app.js?ts=1&v=2&t=9"));
+        // 参数名称区分大小写，只有名称完全相同才忽略
+        assertNotEquals(strategy.generateKey("https://example.com/app.js"),
+                strategy.generateKey("https://example.com/app.js?T=1"));
+
+        final NormalizingCacheKeyStrategy none = new NormalizingCacheKeyStrategy(null);
+        assertEquals("https://example.com/a?_=1", none.normalize("https://example.com/a?_=1"));
+        assertEquals("https://example.com/a?_=1",
+                new NormalizingCacheKeyStrategy(Collections.<String>emptySet()).normalize("https://example.com/a?_=1"));
+    }
+
+    @Test
+    public void keyIsLowerHex() {
+        for (String url : Arrays.asList("https://example.com/", "https://例子.cn/路径?名=值", "")) {
+            final String key = mStrategy.generateKey(url);
+            assertEquals(32, key.length());
+            assertTrue(key, key.matches("[0-9a-f]{32}"));
+        }
+        assertEquals(mStrategy.generateKey("https://example.com/a?b=1&a=2#x"), mStrategy.generateKey("https://EXAMPLE.com/a?a=2&b=1"));
+    }
+
+    @Test
+    public void md5KeyIsUnchanged() {
+        // 与旧版本的 MD5Utils.getMD5(URLEncoder.encode(url)) 一致，升级后已有的缓存仍然有效
+        final String url = "https://example.com/app.js?a=1&b=中文";
+        final String key = new Md5CacheKeyStrategy().generateKey(url);
+        assertEquals(MD5Utils.getMD5(URLEncoder.encode(url), false), key);
+        assertNotEquals(key, new Md5CacheKeyStrategy().generateKey("https://example.com/app.js?t=1"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.mrcd.webview.cache.key;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 模拟的资源请求记录：同一资源的 url 会带上时间戳、统计参数、不同的参数顺序和 fragment
+ */
+final class UrlLog {
+
+    private UrlLog() {
+    }
+
+    /**
+     * @param resources 不同资源的数量，按请求次数从多到少排列
+     */
+    static List<String> generate(int resources, int requests, long seed) {
+        final Random random = new Random(seed);
+        final List<String> log = new ArrayList<>(requests);
+        long now = 1690000000000L;
+        for (int i = 0; i < requests; i++) {
+            // 平方分布，靠前的资源请求次数更多
+            final int id = (int) (resources * Math.pow(random.nextDouble(), 2));
+            final List<String> params = new ArrayList<>();
+            params.add("v=" + id % 7);
+            params.add("lang=en");
+            now += random.nextInt(5000);
+            final int buster = random.nextInt(10);
+            if (buster < 3) {
+                // jQuery 的 cache: false
+                params.add("_=" + now);
+            } else if (buster < 5) {
+                params.add("t=" + now / 1000);
+            } else if (buster < 7) {
+                params.add("utm_source=share");
+                params.add("utm_campaign=c" + random.nextInt(20));
+            }
+            Collections.shuffle(params, random);
+            final StringBuilder url = new StringBuilder(random.nextInt(10) == 0 ? "https://CDN.Example.com" : "https://cdn.example.com")
+                    .append("/static/").append(id).append(id % 2 == 0 ? ".js" : ".css");
+            for (int p = 0; p < params.size(); p++) {
+                url.append(p == 0 ? '?' : '&').append(params.get(p));
+            }
+            if (random.nextInt(10) == 0) {
+                url.append("#section");
+            }
+            log.add(url.toString());
+        }
+        return log;
+    }
+}
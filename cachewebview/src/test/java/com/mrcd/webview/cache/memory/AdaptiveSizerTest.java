@@ -0,0 +1,102 @@
+package com.mrcd.webview.cache.memory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSizerTest {
+
+    private static final int KB = 1024;
+    private static final int MIN_SIZE = 256 * KB;
+    private static final int MAX_SIZE = 4096 * KB;
+    /**
+     * 与 AdaptiveSizer 的采样点间隔一致
+     */
+    private static final int BUCKET_SIZE = MAX_SIZE / 32;
+
+    @Test
+    public void initialSizeIsClamped() {
+        assertEquals(MIN_SIZE, new AdaptiveSizer(MIN_SIZE, MAX_SIZE, 0).getTargetSize());
+        assertEquals(MAX_SIZE, new AdaptiveSizer(MIN_SIZE, MAX_SIZE, Integer.MAX_VALUE).getTargetSize());
+        assertEquals(MIN_SIZE * 2, new AdaptiveSizer(MIN_SIZE, MAX_SIZE, MIN_SIZE * 2).getTargetSize());
+    }
+
+    @Test
+    public void sizeFollowsWorkingSet() {
+        final AdaptiveSizer sizer = new AdaptiveSizer(MIN_SIZE, MAX_SIZE, MAX_SIZE);
+        // 100 个 10KB 的资源循环访问，刚好放下工作集的大小才能全部命中
+        loop(sizer, 100, 10 * KB, 20000);
+        final int target = sizer.getTargetSize();
+        assertTrue("target " + target, target >= 1000 * KB && target <= 1000 * KB + BUCKET_SIZE);
+    }
+
+    @Test
+    public void workingSetLargerThanMaxFallsToMin() {
+        final AdaptiveSizer sizer = new AdaptiveSizer(MIN_SIZE, MAX_SIZE, MAX_SIZE);
+        // 工作集超过上限，LRU 循环访问一次都不会命中，扩容没有收益
+        loop(sizer, 500, 10 * KB, 20000);
+        assertEquals(MIN_SIZE, sizer.getTargetSize());
+        assertEquals(1, sizer.getMissRatioCurve().getMissRatio(MAX_SIZE), 0.001);
+    }
+
+    @Test
+    public void sizeShrinksWhenTrafficChanges() {
+        final AdaptiveSizer sizer = new AdaptiveSizer(MIN_SIZE, MAX_SIZE, MIN_SIZE);
+        loop(sizer, 300, 10 * KB, 20000);
+        final int large = sizer.getTargetSize();
+        assertTrue("large " + large, large >= 3000 * KB);
+        // 历史数据按决策周期减半，工作集变小后目标大小跟着变小
+        loop(sizer, 50, 10 * KB, 20000);
+        final int small = sizer.getTargetSize();
+        assertTrue("small " + small, small >= 500 * KB && small <= 500 * KB + BUCKET_SIZE);
+    }
+
+    @Test
+    public void targetChangeIsReported() {
+        final AdaptiveSizer sizer = new AdaptiveSizer(MIN_SIZE, MAX_SIZE, MAX_SIZE);
+        int changes = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (sizer.record("key" + i % 50, 10 * KB)) {
+                changes++;
+            }
+        }
+        assertEquals(1, changes);
+        assertTrue(sizer.getTargetSize() < MAX_SIZE);
+    }
+
+    @Test
+    public void missRatioCurveIsMonotonic() {
+        final AdaptiveSizer sizer = new AdaptiveSizer(MIN_SIZE, MAX_SIZE, MAX_SIZE);
+        loop(sizer, 100, 10 * KB, 1000);
+        final MissRatioCurve curve = sizer.getMissRatioCurve();
+        final int[] sizes = curve.getSizes();
+        final double[] missRatios = curve.getMissRatios();
+        assertEquals(sizes.length, missRatios.length);
+        assertEquals(MAX_SIZE, sizes[sizes.length - 1]);
+        for (int i = 1; i < sizes.length; i++) {
+            assertTrue(sizes[i] > sizes[i - 1]);
+            assertTrue(missRatios[i] <= missRatios[i - 1]);
+        }
+        // 第一轮访问全部缺失，之后放得下工作集就全部命中
+        assertEquals(1, curve.getMissRatio(900 * KB), 0.001);
+        assertEquals(0.1, curve.getMissRatio(1000 * KB + BUCKET_SIZE), 0.001);
+        assertEquals(1000, curve.getRequestCount());
+        assertEquals(1, curve.getMissRatio(0), 0.001);
+    }
+
+    @Test
+    public void manyDistinctKeysAreCompacted() {
+        final AdaptiveSizer sizer = new AdaptiveSizer(MIN_SIZE, MAX_SIZE, MAX_SIZE);
+        // 大量小资源超过访问记录上限，需要重新编号
+        loop(sizer, 4000, 100, 100000);
+        final int target = sizer.getTargetSize();
+        assertTrue("target " + target, target >= 400 * 1000 && target <= 400 * 1000 + BUCKET_SIZE);
+    }
+
+    private static void loop(AdaptiveSizer sizer, int keys, int weight, int accesses) {
+        for (int i = 0; i < accesses; i++) {
+            sizer.record("key" + i % keys, weight);
+        }
+    }
+}
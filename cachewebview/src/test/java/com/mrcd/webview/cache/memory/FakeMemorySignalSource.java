@@ -0,0 +1,32 @@
+package com.mrcd.webview.cache.memory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 手动发出内存压力信号
+ */
+class FakeMemorySignalSource implements MemorySignalSource {
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    void trimMemory(int level) {
+        for (Listener listener : mListeners) {
+            listener.onTrimMemory(level);
+        }
+    }
+
+    int getListenerCount() {
+        return mListeners.size();
+    }
+
+    @Override
+    public void register(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    @Override
+    public void unregister(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
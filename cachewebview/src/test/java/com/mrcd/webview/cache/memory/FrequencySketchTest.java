@@ -0,0 +1,61 @@
+package com.mrcd.webview.cache.memory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void incrementRaisesFrequency() {
+        final FrequencySketch sketch = new FrequencySketch(512);
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 1; i <= 5; i++) {
+            sketch.increment("a");
+            assertEquals(i, sketch.frequency("a"));
+        }
+        assertEquals(0, sketch.frequency("b"));
+    }
+
+    @Test
+    public void frequencyIsCappedAt15() {
+        final FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(15, sketch.frequency("a"));
+    }
+
+    @Test
+    public void resetHalvesCounters() {
+        final int expectedEntries = 64;
+        final FrequencySketch sketch = new FrequencySketch(expectedEntries);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(8, sketch.frequency("hot"));
+        // 采样上限为 10 倍条目数，写满后所有计数器减半
+        for (int i = 0; i < 10 * expectedEntries; i++) {
+            sketch.increment("cold" + i);
+        }
+        final int frequency = sketch.frequency("hot");
+        assertTrue("frequency " + frequency, frequency >= 4 && frequency < 8);
+    }
+
+    @Test
+    public void hotKeysOutrankColdKeys() {
+        final FrequencySketch sketch = new FrequencySketch(1024);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                sketch.increment("hot" + i);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment("cold" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(sketch.frequency("hot" + i) > sketch.frequency("cold" + i));
+        }
+    }
+}
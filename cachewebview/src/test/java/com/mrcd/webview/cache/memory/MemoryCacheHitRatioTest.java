@@ -0,0 +1,78 @@
+package com.mrcd.webview.cache.memory;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 回放资源访问记录，对比 W-TinyLFU 和 LRU 的命中率：
+ * 大部分请求集中在几百个 20~80KB 的常用脚本和样式，其余是只访问一次的 300KB~1MB 大图
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MemoryCacheHitRatioTest {
+
+    private static final String TRACE = "/traces/resource-access.trace";
+    private static final int[] BUDGETS_MB = {5, 10, 15};
+
+    private static final MemoryCache.Weigher<Integer> WEIGHER = new MemoryCache.Weigher<Integer>() {
+        @Override
+        public int weigh(String key, Integer value) {
+            return value;
+        }
+    };
+
+    private static List<String> sPaths;
+    private static List<Integer> sSizes;
+
+    @BeforeClass
+    public static void readTrace() throws IOException {
+        sPaths = new ArrayList<>();
+        sSizes = new ArrayList<>();
+        final InputStream input = MemoryCacheHitRatioTest.class.getResourceAsStream(TRACE);
+        assertNotNull(TRACE, input);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final int space = line.indexOf(' ');
+                sPaths.add(line.substring(0, space));
+                sSizes.add(Integer.parseInt(line.substring(space + 1)));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void tinyLfuBeatsLruOnScanHeavyTrace() {
+        for (int mb : BUDGETS_MB) {
+            final double lfu = replay(new TinyLfuMemoryCache<>(mb << 20, WEIGHER));
+            final double lru = replay(new LruMemoryCache<>(mb << 20, WEIGHER));
+            assertTrue(mb + "MB: tinylfu " + lfu + " < lru " + lru, lfu > lru);
+        }
+    }
+
+    private static double replay(MemoryCache<Integer> cache) {
+        for (int i = 0; i < sPaths.size(); i++) {
+            final String key = sPaths.get(i);
+            if (cache.get(key) == null) {
+                cache.put(key, sSizes.get(i));
+            }
+        }
+        return cache.getStats().getHitRate();
+    }
+}
@@ -0,0 +1,130 @@
+package com.mrcd.webview.cache.memory;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TextCorpus;
+import com.mrcd.webview.WebResource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 10MB 内存缓存在压缩和不压缩时的命中率与 CPU 开销。
+ * 资源集为生成的 300 个 10~150KB 的脚本和样式，共约 24MB，按 Zipf 分布访问
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MemoryCompressionBenchmark {
+
+    private static final int MEMORY_SIZE = 10 * 1024 * 1024;
+    private static final int RESOURCES = 300;
+    private static final int ACCESSES = 20000;
+    private static final double ZIPF_EXPONENT = 0.9;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private byte[][] mBodies;
+    private String[] mContentTypes;
+    private double[] mCumulative;
+
+    @Before
+    public void setUp() {
+        TestResources.assumeBenchmark();
+        MemoryBudgetArbiter.getInstance().setBudget(Integer.MAX_VALUE);
+        final Random random = new Random(1);
+        mBodies = new byte[RESOURCES][];
+        mContentTypes = new String[RESOURCES];
+        for (int i = 0; i < RESOURCES; i++) {
+            final int size = 10 * 1024 + random.nextInt(140 * 1024);
+            final boolean script = random.nextInt(3) > 0;
+            mBodies[i] = script ? TextCorpus.javaScript(size, i) : TextCorpus.css(size, i);
+            mContentTypes[i] = script ? "application/javascript" : "text/css";
+        }
+        mCumulative = new double[RESOURCES];
+        double sum = 0;
+        for (int i = 0; i < RESOURCES; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            mCumulative[i] = sum;
+        }
+        for (int i = 0; i < RESOURCES; i++) {
+            mCumulative[i] /= sum;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        MemoryBudgetArbiter.getInstance().setBudget(0);
+    }
+
+    @Test
+    public void hitRatioVsCpu() throws Exception {
+        System.out.println("mode\thit ratio\tcpu per access(us)\tcpu per hit(us)\tcpu per miss(us)");
+        // 第一轮用于预热
+        replay(0, false);
+        replay(1024, false);
+        final double plain = replay(0, true);
+        final double compressed = replay(1024, true);
+        assertTrue(compressed > plain);
+    }
+
+    private double replay(int compressionThreshold, boolean print) throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(MEMORY_SIZE)
+                .setMemoryCompressionThreshold(compressionThreshold)
+                .build());
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final Random random = new Random(2);
+        long hits = 0;
+        long hitCpu = 0;
+        long missCpu = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            final int index = nextIndex(random);
+            final String key = "key" + index;
+            final long start = threads.getCurrentThreadCpuTime();
+            final WebResource hit = cache.get(key);
+            if (hit != null) {
+                // WebView 读取整个 body，压缩的资源在这里解压
+                TestResources.readBody(hit);
+                hits++;
+                hitCpu += threads.getCurrentThreadCpuTime() - start;
+            } else {
+                // 网络返回后放入内存缓存，压缩的资源在这里压缩
+                cache.put(key, SharedMemoryCacheTest.newResource(mBodies[index], mContentTypes[index]));
+                missCpu += threads.getCurrentThreadCpuTime() - start;
+            }
+        }
+        final double hitRatio = (double) hits / ACCESSES;
+        if (print) {
+            System.out.println((compressionThreshold > 0 ? "deflate" : "plain") + "\t" + String.format("%.3f", hitRatio)
+                    + "\t" + (hitCpu + missCpu) / ACCESSES / 1000 + "\t" + hitCpu / Math.max(1, hits) / 1000
+                    + "\t" + missCpu / Math.max(1, ACCESSES - hits) / 1000);
+        }
+        cache.release();
+        return hitRatio;
+    }
+
+    private int nextIndex(Random random) {
+        final double value = random.nextDouble();
+        int low = 0;
+        int high = RESOURCES - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mCumulative[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,91 @@
+package com.mrcd.webview.cache.memory;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.WebResource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class MemoryEntryTest {
+
+    @Test
+    public void onHeapHitSharesBytes() {
+        final byte[] body = TestResources.randomBytes(1000, 1);
+        final MemoryEntry entry = MemoryEntry.create(newResource(body), null, false);
+        assertEquals(1000, entry.getSize());
+
+        final WebResource first = entry.toWebResource();
+        final WebResource second = entry.toWebResource();
+        assertNotSame(first, second);
+        assertSame(body, first.getOriginBytes());
+        assertEquals("text/plain", first.getResponseHeaders().get("Content-Type"));
+    }
+
+    @Test
+    public void offHeapHitReturnsStream() throws Exception {
+        final SlabAllocator allocator = new SlabAllocator();
+        final byte[] body = TestResources.randomBytes(1000, 2);
+        final MemoryEntry entry = MemoryEntry.create(newResource(body), allocator, false);
+        assertEquals(allocator.blockSizeFor(1000), entry.getSize());
+
+        final WebResource hit = entry.toWebResource();
+        assertNull(hit.getOriginBytes());
+        assertNotNull(hit.getOriginStream());
+        // 缓存释放引用后，正在读取的流仍然持有块
+        entry.release();
+        assertEquals(entry.getSize(), allocator.getUsedBytes());
+        assertArrayEquals(body, TestResources.readBody(hit));
+        assertEquals(0, allocator.getUsedBytes());
+        // 块已经归还，按未命中处理
+        assertNull(entry.toWebResource());
+    }
+
+    @Test
+    public void evictionReleasesBlocks() {
+        final SlabAllocator allocator = new SlabAllocator();
+        final MemoryCache<MemoryEntry> cache = new TinyLfuMemoryCache<>(20 * 1024, new MemoryCache.Weigher<MemoryEntry>() {
+            @Override
+            public int weigh(String key, MemoryEntry value) {
+                return value.getSize();
+            }
+        }, new MemoryCache.RemovalListener<MemoryEntry>() {
+            @Override
+            public void onRemoved(String key, MemoryEntry value) {
+                value.release();
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, MemoryEntry.create(newResource(new byte[1000]), allocator, false));
+        }
+        // 被淘汰或拒绝准入的条目都已释放，缓存中的块之和不超过缓存大小
+        assertTrue(cache.getStats().getEvictionCount() + cache.getStats().getRejectionCount() > 0);
+        assertTrue(allocator.getUsedBytes() <= 20 * 1024);
+        cache.clear();
+        assertEquals(0, allocator.getUsedBytes());
+        assertEquals(0, allocator.getAllocatedBytes());
+    }
+
+    private static WebResource newResource(byte[] body) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "text/plain");
+        final WebResource resource = new WebResource();
+        resource.setResponseCode(200);
+        resource.setReasonPhrase("OK");
+        resource.setResponseHeaders(headers);
+        resource.setOriginBytes(body);
+        return resource;
+    }
+}
@@ -0,0 +1,115 @@
+package com.mrcd.webview.cache.memory;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Robolectric 的 SystemClock 不会自动走动，{@link SystemClock#sleep(long)} 立即拨动时钟
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MemoryTrimmerTest {
+
+    private static final int MAX_SIZE = 100 * 1024;
+    private static final long RESTORE_INTERVAL_MS = 30 * 1000;
+
+    private static final MemoryCache.Weigher<byte[]> WEIGHER = new MemoryCache.Weigher<byte[]>() {
+        @Override
+        public int weigh(String key, byte[] value) {
+            return value.length;
+        }
+    };
+
+    @Test
+    public void trimsInProportionToLevel() {
+        final MemoryCache<byte[]> cache = newFullCache();
+        final MemoryTrimmer trimmer = new MemoryTrimmer(cache);
+
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(MAX_SIZE * 3 / 4, cache.maxSize());
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(MAX_SIZE / 2, cache.maxSize());
+        assertTrue(cache.size() <= MAX_SIZE / 2);
+        // 较低的等级不会把缓存放大
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(MAX_SIZE / 2, cache.maxSize());
+
+        final MemoryTrimStats stats = trimmer.getStats();
+        assertEquals(2, stats.getTrimCount());
+        assertEquals(MAX_SIZE - cache.size(), stats.getReclaimedBytes());
+        assertEquals(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, stats.getLastTrimLevel());
+        assertEquals(MAX_SIZE / 2, stats.getCurrentMaxSize());
+        assertEquals(MAX_SIZE, stats.getBaseMaxSize());
+    }
+
+    @Test
+    public void completeClearsCache() {
+        final MemoryCache<byte[]> cache = newFullCache();
+        final MemoryTrimmer trimmer = new MemoryTrimmer(cache);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, cache.size());
+        assertEquals(MAX_SIZE, trimmer.getStats().getReclaimedBytes());
+    }
+
+    @Test
+    public void restoresGraduallyWhenIdle() {
+        final MemoryCache<byte[]> cache = newFullCache();
+        final MemoryTrimmer trimmer = new MemoryTrimmer(cache);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(MAX_SIZE / 4, cache.maxSize());
+
+        SystemClock.sleep(RESTORE_INTERVAL_MS - 1);
+        trimmer.restoreIfIdle();
+        assertEquals(MAX_SIZE / 4, cache.maxSize());
+
+        // 每个间隔恢复原始大小的 25%
+        for (int step = 2; step <= 4; step++) {
+            SystemClock.sleep(RESTORE_INTERVAL_MS);
+            trimmer.restoreIfIdle();
+            assertEquals(MAX_SIZE * step / 4, cache.maxSize());
+        }
+        SystemClock.sleep(RESTORE_INTERVAL_MS);
+        trimmer.restoreIfIdle();
+        assertEquals(MAX_SIZE, cache.maxSize());
+    }
+
+    @Test
+    public void newSignalDelaysRestore() {
+        final MemoryCache<byte[]> cache = newFullCache();
+        final MemoryTrimmer trimmer = new MemoryTrimmer(cache);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        SystemClock.sleep(RESTORE_INTERVAL_MS / 2);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        SystemClock.sleep(RESTORE_INTERVAL_MS / 2);
+        trimmer.restoreIfIdle();
+        assertEquals(MAX_SIZE / 2, cache.maxSize());
+    }
+
+    @Test
+    public void baseSizeChangeKeepsTrimmedSize() {
+        final MemoryCache<byte[]> cache = newFullCache();
+        final MemoryTrimmer trimmer = new MemoryTrimmer(cache);
+        trimmer.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        // 预算变大时仍保持缩小后的大小，压力缓解后恢复到新的大小
+        trimmer.setBaseMaxSize(MAX_SIZE * 2);
+        assertEquals(MAX_SIZE / 2, cache.maxSize());
+        // 预算比当前还小时立即缩小
+        trimmer.setBaseMaxSize(MAX_SIZE / 4);
+        assertEquals(MAX_SIZE / 4, cache.maxSize());
+        assertEquals(MAX_SIZE / 4, trimmer.getStats().getBaseMaxSize());
+    }
+
+    private static MemoryCache<byte[]> newFullCache() {
+        final MemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(MAX_SIZE, WEIGHER);
+        for (int i = 0; cache.size() + 1024 <= MAX_SIZE; i++) {
+            cache.put("key" + i, new byte[1024]);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,109 @@
+package com.mrcd.webview.cache.memory;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.WebResource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 写入并淘汰 1 万个资源，对比 body 保存在堆内和堆外时的 GC 次数、GC 耗时和存活的堆内存
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OffHeapGcBenchmark {
+
+    private static final int RESOURCES = 10000;
+    private static final int MEMORY_SIZE = 15 * 1024 * 1024;
+    private static final int ROUNDS = 3;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        TestResources.assumeBenchmark();
+        MemoryBudgetArbiter.getInstance().setBudget(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        MemoryBudgetArbiter.getInstance().setBudget(0);
+    }
+
+    @Test
+    public void gcPressure() throws Exception {
+        System.out.println("mode\tgc count\tgc time(ms)\tretained heap(KB)\toff-heap(KB)\telapsed(ms)");
+        for (int round = 0; round < ROUNDS; round++) {
+            // 第一轮用于预热
+            final boolean print = round > 0;
+            run(false, print);
+            run(true, print);
+        }
+    }
+
+    private void run(boolean offHeap, boolean print) throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(MEMORY_SIZE)
+                .setMemoryCacheOffHeap(offHeap)
+                .build());
+        final Random random = new Random(1);
+        final long heapBefore = usedHeap();
+        final long gcCountBefore = gcCount();
+        final long gcTimeBefore = gcTime();
+        final long start = System.nanoTime();
+        for (int i = 0; i < RESOURCES; i++) {
+            // 与网络响应一样，每个资源都是新的数组
+            cache.put("key" + i, SharedMemoryCacheTest.newResource(new byte[4 * 1024 + random.nextInt(60 * 1024)]));
+            if (random.nextInt(4) == 0) {
+                final WebResource hit = cache.get("key" + random.nextInt(i + 1));
+                if (hit != null) {
+                    // 读取完毕关闭流，释放对堆外块的引用
+                    TestResources.readBody(hit);
+                }
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long gcCount = gcCount() - gcCountBefore;
+        final long gcTime = gcTime() - gcTimeBefore;
+        final long retained = usedHeap() - heapBefore;
+        if (print) {
+            System.out.println((offHeap ? "off-heap" : "heap") + "\t" + gcCount + "\t" + gcTime + "\t" + retained / 1024
+                    + "\t" + cache.getOffHeapAllocatedBytes() / 1024 + "\t" + elapsed / 1000000);
+        }
+        assertTrue(cache.getStats().getEvictionCount() > 0);
+        cache.release();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+}
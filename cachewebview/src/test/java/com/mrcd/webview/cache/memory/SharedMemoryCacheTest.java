@@ -0,0 +1,243 @@
+package com.mrcd.webview.cache.memory;
+
+import android.content.ComponentCallbacks2;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TextCorpus;
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.config.CacheConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SharedMemoryCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        // 其他测试释放的缓存延迟注销，设置足够大的预算使各缓存按期望大小分配
+        MemoryBudgetArbiter.getInstance().setBudget(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        MemoryBudgetArbiter.getInstance().setBudget(0);
+    }
+
+    @Test
+    public void offHeapHitReturnsReadOnlyStream() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(1024 * 1024)
+                .setMemoryCacheOffHeap(true)
+                .build());
+        final byte[] body = TestResources.randomBytes(10 * 1000, 1);
+        cache.put("a", newResource(body));
+        assertTrue(cache.getOffHeapAllocatedBytes() > 0);
+
+        final WebResource hit = cache.get("a");
+        assertNull(hit.getOriginBytes());
+        assertNotNull(hit.getOriginStream());
+        assertArrayEquals(body, TestResources.readBody(hit));
+        assertEquals("text/plain", hit.getResponseHeaders().get("Content-Type"));
+        cache.release();
+    }
+
+    @Test
+    public void offHeapSizeCountsBlockCapacity() throws Exception {
+        final int maxSize = 100 * 1024;
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(maxSize)
+                .setMemoryCacheOffHeap(true)
+                .build());
+        final int blockSize = new SlabAllocator().blockSizeFor(1000);
+        // 按块大小计算时只能放下 maxSize / blockSize 个，按数据长度计算则能放下更多
+        final int count = maxSize / 1000;
+        for (int i = 0; i < count; i++) {
+            cache.put("key" + i, newResource(new byte[1000]));
+        }
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            if (cache.get("key" + i) != null) {
+                hits++;
+            }
+        }
+        assertEquals(maxSize / blockSize, hits);
+        cache.release();
+    }
+
+    @Test
+    public void evictedOffHeapEntryStaysReadable() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(20 * 1024)
+                .setMemoryCacheOffHeap(true)
+                .build());
+        final byte[] body = TestResources.randomBytes(10 * 1000, 2);
+        cache.put("a", newResource(body));
+        final WebResource hit = cache.get("a");
+        // 写入新资源淘汰 a，块仍被流持有，不会覆盖正在读取的数据
+        cache.put("b", newResource(TestResources.randomBytes(10 * 1000, 3)));
+        cache.put("c", newResource(TestResources.randomBytes(10 * 1000, 4)));
+        assertArrayEquals(body, TestResources.readBody(hit));
+        assertNull(cache.get("a"));
+        cache.release();
+    }
+
+    @Test
+    public void heapModeSharesBodyArray() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(1024 * 1024).build());
+        final byte[] body = new byte[100];
+        cache.put("a", newResource(body));
+        assertEquals(0, cache.getOffHeapAllocatedBytes());
+        assertTrue(body == cache.get("a").getOriginBytes());
+        cache.release();
+    }
+
+    @Test
+    public void memoryPressureTrimsSharedCache() throws Exception {
+        final FakeMemorySignalSource signalSource = new FakeMemorySignalSource();
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(100 * 1024)
+                .setMemorySignalSource(signalSource)
+                .build());
+        assertEquals(1, signalSource.getListenerCount());
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, newResource(new byte[1000]));
+        }
+        signalSource.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        final MemoryTrimStats stats = cache.getTrimStats();
+        assertEquals(1, stats.getTrimCount());
+        assertEquals(50 * 1024, stats.getCurrentMaxSize());
+        assertTrue(stats.getReclaimedBytes() >= 100 * 1000 - 50 * 1024);
+
+        signalSource.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        for (int i = 0; i < 100; i++) {
+            assertNull(cache.get("key" + i));
+        }
+        assertEquals(100 * 1000, cache.getTrimStats().getReclaimedBytes());
+        cache.release();
+    }
+
+    @Test
+    public void noSignalSourceNoTrimStats() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(100 * 1024).build());
+        assertNull(cache.getTrimStats());
+        cache.release();
+    }
+
+    @Test
+    public void adaptiveSizeFollowsWorkingSet() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(4 * 1024 * 1024)
+                .setMemoryCacheSizeRange(256 * 1024, 4 * 1024 * 1024)
+                .build());
+        assertEquals(4 * 1024 * 1024, cache.maxSize());
+        for (int i = 0; i < 5000; i++) {
+            final String key = "key" + i % 50;
+            if (cache.get(key) == null) {
+                cache.put(key, newResource(new byte[10 * 1024]));
+            }
+        }
+        // 50 个 10KB 的资源，缩小到能放下工作集的大小
+        assertTrue("maxSize " + cache.maxSize(), cache.maxSize() < 1024 * 1024);
+        assertTrue(cache.maxSize() >= 500 * 1024);
+        assertTrue(cache.getMissRatioCurve().getMissRatio(cache.maxSize()) < 0.05);
+        cache.release();
+    }
+
+    @Test
+    public void fixedSizeHasNoMissRatioCurve() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(1024 * 1024).build());
+        assertNull(cache.getMissRatioCurve());
+        cache.release();
+    }
+
+    @Test
+    public void textIsStoredCompressed() throws Exception {
+        final int maxSize = 1024 * 1024;
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(maxSize)
+                .setMemoryCompressionThreshold(1024)
+                .build());
+        final byte[] body = TextCorpus.javaScript(100 * 1024, 1);
+        // 按压缩后的大小计算，能放下的资源比原始大小多几倍
+        final int count = 3 * maxSize / body.length;
+        for (int i = 0; i < count; i++) {
+            cache.put("key" + i, newResource(body, "text/javascript"));
+        }
+        for (int i = 0; i < count; i++) {
+            final WebResource hit = cache.get("key" + i);
+            assertNotNull(hit);
+            // 命中时边读边解压
+            assertNull(hit.getOriginBytes());
+            assertArrayEquals(body, TestResources.readBody(hit));
+        }
+        cache.release();
+    }
+
+    @Test
+    public void smallOrBinaryIsNotCompressed() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(1024 * 1024)
+                .setMemoryCompressionThreshold(1024)
+                .build());
+        final byte[] small = TextCorpus.css(1000, 1);
+        cache.put("small", newResource(small, "text/css"));
+        assertTrue(small == cache.get("small").getOriginBytes());
+
+        final byte[] image = TextCorpus.css(10 * 1024, 2);
+        cache.put("image", newResource(image, "image/png"));
+        assertTrue(image == cache.get("image").getOriginBytes());
+
+        // 压缩后节省太少的数据保存原始内容
+        final byte[] random = TestResources.randomBytes(10 * 1024, 3);
+        cache.put("random", newResource(random, "text/css"));
+        assertTrue(random == cache.get("random").getOriginBytes());
+        cache.release();
+    }
+
+    @Test
+    public void compressedOffHeapRoundTrip() throws Exception {
+        final SharedMemoryCache cache = SharedMemoryCache.acquire(newBuilder(1024 * 1024)
+                .setMemoryCompressionThreshold(1024)
+                .setMemoryCacheOffHeap(true)
+                .build());
+        // 压缩后仍超过最大块大小，单独分配刚好大小的堆外内存
+        final byte[] body = TextCorpus.css(1024 * 1024, 4);
+        cache.put("a", newResource(body, "text/css"));
+        assertTrue(cache.getOffHeapAllocatedBytes() < body.length / 2);
+        assertArrayEquals(body, TestResources.readBody(cache.get("a")));
+        cache.release();
+    }
+
+    private CacheConfig.Builder newBuilder(int memorySize) throws IOException {
+        return TestResources.newConfig(mFolder)
+                .setMemoryCacheSize(memorySize);
+    }
+
+    static WebResource newResource(byte[] body) {
+        return newResource(body, "text/plain");
+    }
+
+    static WebResource newResource(byte[] body, String contentType) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", contentType);
+        final WebResource resource = new WebResource();
+        resource.setResponseCode(200);
+        resource.setReasonPhrase("OK");
+        resource.setResponseHeaders(headers);
+        resource.setCacheByOurselves(true);
+        resource.setOriginBytes(body);
+        return resource;
+    }
+}
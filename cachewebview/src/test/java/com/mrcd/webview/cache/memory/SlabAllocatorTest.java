@@ -0,0 +1,142 @@
+package com.mrcd.webview.cache.memory;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlabAllocatorTest {
+
+    @Test
+    public void allocateCopiesData() {
+        final SlabAllocator allocator = new SlabAllocator();
+        final byte[] data = bytes(1000, 1);
+        final SlabAllocator.Block block = allocator.allocate(data);
+        assertEquals(1000, block.getLength());
+        assertEquals(allocator.blockSizeFor(1000), block.getCapacity());
+        assertArrayEquals(data, read(block.asReadOnlyBuffer()));
+        block.release();
+    }
+
+    @Test
+    public void blockSizeGrowsBySizeClass() {
+        final SlabAllocator allocator = new SlabAllocator();
+        assertEquals(512, allocator.blockSizeFor(1));
+        assertEquals(512, allocator.blockSizeFor(512));
+        assertTrue(allocator.blockSizeFor(513) > 512);
+        // 相邻块大小之间最多浪费 25% 左右
+        for (int length = 512; length <= 128 * 1024; length += 97) {
+            final int blockSize = allocator.blockSizeFor(length);
+            assertTrue(blockSize >= length);
+            assertTrue("length " + length + " block " + blockSize, blockSize <= length * 1.25 + 64);
+        }
+        // 超过最大块大小的数据单独分配
+        assertEquals(200 * 1024, allocator.blockSizeFor(200 * 1024));
+    }
+
+    @Test
+    public void freedBlocksAreReused() {
+        final SlabAllocator allocator = new SlabAllocator();
+        final SlabAllocator.Block first = allocator.allocate(bytes(1000, 1));
+        final long allocated = allocator.getAllocatedBytes();
+        assertEquals(first.getCapacity(), allocator.getUsedBytes());
+
+        final SlabAllocator.Block second = allocator.allocate(bytes(1000, 2));
+        // 同一个 slab 中还有空闲块，不再申请新的堆外内存
+        assertEquals(allocated, allocator.getAllocatedBytes());
+        assertEquals(2L * first.getCapacity(), allocator.getUsedBytes());
+        first.release();
+        second.release();
+        // slab 全部释放后归还
+        assertEquals(0, allocator.getUsedBytes());
+        assertEquals(0, allocator.getAllocatedBytes());
+    }
+
+    @Test
+    public void allocatesFromFullestSlab() {
+        final SlabAllocator allocator = new SlabAllocator();
+        final SlabAllocator.Block probe = allocator.allocate(bytes(1000, 1));
+        final long slabSize = allocator.getAllocatedBytes();
+        final int blocksPerSlab = (int) (slabSize / probe.getCapacity());
+        final List<SlabAllocator.Block> first = new ArrayList<>();
+        first.add(probe);
+        for (int i = 1; i < blocksPerSlab; i++) {
+            first.add(allocator.allocate(bytes(1000, i)));
+        }
+        final List<SlabAllocator.Block> second = new ArrayList<>();
+        for (int i = 0; i < blocksPerSlab; i++) {
+            second.add(allocator.allocate(bytes(1000, i)));
+        }
+        assertEquals(2 * slabSize, allocator.getAllocatedBytes());
+
+        // 第一个 slab 只剩一个块在用，第二个 slab 只空出一个块
+        for (SlabAllocator.Block block : first.subList(1, blocksPerSlab)) {
+            block.release();
+        }
+        second.remove(0).release();
+        // 新块放入较满的第二个 slab，第一个 slab 的最后一个块释放后整个归还
+        second.add(allocator.allocate(bytes(1000, 7)));
+        probe.release();
+        assertEquals(slabSize, allocator.getAllocatedBytes());
+        assertEquals(slabSize, allocator.getUsedBytes());
+        for (SlabAllocator.Block block : second) {
+            block.release();
+        }
+        assertEquals(0, allocator.getAllocatedBytes());
+    }
+
+    @Test
+    public void largeBlocksAreAllocatedExactly() {
+        final SlabAllocator allocator = new SlabAllocator();
+        final byte[] data = bytes(300 * 1024, 3);
+        final SlabAllocator.Block block = allocator.allocate(data);
+        assertEquals(data.length, block.getCapacity());
+        assertEquals(data.length, allocator.getAllocatedBytes());
+        assertArrayEquals(data, read(block.asReadOnlyBuffer()));
+        block.release();
+        assertEquals(0, allocator.getAllocatedBytes());
+    }
+
+    @Test
+    public void readerKeepsBlockAlive() {
+        final SlabAllocator allocator = new SlabAllocator();
+        final byte[] data = bytes(2000, 4);
+        final SlabAllocator.Block block = allocator.allocate(data);
+        assertTrue(block.retain());
+        // 缓存释放引用后，正在读取的流仍然持有
+        block.release();
+        assertTrue(allocator.getUsedBytes() > 0);
+        allocator.allocate(bytes(2000, 5));
+        assertArrayEquals(data, read(block.asReadOnlyBuffer()));
+        block.close();
+        assertFalse(block.retain());
+    }
+
+    @Test
+    public void bufferIsReadOnly() {
+        final SlabAllocator.Block block = new SlabAllocator().allocate(bytes(10, 6));
+        assertTrue(block.asReadOnlyBuffer().isReadOnly());
+        assertEquals(10, block.asReadOnlyBuffer().remaining());
+        block.release();
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private static byte[] read(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,138 @@
+package com.mrcd.webview.cache.memory;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuMemoryCacheTest {
+
+    private static final MemoryCache.Weigher<byte[]> WEIGHER = new MemoryCache.Weigher<byte[]>() {
+        @Override
+        public int weigh(String key, byte[] value) {
+            return value.length;
+        }
+    };
+
+    @Test
+    public void putGetRemove() {
+        final TinyLfuMemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(1024 * 1024, WEIGHER);
+        final byte[] value = new byte[100];
+        assertTrue(cache.put("a", value));
+        assertEquals(value, cache.get("a"));
+        assertEquals(100, cache.size());
+        assertEquals(value, cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+
+        final MemoryCacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getPutCount());
+    }
+
+    @Test
+    public void replaceNotifiesOldValue() {
+        final List<String> removed = new ArrayList<>();
+        final TinyLfuMemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(1024 * 1024, WEIGHER, newListener(removed));
+        cache.put("a", new byte[100]);
+        cache.put("a", new byte[200]);
+        assertEquals(200, cache.size());
+        assertEquals(1, removed.size());
+    }
+
+    @Test
+    public void oversizedValueIsRejected() {
+        final List<String> removed = new ArrayList<>();
+        final TinyLfuMemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(1000, WEIGHER, newListener(removed));
+        cache.put("a", new byte[10]);
+        assertFalse(cache.put("a", new byte[1001]));
+        // 旧值也被移除，不会再返回过期的内容
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getStats().getRejectionCount());
+        assertEquals(2, removed.size());
+    }
+
+    @Test
+    public void sizeStaysWithinMaxSize() {
+        final int maxSize = 100 * 1024;
+        final TinyLfuMemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(maxSize, WEIGHER);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, new byte[1024 + i % 7 * 100]);
+            assertTrue(cache.size() <= maxSize);
+        }
+        // 频率相同的候选者不会替换主缓存中的资源
+        final MemoryCacheStats stats = cache.getStats();
+        assertTrue(stats.getEvictionCount() + stats.getRejectionCount() > 0);
+    }
+
+    @Test
+    public void oneHitWondersDoNotFlushHotEntries() {
+        final TinyLfuMemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(100 * 1024, WEIGHER);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot" + i) == null) {
+                    cache.put("hot" + i, new byte[1024]);
+                }
+            }
+        }
+        // 大量只访问一次的资源扫过缓存，频率不够的候选者进不了主缓存
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get("scan" + i) == null) {
+                cache.put("scan" + i, new byte[1024]);
+            }
+        }
+        int hits = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                hits++;
+            }
+        }
+        assertTrue("hot hits " + hits, hits >= 45);
+        assertTrue(cache.getStats().getEvictionCount() > 0);
+    }
+
+    @Test
+    public void shrinkEvictsImmediately() {
+        final TinyLfuMemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(100 * 1024, WEIGHER);
+        for (int i = 0; i < 90; i++) {
+            cache.put("key" + i, new byte[1024]);
+        }
+        cache.resize(10 * 1024);
+        assertEquals(10 * 1024, cache.maxSize());
+        assertTrue(cache.size() <= 10 * 1024);
+        assertNotNull(cache.getStats());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resizeRejectsZero() {
+        new TinyLfuMemoryCache<>(1024, WEIGHER).resize(0);
+    }
+
+    @Test
+    public void clearNotifiesAll() {
+        final List<String> removed = new ArrayList<>();
+        final TinyLfuMemoryCache<byte[]> cache = new TinyLfuMemoryCache<>(1024 * 1024, WEIGHER, newListener(removed));
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, new byte[10]);
+        }
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(10, removed.size());
+    }
+
+    private static MemoryCache.RemovalListener<byte[]> newListener(final List<String> removed) {
+        return new MemoryCache.RemovalListener<byte[]>() {
+            @Override
+            public void onRemoved(String key, byte[] value) {
+                removed.add(key);
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package com.mrcd.webview.preload;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PageManifestStoreTest {
+
+    private static final int MAX_RESOURCES = 100;
+    private static final List<String> URLS = Arrays.asList("https://example.com/a.css", "https://example.com/b.js");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void sharedPerCacheDir() throws IOException {
+        final File dir = mFolder.newFolder();
+        assertSame(PageManifestStore.forCacheDir(dir.getPath()), PageManifestStore.forCacheDir(dir.getPath() + "/"));
+        assertSame(PageManifestStore.forCacheDir(dir.getPath()), PageManifestStore.forCacheDir(dir.getAbsolutePath()));
+    }
+
+    @Test
+    public void saveAndReload() throws IOException {
+        final File dir = mFolder.newFolder();
+        final PageManifestStore store = PageManifestStore.forCacheDir(dir.getPath());
+        store.recordVisit("page-1", URLS, MAX_RESOURCES);
+        store.recordVisit("page-2", Collections.singletonList("https://example.com/c.png"), MAX_RESOURCES);
+        // 离开前没有加载子资源，不记录
+        store.recordVisit("page-3", Collections.<String>emptyList(), MAX_RESOURCES);
+        store.save();
+        final File file = manifestFile(dir);
+        assertTrue(file.exists());
+        final long modified = file.lastModified();
+
+        // 没有改动时不重写文件
+        assertTrue(file.setLastModified(modified - 10000));
+        store.save();
+        assertEquals(modified - 10000, file.lastModified());
+
+        final PageManifestStore reloaded = reload(dir);
+        assertEquals(URLS, reloaded.getPredictedUrls("page-1"));
+        assertEquals(Collections.singletonList("https://example.com/c.png"), reloaded.getPredictedUrls("page-2"));
+        assertEquals(Collections.<String>emptyList(), reloaded.getPredictedUrls("page-3"));
+    }
+
+    @Test
+    public void keepsRecentlyVisitedPages() throws IOException {
+        final File dir = mFolder.newFolder();
+        final PageManifestStore store = PageManifestStore.forCacheDir(dir.getPath());
+        for (int i = 0; i < 256; i++) {
+            store.recordVisit("page-" + i, URLS, MAX_RESOURCES);
+        }
+        // 访问第一个页面后，超出上限时移除的是第二个
+        assertEquals(URLS, store.getPredictedUrls("page-0"));
+        store.recordVisit("page-256", URLS, MAX_RESOURCES);
+        assertEquals(URLS, store.getPredictedUrls("page-0"));
+        assertEquals(Collections.<String>emptyList(), store.getPredictedUrls("page-1"));
+
+        // 读取后仍保持访问顺序，下一个移除的是第三个
+        store.save();
+        final PageManifestStore reloaded = reload(dir);
+        reloaded.recordVisit("page-257", URLS, MAX_RESOURCES);
+        assertEquals(Collections.<String>emptyList(), reloaded.getPredictedUrls("page-2"));
+        assertEquals(URLS, reloaded.getPredictedUrls("page-3"));
+        assertEquals(URLS, reloaded.getPredictedUrls("page-0"));
+    }
+
+    @Test
+    public void corruptedFileStartsOver() throws IOException {
+        final File dir = mFolder.newFolder();
+        final FileOutputStream output = new FileOutputStream(manifestFile(dir));
+        output.write(new byte[]{1, 2, 3, 4, 5});
+        output.close();
+        final PageManifestStore store = PageManifestStore.forCacheDir(dir.getPath());
+        assertEquals(Collections.<String>emptyList(), store.getPredictedUrls("page-1"));
+
+        store.recordVisit("page-1", URLS, MAX_RESOURCES);
+        store.save();
+        assertEquals(URLS, reload(dir).getPredictedUrls("page-1"));
+    }
+
+    @Test
+    public void recorderSavesPreviousPage() throws IOException {
+        final PageManifestStore store = PageManifestStore.forCacheDir(mFolder.newFolder().getPath());
+        final PageLoadRecorder recorder = new PageLoadRecorder(store, 2);
+        assertEquals(Collections.<String>emptyList(), recorder.onDocumentRequest("page-1", "https://example.com/1"));
+        // 页面自身的重复请求不算子资源，超出上限的不记录
+        recorder.onSubresourceRequest("https://example.com/1");
+        recorder.onSubresourceRequest("https://example.com/a.css");
+        recorder.onSubresourceRequest("https://example.com/b.js");
+        recorder.onSubresourceRequest("https://example.com/c.png");
+
+        // 打开下一个页面时保存上一个页面的记录
+        assertEquals(Collections.<String>emptyList(), recorder.onDocumentRequest("page-2", "https://example.com/2"));
+        assertEquals(URLS, store.getPredictedUrls("page-1"));
+        recorder.onSubresourceRequest("https://example.com/c.png");
+        assertEquals(URLS, recorder.onDocumentRequest("page-1", "https://example.com/1"));
+        assertEquals(Collections.singletonList("https://example.com/c.png"), store.getPredictedUrls("page-2"));
+
+        // WebView 销毁时保存当前页面
+        recorder.onSubresourceRequest("https://example.com/a.css");
+        recorder.finish();
+        assertEquals(Collections.singletonList("https://example.com/a.css"), store.getPredictedUrls("page-1"));
+        assertFalse(store.getPredictedUrls("page-1").contains("https://example.com/b.js"));
+    }
+
+    private static File manifestFile(File cacheDir) {
+        return new File(cacheDir.getAbsolutePath() + "-manifest");
+    }
+
+    /**
+     * 每个缓存目录只有一个实例，复制记录文件到新的目录模拟重新启动
+     */
+    private PageManifestStore reload(File cacheDir) throws IOException {
+        final File copy = mFolder.newFolder();
+        Files.copy(manifestFile(cacheDir).toPath(), manifestFile(copy).toPath());
+        return PageManifestStore.forCacheDir(copy.getPath());
+    }
+}
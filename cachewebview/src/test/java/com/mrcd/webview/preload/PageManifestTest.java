@@ -0,0 +1,108 @@
+package com.mrcd.webview.preload;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageManifestTest {
+
+    private static final int MAX_RESOURCES = 100;
+
+    @Test
+    public void predictsInLoadOrder() {
+        final PageManifest manifest = new PageManifest();
+        assertTrue(manifest.isEmpty());
+        assertEquals(Collections.<String>emptyList(), manifest.getPredictedUrls());
+
+        manifest.recordVisit(Arrays.asList("a.css", "b.js", "c.png", "b.js"), MAX_RESOURCES);
+        assertFalse(manifest.isEmpty());
+        assertEquals(Arrays.asList("a.css", "b.js", "c.png"), manifest.getPredictedUrls());
+        assertEquals(3, entryCount(manifest));
+
+        // 按最近一次访问的顺序排列
+        manifest.recordVisit(Arrays.asList("c.png", "a.css", "b.js"), MAX_RESOURCES);
+        assertEquals(Arrays.asList("c.png", "a.css", "b.js"), manifest.getPredictedUrls());
+    }
+
+    @Test
+    public void decaysResourcesNoLongerLoaded() {
+        final PageManifest manifest = new PageManifest();
+        manifest.recordVisit(Arrays.asList("a.css", "ad.png"), MAX_RESOURCES);
+        // 分数减半后低于 1，不再预加载，但仍保留记录
+        manifest.recordVisit(Collections.singletonList("a.css"), MAX_RESOURCES);
+        assertEquals(Collections.singletonList("a.css"), manifest.getPredictedUrls());
+        assertEquals(2, entryCount(manifest));
+
+        // 再次加载后恢复预加载
+        manifest.recordVisit(Arrays.asList("a.css", "ad.png"), MAX_RESOURCES);
+        assertEquals(Arrays.asList("a.css", "ad.png"), manifest.getPredictedUrls());
+
+        // 连续四次没有加载，分数降到 0.1 以下后移除
+        for (int i = 0; i < 3; i++) {
+            manifest.recordVisit(Collections.singletonList("a.css"), MAX_RESOURCES);
+            assertEquals(2, entryCount(manifest));
+        }
+        manifest.recordVisit(Collections.singletonList("a.css"), MAX_RESOURCES);
+        assertEquals(1, entryCount(manifest));
+        assertEquals(Collections.singletonList("a.css"), manifest.getPredictedUrls());
+    }
+
+    @Test
+    public void capKeepsHighestScores() {
+        final PageManifest manifest = new PageManifest();
+        // 分数相同时保留先加载的
+        manifest.recordVisit(Arrays.asList("1", "2", "3", "4", "5"), 3);
+        assertEquals(Arrays.asList("1", "2", "3"), manifest.getPredictedUrls());
+
+        manifest.recordVisit(Arrays.asList("3", "4", "5", "6"), 3);
+        assertEquals(Arrays.asList("3", "4", "5"), manifest.getPredictedUrls());
+        assertEquals(3, entryCount(manifest));
+    }
+
+    @Test
+    public void serializationKeepsScoresAndOrder() throws IOException {
+        final PageManifest manifest = new PageManifest();
+        manifest.recordVisit(Arrays.asList("a.css", "b.js", "c.png"), MAX_RESOURCES);
+        manifest.recordVisit(Arrays.asList("b.js", "a.css"), MAX_RESOURCES);
+
+        final PageManifest copy = copy(manifest);
+        assertEquals(manifest.getPredictedUrls(), copy.getPredictedUrls());
+        assertEquals(Arrays.asList("b.js", "a.css"), copy.getPredictedUrls());
+
+        // 分数一同保存，之后的衰减与原记录一致
+        manifest.recordVisit(Collections.singletonList("b.js"), MAX_RESOURCES);
+        copy.recordVisit(Collections.singletonList("b.js"), MAX_RESOURCES);
+        assertEquals(manifest.getPredictedUrls(), copy.getPredictedUrls());
+        assertEquals(entryCount(manifest), entryCount(copy));
+        assertTrue(copy(new PageManifest()).isEmpty());
+    }
+
+    private static PageManifest copy(PageManifest manifest) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.writeTo(new DataOutputStream(bytes));
+        return PageManifest.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    /**
+     * 保留的记录数，包括分数过低不预加载的
+     */
+    private static int entryCount(PageManifest manifest) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            manifest.writeTo(new DataOutputStream(bytes));
+            return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())).readUnsignedShort();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
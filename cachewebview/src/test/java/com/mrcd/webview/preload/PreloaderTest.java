@@ -0,0 +1,270 @@
+package com.mrcd.webview.preload;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.TextCorpus;
+import com.mrcd.webview.WebResource;
+import com.mrcd.webview.cache.CacheRequest;
+import com.mrcd.webview.cache.intercept.CacheInterceptor;
+import com.mrcd.webview.cache.intercept.Chain;
+import com.mrcd.webview.cache.intercept.DiskCacheInterceptor;
+import com.mrcd.webview.config.CacheConfig;
+import com.mrcd.webview.config.DefaultMimeTypeFilter;
+import com.mrcd.webview.cookie.FastCookieManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CookieJar;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 预加载 {@link MockWebServer} 上的站点，之后页面和所有子资源都能从磁盘缓存命中
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PreloaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    /**
+     * path -> {Content-Type, body}
+     */
+    private final Map<String, String[]> mSite = new LinkedHashMap<>();
+    private final List<String> mRequestedPaths = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        FastCookieManager.getInstance().setCookieJar(CookieJar.NO_COOKIES);
+        mSite.put("/index.html", new String[]{"text/html; charset=utf-8", "<html><head>"
+                + "<link rel=\"stylesheet\" href=\"/css/main.css\">"
+                + "<script src=\"/js/app.js\"></script>"
+                + "<script src=\"/js/vendor.js\"></script>"
+                + "</head><body>"
+                + "<img src=\"/img/hero.png\" srcset=\"/img/hero-2x.png 2x\">"
+                + "<div style=\"background: url(/img/banner.jpg)\"></div>"
+                + "<a href=\"/about.html\">about</a>"
+                + "</body></html>"});
+        mSite.put("/about.html", new String[]{"text/html; charset=utf-8", "<html><head>"
+                + "<link rel=\"stylesheet\" href=\"/css/main.css\">"
+                + "<script src=\"/js/about.js\"></script>"
+                + "</head><body><img src=\"/img/team.jpg\"></body></html>"});
+        mSite.put("/css/main.css", new String[]{"text/css",
+                "@import \"theme.css\";\n"
+                        + "@font-face { src: url(/fonts/icon.woff2) }\n"
+                        + ".logo { background: url(../img/logo.png) }"});
+        mSite.put("/css/theme.css", new String[]{"text/css", ".dark { background: url(/img/dark.png) }"});
+        mSite.put("/js/app.js", new String[]{"application/javascript", new String(TextCorpus.javaScript(64 * 1024, 1), UTF_8)});
+        mSite.put("/js/vendor.js", new String[]{"application/javascript", "var vendor = 1;"});
+        mSite.put("/js/about.js", new String[]{"application/javascript", "var about = 1;"});
+        mSite.put("/fonts/icon.woff2", new String[]{"font/woff2", "wOF2"});
+        for (String image : Arrays.asList("/img/hero.png", "/img/hero-2x.png", "/img/banner.jpg",
+                "/img/team.jpg", "/img/logo.png", "/img/dark.png")) {
+            mSite.put(image, new String[]{image.endsWith(".png") ? "image/png" : "image/jpeg", image});
+        }
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                mRequestedPaths.add(request.getPath());
+                final String[] resource = mSite.get(request.getPath());
+                if (resource == null) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", resource[0])
+                        .setHeader("Cache-Control", "max-age=3600")
+                        .setBody(resource[1]);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void everySubresourceIsDiskHit() throws Exception {
+        final CacheConfig config = newConfig();
+        final Preloader preloader = newPreloader(config);
+        final PreloadBatch batch = preload(preloader,
+                mServer.url("/index.html").toString(), mServer.url("/about.html").toString());
+
+        assertTrue(batch.isDone());
+        assertEquals(mSite.size(), batch.getTotalCount());
+        assertEquals(mSite.size(), batch.getFinishedCount());
+        assertEquals(0, batch.getFailedCount());
+        // 两个页面共用的样式表只请求一次
+        assertEquals(new HashSet<>(mSite.keySet()), new HashSet<>(mRequestedPaths));
+        assertEquals(mSite.size(), mRequestedPaths.size());
+
+        // 只有磁盘缓存，未命中时交给记录未命中的拦截器
+        final List<String> misses = new ArrayList<>();
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        final List<CacheInterceptor> interceptors = Arrays.asList(disk, new CacheInterceptor() {
+            @Override
+            public WebResource load(Chain chain) {
+                misses.add(chain.getRequest().getUrl());
+                return null;
+            }
+        });
+        for (Map.Entry<String, String[]> entry : mSite.entrySet()) {
+            final String url = mServer.url(entry.getKey()).toString();
+            final WebResource resource = new Chain(interceptors).process(newRequest(url, config));
+            assertNotNull(url, resource);
+            assertEquals(entry.getValue()[1], new String(TestResources.readBody(resource), UTF_8));
+        }
+        disk.destroy();
+        assertEquals(Collections.<String>emptyList(), misses);
+        assertEquals(mSite.size(), mServer.getRequestCount());
+    }
+
+    @Test
+    public void eachPreloaderUsesItsOwnConfig() throws Exception {
+        final CacheConfig config = newConfig();
+        // 同一目录先用另一份配置获取预加载器，这份配置把页面交给 OkHttp 缓存
+        final CacheConfig okHttpPages = TestResources.newConfig(mFolder)
+                .setCacheDir(config.getCacheDir())
+                .setExtensionFilter(new DefaultMimeTypeFilter(new HashSet<>(Collections.singleton("text/html"))))
+                .build();
+        newPreloader(okHttpPages);
+        final String url = mServer.url("/about.html").toString();
+        preload(newPreloader(config), url);
+
+        final DiskCacheInterceptor disk = new DiskCacheInterceptor(config);
+        final WebResource resource = new Chain(Collections.<CacheInterceptor>singletonList(disk))
+                .process(newRequest(url, config));
+        assertNotNull(url, resource);
+        assertEquals(mSite.get("/about.html")[1], new String(TestResources.readBody(resource), UTF_8));
+        disk.destroy();
+    }
+
+    @Test
+    public void loadsByPriority() throws Exception {
+        final Preloader preloader = newPreloader(newConfig());
+        // 一个线程时按页面、样式、脚本、字体、图片的顺序请求
+        preloader.setMaxConcurrency(1);
+        preload(preloader, mServer.url("/index.html").toString());
+
+        final Map<String, Integer> priorities = new HashMap<>();
+        priorities.put("html", SubresourceExtractor.PRIORITY_DOCUMENT);
+        priorities.put("css", SubresourceExtractor.PRIORITY_STYLESHEET);
+        priorities.put("js", SubresourceExtractor.PRIORITY_SCRIPT);
+        priorities.put("woff2", SubresourceExtractor.PRIORITY_FONT);
+        priorities.put("png", SubresourceExtractor.PRIORITY_IMAGE);
+        priorities.put("jpg", SubresourceExtractor.PRIORITY_IMAGE);
+        int last = SubresourceExtractor.PRIORITY_DOCUMENT;
+        for (String path : mRequestedPaths) {
+            final int priority = priorities.get(path.substring(path.lastIndexOf('.') + 1));
+            assertTrue(mRequestedPaths.toString(), priority >= last);
+            last = priority;
+        }
+        assertEquals("/index.html", mRequestedPaths.get(0));
+        assertFalse(mRequestedPaths.contains("/about.html"));
+    }
+
+    @Test
+    public void progressAndCancel() throws Exception {
+        final Preloader preloader = newPreloader(newConfig());
+        preloader.setMaxConcurrency(1);
+        final List<String> progress = new CopyOnWriteArrayList<>();
+        final CountDownLatch complete = new CountDownLatch(1);
+        final PreloadBatch batch = preloader.preload(Collections.singletonList(mServer.url("/index.html").toString()),
+                new PreloadCallback() {
+                    @Override
+                    public void onProgress(PreloadBatch batch, String url, boolean success) {
+                        progress.add(url);
+                        if (url.endsWith(".css")) {
+                            // 第一个样式表完成后取消，排队中的任务不再执行
+                            batch.cancel();
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(PreloadBatch batch) {
+                        complete.countDown();
+                    }
+                });
+        assertTrue(complete.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(batch.isCancelled());
+        assertEquals(Arrays.asList(mServer.url("/index.html").toString(), mServer.url("/css/main.css").toString()), progress);
+        assertEquals(2, batch.getFinishedCount());
+        assertEquals(Arrays.asList("/index.html", "/css/main.css"), mRequestedPaths);
+    }
+
+    @Test
+    public void failedAndInvalidUrls() throws Exception {
+        final PreloadBatch batch = preload(newPreloader(newConfig()), mServer.url("/missing.html").toString(), "not a url");
+        assertEquals(1, batch.getTotalCount());
+        assertEquals(1, batch.getFailedCount());
+
+        // 空的批次同样会完成
+        assertTrue(preload(newPreloader(newConfig())).isDone());
+    }
+
+    private CacheConfig newConfig() throws Exception {
+        return TestResources.newConfig(mFolder)
+                .setExtensionFilter(TestResources.cacheAllTypes())
+                .build();
+    }
+
+    private static Preloader newPreloader(CacheConfig config) {
+        final Preloader preloader = Preloader.forConfig(RuntimeEnvironment.getApplication(), config);
+        preloader.setUserAgent("preloader-test");
+        return preloader;
+    }
+
+    private static CacheRequest newRequest(String url, CacheConfig config) {
+        final CacheRequest request = TestResources.newRequest(url, null);
+        request.setUrl(url, config.getCacheKeyStrategy());
+        request.setUserAgent("preloader-test");
+        return request;
+    }
+
+    private static PreloadBatch preload(Preloader preloader, String... urls) throws InterruptedException {
+        final CountDownLatch complete = new CountDownLatch(1);
+        final PreloadBatch batch = preloader.preload(Arrays.asList(urls), new PreloadCallback() {
+            @Override
+            public void onProgress(PreloadBatch batch, String url, boolean success) {
+            }
+
+            @Override
+            public void onComplete(PreloadBatch batch) {
+                complete.countDown();
+            }
+        });
+        assertTrue("preload timed out", complete.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        return batch;
+    }
+}
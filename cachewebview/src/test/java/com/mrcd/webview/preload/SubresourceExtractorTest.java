@@ -0,0 +1,124 @@
+package com.mrcd.webview.preload;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SubresourceExtractorTest {
+
+    private static final String DOCUMENT_URL = "https://example.com/index.html";
+
+    @Test
+    public void extractsTagsInDocumentOrder() {
+        final String html = "<html><head>"
+                + "<link rel=\"stylesheet\" href=\"/css/main.css\">"
+                + "<script src='js/app.js'></script>"
+                + "<link rel=preload as=font href=/fonts/a.woff2 crossorigin>"
+                + "<link rel=\"icon\" href=\"/favicon.ico\">"
+                + "</head><body>"
+                + "<img src=\"img/a.png\" srcset=\"img/a-1x.png 1x, img/a-2x.png 2x\">"
+                + "<picture><source srcset=\"img/b.webp 480w\"><img src=\"img/b.jpg\"></picture>"
+                + "<video poster=\"img/poster.jpg\"><source src=\"video.mp4\"></video>"
+                + "</body></html>";
+        assertEquals(Arrays.asList(
+                SubresourceExtractor.PRIORITY_STYLESHEET + " https://example.com/css/main.css",
+                SubresourceExtractor.PRIORITY_SCRIPT + " https://example.com/js/app.js",
+                SubresourceExtractor.PRIORITY_FONT + " https://example.com/fonts/a.woff2",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/favicon.ico",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/a.png",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/a-1x.png",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/a-2x.png",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/b.webp",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/b.jpg",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/poster.jpg"
+        ), describe(SubresourceExtractor.extractFromHtml(html, DOCUMENT_URL)));
+    }
+
+    @Test
+    public void skipsCommentsInlineScriptsAndLinks() {
+        final String html = "<!-- <img src=\"commented.png\"> -->"
+                + "<script>var s = '<img src=\"inline.png\">';</script>"
+                + "<link rel=\"canonical\" href=\"/canonical\">"
+                + "<link rel=\"preload\" as=\"video\" href=\"/movie.mp4\">"
+                + "<a href=\"other.html\">other</a>"
+                + "<img src=\"data:image/png;base64,AAAA\">"
+                + "<img src=\"javascript:void(0)\">"
+                + "<img src=\"real.png\">";
+        assertEquals(Arrays.asList(SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/real.png"),
+                describe(SubresourceExtractor.extractFromHtml(html, DOCUMENT_URL)));
+    }
+
+    @Test
+    public void baseAndEscapedAttributes() {
+        final String html = "<base href=\"https://cdn.example.com/app/\">"
+                + "<link rel=stylesheet href=\"css/main.css?v=1&amp;theme=dark\">"
+                + "<img src=\"/logo.png#top\">";
+        assertEquals(Arrays.asList(
+                SubresourceExtractor.PRIORITY_STYLESHEET + " https://cdn.example.com/app/css/main.css?v=1&theme=dark",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://cdn.example.com/logo.png"
+        ), describe(SubresourceExtractor.extractFromHtml(html, DOCUMENT_URL)));
+    }
+
+    @Test
+    public void styleBlocksAndAttributes() {
+        final String html = "<style>body { background: url( 'img/bg.png' ) } @import \"theme.css\";</style>"
+                + "<div style=\"background-image: url(&quot;img/div.jpg&quot;)\"></div>";
+        assertEquals(Arrays.asList(
+                SubresourceExtractor.PRIORITY_STYLESHEET + " https://example.com/theme.css",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/bg.png",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/div.jpg"
+        ), describe(SubresourceExtractor.extractFromHtml(html, DOCUMENT_URL)));
+    }
+
+    @Test
+    public void duplicateKeepsHighestPriority() {
+        // 同一资源先作为图片出现，之后作为样式表，按样式表的优先级加载
+        final String html = "<img src=\"/shared\"><link rel=\"stylesheet\" href=\"/shared\"><img src=\"/shared\">";
+        assertEquals(Arrays.asList(SubresourceExtractor.PRIORITY_STYLESHEET + " https://example.com/shared"),
+                describe(SubresourceExtractor.extractFromHtml(html, DOCUMENT_URL)));
+    }
+
+    @Test
+    public void extractFromCss() {
+        final String css = "@import 'base.css';\n"
+                + "@import url(\"/print.css\") print;\n"
+                + "/* .old { background: url(old.png) } */\n"
+                + "@font-face { src: url(../fonts/icon.woff2?v=3) format('woff2'), url(../fonts/icon.eot?#iefix); }\n"
+                + ".logo { background: url(\"../img/logo.svg\") no-repeat; }\n"
+                + ".empty { background: url(data:image/gif;base64,R0lGOD) }";
+        assertEquals(Arrays.asList(
+                SubresourceExtractor.PRIORITY_STYLESHEET + " https://example.com/css/base.css",
+                SubresourceExtractor.PRIORITY_STYLESHEET + " https://example.com/print.css",
+                SubresourceExtractor.PRIORITY_FONT + " https://example.com/fonts/icon.woff2?v=3",
+                SubresourceExtractor.PRIORITY_FONT + " https://example.com/fonts/icon.eot?",
+                SubresourceExtractor.PRIORITY_IMAGE + " https://example.com/img/logo.svg"
+        ), describe(SubresourceExtractor.extractFromCss(css, "https://example.com/css/main.css")));
+    }
+
+    @Test
+    public void resolve() {
+        assertEquals("https://example.com/a/b.png", SubresourceExtractor.resolve("https://example.com/a/index.html", "b.png"));
+        assertEquals("https://example.com/b.png", SubresourceExtractor.resolve("https://example.com/a/", "../b.png"));
+        assertEquals("http://cdn.example.com/c.js", SubresourceExtractor.resolve("https://example.com/", "http://cdn.example.com/c.js"));
+        assertEquals("https://cdn.example.com/d.js", SubresourceExtractor.resolve("https://example.com/", "//cdn.example.com/d.js"));
+        assertEquals("https://example.com/e.png?x=1", SubresourceExtractor.resolve("https://example.com/", " e.png?x=1#frag "));
+        assertNull(SubresourceExtractor.resolve("https://example.com/", "mailto:someone@example.com"));
+        assertNull(SubresourceExtractor.resolve("https://example.com/", "data:text/plain,hi"));
+        assertNull(SubresourceExtractor.resolve("https://example.com/", ""));
+        assertNull(SubresourceExtractor.resolve("https://example.com/", null));
+        assertNull(SubresourceExtractor.resolve("not a url", "also not a url"));
+    }
+
+    private static List<String> describe(List<SubresourceExtractor.Subresource> subresources) {
+        final List<String> descriptions = new ArrayList<>(subresources.size());
+        for (SubresourceExtractor.Subresource subresource : subresources) {
+            descriptions.add(subresource.priority + " " + subresource.url);
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,62 @@
+package com.mrcd.webview.utils;
+
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ByteBufferInputStreamTest {
+
+    @Test
+    public void readsRemainingBytes() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6});
+        buffer.position(1);
+        final ByteBufferInputStream input = new ByteBufferInputStream(buffer);
+        assertEquals(5, input.available());
+        assertEquals(2, input.read());
+        final byte[] bytes = new byte[10];
+        assertEquals(0, input.read(bytes, 0, 0));
+        assertEquals(4, input.read(bytes, 0, 10));
+        assertArrayEquals(new byte[]{3, 4, 5, 6}, Arrays.copyOf(bytes, 4));
+        assertEquals(-1, input.read());
+        assertEquals(-1, input.read(bytes, 0, 10));
+    }
+
+    @Test
+    public void skipMarkAndReset() throws IOException {
+        final ByteBufferInputStream input = new ByteBufferInputStream(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+        assertEquals(2, input.skip(2));
+        input.mark(0);
+        assertEquals(3, input.read());
+        input.reset();
+        assertEquals(3, input.read());
+        assertEquals(1, input.skip(10));
+        assertEquals(0, input.skip(-1));
+    }
+
+    @Test
+    public void closeReleasesOwner() throws IOException {
+        final boolean[] closed = new boolean[1];
+        final ByteBufferInputStream input = new ByteBufferInputStream(ByteBuffer.allocateDirect(16), new Closeable() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        });
+        input.close();
+        input.close();
+        assertTrue(closed[0]);
+        try {
+            input.read();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.mrcd.webview.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MurmurHash3Test {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 参考实现 MurmurHash3_x64_128 在 seed 为 0 时的结果，与 Guava 的 murmur3_128 和 Python 的 mmh3 一致
+     */
+    @Test
+    public void referenceVectors() {
+        assertHash("", 0L, 0L);
+        assertHash("hello", 0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L);
+        assertHash("The quick brown fox jumps over the lazy dog", 0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L);
+    }
+
+    @Test
+    public void hexIsHighThenLow() {
+        assertEquals("00000000000000000000000000000000", MurmurHash3.hash128Hex(new byte[0]));
+        assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", MurmurHash3.hash128Hex("hello".getBytes(UTF_8)));
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347",
+                MurmurHash3.hash128Hex("The quick brown fox jumps over the lazy dog".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void offsetAndLengthSelectSlice() {
+        final byte[] data = "xxhelloyy".getBytes(UTF_8);
+        assertArrayEquals(MurmurHash3.hash128("hello".getBytes(UTF_8), 0, 5, 0), MurmurHash3.hash128(data, 2, 5, 0));
+    }
+
+    @Test
+    public void everyTailLengthIsDistinct() {
+        // 覆盖所有尾部长度，每个字节都参与计算
+        final byte[] data = new byte[64];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i + 1);
+        }
+        final Set<String> hashes = new HashSet<>();
+        for (int length = 0; length <= data.length; length++) {
+            hashes.add(Arrays.toString(MurmurHash3.hash128(data, 0, length, 0)));
+            for (int i = 0; i < length; i++) {
+                final byte[] changed = Arrays.copyOf(data, length);
+                changed[i] ^= 1;
+                assertTrue(!Arrays.equals(MurmurHash3.hash128(data, 0, length, 0),
+                        MurmurHash3.hash128(changed, 0, length, 0)));
+            }
+        }
+        assertEquals(data.length + 1, hashes.size());
+    }
+
+    @Test
+    public void seedChangesHash() {
+        final byte[] data = "hello".getBytes(UTF_8);
+        assertTrue(!Arrays.equals(MurmurHash3.hash128(data, 0, data.length, 0), MurmurHash3.hash128(data, 0, data.length, 1)));
+    }
+
+    private static void assertHash(String text, long high, long low) {
+        final byte[] data = text.getBytes(UTF_8);
+        assertArrayEquals(new long[]{high, low}, MurmurHash3.hash128(data, 0, data.length, 0));
+    }
+}
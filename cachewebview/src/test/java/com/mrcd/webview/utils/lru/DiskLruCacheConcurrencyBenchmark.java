@@ -0,0 +1,86 @@
+package com.mrcd.webview.utils.lru;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.config.JournalDurability;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Cache hits per second at 1, 4, 8 and 16 threads for each journal durability.
+ */
+public final class DiskLruCacheConcurrencyBenchmark {
+  private static final int[] THREAD_COUNTS = {1, 4, 8, 16};
+  private static final int ENTRY_COUNT = 2000;
+  private static final long DURATION_MILLIS = 2000;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before public void setUp() {
+    TestResources.assumeBenchmark();
+  }
+
+  @Test public void getsPerSecond() throws Exception {
+    System.out.println("durability\tthreads\tgets/sec");
+    for (JournalDurability durability : JournalDurability.values()) {
+      File directory = folder.newFolder(durability.name());
+      DiskLruCache cache = DiskLruCache.open(directory, 1, 2, 100L * 1024 * 1024, durability);
+      for (int i = 0; i < ENTRY_COUNT; i++) {
+        DiskLruCache.Editor editor = cache.edit("k" + i);
+        editor.set(0, "meta" + i);
+        editor.set(1, "body" + i);
+        editor.commit();
+      }
+      cache.flush();
+      for (int threads : THREAD_COUNTS) {
+        System.out.println(durability + "\t" + threads + "\t" + run(cache, threads));
+      }
+      cache.close();
+    }
+  }
+
+  private static long run(final DiskLruCache cache, int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    List<Future<Long>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final long seed = t;
+      futures.add(executor.submit(new Callable<Long>() {
+        @Override public Long call() throws Exception {
+          Random random = new Random(seed);
+          barrier.await();
+          long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DURATION_MILLIS);
+          long gets = 0;
+          while (System.nanoTime() < deadline) {
+            DiskLruCache.Snapshot snapshot = cache.get("k" + random.nextInt(ENTRY_COUNT));
+            assertNotNull(snapshot);
+            snapshot.close();
+            gets++;
+          }
+          return gets;
+        }
+      }));
+    }
+    long total = 0;
+    for (Future<Long> future : futures) {
+      total += future.get();
+    }
+    executor.shutdown();
+    return total * 1000 / DURATION_MILLIS;
+  }
+}
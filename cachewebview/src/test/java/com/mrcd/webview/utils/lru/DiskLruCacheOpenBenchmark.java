@@ -0,0 +1,88 @@
+package com.mrcd.webview.utils.lru;
+
+import com.mrcd.webview.TestResources;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Time to open synthetic caches of 1k, 10k and 100k entries, replaying the
+ * whole journal vs loading the index checkpoint and replaying its tail.
+ */
+public final class DiskLruCacheOpenBenchmark {
+  private static final int[] ENTRY_COUNTS = {1000, 10000, 100000};
+  private static final int ROUNDS = 5;
+  private static final int APP_VERSION = 1;
+  private static final long MAX_SIZE = Long.MAX_VALUE / 2;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before public void setUp() {
+    TestResources.assumeBenchmark();
+  }
+
+  @Test public void open() throws Exception {
+    System.out.println("entries\tjournal replay(ms)\tcheckpoint(ms)");
+    for (int count : ENTRY_COUNTS) {
+      File directory = folder.newFolder("cache-" + count);
+      writeJournal(directory, count);
+
+      long replay = Long.MAX_VALUE;
+      long checkpoint = Long.MAX_VALUE;
+      for (int round = 0; round < ROUNDS; round++) {
+        new File(directory, DiskLruCache.INDEX_FILE).delete();
+        replay = Math.min(replay, timeOpen(directory, count));
+        // Closing the cache above wrote a checkpoint.
+        assertTrue(new File(directory, DiskLruCache.INDEX_FILE).exists());
+        checkpoint = Math.min(checkpoint, timeOpen(directory, count));
+      }
+      System.out.println(count + "\t" + TimeUnit.NANOSECONDS.toMicros(replay) / 1000f
+          + "\t" + TimeUnit.NANOSECONDS.toMicros(checkpoint) / 1000f);
+    }
+  }
+
+  private static long timeOpen(File directory, int count) throws Exception {
+    long start = System.nanoTime();
+    DiskLruCache cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    long elapsed = System.nanoTime() - start;
+    // Entries have no files; get() would drop them, so only check the index.
+    assertTrue(cache.size() > 0);
+    assertNotNull(cache.getDirectory());
+    cache.close();
+    return elapsed;
+  }
+
+  /**
+   * Writes a journal as a cache in use would: every entry created, committed
+   * and read once.
+   */
+  private static void writeJournal(File directory, int count) throws Exception {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(new File(directory, DiskLruCache.JOURNAL_FILE)), Util.US_ASCII));
+    try {
+      writer.write(DiskLruCache.MAGIC + "\n" + DiskLruCache.VERSION_1 + "\n" + APP_VERSION + "\n2\n\n");
+      for (int i = 0; i < count; i++) {
+        String key = String.format("%032x", i * 2654435761L);
+        writer.write("DIRTY " + key + "\n");
+        writer.write("CLEAN " + key + " 180 " + (2048 + i % 20480) + "\n");
+      }
+      for (int i = 0; i < count; i++) {
+        writer.write("READ " + String.format("%032x", i * 2654435761L) + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+}
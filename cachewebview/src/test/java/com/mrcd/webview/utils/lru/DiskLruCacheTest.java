@@ -0,0 +1,282 @@
+package com.mrcd.webview.utils.lru;
+
+import com.mrcd.webview.config.JournalDurability;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class DiskLruCacheTest {
+  private static final int APP_VERSION = 100;
+  private static final long MAX_SIZE = 1024 * 1024;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+  private DiskLruCache cache;
+
+  @Before public void setUp() throws Exception {
+    directory = folder.newFolder("cache");
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+  }
+
+  @After public void tearDown() throws Exception {
+    cache.close();
+  }
+
+  @Test public void writeAndReadEntry() throws Exception {
+    set("k1", "a", "bc");
+    assertValue("k1", "a", "bc");
+    assertEquals(3, cache.size());
+  }
+
+  @Test public void readAndWriteEntryAcrossCacheOpenAndClose() throws Exception {
+    set("k1", "a", "bc");
+    cache.close();
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    assertValue("k1", "a", "bc");
+  }
+
+  @Test public void abortedEditIsNotVisible() throws Exception {
+    DiskLruCache.Editor editor = cache.edit("k1");
+    editor.set(0, "a");
+    editor.set(1, "b");
+    editor.abort();
+    assertNull(cache.get("k1"));
+  }
+
+  @Test public void editWhileEditingReturnsNull() throws Exception {
+    DiskLruCache.Editor editor = cache.edit("k1");
+    assertNull(cache.edit("k1"));
+    editor.abort();
+  }
+
+  @Test public void removeEntry() throws Exception {
+    set("k1", "a", "b");
+    assertTrue(cache.remove("k1"));
+    assertNull(cache.get("k1"));
+    assertFalse(cache.remove("k1"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test public void evictsLeastRecentlyUsedOnFlush() throws Exception {
+    cache.setMaxSize(10);
+    set("a", "a", "aaa"); // size 4
+    set("b", "b", "bbb"); // size 4
+    cache.get("a").close();
+    set("c", "c", "ccc"); // size 12, over the limit
+    cache.flush();
+    assertValue("a", "a", "aaa");
+    assertNull(cache.get("b"));
+    assertValue("c", "c", "ccc");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void keyWithSpaceIsRejected() throws Exception {
+    cache.edit("my key");
+  }
+
+  @Test public void closeWritesCheckpoint() throws Exception {
+    for (int i = 0; i < 50; i++) {
+      set("k" + i, "a" + i, "b" + i);
+    }
+    cache.close();
+    assertTrue(new File(directory, DiskLruCache.INDEX_FILE).exists());
+
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    for (int i = 0; i < 50; i++) {
+      assertValue("k" + i, "a" + i, "b" + i);
+    }
+  }
+
+  @Test public void journalWrittenAfterCheckpointIsReplayed() throws Exception {
+    for (int i = 0; i < 50; i++) {
+      set("k" + i, "a" + i, "b" + i);
+    }
+    cache.close();
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    for (int i = 50; i < 60; i++) {
+      set("k" + i, "a" + i, "b" + i);
+    }
+    for (int i = 0; i < 5; i++) {
+      cache.remove("k" + i);
+    }
+    set("k10", "changed", "value");
+    cache.flush();
+
+    // Simulate a killed process: the checkpoint on disk only covers the first 50 entries.
+    DiskLruCache reopened = DiskLruCache.open(copyDirectory(), APP_VERSION, 2, MAX_SIZE);
+    try {
+      for (int i = 0; i < 60; i++) {
+        DiskLruCache.Snapshot snapshot = reopened.get("k" + i);
+        if (i < 5) {
+          assertNull(snapshot);
+        } else if (i == 10) {
+          assertEquals("changed", snapshot.getString(0));
+          snapshot.close();
+        } else {
+          assertEquals("b" + i, snapshot.getString(1));
+          snapshot.close();
+        }
+      }
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test public void damagedCheckpointFallsBackToJournal() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      set("k" + i, "a" + i, "b" + i);
+    }
+    cache.close();
+    File index = new File(directory, DiskLruCache.INDEX_FILE);
+    RandomAccessFile file = new RandomAccessFile(index, "rw");
+    try {
+      file.seek(file.length() / 2);
+      file.write(0xff ^ file.read());
+    } finally {
+      file.close();
+    }
+
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    for (int i = 0; i < 20; i++) {
+      assertValue("k" + i, "a" + i, "b" + i);
+    }
+  }
+
+  @Test public void checkpointOfAnotherJournalIsIgnored() throws Exception {
+    set("k1", "a", "b");
+    cache.close();
+    File index = new File(directory, DiskLruCache.INDEX_FILE);
+    File otherDirectory = folder.newFolder("other");
+    DiskLruCache other = DiskLruCache.open(otherDirectory, APP_VERSION, 2, MAX_SIZE);
+    DiskLruCache.Editor editor = other.edit("k2");
+    editor.set(0, "c");
+    editor.set(1, "d");
+    editor.commit();
+    other.close();
+    Files.copy(new File(otherDirectory, DiskLruCache.INDEX_FILE).toPath(), index.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    assertValue("k1", "a", "b");
+    assertNull(cache.get("k2"));
+  }
+
+  @Test public void truncatedJournalLineIsDropped() throws Exception {
+    set("k1", "a", "b");
+    cache.close();
+    new File(directory, DiskLruCache.INDEX_FILE).delete();
+    FileOutputStream journal = new FileOutputStream(new File(directory, DiskLruCache.JOURNAL_FILE), true);
+    journal.write("CLEAN k2 1".getBytes("US-ASCII"));
+    journal.close();
+
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    assertValue("k1", "a", "b");
+    assertNull(cache.get("k2"));
+    set("k3", "c", "d");
+    cache.close();
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE);
+    assertValue("k3", "c", "d");
+  }
+
+  @Test public void batchedRecordsAreWrittenOnFlush() throws Exception {
+    assertRecordsSurviveReopen(JournalDurability.BATCHED);
+  }
+
+  @Test public void lazyRecordsAreWrittenOnFlush() throws Exception {
+    assertRecordsSurviveReopen(JournalDurability.LAZY);
+  }
+
+  @Test public void lazyDurabilitySkipsReadRecords() throws Exception {
+    cache.close();
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE, JournalDurability.LAZY);
+    set("k1", "a", "b");
+    cache.flush();
+    long journalLength = new File(directory, DiskLruCache.JOURNAL_FILE).length();
+    for (int i = 0; i < 10; i++) {
+      cache.get("k1").close();
+    }
+    cache.flush();
+    assertEquals(journalLength, new File(directory, DiskLruCache.JOURNAL_FILE).length());
+  }
+
+  @Test public void batchedWriteDoesNotWaitForCacheLock() throws Exception {
+    cache.close();
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE, JournalDurability.BATCHED);
+    set("k1", "a", "b");
+    File journal = new File(directory, DiskLruCache.JOURNAL_FILE);
+    long journalLength = journal.length();
+    // The queued CLEAN record reaches the journal while another thread holds the cache lock.
+    synchronized (cache) {
+      long deadline = System.currentTimeMillis() + 5000;
+      while (journal.length() == journalLength && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(journal.length() > journalLength);
+    }
+  }
+
+  private void assertRecordsSurviveReopen(JournalDurability durability) throws Exception {
+    cache.close();
+    cache = DiskLruCache.open(directory, APP_VERSION, 2, MAX_SIZE, durability);
+    for (int i = 0; i < 300; i++) {
+      set("k" + i, "a" + i, "b" + i);
+    }
+    cache.remove("k0");
+    cache.flush();
+
+    DiskLruCache reopened = DiskLruCache.open(copyDirectory(), APP_VERSION, 2, MAX_SIZE);
+    try {
+      assertNull(reopened.get("k0"));
+      for (int i = 1; i < 300; i++) {
+        DiskLruCache.Snapshot snapshot = reopened.get("k" + i);
+        assertNotNull("k" + i, snapshot);
+        assertEquals("b" + i, snapshot.getString(1));
+        snapshot.close();
+      }
+    } finally {
+      reopened.close();
+    }
+  }
+
+  private void set(String key, String value0, String value1) throws IOException {
+    DiskLruCache.Editor editor = cache.edit(key);
+    editor.set(0, value0);
+    editor.set(1, value1);
+    editor.commit();
+  }
+
+  private void assertValue(String key, String value0, String value1) throws IOException {
+    DiskLruCache.Snapshot snapshot = cache.get(key);
+    assertNotNull(key, snapshot);
+    assertEquals(value0, snapshot.getString(0));
+    assertEquals(value1, snapshot.getString(1));
+    assertEquals(value0.length(), snapshot.getLength(0));
+    snapshot.close();
+  }
+
+  /** Copies the cache files as they are on disk, as if the process had been killed. */
+  private File copyDirectory() throws IOException {
+    File copy = folder.newFolder();
+    for (File file : directory.listFiles()) {
+      Files.copy(file.toPath(), new File(copy, file.getName()).toPath());
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,123 @@
+package com.mrcd.webview.utils.lru;
+
+import com.mrcd.webview.TestResources;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Write throughput, hit latency and on-disk footprint for 50k entries of
+ * 2-20 KB, pack file store vs one DiskLruCache entry (two files) per resource.
+ */
+public final class PackFileStoreBenchmark {
+  private static final int ENTRY_COUNT = 50000;
+  private static final int READ_COUNT = 20000;
+  /** Typical filesystem block; every file occupies whole blocks. */
+  private static final int BLOCK_SIZE = 4096;
+  private static final long MAX_SIZE = 2L * 1024 * 1024 * 1024;
+  private static final byte[] META = new byte[300];
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before public void setUp() {
+    TestResources.assumeBenchmark();
+  }
+
+  @Test public void packVsDiskLruCache() throws Exception {
+    byte[][] bodies = new byte[64][];
+    Random random = new Random(1);
+    for (int i = 0; i < bodies.length; i++) {
+      bodies[i] = new byte[2048 + random.nextInt(18 * 1024)];
+      random.nextBytes(bodies[i]);
+    }
+    System.out.println("store\twrites/sec\thit latency(us)\tfiles\tbytes(MB)\tallocated(MB)");
+
+    File packDirectory = folder.newFolder("pack");
+    PackFileStore pack = PackFileStore.open(packDirectory, MAX_SIZE);
+    long start = System.nanoTime();
+    for (int i = 0; i < ENTRY_COUNT; i++) {
+      pack.put(key(i), META, bodies[i % bodies.length]);
+    }
+    pack.flush();
+    long writeNanos = System.nanoTime() - start;
+    random = new Random(2);
+    start = System.nanoTime();
+    for (int i = 0; i < READ_COUNT; i++) {
+      int index = random.nextInt(ENTRY_COUNT);
+      PackFileStore.Entry entry = pack.get(key(index));
+      entry.readMeta();
+      assertEquals(bodies[index % bodies.length].length, entry.readBody().length);
+    }
+    long readNanos = System.nanoTime() - start;
+    pack.close();
+    report("pack", writeNanos, readNanos, packDirectory);
+
+    File lruDirectory = folder.newFolder("lru");
+    DiskLruCache cache = DiskLruCache.open(lruDirectory, 1, 2, MAX_SIZE);
+    start = System.nanoTime();
+    for (int i = 0; i < ENTRY_COUNT; i++) {
+      DiskLruCache.Editor editor = cache.edit(key(i));
+      write(editor.newOutputStream(0), META);
+      write(editor.newOutputStream(1), bodies[i % bodies.length]);
+      editor.commit();
+    }
+    cache.flush();
+    writeNanos = System.nanoTime() - start;
+    random = new Random(2);
+    start = System.nanoTime();
+    byte[] buffer = new byte[32 * 1024];
+    for (int i = 0; i < READ_COUNT; i++) {
+      int index = random.nextInt(ENTRY_COUNT);
+      DiskLruCache.Snapshot snapshot = cache.get(key(index));
+      snapshot.getInputStream(0).read(buffer);
+      int length = 0;
+      int count;
+      while ((count = snapshot.getInputStream(1).read(buffer)) != -1) {
+        length += count;
+      }
+      snapshot.close();
+      assertEquals(bodies[index % bodies.length].length, length);
+    }
+    readNanos = System.nanoTime() - start;
+    cache.close();
+    report("lru", writeNanos, readNanos, lruDirectory);
+  }
+
+  private static void report(String name, long writeNanos, long readNanos, File directory) {
+    long[] usage = new long[3];
+    measure(directory, usage);
+    System.out.println(name + "\t" + ENTRY_COUNT * 1000000000L / writeNanos
+        + "\t" + readNanos / READ_COUNT / 1000 + "\t" + usage[0]
+        + "\t" + usage[1] / (1024 * 1024) + "\t" + usage[2] / (1024 * 1024));
+  }
+
+  /** Adds up file count, bytes, and bytes rounded up to whole blocks. */
+  private static void measure(File directory, long[] usage) {
+    for (File file : directory.listFiles()) {
+      if (file.isDirectory()) {
+        measure(file, usage);
+        continue;
+      }
+      usage[0]++;
+      usage[1] += file.length();
+      usage[2] += (file.length() + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+  }
+
+  private static void write(OutputStream out, byte[] bytes) throws Exception {
+    out.write(bytes);
+    out.close();
+  }
+
+  private static String key(int i) {
+    return String.format("%032x", i * 2654435761L);
+  }
+}
@@ -0,0 +1,196 @@
+package com.mrcd.webview.utils.lru;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class PackFileStoreTest {
+  private static final long MAX_SIZE = 64 * 1024 * 1024;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+  private PackFileStore store;
+
+  @Before public void setUp() throws Exception {
+    directory = folder.newFolder("pack");
+    store = PackFileStore.open(directory, MAX_SIZE);
+  }
+
+  @After public void tearDown() {
+    store.close();
+  }
+
+  @Test public void putAndGet() throws Exception {
+    store.put("k1", bytes("meta"), bytes("body"));
+    assertValue("k1", "meta", "body");
+    assertEquals(1, store.getEntryCount());
+    assertNull(store.get("k2"));
+  }
+
+  @Test public void emptyMetaAndBody() throws Exception {
+    store.put("k1", new byte[0], new byte[0]);
+    PackFileStore.Entry entry = store.get("k1");
+    assertEquals(0, entry.readMeta().length);
+    assertEquals(0, entry.readBody().length);
+  }
+
+  @Test public void overwriteChangesSequenceNumber() throws Exception {
+    store.put("k1", bytes("m1"), bytes("b1"));
+    long first = store.get("k1").getSequenceNumber();
+    store.put("k1", bytes("m2"), bytes("b2"));
+    assertValue("k1", "m2", "b2");
+    assertNotEquals(first, store.get("k1").getSequenceNumber());
+    assertTrue(store.get("k1").getSequenceNumber() < 0);
+    assertEquals(1, store.getEntryCount());
+  }
+
+  @Test public void removeAndReopen() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      store.put("k" + i, bytes("m" + i), bytes("b" + i));
+    }
+    assertTrue(store.remove("k5"));
+    assertFalse(store.remove("k5"));
+    store.put("k7", bytes("m7-2"), bytes("b7-2"));
+    store.close();
+
+    store = PackFileStore.open(directory, MAX_SIZE);
+    assertEquals(99, store.getEntryCount());
+    assertNull(store.get("k5"));
+    assertValue("k7", "m7-2", "b7-2");
+    assertValue("k99", "m99", "b99");
+  }
+
+  @Test public void evictsLeastRecentlyUsed() throws Exception {
+    store.close();
+    store = PackFileStore.open(directory, 3000);
+    byte[] body = new byte[900];
+    store.put("a", bytes("m"), body);
+    store.put("b", bytes("m"), body);
+    store.put("c", bytes("m"), body);
+    assertNotNull(store.get("a"));
+    store.put("d", bytes("m"), body);
+    assertNotNull(store.get("a"));
+    assertNull(store.get("b"));
+    assertTrue(store.size() <= 3000);
+
+    // Evicted entries stay evicted after reopening.
+    store.close();
+    store = PackFileStore.open(directory, 3000);
+    assertNull(store.get("b"));
+    assertNotNull(store.get("d"));
+  }
+
+  @Test public void truncatedTailIsDropped() throws Exception {
+    store.put("k1", bytes("m1"), bytes("b1"));
+    store.put("k2", bytes("m2"), new byte[1000]);
+    store.close();
+    File segment = directory.listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    try {
+      file.setLength(file.length() - 10);
+    } finally {
+      file.close();
+    }
+
+    store = PackFileStore.open(directory, MAX_SIZE);
+    assertValue("k1", "m1", "b1");
+    assertNull(store.get("k2"));
+    store.put("k3", bytes("m3"), bytes("b3"));
+    store.close();
+    store = PackFileStore.open(directory, MAX_SIZE);
+    assertValue("k3", "m3", "b3");
+  }
+
+  @Test public void corruptBodyFailsChecksum() throws Exception {
+    store.put("k1", bytes("meta"), new byte[100]);
+    store.close();
+    File segment = directory.listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    try {
+      file.seek(file.length() - 20);
+      file.write(1);
+    } finally {
+      file.close();
+    }
+
+    store = PackFileStore.open(directory, MAX_SIZE);
+    PackFileStore.Entry entry = store.get("k1");
+    assertArrayEquals(bytes("meta"), entry.readMeta());
+    try {
+      entry.readBody();
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test public void compactionReclaimsGarbage() throws Exception {
+    byte[] body = new byte[64 * 1024];
+    // Rewriting the same keys fills several segments with garbage.
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 20; i++) {
+        body[0] = (byte) round;
+        store.put("k" + i, bytes("m"), body);
+      }
+    }
+    // 200 records of 64 KiB span four segments, but only 20 are live.
+    awaitCompaction();
+    assertTrue(store.getSegmentCount() < 4);
+    assertTrue(store.getFileBytes() < 200 * body.length / 2);
+    for (int i = 0; i < 20; i++) {
+      assertEquals(9, store.get("k" + i).readBody()[0]);
+    }
+
+    store.close();
+    store = PackFileStore.open(directory, MAX_SIZE);
+    assertEquals(20, store.getEntryCount());
+    assertEquals(9, store.get("k19").readBody()[0]);
+  }
+
+  @Test public void deleteRemovesDirectory() throws Exception {
+    store.put("k1", bytes("m"), bytes("b"));
+    store.close();
+    PackFileStore.delete(directory);
+    assertFalse(directory.exists());
+    store = PackFileStore.open(directory, MAX_SIZE);
+    assertEquals(0, store.getEntryCount());
+  }
+
+  private void awaitCompaction() throws Exception {
+    // The executor is single threaded, so this runs after any queued compaction.
+    store.executorService.submit(new Callable<Void>() {
+      @Override public Void call() {
+        return null;
+      }
+    }).get(10, TimeUnit.SECONDS);
+  }
+
+  private void assertValue(String key, String meta, String body) throws IOException {
+    PackFileStore.Entry entry = store.get(key);
+    assertNotNull(key, entry);
+    assertArrayEquals(bytes(meta), entry.readMeta());
+    assertArrayEquals(bytes(body), entry.readBody());
+    assertEquals(body.length(), entry.getBodyLength());
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(Util.US_ASCII);
+  }
+}
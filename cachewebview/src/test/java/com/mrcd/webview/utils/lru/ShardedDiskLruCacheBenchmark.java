@@ -0,0 +1,107 @@
+package com.mrcd.webview.utils.lru;
+
+import com.mrcd.webview.TestResources;
+import com.mrcd.webview.config.JournalDurability;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed read/write throughput of a single DiskLruCache vs sharded caches.
+ * Each operation reads an entry or, with {@link #WRITE_PERCENT} probability,
+ * rewrites it, as WebViews loading overlapping pages would.
+ */
+public final class ShardedDiskLruCacheBenchmark {
+  private static final int[] SHARD_COUNTS = {1, 4, 8};
+  private static final int[] THREAD_COUNTS = {1, 4, 8, 16};
+  private static final int ENTRY_COUNT = 2000;
+  private static final int WRITE_PERCENT = 20;
+  private static final int WARM_UP_MILLIS = 500;
+  private static final long DURATION_MILLIS = 2000;
+  private static final byte[] BODY = TestResources.randomBytes(4096, 1);
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before public void setUp() {
+    TestResources.assumeBenchmark();
+  }
+
+  @Test public void mixedReadWrite() throws Exception {
+    System.out.println("shards\tthreads\tops/sec");
+    for (int shards : SHARD_COUNTS) {
+      ShardedDiskLruCache cache = ShardedDiskLruCache.open(folder.newFolder("shards-" + shards), 1, 1,
+          1024L * 1024 * 1024, shards, JournalDurability.BATCHED);
+      for (int i = 0; i < ENTRY_COUNT; i++) {
+        write(cache, "k" + i);
+      }
+      run(cache, 4, WARM_UP_MILLIS);
+      for (int threads : THREAD_COUNTS) {
+        System.out.println(shards + "\t" + threads + "\t" + run(cache, threads, DURATION_MILLIS));
+      }
+      cache.close();
+    }
+  }
+
+  private static long run(final ShardedDiskLruCache cache, int threads, final long millis)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    List<Future<Long>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final long seed = t;
+      futures.add(executor.submit(new Callable<Long>() {
+        @Override public Long call() throws Exception {
+          Random random = new Random(seed);
+          byte[] buffer = new byte[BODY.length];
+          barrier.await();
+          long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+          long ops = 0;
+          while (System.nanoTime() < deadline) {
+            String key = "k" + random.nextInt(ENTRY_COUNT);
+            if (random.nextInt(100) < WRITE_PERCENT) {
+              write(cache, key);
+            } else {
+              DiskLruCache.Snapshot snapshot = cache.get(key);
+              if (snapshot != null) {
+                snapshot.getInputStream(0).read(buffer);
+                snapshot.close();
+              }
+            }
+            ops++;
+          }
+          return ops;
+        }
+      }));
+    }
+    long total = 0;
+    for (Future<Long> future : futures) {
+      total += future.get();
+    }
+    executor.shutdown();
+    return total * 1000 / millis;
+  }
+
+  private static void write(ShardedDiskLruCache cache, String key) throws Exception {
+    DiskLruCache.Editor editor = cache.edit(key);
+    if (editor == null) {
+      return; // Another thread is writing the same entry.
+    }
+    OutputStream out = editor.newOutputStream(0);
+    out.write(BODY);
+    out.close();
+    editor.commit();
+  }
+}
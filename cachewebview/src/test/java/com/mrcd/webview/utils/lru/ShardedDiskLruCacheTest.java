@@ -0,0 +1,159 @@
+package com.mrcd.webview.utils.lru;
+
+import com.mrcd.webview.config.JournalDurability;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class ShardedDiskLruCacheTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void entriesAreSpreadOverShards() throws Exception {
+    File directory = folder.newFolder();
+    ShardedDiskLruCache cache = open(directory, 4);
+    for (int i = 0; i < 100; i++) {
+      set(cache, "k" + i, "v" + i);
+    }
+    for (int i = 0; i < 4; i++) {
+      File shard = new File(directory, ShardedDiskLruCache.SHARD_PREFIX + i);
+      assertTrue(new File(shard, DiskLruCache.JOURNAL_FILE).exists());
+      assertTrue(shard.list().length > 1);
+    }
+    assertEquals(4, cache.getShardCount());
+    assertEquals(10 * 2 + 90 * 3, cache.size()); // "v0".."v9" and "v10".."v99"
+    cache.close();
+
+    cache = open(directory, 4);
+    for (int i = 0; i < 100; i++) {
+      assertValue(cache, "k" + i, "v" + i);
+    }
+    assertTrue(cache.remove("k1"));
+    assertNull(cache.get("k1"));
+    cache.close();
+  }
+
+  @Test public void sizeBudgetIsSharedBetweenShards() throws Exception {
+    ShardedDiskLruCache cache = ShardedDiskLruCache.open(folder.newFolder(), 1, 1, 4000, 4,
+        JournalDurability.PER_OP);
+    assertEquals(4000, cache.getMaxSize());
+    cache.setMaxSize(8000);
+    assertEquals(8000, cache.getMaxSize());
+    cache.close();
+  }
+
+  @Test public void skewedShardUsesWholeBudget() throws Exception {
+    ShardedDiskLruCache cache = ShardedDiskLruCache.open(folder.newFolder(), 1, 1, 1000, 4,
+        JournalDurability.PER_OP);
+    // Every key lands in shard 0, which alone holds more than a quarter of the budget.
+    List<String> keys = keysInShard(0, 4, 8);
+    for (String key : keys) {
+      set(cache, key, repeat('a', 100));
+    }
+    cache.flush();
+    assertEquals(800, cache.size());
+    for (String key : keys) {
+      assertValue(cache, key, repeat('a', 100));
+    }
+    cache.close();
+  }
+
+  @Test public void largestShardIsTrimmedToSharedBudget() throws Exception {
+    ShardedDiskLruCache cache = ShardedDiskLruCache.open(folder.newFolder(), 1, 1, 1000, 4,
+        JournalDurability.PER_OP);
+    List<String> small = keysInShard(1, 4, 2);
+    for (String key : small) {
+      set(cache, key, repeat('b', 100));
+    }
+    List<String> large = keysInShard(0, 4, 12);
+    for (String key : large) {
+      set(cache, key, repeat('a', 100));
+    }
+    cache.flush();
+    assertEquals(1000, cache.size());
+    // The oldest entries of the large shard go first; the small shard is untouched.
+    for (String key : small) {
+      assertValue(cache, key, repeat('b', 100));
+    }
+    for (int i = 0; i < 4; i++) {
+      assertNull(cache.get(large.get(i)));
+    }
+    for (int i = 4; i < large.size(); i++) {
+      assertValue(cache, large.get(i), repeat('a', 100));
+    }
+    cache.close();
+  }
+
+  @Test public void changingShardCountDropsTheOtherLayout() throws Exception {
+    File directory = folder.newFolder();
+    ShardedDiskLruCache cache = open(directory, 1);
+    set(cache, "k1", "v1");
+    cache.close();
+
+    cache = open(directory, 4);
+    assertNull(cache.get("k1"));
+    assertFalse(new File(directory, DiskLruCache.JOURNAL_FILE).exists());
+    set(cache, "k2", "v2");
+    cache.close();
+
+    cache = open(directory, 2);
+    assertNull(cache.get("k2"));
+    assertFalse(new File(directory, ShardedDiskLruCache.SHARD_PREFIX + 3).exists());
+    cache.close();
+  }
+
+  @Test public void closedWhenAnyShardIsClosed() throws Exception {
+    ShardedDiskLruCache cache = open(folder.newFolder(), 2);
+    assertFalse(cache.isClosed());
+    cache.close();
+    assertTrue(cache.isClosed());
+  }
+
+  private static List<String> keysInShard(int shard, int shardCount, int count) {
+    List<String> keys = new ArrayList<String>();
+    for (int i = 0; keys.size() < count; i++) {
+      String key = "k" + i;
+      if ((key.hashCode() & Integer.MAX_VALUE) % shardCount == shard) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  private static ShardedDiskLruCache open(File directory, int shardCount) throws IOException {
+    return ShardedDiskLruCache.open(directory, 1, 1, 1024 * 1024, shardCount,
+        JournalDurability.PER_OP);
+  }
+
+  private static void set(ShardedDiskLruCache cache, String key, String value) throws IOException {
+    DiskLruCache.Editor editor = cache.edit(key);
+    editor.set(0, value);
+    editor.commit();
+  }
+
+  private static void assertValue(ShardedDiskLruCache cache, String key, String value)
+      throws IOException {
+    DiskLruCache.Snapshot snapshot = cache.get(key);
+    assertNotNull(key, snapshot);
+    assertEquals(value, snapshot.getString(0));
+    snapshot.close();
+  }
+}